@@ -0,0 +1,117 @@
+package com.openai.benchmarks;
+
+import com.openai.advisors.ModelBulkheadAdvisor;
+import com.openai.advisors.TokenUsageAuditAdvisor;
+import com.openai.rag.LanguageAwareTranslationQueryTransformer;
+import com.openai.rag.PIIMaskingDocumentPostProcessor;
+import com.openai.resilience.ModelBulkheads;
+import com.openai.resilience.OllamaModelResidencyManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per request overhead of our advisor chain against a model that answers instantly. {@code modelOnly} is the raw
+ * model call, {@code bareChatClient} adds the chat client itself and {@code fullAdvisorChain} runs the same advisors
+ * as {@code chatMemoryChatClient} (logger, memory, token audit, rag with translation and pii masking, bulkhead) over
+ * an in-memory vector store holding the chunked hr policy. The differences between them are our own cost per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdvisorChainBenchmark {
+
+    private static final String QUESTION = "How many days of paid leave do I get per year?";
+
+    private ChatModel chatModel;
+    private Prompt prompt;
+    private ChatClient bareChatClient;
+    private ChatClient advisedChatClient;
+
+    @Setup
+    public void setUp() {
+        chatModel = new StubChatModel();
+        prompt = new Prompt(QUESTION);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        SimpleVectorStore vectorStore = SimpleVectorStore.builder(new StubEmbeddingModel()).build();
+        List<Document> documents = new TikaDocumentReader(new ClassPathResource("CoDev_HR_Policy.pdf")).get();
+        vectorStore.add(TokenTextSplitter.builder().withChunkSize(100).withMaxNumChunks(400).build().apply(documents));
+
+        ChatMemory chatMemory = MessageWindowChatMemory.builder().maxMessages(10)
+                .chatMemoryRepository(new InMemoryChatMemoryRepository()).build();
+        RetrievalAugmentationAdvisor retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder()
+                .queryTransformers(LanguageAwareTranslationQueryTransformer.builder()
+                        .chatClientBuilder(ChatClient.builder(chatModel))
+                        .targetLanguage("english")
+                        .meterRegistry(meterRegistry)
+                        .build())
+                .documentRetriever(VectorStoreDocumentRetriever.builder().vectorStore(vectorStore).topK(3).similarityThreshold(0.5).build())
+                .documentPostProcessors(PIIMaskingDocumentPostProcessor.builder().build())
+                .build();
+        ModelBulkheads modelBulkheads = new ModelBulkheads(meterRegistry, 4, 1, 16, 32, Duration.ofSeconds(30));
+        // disabled, the stub model is not an ollama model, so only the cost of the lease is measured
+        OllamaModelResidencyManager residencyManager = new OllamaModelResidencyManager(RestClient.builder(), meterRegistry,
+                "http://localhost:11434", false, List.of(), List.of(), Set.of(), DataSize.ofGigabytes(8),
+                Duration.ofMinutes(30), Duration.ofSeconds(60), Duration.ofSeconds(20), Duration.ofSeconds(30));
+
+        bareChatClient = ChatClient.builder(chatModel).build();
+        advisedChatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(List.of(new SimpleLoggerAdvisor(), MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                        new TokenUsageAuditAdvisor(meterRegistry, "benchmark"), retrievalAugmentationAdvisor,
+                        new ModelBulkheadAdvisor(modelBulkheads, residencyManager, "stub")))
+                .build();
+    }
+
+    @Benchmark
+    public ChatResponse modelOnly() {
+        return chatModel.call(prompt);
+    }
+
+    @Benchmark
+    public ChatResponse bareChatClient() {
+        return bareChatClient.prompt().user(QUESTION).call().chatResponse();
+    }
+
+    @Benchmark
+    public ChatResponse fullAdvisorChain() {
+        return advisedChatClient.prompt().user(QUESTION)
+                .advisors(advisorSpec -> advisorSpec.param(ChatMemory.CONVERSATION_ID, "benchmark"))
+                .call().chatResponse();
+    }
+}
@@ -0,0 +1,113 @@
+package com.openai.benchmarks;
+
+import com.openai.memory.WriteBehindChatMemoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One conversation turn against each chat memory repository: reading the window and saving it back with the new
+ * user and assistant message, which is what {@code MessageChatMemoryAdvisor} does per request. The jdbc repository
+ * runs on an in-memory h2, so the numbers are a lower bound of the file based database used by the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatMemoryRepositoryBenchmark {
+
+    @Param({"inMemory", "jdbc", "writeBehind"})
+    String repository;
+
+    @Param({"100"})
+    int conversations;
+
+    private SingleConnectionDataSource dataSource;
+    private ChatMemoryRepository chatMemoryRepository;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        chatMemoryRepository = switch (repository) {
+            case "inMemory" -> new InMemoryChatMemoryRepository();
+            case "jdbc" -> jdbcRepository();
+            case "writeBehind" -> WriteBehindChatMemoryRepository
+                    .builder(jdbcRepository(), new TransactionTemplate(new DataSourceTransactionManager(dataSource)))
+                    .build();
+            default -> throw new IllegalArgumentException("Unknown repository " + repository);
+        };
+        // every conversation starts with a full window, as in a running chat
+        for (int i = 0; i < conversations; i++) {
+            List<Message> messages = new ArrayList<>();
+            for (int m = 0; m < 5; m++) {
+                messages.add(new UserMessage("Question " + m + " about the leave policy"));
+                messages.add(new AssistantMessage("Answer " + m + " about the leave policy"));
+            }
+            chatMemoryRepository.saveAll(conversationId(i), messages);
+        }
+    }
+
+    private ChatMemoryRepository jdbcRepository() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:chatmemory;DB_CLOSE_DELAY=-1", "sa", "", true);
+        new ResourceDatabasePopulator(new ClassPathResource("org/springframework/ai/chat/memory/repository/jdbc/schema-h2.sql"))
+                .execute(dataSource);
+        return JdbcChatMemoryRepository.builder().jdbcTemplate(new JdbcTemplate(dataSource)).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (chatMemoryRepository instanceof WriteBehindChatMemoryRepository writeBehind)
+            writeBehind.destroy();
+        if (dataSource != null) {
+            new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+            dataSource.destroy();
+        }
+    }
+
+    @Benchmark
+    public List<Message> read() {
+        return chatMemoryRepository.findByConversationId(conversationId(next++ % conversations));
+    }
+
+    @Benchmark
+    public void turn() {
+        String conversationId = conversationId(next++ % conversations);
+        List<Message> window = new ArrayList<>(chatMemoryRepository.findByConversationId(conversationId));
+        window.add(new UserMessage("How many days of paid leave do I get?"));
+        window.add(new AssistantMessage(StubChatModel.ANSWER));
+        // keeping the window at 10 messages like MessageWindowChatMemory does
+        chatMemoryRepository.saveAll(conversationId, window.subList(window.size() - 10, window.size()));
+    }
+
+    private static String conversationId(int i) {
+        return "conversation-" + i;
+    }
+}
@@ -0,0 +1,116 @@
+package com.openai.benchmarks;
+
+import com.openai.vectorstore.HnswIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Search latency of the embedded hnsw index against an exact scan of the same index, on clustered 768 dimension
+ * vectors (the shape of nomic-embed-text embeddings). Recall@10 against the exact scan is printed once per trial,
+ * latency alone says nothing about an approximate index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HnswIndexBenchmark {
+
+    private static final int DIMENSIONS = 768;
+    private static final int TOP_K = 10;
+    private static final int QUERIES = 256;
+
+    @Param({"20000"})
+    int vectors;
+
+    @Param({"NONE", "INT8"})
+    HnswIndex.Quantization quantization;
+
+    @Param({"32", "64", "128"})
+    int efSearch;
+
+    private Path directory;
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("hnsw-benchmark");
+        index = HnswIndex.open(directory, DIMENSIONS, quantization, 16, 100);
+        Random random = new Random(42);
+        float[][] centroids = new float[64][DIMENSIONS];
+        for (float[] centroid : centroids)
+            for (int i = 0; i < DIMENSIONS; i++)
+                centroid[i] = (float) random.nextGaussian();
+        float[][] data = new float[vectors][];
+        for (int n = 0; n < vectors; n++)
+            data[n] = around(centroids[random.nextInt(centroids.length)], 0.8, random);
+        // inserting concurrently, the way the ingestion pipeline's upsert workers do
+        IntStream.range(0, vectors).parallel().forEach(n -> index.add(data[n]));
+
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++)
+            queries[q] = around(data[random.nextInt(vectors)], 0.05, random);
+
+        double recall = 0;
+        for (float[] query : queries) {
+            Set<Integer> exact = new HashSet<>();
+            index.exactSearch(query, TOP_K, node -> true).forEach(result -> exact.add(result.node()));
+            recall += index.search(query, TOP_K, efSearch, node -> true).stream()
+                    .filter(result -> exact.contains(result.node())).count() / (double) TOP_K;
+        }
+        System.out.printf("%nrecall@%d (%s, efSearch %d, %d vectors) = %.4f%n", TOP_K, quantization, efSearch, vectors, recall / QUERIES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<HnswIndex.SearchResult> hnswSearch() {
+        return index.search(queries[next++ % QUERIES], TOP_K, efSearch, node -> true);
+    }
+
+    @Benchmark
+    public List<HnswIndex.SearchResult> exactSearch() {
+        return index.exactSearch(queries[next++ % QUERIES], TOP_K, node -> true);
+    }
+
+    private static float[] around(float[] center, double spread, Random random) {
+        float[] vector = new float[center.length];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = center[i] + (float) (random.nextGaussian() * spread);
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < vector.length; i++)
+            vector[i] /= (float) Math.sqrt(norm);
+        return vector;
+    }
+}
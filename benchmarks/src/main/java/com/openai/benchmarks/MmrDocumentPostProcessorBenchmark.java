@@ -0,0 +1,84 @@
+package com.openai.benchmarks;
+
+import com.openai.cache.CachingEmbeddingModel;
+import com.openai.rag.MmrDocumentPostProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reranking an over-fetched candidate list with mmr. Candidates are overlapping windows over the same policy
+ * sentences, like neighbouring 100 token chunks, and their embeddings are already cached as they are after ingestion.
+ * Setup prints how many distinct sentences and prompt tokens a plain top 5 and the mmr top 5 carry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MmrDocumentPostProcessorBenchmark {
+
+    private static final int TOP_N = 5;
+    private static final int SENTENCES_PER_CHUNK = 4;
+
+    @Param({"20", "50"})
+    int candidates;
+
+    private MmrDocumentPostProcessor postProcessor;
+    private Query query;
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        CachingEmbeddingModel embeddingModel = CachingEmbeddingModel.builder(new StubEmbeddingModel(), "stub").build();
+        postProcessor = MmrDocumentPostProcessor.builder().embeddingModel(embeddingModel).topN(TOP_N).build();
+        query = new Query("How many days of paid leave do I get?");
+
+        // chunk i covers sentences i .. i + 3, neighbours share three of their four sentences
+        documents = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int s = i; s < i + SENTENCES_PER_CHUNK; s++)
+                text.append("Policy clause ").append(s).append(" covers topic ").append(s * 7919 % 1000).append(" in detail. ");
+            documents.add(Document.builder().id("chunk-" + i).text(text.toString()).score(1.0 - i * 0.01).build());
+        }
+        embeddingModel.embed(documents.stream().map(Document::getText).toList());
+
+        List<Document> reranked = postProcessor.process(query, documents);
+        System.out.printf("%nplain top %d: %s%nmmr top %d: %s%n", TOP_N, coverage(documents.subList(0, TOP_N)), TOP_N, coverage(reranked));
+    }
+
+    private static String coverage(List<Document> selected) {
+        JTokkitTokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+        Set<String> sentences = new HashSet<>();
+        int tokens = 0;
+        for (Document document : selected) {
+            sentences.addAll(List.of(document.getText().split("(?<=\\.) ")));
+            tokens += estimator.estimate(document.getText());
+        }
+        return sentences.size() + " distinct sentences in " + tokens + " tokens";
+    }
+
+    @Benchmark
+    public List<Document> process() {
+        return postProcessor.process(query, documents);
+    }
+}
@@ -0,0 +1,79 @@
+package com.openai.benchmarks;
+
+import com.openai.rag.PIIMaskingDocumentPostProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Masking cost of the rag post-processor on batches that look like retrieved policy chunks: ~100 token chunks where
+ * some contain an email or a phone number. Batch size 3 is what the retrieval advisor passes today, batches from 64
+ * documents on are masked in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PIIMaskingBenchmark {
+
+    private static final String[] SENTENCES = {
+            "Employees are entitled to twenty days of paid leave per calendar year.",
+            "Leave requests must be approved by the reporting manager at least two weeks in advance.",
+            "Reimbursement claims are processed within the next payroll cycle.",
+            "For questions contact the HR desk at hr.desk@codev.example.com or call 555-201-3344.",
+            "Remote work is allowed up to three days a week subject to team agreement.",
+            "The security team can be reached on +1 (555) 908-1122 for laptop issues.",
+            "Probation period for new joiners is six months from the date of joining.",
+            "Escalations go to jane.doe@codev.example.com before the end of the quarter."
+    };
+
+    @Param({"3", "20", "200"})
+    int batchSize;
+
+    // chunks masked at ingestion time, the post-processor only has to check the flag
+    @Param({"false", "true"})
+    boolean maskedAtIngestion;
+
+    private PIIMaskingDocumentPostProcessor postProcessor;
+    private Query query;
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        postProcessor = PIIMaskingDocumentPostProcessor.builder().build();
+        query = new Query("How many days of paid leave do I get?");
+        Random random = new Random(42);
+        documents = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int s = 0; s < 6; s++)
+                text.append(SENTENCES[random.nextInt(SENTENCES.length)]).append(' ');
+            Document.Builder document = Document.builder().text(text.toString()).metadata("source", "CoDev_HR_Policy.pdf");
+            if (maskedAtIngestion)
+                document.metadata(PIIMaskingDocumentPostProcessor.PII_MASKED, true);
+            documents.add(document.build());
+        }
+    }
+
+    @Benchmark
+    public List<Document> process() {
+        return postProcessor.process(query, documents);
+    }
+}
@@ -0,0 +1,31 @@
+package com.openai.benchmarks;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Answers instantly with a fixed answer and usage, so whatever a benchmark measures on top of it is our own code.
+ */
+class StubChatModel implements ChatModel {
+
+    static final String ANSWER = "Employees are entitled to twenty days of paid leave per calendar year.";
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(ANSWER))),
+                ChatResponseMetadata.builder().model("stub").usage(new DefaultUsage(120, 16)).build());
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.just(call(prompt));
+    }
+}
@@ -0,0 +1,49 @@
+package com.openai.benchmarks;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Deterministic bag of words embedding with the dimensions of nomic-embed-text. Texts sharing words end up close,
+ * which is enough for the similarity search in the vector store to behave realistically.
+ */
+class StubEmbeddingModel implements EmbeddingModel {
+
+    private static final int DIMENSIONS = 768;
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+        for (String text : request.getInstructions())
+            embeddings.add(new Embedding(embed(text), embeddings.size()));
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText() != null ? document.getText() : "");
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[DIMENSIONS];
+        for (String word : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (!word.isEmpty())
+                vector[Math.floorMod(word.hashCode(), DIMENSIONS)] += 1f;
+        }
+        vector[0] += 0.01f; // never a zero vector
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return DIMENSIONS;
+    }
+}
@@ -0,0 +1,118 @@
+package com.openai.benchmarks;
+
+import com.openai.entity.HelpDeskTicket;
+import com.openai.service.HelpDeskTicketWriter;
+import com.openai.service.TicketIdAllocator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tickets stored per second by the previous per-row path (one transaction and insert per {@code createTicket} call)
+ * against one batched transaction and the write behind queue the {@code createTicket} tool uses now. Runs on an
+ * in-memory h2 with the application's batch settings, so per statement and per commit costs are a lower bound of the
+ * file based database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TicketPersistenceBenchmark {
+
+    private static final int TICKETS = 1000;
+    private static final int BATCH_SIZE = 100;
+
+    private SingleConnectionDataSource dataSource;
+    private EntityManagerFactory entityManagerFactory;
+    private TicketIdAllocator ticketIdAllocator;
+    private HelpDeskTicketWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:tickets;DB_CLOSE_DELAY=-1", "sa", "", true);
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setPackagesToScan("com.openai.entity");
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "create",
+                "hibernate.jdbc.batch_size", String.valueOf(BATCH_SIZE),
+                "hibernate.order_inserts", "true"));
+        factory.afterPropertiesSet();
+        entityManagerFactory = factory.getObject();
+        ticketIdAllocator = new TicketIdAllocator(new JdbcTemplate(dataSource), 50);
+        // flushed by the benchmark itself, the background flusher never gets a turn
+        writer = new HelpDeskTicketWriter(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory),
+                new JpaTransactionManager(entityManagerFactory), new SimpleMeterRegistry(), BATCH_SIZE, Duration.ofHours(1), TICKETS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.destroy();
+        entityManagerFactory.close();
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKETS)
+    public void perRow() {
+        for (HelpDeskTicket ticket : tickets())
+            writer.persistAll(List.of(ticket));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKETS)
+    public void batched() {
+        writer.persistAll(tickets());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKETS)
+    public void writeBehind() {
+        for (HelpDeskTicket ticket : tickets())
+            writer.submit(ticket);
+        writer.flush();
+    }
+
+    private List<HelpDeskTicket> tickets() {
+        List<HelpDeskTicket> tickets = new ArrayList<>(TICKETS);
+        for (long id : ticketIdAllocator.next(TICKETS))
+            tickets.add(HelpDeskTicket.builder()
+                    .id(id)
+                    .username("user-" + id % 100)
+                    .issue("Laptop does not connect to the office vpn")
+                    .status("OPEN")
+                    .createdAt(LocalDate.now())
+                    .eta(LocalDate.now().plusDays(7))
+                    .build());
+        return tickets;
+    }
+}
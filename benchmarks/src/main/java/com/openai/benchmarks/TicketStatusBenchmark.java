@@ -0,0 +1,151 @@
+package com.openai.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.entity.HelpDeskTicket;
+import com.openai.model.TicketSummary;
+import com.openai.repository.HelpDeskTicketRepository;
+import com.openai.service.HelpDeskTicketWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * What the {@code getTicketStatus} tool costs per call on a large ticket table: the previous lookup (every ticket of
+ * the user as an entity, serialized to json for the model) against the indexed, status filtered summary page it uses
+ * now. Query time is measured by jmh, the size of both tool results in tokens is printed once at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TicketStatusBenchmark {
+
+    private static final Set<String> OPEN_STATUSES = Set.of("OPEN", "IN_PROGRESS");
+    private static final String[] ISSUES = {
+            "Laptop does not connect to the office vpn after the latest update",
+            "Password reset link from the self service portal has expired",
+            "Outlook keeps asking for credentials every few minutes",
+            "Need access to the finance shared drive for the quarterly close"};
+
+    @Param({"200000"})
+    int tickets;
+
+    @Param({"2000"})
+    int users;
+
+    private SingleConnectionDataSource dataSource;
+    private EntityManagerFactory entityManagerFactory;
+    private HelpDeskTicketRepository repository;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:ticket-status;DB_CLOSE_DELAY=-1", "sa", "", true);
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setPackagesToScan("com.openai.entity");
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "create",
+                "hibernate.jdbc.batch_size", "100",
+                "hibernate.order_inserts", "true"));
+        factory.afterPropertiesSet();
+        entityManagerFactory = factory.getObject();
+        EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        repository = new JpaRepositoryFactory(entityManager).getRepository(HelpDeskTicketRepository.class);
+        seed(new HelpDeskTicketWriter(entityManager, new JpaTransactionManager(entityManagerFactory), new SimpleMeterRegistry(),
+                100, Duration.ofHours(1), 1));
+
+        // same user for both results
+        String before = fullEntities();
+        next = 0;
+        String after = summaries();
+        JTokkitTokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+        System.out.printf("%nTool result for %d tickets per user: full entities %d tokens, summary page %d tokens%n",
+                tickets / users, estimator.estimate(before), estimator.estimate(after));
+    }
+
+    // every user gets tickets spread over three years, one in twenty still open
+    private void seed(HelpDeskTicketWriter writer) {
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDate today = LocalDate.now();
+        List<HelpDeskTicket> batch = new ArrayList<>(10_000);
+        for (long id = 1; id <= tickets; id++) {
+            LocalDate createdAt = today.minusDays(random.nextInt(3 * 365));
+            batch.add(HelpDeskTicket.builder()
+                    .id(id)
+                    .username("user-" + id % users)
+                    .issue(ISSUES[random.nextInt(ISSUES.length)])
+                    .status(random.nextInt(20) == 0 ? "OPEN" : "CLOSED")
+                    .createdAt(createdAt)
+                    .eta(createdAt.plusDays(7))
+                    .build());
+            if (batch.size() == 10_000) {
+                writer.persistAll(batch);
+                batch.clear();
+            }
+        }
+        writer.persistAll(batch);
+        writer.destroy();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManagerFactory.close();
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public String fullEntities() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(repository.findByUsername(nextUser()));
+    }
+
+    @Benchmark
+    public String summaries() {
+        return repository.findSummaries(nextUser(), OPEN_STATUSES, LocalDate.now().minusDays(30), PageRequest.of(0, 10))
+                .stream()
+                .map(TicketSummary::toLine)
+                .collect(Collectors.joining("\n"));
+    }
+
+    private String nextUser() {
+        return "user-" + next++ % users;
+    }
+}
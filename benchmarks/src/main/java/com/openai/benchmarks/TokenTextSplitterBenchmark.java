@@ -0,0 +1,48 @@
+package com.openai.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunking of the hr policy with the same splitter settings as {@code HRPolicyLoader}. The pdf is parsed once in
+ * setup, so only the split itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenTextSplitterBenchmark {
+
+    private TextSplitter textSplitter;
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        // the policy pdf comes with the application jar
+        documents = new TikaDocumentReader(new ClassPathResource("CoDev_HR_Policy.pdf")).get();
+        textSplitter = TokenTextSplitter.builder().withChunkSize(100).withMaxNumChunks(400).build();
+    }
+
+    @Benchmark
+    public List<Document> splitHrPolicy() {
+        return textSplitter.apply(documents);
+    }
+}
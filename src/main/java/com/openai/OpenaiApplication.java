@@ -3,9 +3,11 @@ package com.openai;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.scheduling.annotation.EnableAsync;
 
 @SpringBootApplication
 @EnableRetry
+@EnableAsync
 public class OpenaiApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,185 @@
+package com.openai.advisors;
+
+import com.openai.exception.DeadlineExceededException;
+import com.openai.resilience.RequestDeadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.core.Ordered;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces the {@link RequestDeadline} of a request over the whole advisor chain: retrieval, tool calls and the model
+ * http request. The deadline is put into the request context, so retrievers can shorten their own timeouts.
+ * <p>
+ * A blocking call still running at the deadline has its thread interrupted, which aborts the http request to the
+ * model and with it the generation on the model server. A stream is cancelled at the deadline or when the client
+ * goes away, cancelling closes the connection to the model the same way. Abandoned work is counted in
+ * {@code llm.requests.abandoned} and the tokens spent on it in {@code llm.tokens.wasted}.
+ */
+public class DeadlineAdvisor implements CallAdvisor, StreamAdvisor {
+
+    // only fires interrupts, one platform thread is plenty
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "request-deadline-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int RUNNING = 0;
+    private static final int DONE = 1;
+    private static final int INTERRUPTED = 2;
+
+    private final MeterRegistry meterRegistry;
+    private final String clientName;
+    private final Duration defaultTimeout;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    /**
+     * @param defaultTimeout used for calls made outside of a web request, where no deadline was bound
+     */
+    public DeadlineAdvisor(MeterRegistry meterRegistry, String clientName, Duration defaultTimeout) {
+        Assert.notNull(meterRegistry, "meterRegistry cannot be null");
+        Assert.hasText(clientName, "clientName cannot be empty");
+        Assert.isTrue(defaultTimeout != null && defaultTimeout.isPositive(), "defaultTimeout must be positive");
+        this.meterRegistry = meterRegistry;
+        this.clientName = clientName;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        RequestDeadline deadline = deadline(chatClientRequest);
+        if (deadline.isExpired()) {
+            abandoned(chatClientRequest, "expired", 0);
+            throw new DeadlineExceededException("admission", deadline.timeout());
+        }
+
+        Thread caller = Thread.currentThread();
+        AtomicInteger state = new AtomicInteger(RUNNING);
+        ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> {
+            if (state.compareAndSet(RUNNING, INTERRUPTED))
+                caller.interrupt();
+        }, deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            return callAdvisorChain.nextCall(withDeadline(chatClientRequest, deadline));
+        } catch (RuntimeException ex) {
+            // whatever the interrupt surfaced as (io error, bulkhead wait, ...), the cause is the deadline
+            if (state.get() == INTERRUPTED) {
+                abandoned(chatClientRequest, "expired", 0);
+                throw new DeadlineExceededException("the model call", deadline.timeout());
+            }
+            throw ex;
+        } finally {
+            watchdog.cancel(false);
+            // the watchdog may have fired after the chain returned, the interrupt must not leak into the next request
+            if (!state.compareAndSet(RUNNING, DONE))
+                Thread.interrupted();
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        // resolved when the stream is requested, that is still on the request thread
+        RequestDeadline deadline = deadline(chatClientRequest);
+        return Flux.defer(() -> {
+            if (deadline.isExpired()) {
+                abandoned(chatClientRequest, "expired", 0);
+                return Flux.error(new DeadlineExceededException("admission", deadline.timeout()));
+            }
+            StringBuilder streamed = new StringBuilder();
+            return streamAdvisorChain.nextStream(withDeadline(chatClientRequest, deadline))
+                    .doOnNext(chatClientResponse -> streamed.append(text(chatClientResponse)))
+                    // every token gets whatever is left of the deadline, which makes it a deadline for the whole stream
+                    .timeout(Mono.delay(deadline.remaining()), token -> Mono.delay(deadline.remaining()))
+                    .onErrorMap(TimeoutException.class, ex -> {
+                        abandoned(chatClientRequest, "expired", completionTokens(streamed));
+                        return new DeadlineExceededException("the model stream", deadline.timeout());
+                    })
+                    // the client went away, spring cancels the response stream and the cancel reaches the model
+                    .doOnCancel(() -> abandoned(chatClientRequest, "cancelled", completionTokens(streamed)));
+        });
+    }
+
+    private RequestDeadline deadline(ChatClientRequest chatClientRequest) {
+        return RequestDeadline.from(chatClientRequest.context()).orElseGet(() -> RequestDeadline.after(defaultTimeout));
+    }
+
+    private static ChatClientRequest withDeadline(ChatClientRequest chatClientRequest, RequestDeadline deadline) {
+        return chatClientRequest.mutate().context(RequestDeadline.CONTEXT_KEY, deadline).build();
+    }
+
+    private void abandoned(ChatClientRequest chatClientRequest, String reason, int completionTokens) {
+        String model = model(chatClientRequest);
+        Counter.builder("llm.requests.abandoned")
+                .description("Chat requests given up on because the deadline passed or the client went away")
+                .tags("client", clientName, "model", model, "reason", reason)
+                .register(meterRegistry)
+                .increment();
+        // the prompt was processed by the model in any case, the answer so far is thrown away
+        Counter.builder("llm.tokens.wasted")
+                .description("Estimated prompt and completion tokens spent on abandoned requests")
+                .tags("client", clientName, "model", model, "reason", reason)
+                .register(meterRegistry)
+                .increment(promptTokens(chatClientRequest) + completionTokens);
+    }
+
+    private int promptTokens(ChatClientRequest chatClientRequest) {
+        return chatClientRequest.prompt().getInstructions().stream()
+                .map(Message::getText)
+                .mapToInt(text -> StringUtils.hasText(text) ? tokenCountEstimator.estimate(text) : 0)
+                .sum();
+    }
+
+    private int completionTokens(StringBuilder streamed) {
+        return streamed.isEmpty() ? 0 : tokenCountEstimator.estimate(streamed.toString());
+    }
+
+    private static String text(ChatClientResponse chatClientResponse) {
+        ChatResponse chatResponse = chatClientResponse.chatResponse();
+        if (chatResponse == null)
+            return "";
+        Generation generation = chatResponse.getResult();
+        if (generation == null || generation.getOutput() == null || generation.getOutput().getText() == null)
+            return "";
+        return generation.getOutput().getText();
+    }
+
+    private static String model(ChatClientRequest chatClientRequest) {
+        ChatOptions options = chatClientRequest.prompt().getOptions();
+        return options != null && StringUtils.hasText(options.getModel()) ? options.getModel() : "unknown";
+    }
+
+    @Override
+    public String getName() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // outermost, so the deadline covers memory, retrieval and the model call alike
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
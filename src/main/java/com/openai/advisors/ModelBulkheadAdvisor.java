@@ -0,0 +1,168 @@
+package com.openai.advisors;
+
+import com.openai.exception.DeadlineExceededException;
+import com.openai.exception.ModelOverloadedException;
+import com.openai.resilience.AdaptiveConcurrencyLimiter;
+import com.openai.resilience.ModelBulkheads;
+import com.openai.resilience.OllamaModelResidencyManager;
+import com.openai.resilience.RequestDeadline;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Takes a permit from the bulkhead of the requested model before the model call and gives it back afterwards.
+ * It runs after retrieval (so embedding and vector search never hold a chat model permit) and in front of the
+ * token audit advisor, so the model call duration does not include time spent in the queue.
+ * <p>
+ * Before the permit it waits for the model to be loaded by the {@link OllamaModelResidencyManager}, so a request
+ * waiting for a model swap does not hold a permit either.
+ * <p>
+ * A call given up on at its {@link RequestDeadline} says nothing about the model: an interrupted permit wait is
+ * reported as the deadline it is, not as an overloaded model, and a call aborted by the deadline gives its permit
+ * back without counting as a failure that would lower the limit.
+ */
+public class ModelBulkheadAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final ModelBulkheads modelBulkheads;
+    private final OllamaModelResidencyManager residencyManager;
+    private final String defaultModel;
+    // the bulkhead key is always defaultModel, whatever model the request names
+    private final boolean fixedKey;
+
+    public ModelBulkheadAdvisor(ModelBulkheads modelBulkheads, OllamaModelResidencyManager residencyManager, String defaultModel) {
+        this(modelBulkheads, residencyManager, defaultModel, false);
+    }
+
+    private ModelBulkheadAdvisor(ModelBulkheads modelBulkheads, OllamaModelResidencyManager residencyManager, String defaultModel, boolean fixedKey) {
+        Assert.notNull(modelBulkheads, "modelBulkheads cannot be null");
+        Assert.notNull(residencyManager, "residencyManager cannot be null");
+        Assert.hasText(defaultModel, "defaultModel cannot be empty");
+        this.modelBulkheads = modelBulkheads;
+        this.residencyManager = residencyManager;
+        this.defaultModel = defaultModel;
+        this.fixedKey = fixedKey;
+    }
+
+    /**
+     * Limits a whole client under its own {@code key} instead of per requested model, for clients whose chat model
+     * takes the model permits itself (the router). The model named in the request options is ignored, a permit of that
+     * model here would be taken a second time further down.
+     */
+    public static ModelBulkheadAdvisor forClient(ModelBulkheads modelBulkheads, OllamaModelResidencyManager residencyManager, String key) {
+        return new ModelBulkheadAdvisor(modelBulkheads, residencyManager, key, true);
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        String model = model(chatClientRequest);
+        RequestDeadline deadline = RequestDeadline.from(chatClientRequest.context()).orElse(null);
+        OllamaModelResidencyManager.Lease lease = residencyManager.acquire(model);
+        try {
+            AdaptiveConcurrencyLimiter.Permit permit = acquire(model, deadline);
+            boolean success = false;
+            try {
+                ChatClientResponse response = callAdvisorChain.nextCall(chatClientRequest);
+                success = true;
+                return response;
+            } finally {
+                if (success)
+                    permit.release(true);
+                else if (cancelled(deadline))
+                    permit.abandon();
+                else
+                    permit.release(false);
+            }
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        String model = model(chatClientRequest);
+        RequestDeadline deadline = RequestDeadline.from(chatClientRequest.context()).orElse(null);
+        // waiting for the model and for a permit blocks, keeping it off the reactive threads
+        Mono<Admission> admission = Mono.fromCallable(() -> admit(model, deadline))
+                .subscribeOn(Schedulers.boundedElastic())
+                // cancelled while being admitted, the admission is dropped and nobody else would release it
+                .doOnDiscard(Admission.class, Admission::abandon);
+        return Flux.usingWhen(admission,
+                granted -> streamAdvisorChain.nextStream(chatClientRequest),
+                granted -> Mono.fromRunnable(() -> granted.release(true)),
+                (granted, error) -> Mono.fromRunnable(() -> {
+                    if (cancelled(deadline))
+                        granted.abandon();
+                    else
+                        granted.release(false);
+                }),
+                granted -> Mono.fromRunnable(granted::abandon));
+    }
+
+    private Admission admit(String model, RequestDeadline deadline) {
+        OllamaModelResidencyManager.Lease lease = residencyManager.acquire(model);
+        try {
+            return new Admission(lease, acquire(model, deadline));
+        } catch (RuntimeException ex) {
+            lease.release();
+            throw ex;
+        }
+    }
+
+    private AdaptiveConcurrencyLimiter.Permit acquire(String model, RequestDeadline deadline) {
+        try {
+            return modelBulkheads.acquire(model);
+        } catch (ModelOverloadedException ex) {
+            // the deadline watchdog interrupted the wait, the request ran out of time rather than the model of capacity
+            if (deadline != null && cancelled(deadline))
+                throw new DeadlineExceededException("the wait for a model permit", deadline.timeout());
+            throw ex;
+        }
+    }
+
+    // interrupted by the deadline watchdog or past the deadline, whatever failed was not the model's doing
+    private static boolean cancelled(RequestDeadline deadline) {
+        return Thread.currentThread().isInterrupted() || (deadline != null && deadline.isExpired());
+    }
+
+    private record Admission(OllamaModelResidencyManager.Lease lease, AdaptiveConcurrencyLimiter.Permit permit) {
+
+        void release(boolean success) {
+            permit.release(success);
+            lease.release();
+        }
+
+        // a cancelled stream (client went away) says nothing about the model's health, so no latency sample
+        void abandon() {
+            permit.abandon();
+            lease.release();
+        }
+    }
+
+    private String model(ChatClientRequest chatClientRequest) {
+        if (fixedKey)
+            return defaultModel;
+        ChatOptions options = chatClientRequest.prompt().getOptions();
+        return options != null && StringUtils.hasText(options.getModel()) ? options.getModel() : defaultModel;
+    }
+
+    @Override
+    public String getName() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // after the token budget advisor, so prompts are trimmed before a permit is taken
+        return 2;
+    }
+}
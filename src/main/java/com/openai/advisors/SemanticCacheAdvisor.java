@@ -0,0 +1,150 @@
+package com.openai.advisors;
+
+import com.openai.cache.SemanticAnswerCache;
+import com.openai.cache.SingleFlight;
+import org.springframework.ai.chat.client.ChatClientMessageAggregator;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.core.Ordered;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves answers for semantically similar questions from the {@link SemanticAnswerCache} without calling the model.
+ * It runs after the chat memory advisor (so the turn is still written to memory) and before the rag advisor,
+ * so a hit skips query translation, retrieval and generation altogether.
+ * <p>
+ * Only questions that open a conversation are cached. Once the memory advisor added earlier turns, the question may
+ * depend on them ("and for contractors?"), and an answer given in another conversation would be wrong for it.
+ */
+public class SemanticCacheAdvisor implements CallAdvisor, StreamAdvisor {
+
+    // chat memory advisor runs at HIGHEST_PRECEDENCE + 1000 and rag advisor at 0
+    public static final int DEFAULT_ORDER = Ordered.HIGHEST_PRECEDENCE + 1100;
+
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final SingleFlight<String, ChatClientResponse> inFlightGenerations = new SingleFlight<>();
+
+    public SemanticCacheAdvisor(SemanticAnswerCache semanticAnswerCache) {
+        Assert.notNull(semanticAnswerCache, "semanticAnswerCache cannot be null");
+        this.semanticAnswerCache = semanticAnswerCache;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        String query = userQuery(chatClientRequest);
+        if (!StringUtils.hasText(query))
+            return callAdvisorChain.nextCall(chatClientRequest);
+
+        // taken before the lookup, an invalidation from here on makes the generated answer stale
+        long epoch = semanticAnswerCache.epoch();
+        float[] queryEmbedding = semanticAnswerCache.embed(query);
+        Optional<String> cachedAnswer = semanticAnswerCache.lookup(queryEmbedding);
+        if (cachedAnswer.isPresent())
+            return cachedResponse(chatClientRequest, cachedAnswer.get());
+
+        // identical questions arriving at the same time wait for the one generation that is already running
+        AtomicBoolean generatedHere = new AtomicBoolean();
+        ChatClientResponse chatClientResponse = inFlightGenerations.execute(normalize(query), () -> {
+            generatedHere.set(true);
+            long start = System.nanoTime();
+            ChatClientResponse generated = callAdvisorChain.nextCall(chatClientRequest);
+            store(query, queryEmbedding, generated, Duration.ofNanos(System.nanoTime() - start), epoch);
+            return generated;
+        });
+        // a follower shares the answer, not the context of the leader: chat memory stores the turn under the
+        // conversation id of the response context, which has to be the follower's own
+        return generatedHere.get() ? chatClientResponse : sharedResponse(chatClientRequest, chatClientResponse);
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        String query = userQuery(chatClientRequest);
+        if (!StringUtils.hasText(query))
+            return streamAdvisorChain.nextStream(chatClientRequest);
+
+        // embedding is a blocking call, keeping it off the reactive threads
+        return Mono.fromCallable(() -> new EpochEmbedding(semanticAnswerCache.epoch(), semanticAnswerCache.embed(query)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(embedded -> {
+                    float[] queryEmbedding = embedded.embedding();
+                    Optional<String> cachedAnswer = semanticAnswerCache.lookup(queryEmbedding);
+                    if (cachedAnswer.isPresent())
+                        return Flux.just(cachedResponse(chatClientRequest, cachedAnswer.get()));
+                    long start = System.nanoTime();
+                    return new ChatClientMessageAggregator().aggregateChatClientResponse(
+                            streamAdvisorChain.nextStream(chatClientRequest),
+                            aggregated -> store(query, queryEmbedding, aggregated, Duration.ofNanos(System.nanoTime() - start), embedded.epoch()));
+                });
+    }
+
+    private record EpochEmbedding(long epoch, float[] embedding) {
+    }
+
+    private void store(String query, float[] queryEmbedding, ChatClientResponse chatClientResponse, Duration generationTime, long epoch) {
+        ChatResponse chatResponse = chatClientResponse.chatResponse();
+        if (chatResponse == null || chatResponse.getResult() == null)
+            return;
+        String answer = chatResponse.getResult().getOutput().getText();
+        if (StringUtils.hasText(answer))
+            semanticAnswerCache.put(query, queryEmbedding, answer, generationTime, epoch);
+    }
+
+    private static ChatClientResponse cachedResponse(ChatClientRequest chatClientRequest, String answer) {
+        ChatResponse chatResponse = new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
+        return ChatClientResponse.builder()
+                .chatResponse(chatResponse)
+                .context(chatClientRequest.context())
+                .build();
+    }
+
+    private static ChatClientResponse sharedResponse(ChatClientRequest chatClientRequest, ChatClientResponse leaderResponse) {
+        return ChatClientResponse.builder()
+                .chatResponse(leaderResponse.chatResponse())
+                .context(chatClientRequest.context())
+                .build();
+    }
+
+    // null when the prompt carries earlier turns, the question is then neither looked up nor cached
+    private static String userQuery(ChatClientRequest chatClientRequest) {
+        long turns = chatClientRequest.prompt().getInstructions().stream()
+                .filter(message -> message.getMessageType() != MessageType.SYSTEM)
+                .count();
+        if (turns > 1)
+            return null;
+        UserMessage userMessage = chatClientRequest.prompt().getUserMessage();
+        return userMessage != null ? userMessage.getText() : null;
+    }
+
+    private static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String getName() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        return DEFAULT_ORDER;
+    }
+}
@@ -0,0 +1,223 @@
+package com.openai.advisors;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps every prompt within a fixed token budget per chat client. Tokens are counted locally per section (system,
+ * history, retrieved documents, user query, tool schemas); when the total is over budget the oldest history turns are
+ * dropped first and then the lowest scoring retrieved documents. System prompt, current query and tool schemas are
+ * never trimmed. Dropped tokens are published as {@code llm.prompt.tokens.dropped}, tagged by client and section.
+ * <p>
+ * Runs after memory and retrieval have built the prompt and before the model bulkhead, so trimming happens without
+ * holding a model permit. Counts come from a cl100k tokenizer, close to but not exactly what llama3.2 counts, so the
+ * budget should leave some headroom below the context window.
+ */
+public class TokenBudgetAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenBudgetAdvisor.class);
+
+    // rag advisor runs at 0, model bulkhead advisor at 2
+    public static final int DEFAULT_ORDER = 1;
+
+    // role markers and separators the chat template adds around every message
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final String clientName;
+    private final int maxPromptTokens;
+    private final TokenCountEstimator tokenCountEstimator;
+
+    private final DistributionSummary promptTokens;
+    private final DistributionSummary droppedHistoryTokens;
+    private final DistributionSummary droppedDocumentTokens;
+
+    public TokenBudgetAdvisor(MeterRegistry meterRegistry, String clientName, int maxPromptTokens) {
+        this(meterRegistry, clientName, maxPromptTokens, new JTokkitTokenCountEstimator());
+    }
+
+    public TokenBudgetAdvisor(MeterRegistry meterRegistry, String clientName, int maxPromptTokens, TokenCountEstimator tokenCountEstimator) {
+        Assert.notNull(meterRegistry, "meterRegistry cannot be null");
+        Assert.hasText(clientName, "clientName cannot be empty");
+        Assert.isTrue(maxPromptTokens > 0, "maxPromptTokens must be greater than zero");
+        Assert.notNull(tokenCountEstimator, "tokenCountEstimator cannot be null");
+        this.clientName = clientName;
+        this.maxPromptTokens = maxPromptTokens;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.promptTokens = DistributionSummary.builder("llm.prompt.tokens.estimated")
+                .description("Locally counted prompt tokens after the budget was applied")
+                .baseUnit("tokens").tag("client", clientName).register(meterRegistry);
+        this.droppedHistoryTokens = dropped(meterRegistry, "history");
+        this.droppedDocumentTokens = dropped(meterRegistry, "documents");
+    }
+
+    private DistributionSummary dropped(MeterRegistry meterRegistry, String section) {
+        return DistributionSummary.builder("llm.prompt.tokens.dropped")
+                .description("Prompt tokens trimmed per request to stay within the token budget")
+                .baseUnit("tokens").tags("client", clientName, "section", section).register(meterRegistry);
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        return callAdvisorChain.nextCall(applyBudget(chatClientRequest));
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        return Flux.defer(() -> streamAdvisorChain.nextStream(applyBudget(chatClientRequest)));
+    }
+
+    ChatClientRequest applyBudget(ChatClientRequest chatClientRequest) {
+        Prompt prompt = chatClientRequest.prompt();
+        List<Message> messages = new ArrayList<>(prompt.getInstructions());
+        List<Integer> tokens = new ArrayList<>(messages.size());
+        int total = toolSchemaTokens(prompt);
+        for (Message message : messages) {
+            tokens.add(count(message));
+            total += tokens.get(tokens.size() - 1);
+        }
+        int queryIndex = lastUserMessage(messages);
+
+        // oldest turns first, a turn is a user message together with everything that answered it
+        int droppedHistory = 0;
+        int oldest;
+        while (total > maxPromptTokens && (oldest = oldestHistoryMessage(messages, queryIndex)) >= 0) {
+            do {
+                droppedHistory += tokens.get(oldest);
+                total -= tokens.remove(oldest);
+                messages.remove(oldest);
+                queryIndex--;
+            } while (oldest < queryIndex && isAnswer(messages.get(oldest)));
+        }
+
+        // then the weakest retrieved documents, they are part of the augmented user message
+        int droppedDocuments = 0;
+        List<Document> documents = documents(chatClientRequest);
+        List<Document> removed = new ArrayList<>();
+        if (total > maxPromptTokens && queryIndex >= 0 && !documents.isEmpty()) {
+            List<Document> weakestFirst = new ArrayList<>(documents);
+            weakestFirst.sort(Comparator.comparing((Document document) -> document.getScore() != null ? document.getScore() : 0.0));
+            String text = messages.get(queryIndex).getText();
+            for (Document document : weakestFirst) {
+                if (total - droppedDocuments <= maxPromptTokens)
+                    break;
+                String documentText = document.getText();
+                if (documentText == null || documentText.isEmpty() || !text.contains(documentText))
+                    continue;
+                text = text.replace(documentText + System.lineSeparator(), "").replace(documentText, "");
+                droppedDocuments += tokenCountEstimator.estimate(documentText);
+                removed.add(document);
+            }
+            if (!removed.isEmpty()) {
+                Message query = ((UserMessage) messages.get(queryIndex)).mutate().text(text).build();
+                messages.set(queryIndex, query);
+                total = total - tokens.get(queryIndex) + count(query);
+            }
+        }
+
+        promptTokens.record(total);
+        droppedHistoryTokens.record(droppedHistory);
+        droppedDocumentTokens.record(droppedDocuments);
+        if (total > maxPromptTokens)
+            logger.warn("Prompt of {} is {} tokens over its budget of {} after trimming", clientName, total - maxPromptTokens, maxPromptTokens);
+        if (droppedHistory == 0 && removed.isEmpty())
+            return chatClientRequest;
+        logger.debug("Trimmed {} history and {} document tokens from a prompt of {}", droppedHistory, droppedDocuments, clientName);
+        ChatClientRequest.Builder trimmed = chatClientRequest.mutate().prompt(prompt.mutate().messages(messages).build());
+        if (!removed.isEmpty())
+            trimmed.context(RetrievalAugmentationAdvisor.DOCUMENT_CONTEXT, documents.stream().filter(document -> !removed.contains(document)).toList());
+        return trimmed.build();
+    }
+
+    private int count(Message message) {
+        int tokens = MESSAGE_OVERHEAD_TOKENS + estimate(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls())
+                tokens += estimate(toolCall.name()) + estimate(toolCall.arguments());
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses())
+                tokens += estimate(response.name()) + estimate(response.responseData());
+        }
+        return tokens;
+    }
+
+    // tool schemas are sent with every request and count against the context window like any message
+    private int toolSchemaTokens(Prompt prompt) {
+        if (!(prompt.getOptions() instanceof ToolCallingChatOptions options) || options.getToolCallbacks() == null)
+            return 0;
+        int tokens = 0;
+        for (ToolCallback toolCallback : options.getToolCallbacks()) {
+            ToolDefinition definition = toolCallback.getToolDefinition();
+            tokens += estimate(definition.name()) + estimate(definition.description()) + estimate(definition.inputSchema());
+        }
+        return tokens;
+    }
+
+    private int estimate(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    private static int lastUserMessage(List<Message> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).getMessageType() == MessageType.USER)
+                return i;
+        }
+        return -1;
+    }
+
+    // system messages are kept wherever they are, everything else in front of the query is history
+    private static int oldestHistoryMessage(List<Message> messages, int queryIndex) {
+        for (int i = 0; i < queryIndex; i++) {
+            if (messages.get(i).getMessageType() != MessageType.SYSTEM)
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isAnswer(Message message) {
+        return message.getMessageType() == MessageType.ASSISTANT || message.getMessageType() == MessageType.TOOL;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Document> documents(ChatClientRequest chatClientRequest) {
+        Object documents = chatClientRequest.context().get(RetrievalAugmentationAdvisor.DOCUMENT_CONTEXT);
+        return documents instanceof List<?> list ? (List<Document>) list : List.of();
+    }
+
+    @Override
+    public String getName() {
+        return this.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        return DEFAULT_ORDER;
+    }
+}
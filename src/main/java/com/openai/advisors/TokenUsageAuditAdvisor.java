@@ -1,31 +1,147 @@
 package com.openai.advisors;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClientRequest;
 import org.springframework.ai.chat.client.ChatClientResponse;
 import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
 import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
 import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 
-public class TokenUsageAuditAdvisor implements CallAdvisor {
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Logs token usage and publishes it as micrometer meters tagged by chat client bean, model and outcome:
+ * {@code llm.tokens} counters and {@code llm.tokens.per.request} summaries for prompt, completion and total tokens,
+ * plus the {@code llm.call.duration} timer. It runs right in front of the model, so the duration is model time only.
+ */
+public class TokenUsageAuditAdvisor implements CallAdvisor, StreamAdvisor {
 
     private static final Logger logger = LoggerFactory.getLogger(TokenUsageAuditAdvisor.class);
 
+    private final MeterRegistry meterRegistry;
+    private final String clientName;
+
+    public TokenUsageAuditAdvisor(MeterRegistry meterRegistry, String clientName) {
+        Assert.notNull(meterRegistry, "meterRegistry cannot be null");
+        Assert.hasText(clientName, "clientName cannot be empty");
+        this.meterRegistry = meterRegistry;
+        this.clientName = clientName;
+    }
+
     @Override
     public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
-        ChatClientResponse chatClientResponse = callAdvisorChain.nextCall(chatClientRequest);
-        ChatResponse chatResponse = chatClientResponse.chatResponse();
-        if (chatResponse.getMetadata() != null) {
-            Usage usage = chatResponse.getMetadata().getUsage();
-            if (usage != null) {
-                logger.info("Token usage details : {}", usage);
-            }
+        long start = System.nanoTime();
+        ChatClientResponse chatClientResponse;
+        try {
+            chatClientResponse = callAdvisorChain.nextCall(chatClientRequest);
+        } catch (RuntimeException ex) {
+            recordDuration("call", requestedModel(chatClientRequest), "error", start);
+            throw ex;
+        }
+        String model = responseModel(chatClientResponse, chatClientRequest);
+        recordDuration("call", model, "success", start);
+        Usage usage = usageOf(chatClientResponse);
+        if (usage != null) {
+            logger.info("Token usage details : {}", usage);
+            recordUsage(usage, model, "success");
         }
         return chatClientResponse;
     }
 
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        // usage is only reported on the final chunk of a stream, so we keep the last non empty one
+        AtomicReference<Usage> lastUsage = new AtomicReference<>();
+        AtomicReference<String> model = new AtomicReference<>(requestedModel(chatClientRequest));
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return streamAdvisorChain.nextStream(chatClientRequest)
+                    .doOnNext(chatClientResponse -> {
+                        Usage usage = usageOf(chatClientResponse);
+                        if (usage != null && usage.getTotalTokens() != null && usage.getTotalTokens() > 0)
+                            lastUsage.set(usage);
+                        model.set(responseModel(chatClientResponse, chatClientRequest));
+                    })
+                    .doOnComplete(() -> {
+                        recordDuration("stream", model.get(), "success", start);
+                        if (lastUsage.get() != null) {
+                            logger.info("Token usage details : {}", lastUsage.get());
+                            recordUsage(lastUsage.get(), model.get(), "success");
+                        }
+                    })
+                    .doOnError(ex -> recordDuration("stream", model.get(), "error", start))
+                    .doOnCancel(() -> recordDuration("stream", model.get(), "cancelled", start));
+        });
+    }
+
+    private void recordDuration(String mode, String model, String outcome, long start) {
+        Timer.builder("llm.call.duration")
+                .description("Duration of the model call, excluding advisors that run before this one")
+                .tags(tags(model, outcome).and("mode", mode))
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordUsage(Usage usage, String model, String outcome) {
+        record("prompt", usage.getPromptTokens(), model, outcome);
+        record("completion", usage.getCompletionTokens(), model, outcome);
+        record("total", usage.getTotalTokens(), model, outcome);
+    }
+
+    private void record(String type, Integer tokens, String model, String outcome) {
+        if (tokens == null)
+            return;
+        Tags tags = tags(model, outcome).and("type", type);
+        Counter.builder("llm.tokens")
+                .description("Tokens consumed by chat model calls")
+                .tags(tags)
+                .register(meterRegistry)
+                .increment(tokens);
+        DistributionSummary.builder("llm.tokens.per.request")
+                .description("Tokens per chat model call")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(tokens);
+    }
+
+    private Tags tags(String model, String outcome) {
+        return Tags.of("client", clientName, "model", model, "outcome", outcome);
+    }
+
+    private static String requestedModel(ChatClientRequest chatClientRequest) {
+        ChatOptions options = chatClientRequest.prompt().getOptions();
+        return options != null && StringUtils.hasText(options.getModel()) ? options.getModel() : "unknown";
+    }
+
+    private static String responseModel(ChatClientResponse chatClientResponse, ChatClientRequest chatClientRequest) {
+        ChatResponse chatResponse = chatClientResponse.chatResponse();
+        if (chatResponse != null && chatResponse.getMetadata() != null && StringUtils.hasText(chatResponse.getMetadata().getModel()))
+            return chatResponse.getMetadata().getModel();
+        return requestedModel(chatClientRequest);
+    }
+
+    private static Usage usageOf(ChatClientResponse chatClientResponse) {
+        ChatResponse chatResponse = chatClientResponse.chatResponse();
+        if (chatResponse == null || chatResponse.getMetadata() == null)
+            return null;
+        return chatResponse.getMetadata().getUsage();
+    }
+
     @Override
     public String getName() {
         return this.getClass().getSimpleName();
@@ -33,6 +149,7 @@ public class TokenUsageAuditAdvisor implements CallAdvisor {
 
     @Override
     public int getOrder() {
-        return 1;
+        // right after the model bulkhead advisor, so queue wait is not part of the call duration
+        return 3;
     }
 }
@@ -0,0 +1,278 @@
+package com.openai.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content addressed cache in front of an {@link EmbeddingModel}. Vectors are keyed by a sha-256 of model name and
+ * text, so the same text embedded by the same model is only ever sent to the model once. Lookups go through a hot
+ * in-memory lru tier first and then, if a {@link JdbcTemplate} is configured, a table of packed float arrays that
+ * survives restarts. A batch is looked up as a whole and only the misses are sent to the delegate, in one call.
+ * <p>
+ * Returned vectors are shared with the cache and must not be modified by callers.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+
+    private static final String TABLE = "embedding_cache";
+
+    // keeps the in (...) lists of persistent lookups well below what the database accepts
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    private final EmbeddingModel delegate;
+    private final String modelName;
+    private final JdbcTemplate jdbcTemplate;
+    private final ExpiringLruCache<String, float[]> hotTier;
+
+    private final Counter memoryHits;
+    private final Counter persistentHits;
+    private final Counter misses;
+
+    private CachingEmbeddingModel(Builder builder) {
+        Assert.notNull(builder.delegate, "delegate cannot be null");
+        Assert.hasText(builder.modelName, "modelName cannot be null or empty");
+        this.delegate = builder.delegate;
+        this.modelName = builder.modelName;
+        this.jdbcTemplate = builder.jdbcTemplate;
+        this.hotTier = new ExpiringLruCache<>(builder.maxEntries, Duration.ZERO);
+        this.memoryHits = lookups(builder.meterRegistry, "hit", "memory");
+        this.persistentHits = lookups(builder.meterRegistry, "hit", "persistent");
+        this.misses = lookups(builder.meterRegistry, "miss", "none");
+        if (jdbcTemplate != null && builder.initializeSchema)
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "cache_key CHAR(64) PRIMARY KEY, "
+                    + "model VARCHAR(255) NOT NULL, "
+                    + "dimensions INT NOT NULL, "
+                    + "vector VARBINARY NOT NULL, "
+                    + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result, String tier) {
+        return Counter.builder("embedding.cache.lookups").tag("result", result).tag("tier", tier)
+                .description("Embedding cache lookups per text").register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String model = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel()
+                : modelName;
+        String[] keys = new String[texts.size()];
+        float[][] vectors = new float[texts.size()][];
+
+        // hot tier, misses are grouped by key so a text repeated within the batch is only resolved once
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            keys[i] = key(model, texts.get(i));
+            vectors[i] = hotTier.get(keys[i]);
+            if (vectors[i] != null)
+                memoryHits.increment();
+            else
+                missing.computeIfAbsent(keys[i], key -> new ArrayList<>()).add(i);
+        }
+
+        // persistent tier
+        if (!missing.isEmpty() && jdbcTemplate != null) {
+            Map<String, float[]> stored = load(List.copyOf(missing.keySet()));
+            stored.forEach((key, vector) -> {
+                hotTier.put(key, vector);
+                for (int i : missing.remove(key)) {
+                    vectors[i] = vector;
+                    persistentHits.increment();
+                }
+            });
+        }
+
+        // one delegate call for whatever is left
+        if (!missing.isEmpty()) {
+            List<String> missingKeys = List.copyOf(missing.keySet());
+            List<String> missingTexts = missingKeys.stream().map(key -> texts.get(missing.get(key).get(0))).toList();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+            List<Embedding> results = response.getResults();
+            if (results.size() != missingKeys.size())
+                throw new IllegalStateException("Expected " + missingKeys.size() + " embeddings from the model but got " + results.size());
+            Map<String, float[]> computed = new LinkedHashMap<>();
+            for (int i = 0; i < missingKeys.size(); i++) {
+                float[] vector = results.get(i).getOutput();
+                computed.put(missingKeys.get(i), vector);
+                hotTier.put(missingKeys.get(i), vector);
+                for (int index : missing.get(missingKeys.get(i))) {
+                    vectors[index] = vector;
+                    misses.increment();
+                }
+            }
+            if (jdbcTemplate != null)
+                store(model, computed);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++)
+            embeddings.add(new Embedding(vectors[i], i));
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * Vectors of the texts that are already cached for the default model, {@code null} for the others. Never calls
+     * the model, so it is safe for callers that only want to reuse embeddings computed earlier.
+     */
+    public List<float[]> cached(List<String> texts) {
+        float[][] vectors = new float[texts.size()][];
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = key(modelName, texts.get(i));
+            vectors[i] = hotTier.get(key);
+            if (vectors[i] == null)
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        if (!missing.isEmpty() && jdbcTemplate != null) {
+            load(List.copyOf(missing.keySet())).forEach((key, vector) -> {
+                hotTier.put(key, vector);
+                for (int i : missing.get(key))
+                    vectors[i] = vector;
+            });
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * Number of vectors currently held in the hot tier.
+     */
+    public int size() {
+        return hotTier.size();
+    }
+
+    // a failing cache table only costs model calls, it never fails the embedding itself
+    private Map<String, float[]> load(List<String> keys) {
+        Map<String, float[]> stored = new LinkedHashMap<>();
+        try {
+            for (int from = 0; from < keys.size(); from += LOOKUP_BATCH_SIZE) {
+                List<String> batch = keys.subList(from, Math.min(keys.size(), from + LOOKUP_BATCH_SIZE));
+                String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+                jdbcTemplate.query("SELECT cache_key, vector FROM " + TABLE + " WHERE cache_key IN (" + placeholders + ")",
+                        resultSet -> {
+                            stored.put(resultSet.getString(1), unpack(resultSet.getBytes(2)));
+                        }, batch.toArray());
+            }
+        } catch (DataAccessException ex) {
+            logger.warn("Could not read {} keys from the embedding cache table", keys.size(), ex);
+        }
+        return stored;
+    }
+
+    private void store(String model, Map<String, float[]> computed) {
+        List<Object[]> rows = new ArrayList<>(computed.size());
+        computed.forEach((key, vector) -> rows.add(new Object[]{key, model, vector.length, pack(vector)}));
+        try {
+            // merge, another thread may have embedded the same text in the meantime
+            jdbcTemplate.batchUpdate("MERGE INTO " + TABLE + " (cache_key, model, dimensions, vector) KEY (cache_key) VALUES (?, ?, ?, ?)", rows);
+        } catch (DataAccessException ex) {
+            logger.warn("Could not write {} vectors to the embedding cache table", rows.size(), ex);
+        }
+    }
+
+    static String key(String model, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            // separator, so that model "ab" + text "c" and model "a" + text "bc" do not collide
+            digest.update((byte) 0);
+            digest.update((text != null ? text : "").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    static byte[] pack(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] unpack(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public static Builder builder(EmbeddingModel delegate, String modelName) {
+        return new Builder(delegate, modelName);
+    }
+
+    public static class Builder {
+
+        private final EmbeddingModel delegate;
+        private final String modelName;
+        private JdbcTemplate jdbcTemplate;
+        private boolean initializeSchema = true;
+        private int maxEntries = 10_000;
+        private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private Builder(EmbeddingModel delegate, String modelName) {
+            this.delegate = delegate;
+            this.modelName = modelName;
+        }
+
+        // without a jdbc template only the in-memory tier is used
+        public Builder jdbcTemplate(JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+            return this;
+        }
+
+        public Builder initializeSchema(boolean initializeSchema) {
+            this.initializeSchema = initializeSchema;
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public CachingEmbeddingModel build() {
+            return new CachingEmbeddingModel(this);
+        }
+    }
+}
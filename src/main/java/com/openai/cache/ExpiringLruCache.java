@@ -0,0 +1,73 @@
+package com.openai.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Small bounded map with least recently used eviction and an optional time to live per entry.
+ * Values are computed outside the lock, so a slow loader never blocks readers of other keys.
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * @param ttl {@link Duration#ZERO} keeps entries until they are evicted by size
+     */
+    public ExpiringLruCache(int maxEntries, Duration ttl) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be greater than zero");
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ExpiringLruCache.this.maxEntries;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (ttlNanos > 0 && System.nanoTime() - entry.createdAt() > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+    }
+
+    public V getOrCompute(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value != null)
+            return value;
+        value = loader.apply(key);
+        if (value != null)
+            put(key, value);
+        return value;
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private record Entry<V>(V value, long createdAt) {
+    }
+}
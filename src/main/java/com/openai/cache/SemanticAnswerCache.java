@@ -0,0 +1,198 @@
+package com.openai.cache;
+
+import com.openai.rag.DocumentIngestedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process similarity index of previously generated answers. Queries are embedded and compared with cosine similarity
+ * against the stored query embeddings, entries expire after the configured ttl and the least recently used entry is
+ * evicted once the cache is full.
+ * <p>
+ * Every invalidation starts a new epoch. Callers take the {@link #epoch()} before generating and pass it to
+ * {@link #put}, an answer whose generation overlapped an invalidation is dropped instead of outliving it.
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticAnswerCache.class);
+
+    private final EmbeddingModel embeddingModel;
+    private final double similarityThreshold;
+    private final Duration ttl;
+    private final int maxEntries;
+
+    // access ordered map, so iteration order is the lru order and the eldest entry is the eviction candidate
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // changed only under the write lock
+    private volatile long epoch;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer latencySaved;
+
+    public SemanticAnswerCache(EmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+                               @Value("${semantic.cache.similarity-threshold:0.95}") double similarityThreshold,
+                               @Value("${semantic.cache.ttl:1h}") Duration ttl,
+                               @Value("${semantic.cache.max-entries:1000}") int maxEntries) {
+        if (similarityThreshold <= 0 || similarityThreshold > 1)
+            throw new IllegalArgumentException("similarityThreshold must be between 0 and 1");
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be greater than zero");
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.hits = Counter.builder("semantic.cache.lookups").tag("result", "hit")
+                .description("Semantic answer cache lookups").register(meterRegistry);
+        this.misses = Counter.builder("semantic.cache.lookups").tag("result", "miss")
+                .description("Semantic answer cache lookups").register(meterRegistry);
+        this.latencySaved = Timer.builder("semantic.cache.latency.saved")
+                .description("Generation time that was skipped by serving a cached answer").register(meterRegistry);
+        Gauge.builder("semantic.cache.size", this, SemanticAnswerCache::size)
+                .description("Number of answers held in the semantic cache").register(meterRegistry);
+    }
+
+    /**
+     * Embeds the query and normalizes the vector, so that similarity is a plain dot product.
+     */
+    public float[] embed(String query) {
+        return normalize(embeddingModel.embed(query));
+    }
+
+    public Optional<String> lookup(float[] queryEmbedding) {
+        Instant now = Instant.now();
+        Entry best = null;
+        double bestScore = similarityThreshold;
+        // the scan only reads, concurrent lookups share the read lock and wait only for writers
+        lock.readLock().lock();
+        try {
+            for (Entry entry : entries.values()) {
+                if (entry.isExpired(now, ttl))
+                    continue;
+                double score = dot(queryEmbedding, entry.embedding());
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = entry;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (best == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        // touching the entry moves it to the tail of the lru order, that is a structural change of the map
+        lock.writeLock().lock();
+        try {
+            entries.get(best.query());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        hits.increment();
+        latencySaved.record(best.generationTime());
+        logger.debug("Semantic cache hit with score {} for cached query: {}", bestScore, best.query());
+        return Optional.of(best.answer());
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * @param generationEpoch the {@link #epoch()} taken before the answer was generated
+     */
+    public void put(String query, float[] queryEmbedding, String answer, Duration generationTime, long generationEpoch) {
+        Instant now = Instant.now();
+        lock.writeLock().lock();
+        try {
+            if (generationEpoch != epoch) {
+                logger.debug("Dropping answer generated before the last invalidation for query: {}", query);
+                return;
+            }
+            // expired entries are skipped by lookups and dropped here, under the write lock
+            entries.values().removeIf(entry -> entry.isExpired(now, ttl));
+            entries.put(query, new Entry(query, queryEmbedding, answer, generationTime, now));
+            while (entries.size() > maxEntries) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            epoch++;
+            entries.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // answers were generated from the previous version of the documents, so none of them can be trusted anymore
+    @EventListener
+    public void onDocumentIngested(DocumentIngestedEvent event) {
+        logger.info("Invalidating semantic answer cache after ingestion of {}", event.source());
+        invalidateAll();
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector)
+            norm += v * v;
+        norm = Math.sqrt(norm);
+        if (norm == 0)
+            return vector;
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++)
+            normalized[i] = (float) (vector[i] / norm);
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length)
+            return 0;
+        double sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += a[i] * b[i];
+        return sum;
+    }
+
+    private record Entry(String query, float[] embedding, String answer, Duration generationTime, Instant createdAt) {
+
+        boolean isExpired(Instant now, Duration ttl) {
+            return createdAt.plus(ttl).isBefore(now);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.openai.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one execution, every caller that arrives
+ * while the first one is still running waits for and shares the same result (or failure).
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V execute(K key, Supplier<V> supplier) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            V value = supplier.get();
+            created.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            created.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            // unwrapping so that followers see the same exception the leader has thrown
+            if (ex.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (ex.getCause() instanceof Error error)
+                throw error;
+            throw ex;
+        }
+    }
+}
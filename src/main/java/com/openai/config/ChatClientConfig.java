@@ -1,75 +1,210 @@
 package com.openai.config;
 
+import com.openai.advisors.DeadlineAdvisor;
+import com.openai.advisors.ModelBulkheadAdvisor;
+import com.openai.advisors.SemanticCacheAdvisor;
+import com.openai.advisors.TokenBudgetAdvisor;
 import com.openai.advisors.TokenUsageAuditAdvisor;
+import com.openai.cache.CachingEmbeddingModel;
+import com.openai.cache.SemanticAnswerCache;
+import com.openai.memory.RollingSummaryChatMemory;
+import com.openai.memory.WriteBehindChatMemoryRepository;
+import com.openai.rag.Bm25Index;
+import com.openai.rag.HybridDocumentRetriever;
+import com.openai.rag.LanguageAwareTranslationQueryTransformer;
+import com.openai.rag.MmrDocumentPostProcessor;
+import com.openai.rag.MultiSourceDocumentRetriever;
+import com.openai.rag.PIIMasker;
 import com.openai.rag.PIIMaskingDocumentPostProcessor;
 import com.openai.rag.WebSearchDocumentRetriever;
+import com.openai.resilience.ModelBulkheads;
+import com.openai.resilience.OllamaModelResidencyManager;
+import com.openai.resilience.RoutingChatModel;
 import com.openai.tools.TimeTools;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepository;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.ollama.OllamaChatModel;
-//import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
-import org.springframework.ai.rag.preretrieval.query.transformation.TranslationQueryTransformer;
 import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
 import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
 import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
-import org.springframework.core.io.Resource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
 import java.util.List;
 
 @Configuration
 public class ChatClientConfig {
 
-    // creating chatmemory with spring AI jdbc
+    // deadline for chat calls outside of a web request (background summaries, startup), requests bring their own
+    @Value("${request.deadline.default:60s}")
+    private Duration defaultDeadline;
+
+    // outermost advisor of every client, cancels the model call once the request deadline has passed
+    private DeadlineAdvisor deadlineAdvisor(MeterRegistry meterRegistry, String clientName) {
+        return new DeadlineAdvisor(meterRegistry, clientName, defaultDeadline);
+    }
+
+    // in-memory write behind cache in front of the jdbc repository, h2 writes happen off the request thread
+    @Bean
+    WriteBehindChatMemoryRepository writeBehindChatMemoryRepository(JdbcChatMemoryRepository jdbcChatMemoryRepository,
+                                                                    PlatformTransactionManager transactionManager,
+                                                                    @Value("${chat.memory.cache.flush-interval:500ms}") Duration flushInterval,
+                                                                    @Value("${chat.memory.cache.flush-batch-size:100}") int flushBatchSize,
+                                                                    @Value("${chat.memory.cache.idle-timeout:30m}") Duration idleTimeout,
+                                                                    @Value("${chat.memory.cache.max-conversations:10000}") int maxConversations,
+                                                                    @Value("${chat.memory.cache.flush-on-shutdown:true}") boolean flushOnShutdown,
+                                                                    @Value("${chat.memory.cache.max-dirty-conversations:10000}") int maxDirtyConversations) {
+        return WriteBehindChatMemoryRepository.builder(jdbcChatMemoryRepository, new TransactionTemplate(transactionManager))
+                .flushInterval(flushInterval)
+                .flushBatchSize(flushBatchSize)
+                .idleTimeout(idleTimeout)
+                .maxConversations(maxConversations)
+                .flushOnShutdown(flushOnShutdown)
+                .maxDirtyConversations(maxDirtyConversations)
+                .build();
+    }
+
+    // creating chatmemory with spring AI jdbc, recent turns verbatim and older ones folded into a rolling summary
+    // that the plain ollama client writes in the background
+    @Bean
+    ChatMemory chatMemory(WriteBehindChatMemoryRepository writeBehindChatMemoryRepository, @Qualifier("ollamaChatClient") ChatClient ollamaChatClient,
+                          MeterRegistry meterRegistry,
+                          @Value("${chat.memory.summary.keep-turns:4}") int keepTurns,
+                          @Value("${chat.memory.summary.min-turns-to-fold:2}") int minTurnsToFold,
+                          @Value("${chat.memory.summary.max-words:150}") int maxSummaryWords,
+                          @Value("${chat.memory.summary.threads:1}") int summarizerThreads) {
+        return RollingSummaryChatMemory.builder(writeBehindChatMemoryRepository, ollamaChatClient)
+                .keepTurns(keepTurns)
+                .minTurnsToFold(minTurnsToFold)
+                .maxSummaryWords(maxSummaryWords)
+                .summarizerThreads(summarizerThreads)
+                .meterRegistry(meterRegistry)
+                .build();
+    }
+
+    // per model concurrency limit in front of every chat model call, overflow is shed with 429
     @Bean
-    ChatMemory chatMemory(JdbcChatMemoryRepository jdbcChatMemoryRepository) {
-        return MessageWindowChatMemory.builder().maxMessages(10)
-                .chatMemoryRepository(jdbcChatMemoryRepository).build();
+    ModelBulkheadAdvisor modelBulkheadAdvisor(ModelBulkheads modelBulkheads, OllamaModelResidencyManager residencyManager,
+                                              @Value("${spring.ai.ollama.chat.options.model}") String defaultModel) {
+        return new ModelBulkheadAdvisor(modelBulkheads, residencyManager, defaultModel);
     }
 
     // creating chat client with chat memory config
     @Bean
-    public ChatClient chatMemoryChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, RetrievalAugmentationAdvisor retrievalAugmentationAdvisor) {
+    public ChatClient chatMemoryChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, RetrievalAugmentationAdvisor retrievalAugmentationAdvisor,
+                                           SemanticAnswerCache semanticAnswerCache, MeterRegistry meterRegistry, ModelBulkheadAdvisor modelBulkheadAdvisor,
+                                           @Value("${prompt.budget.chat-memory-chat-client:${prompt.budget.max-tokens:3000}}") int promptBudget) {
         Advisor loggerAdvisor = new SimpleLoggerAdvisor();
-        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor();
+        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor(meterRegistry, "chatMemoryChatClient");
+        Advisor deadlineAdvisor = deadlineAdvisor(meterRegistry, "chatMemoryChatClient");
+        Advisor tokenBudgetAdvisor = new TokenBudgetAdvisor(meterRegistry, "chatMemoryChatClient", promptBudget);
         Advisor messageChatMemoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
+        // answers near-duplicate questions from cache, skipping retrieval and generation
+        Advisor semanticCacheAdvisor = new SemanticCacheAdvisor(semanticAnswerCache);
         return chatClientBuilder
-                .defaultAdvisors(List.of(loggerAdvisor, messageChatMemoryAdvisor, tokenAuditAdvisor, retrievalAugmentationAdvisor))
+                .defaultAdvisors(List.of(deadlineAdvisor, loggerAdvisor, messageChatMemoryAdvisor, semanticCacheAdvisor, tokenAuditAdvisor, retrievalAugmentationAdvisor, tokenBudgetAdvisor, modelBulkheadAdvisor))
+                .build();
+    }
+
+    // shared by ingestion (masking chunks before they are stored) and the rag post-processor
+    @Bean
+    PIIMasker piiMasker() {
+        return PIIMasker.defaults();
+    }
+
+    // qdrant and the in-process bm25 index are searched concurrently and merged with rank fusion,
+    // so exact terms, section numbers and acronyms are found even when embeddings miss them
+    @Bean
+    HybridDocumentRetriever hybridDocumentRetriever(VectorStore vectorStore, Bm25Index bm25Index,
+                                                    @Value("${rag.hybrid.top-k:20}") int topK,
+                                                    @Value("${rag.hybrid.vector-top-k:20}") int vectorTopK,
+                                                    @Value("${rag.hybrid.lexical-top-k:20}") int lexicalTopK,
+                                                    @Value("${rag.hybrid.rrf-k:60}") int rrfK) {
+        return HybridDocumentRetriever.builder()
+                .vectorRetriever(VectorStoreDocumentRetriever.builder().vectorStore(vectorStore).topK(vectorTopK).similarityThreshold(0.5).build())
+                .bm25Index(bm25Index)
+                .lexicalTopK(lexicalTopK)
+                .topK(topK)
+                .rrfK(rrfK)
+                .build();
+    }
+
+    // one instance shared by every client, so the result cache and the circuit breaker see all tavily traffic
+    @Bean
+    WebSearchDocumentRetriever webSearchDocumentRetriever(RestClient.Builder restClientBuilder,
+                                                          @Value("${web.search.connect-timeout:2s}") Duration connectTimeout,
+                                                          @Value("${web.search.read-timeout:10s}") Duration readTimeout,
+                                                          @Value("${web.search.cache-ttl:10m}") Duration cacheTtl,
+                                                          @Value("${web.search.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                                                          @Value("${web.search.circuit-breaker.open-duration:30s}") Duration openDuration) {
+        return WebSearchDocumentRetriever.builder()
+                .restClientBuilder(restClientBuilder)
+                .maxResults(5)
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .cacheTtl(cacheTtl)
+                .failureThreshold(failureThreshold)
+                .openDuration(openDuration)
+                .build();
+    }
+
+    // retrievers over-fetch, this picks a diversified top n from the cached chunk embeddings without model calls
+    @Bean
+    MmrDocumentPostProcessor mmrDocumentPostProcessor(CachingEmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+                                                      @Value("${rag.mmr.top-n:5}") int topN,
+                                                      @Value("${rag.mmr.lambda:0.7}") double lambda) {
+        return MmrDocumentPostProcessor.builder()
+                .embeddingModel(embeddingModel)
+                .topN(topN)
+                .lambda(lambda)
+                .meterRegistry(meterRegistry)
                 .build();
     }
 
     @Bean
-    RetrievalAugmentationAdvisor retrievalAugmentationAdvisor(VectorStore vectorStore, ChatClient.Builder chatClientBuilder) {
+    RetrievalAugmentationAdvisor retrievalAugmentationAdvisor(ChatClient.Builder chatClientBuilder, MeterRegistry meterRegistry,
+                                                              PIIMasker piiMasker, HybridDocumentRetriever hybridDocumentRetriever,
+                                                              MmrDocumentPostProcessor mmrDocumentPostProcessor) {
         return RetrievalAugmentationAdvisor.builder()
                 // used to translate to target language, or compress 1000's of lines to 10's without changing meaning
                 // this is pre-retrieval implementation
                 .queryTransformers(
                         // TranslationQueryTransformer - using to translate any language to english to fetch from vector store
-                        TranslationQueryTransformer.builder().chatClientBuilder(chatClientBuilder.clone()).targetLanguage("english").build()
-                ).documentRetriever(
-                        VectorStoreDocumentRetriever.builder().vectorStore(vectorStore).topK(3).similarityThreshold(0.5).build()
-                )
-                // this is post-retrieval implementation
-                .documentPostProcessors(PIIMaskingDocumentPostProcessor.builder())
+                        // wrapped with local language detection, so english queries skip the extra llm round trip
+                        LanguageAwareTranslationQueryTransformer.builder()
+                                .chatClientBuilder(chatClientBuilder.clone())
+                                .targetLanguage("english")
+                                .meterRegistry(meterRegistry)
+                                .build()
+                ).documentRetriever(hybridDocumentRetriever)
+                // this is post-retrieval implementation, near duplicate chunks are dropped first (mmr needs the stored text
+                // to find cached embeddings), chunks masked at ingestion time pass through the pii masking untouched
+                .documentPostProcessors(mmrDocumentPostProcessor, PIIMaskingDocumentPostProcessor.builder().piiMasker(piiMasker).build())
                 .build();
 
     }
 
     // using this chat client for pilot controllers testing
     @Bean
-    public ChatClient chatClient(ChatClient.Builder chatClientBuilder) {
+    public ChatClient chatClient(ChatClient.Builder chatClientBuilder, MeterRegistry meterRegistry, ModelBulkheadAdvisor modelBulkheadAdvisor) {
 
         ChatOptions options = ChatOptions.builder()
                 .model("llama3.2")
@@ -80,7 +215,7 @@ public class ChatClientConfig {
 
         return chatClientBuilder
                 .defaultOptions(options)
-                .defaultAdvisors(List.of(new SimpleLoggerAdvisor(), new TokenUsageAuditAdvisor()))
+                .defaultAdvisors(List.of(deadlineAdvisor(meterRegistry, "chatClient"), new SimpleLoggerAdvisor(), new TokenUsageAuditAdvisor(meterRegistry, "chatClient"), modelBulkheadAdvisor))
                 .defaultSystem("""
                          You are an internal IT helpdesk assistant. Your role is to assist\s
                          employees with IT-related issues such as resetting passwords,\s
@@ -95,9 +230,48 @@ public class ChatClientConfig {
 
     @Bean
     @Primary
-    public ChatClient ollamaChatClient(OllamaChatModel ollamaChatModel) {
+    public ChatClient ollamaChatClient(OllamaChatModel ollamaChatModel, MeterRegistry meterRegistry, ModelBulkheadAdvisor modelBulkheadAdvisor) {
         ChatClient.Builder chatClientBuilder = ChatClient.builder(ollamaChatModel);
-        return chatClientBuilder.build();
+        return chatClientBuilder
+                .defaultAdvisors(deadlineAdvisor(meterRegistry, "ollamaChatClient"), new TokenUsageAuditAdvisor(meterRegistry, "ollamaChatClient"), modelBulkheadAdvisor)
+                .build();
+    }
+
+    // picks llama3.2, llama3.2:1b, mistral or an openai compatible endpoint per prompt by size, latency and queue depth
+    @Bean("routingChatClient")
+    public ChatClient routingChatClient(OllamaChatModel ollamaChatModel, ModelBulkheads modelBulkheads, MeterRegistry meterRegistry,
+                                        OllamaModelResidencyManager residencyManager,
+                                        @Value("${routing.timeout:30s}") Duration timeout,
+                                        @Value("${routing.min-hedge-delay:500ms}") Duration minHedgeDelay,
+                                        @Value("${routing.expected-latency:2s}") Duration expectedLatency,
+                                        @Value("${routing.ollama.models:llama3.2}") List<String> ollamaModels,
+                                        @Value("${routing.ollama.max-prompt-tokens:3000}") int ollamaMaxPromptTokens,
+                                        @Value("${routing.openai-compatible.base-url:}") String openAiBaseUrl,
+                                        @Value("${routing.openai-compatible.api-key:dummy}") String openAiApiKey,
+                                        @Value("${routing.openai-compatible.model:ai/llama3.2}") String openAiModel,
+                                        @Value("${routing.openai-compatible.max-prompt-tokens:100000}") int openAiMaxPromptTokens) {
+        RoutingChatModel.Builder routing = RoutingChatModel.builder()
+                .timeout(timeout)
+                .minHedgeDelay(minHedgeDelay)
+                .expectedLatency(expectedLatency)
+                .modelBulkheads(modelBulkheads)
+                .residencyManager(residencyManager)
+                .meterRegistry(meterRegistry);
+        // backends are named after their model, so they share the bulkhead with the other clients of the model
+        ollamaModels.forEach(model -> routing.backend(model, ollamaChatModel, model, ollamaMaxPromptTokens));
+        if (!openAiBaseUrl.isBlank()) {
+            OpenAiChatModel openAiChatModel = OpenAiChatModel.builder()
+                    .openAiApi(OpenAiApi.builder().baseUrl(openAiBaseUrl).apiKey(openAiApiKey).build())
+                    .defaultOptions(OpenAiChatOptions.builder().model(openAiModel).build())
+                    .build();
+            routing.backend("openai-compatible", openAiChatModel, openAiModel, openAiMaxPromptTokens);
+        }
+        // the backends take their model permits and residency leases inside the router, so the advisor limits the client
+        // as a whole under its own key, a permit of the requested model here would make every call wait on it twice
+        ModelBulkheadAdvisor routingBulkheadAdvisor = ModelBulkheadAdvisor.forClient(modelBulkheads, residencyManager, "routingChatClient");
+        return ChatClient.builder(routing.build())
+                .defaultAdvisors(deadlineAdvisor(meterRegistry, "routingChatClient"), new SimpleLoggerAdvisor(), new TokenUsageAuditAdvisor(meterRegistry, "routingChatClient"), routingBulkheadAdvisor)
+                .build();
     }
 
     /*@Bean
@@ -108,29 +282,61 @@ public class ChatClientConfig {
 
     // creating chat client for web search rag chat
     @Bean("webSearchRAGChatClient")
-    public ChatClient webSearchRAGChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, RestClient.Builder restClientBuilder) {
+    public ChatClient webSearchRAGChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, MeterRegistry meterRegistry,
+                                             ModelBulkheadAdvisor modelBulkheadAdvisor, WebSearchDocumentRetriever webSearchDocumentRetriever,
+                                             @Value("${prompt.budget.web-search-rag-chat-client:${prompt.budget.max-tokens:3000}}") int promptBudget) {
         Advisor loggerAdvisor = new SimpleLoggerAdvisor();
-        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor();
+        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor(meterRegistry, "webSearchRAGChatClient");
+        Advisor deadlineAdvisor = deadlineAdvisor(meterRegistry, "webSearchRAGChatClient");
+        Advisor tokenBudgetAdvisor = new TokenBudgetAdvisor(meterRegistry, "webSearchRAGChatClient", promptBudget);
         Advisor messageChatMemoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
         var webSearchRAGAdvisor = RetrievalAugmentationAdvisor.builder()
-                .documentRetriever(WebSearchDocumentRetriever.builder()
-                        .restClientBuilder(restClientBuilder)
-                        .maxResults(5)
+                .documentRetriever(webSearchDocumentRetriever)
+                .build();
+        return chatClientBuilder
+                .defaultAdvisors(List.of(deadlineAdvisor, loggerAdvisor, tokenAuditAdvisor, webSearchRAGAdvisor, messageChatMemoryAdvisor, tokenBudgetAdvisor, modelBulkheadAdvisor))
+                .build();
+    }
+
+    // chat client answering from internal policies and the web in one request, both are searched in parallel
+    // and a source that is slower than its deadline is left out instead of delaying the answer
+    @Bean("multiSourceRAGChatClient")
+    public ChatClient multiSourceRAGChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, MeterRegistry meterRegistry,
+                                               ModelBulkheadAdvisor modelBulkheadAdvisor, PIIMasker piiMasker, MmrDocumentPostProcessor mmrDocumentPostProcessor,
+                                               HybridDocumentRetriever hybridDocumentRetriever, WebSearchDocumentRetriever webSearchDocumentRetriever,
+                                               @Value("${rag.multi-source.top-k:20}") int topK,
+                                               @Value("${rag.multi-source.vector-store.deadline:1s}") Duration vectorStoreDeadline,
+                                               @Value("${rag.multi-source.web-search.deadline:3s}") Duration webSearchDeadline,
+                                               @Value("${prompt.budget.multi-source-rag-chat-client:${prompt.budget.max-tokens:3000}}") int promptBudget) {
+        Advisor loggerAdvisor = new SimpleLoggerAdvisor();
+        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor(meterRegistry, "multiSourceRAGChatClient");
+        Advisor deadlineAdvisor = deadlineAdvisor(meterRegistry, "multiSourceRAGChatClient");
+        Advisor tokenBudgetAdvisor = new TokenBudgetAdvisor(meterRegistry, "multiSourceRAGChatClient", promptBudget);
+        Advisor messageChatMemoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
+        var multiSourceRAGAdvisor = RetrievalAugmentationAdvisor.builder()
+                .documentRetriever(MultiSourceDocumentRetriever.builder()
+                        .source("vector-store", hybridDocumentRetriever, vectorStoreDeadline)
+                        .source("web-search", webSearchDocumentRetriever, webSearchDeadline)
+                        .topK(topK)
+                        .meterRegistry(meterRegistry)
                         .build())
+                .documentPostProcessors(mmrDocumentPostProcessor, PIIMaskingDocumentPostProcessor.builder().piiMasker(piiMasker).build())
                 .build();
         return chatClientBuilder
-                .defaultAdvisors(List.of(loggerAdvisor, tokenAuditAdvisor, webSearchRAGAdvisor, messageChatMemoryAdvisor))
+                .defaultAdvisors(List.of(deadlineAdvisor, loggerAdvisor, tokenAuditAdvisor, multiSourceRAGAdvisor, messageChatMemoryAdvisor, tokenBudgetAdvisor, modelBulkheadAdvisor))
                 .build();
     }
 
     // creating chat client for python search using mistral:7b-instruct-q4_0 model
-    @Value("classpath:promptTemplates/pythonPromptTemplate.st")
-    Resource pythonPromptTemplate;
-
+    // system prompt comes per request from the prompt template registry, so template changes apply without a restart
     @Bean("pythonChatClient")
-    public ChatClient pythonChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory) {
+    public ChatClient pythonChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, MeterRegistry meterRegistry,
+                                       ModelBulkheadAdvisor modelBulkheadAdvisor,
+                                       @Value("${prompt.budget.python-chat-client:${prompt.budget.max-tokens:3000}}") int promptBudget) {
         Advisor loggerAdvisor = new SimpleLoggerAdvisor();
-        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor();
+        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor(meterRegistry, "pythonChatClient");
+        Advisor deadlineAdvisor = deadlineAdvisor(meterRegistry, "pythonChatClient");
+        Advisor tokenBudgetAdvisor = new TokenBudgetAdvisor(meterRegistry, "pythonChatClient", promptBudget);
         Advisor messageChatMemoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
         // adding mistral:7b-instruct-q4_0 model for this chat client with 7b parameters
         ChatOptions chatOptions = ChatOptions.builder()
@@ -141,16 +347,19 @@ public class ChatClientConfig {
 
         return chatClientBuilder
                 .defaultOptions(chatOptions)
-                .defaultAdvisors(List.of(loggerAdvisor, tokenAuditAdvisor, messageChatMemoryAdvisor))
-                .defaultSystem(pythonPromptTemplate)
+                .defaultAdvisors(List.of(deadlineAdvisor, loggerAdvisor, tokenAuditAdvisor, messageChatMemoryAdvisor, tokenBudgetAdvisor, modelBulkheadAdvisor))
                 .build();
     }
 
     // creating time chat client
     @Bean("timeChatClient")
-    public ChatClient timeChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, TimeTools timeTools) {
+    public ChatClient timeChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, TimeTools timeTools, MeterRegistry meterRegistry,
+                                     ModelBulkheadAdvisor modelBulkheadAdvisor,
+                                     @Value("${prompt.budget.time-chat-client:${prompt.budget.max-tokens:3000}}") int promptBudget) {
         Advisor loggerAdvisor = new SimpleLoggerAdvisor();
-        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor();
+        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor(meterRegistry, "timeChatClient");
+        Advisor deadlineAdvisor = deadlineAdvisor(meterRegistry, "timeChatClient");
+        Advisor tokenBudgetAdvisor = new TokenBudgetAdvisor(meterRegistry, "timeChatClient", promptBudget);
         Advisor messageChatMemoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
         ChatOptions chatOptions = ChatOptions.builder()
                 .model("llama3.2")
@@ -161,18 +370,19 @@ public class ChatClientConfig {
         return chatClientBuilder
                 .defaultTools(timeTools)
                 .defaultOptions(chatOptions)
-                .defaultAdvisors(List.of(loggerAdvisor, tokenAuditAdvisor, messageChatMemoryAdvisor))
+                .defaultAdvisors(List.of(deadlineAdvisor, loggerAdvisor, tokenAuditAdvisor, messageChatMemoryAdvisor, tokenBudgetAdvisor, modelBulkheadAdvisor))
                 .build();
     }
 
-    // creating help desk chat client
-    @Value("classpath:promptTemplates/helpDeskSystemPromptTemplate.st")
-    Resource helpDeskPromptTemplate;
-
+    // creating help desk chat client, system prompt comes per request from the prompt template registry
     @Bean("helpDeskChatClient")
-    public ChatClient helpDeskChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, TimeTools timeTools) {
+    public ChatClient helpDeskChatClient(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, TimeTools timeTools, MeterRegistry meterRegistry,
+                                         ModelBulkheadAdvisor modelBulkheadAdvisor,
+                                         @Value("${prompt.budget.help-desk-chat-client:${prompt.budget.max-tokens:3000}}") int promptBudget) {
         Advisor loggerAdvisor = new SimpleLoggerAdvisor();
-        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor();
+        Advisor tokenAuditAdvisor = new TokenUsageAuditAdvisor(meterRegistry, "helpDeskChatClient");
+        Advisor deadlineAdvisor = deadlineAdvisor(meterRegistry, "helpDeskChatClient");
+        Advisor tokenBudgetAdvisor = new TokenBudgetAdvisor(meterRegistry, "helpDeskChatClient", promptBudget);
         Advisor messageChatMemoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
         ChatOptions chatOptions = ChatOptions.builder()
                 .model("llama3.2")
@@ -183,8 +393,7 @@ public class ChatClientConfig {
         return chatClientBuilder
                 .defaultTools(timeTools)
                 .defaultOptions(chatOptions)
-                .defaultAdvisors(List.of(loggerAdvisor, tokenAuditAdvisor, messageChatMemoryAdvisor))
-                .defaultSystem(helpDeskPromptTemplate)
+                .defaultAdvisors(List.of(deadlineAdvisor, loggerAdvisor, tokenAuditAdvisor, messageChatMemoryAdvisor, tokenBudgetAdvisor, modelBulkheadAdvisor))
                 .build();
     }
 
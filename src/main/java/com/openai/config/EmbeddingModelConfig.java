@@ -0,0 +1,31 @@
+package com.openai.config;
+
+import com.openai.cache.CachingEmbeddingModel;
+import com.openai.resilience.BulkheadEmbeddingModel;
+import com.openai.resilience.ModelBulkheads;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@Configuration
+public class EmbeddingModelConfig {
+
+    // vector store, ingestion and every other consumer get the cached model, so a text is only embedded once
+    @Bean
+    @Primary
+    public CachingEmbeddingModel embeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel, ModelBulkheads modelBulkheads,
+                                                JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                                                @Value("${spring.ai.ollama.embedding.options.model}") String embeddingModelName,
+                                                @Value("${embedding.cache.persistent:true}") boolean persistent,
+                                                @Value("${embedding.cache.max-entries:10000}") int maxEntries) {
+        return CachingEmbeddingModel.builder(new BulkheadEmbeddingModel(ollamaEmbeddingModel, modelBulkheads, embeddingModelName), embeddingModelName)
+                .jdbcTemplate(persistent ? jdbcTemplate : null)
+                .maxEntries(maxEntries)
+                .meterRegistry(meterRegistry)
+                .build();
+    }
+}
@@ -0,0 +1,45 @@
+package com.openai.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.vectorstore.HnswIndex;
+import com.openai.vectorstore.HnswVectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// embedded vector store for single node deployments, the qdrant auto configuration backs off for any type but qdrant
+@Configuration
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+public class HnswVectorStoreConfig {
+
+    @Bean
+    public HnswVectorStore vectorStore(EmbeddingModel embeddingModel, ObjectMapper objectMapper,
+                                       @Value("${vectorstore.hnsw.directory:./data/hnsw}") String directory,
+                                       @Value("${vectorstore.hnsw.dimensions:768}") int dimensions,
+                                       @Value("${vectorstore.hnsw.quantization:INT8}") HnswIndex.Quantization quantization,
+                                       @Value("${vectorstore.hnsw.m:16}") int m,
+                                       @Value("${vectorstore.hnsw.ef-construction:100}") int efConstruction,
+                                       @Value("${vectorstore.hnsw.ef-search:64}") int efSearch,
+                                       @Value("${vectorstore.hnsw.exact-search-threshold:1000}") int exactSearchThreshold,
+                                       @Value("${vectorstore.hnsw.commit-interval:1s}") Duration commitInterval,
+                                       @Value("${vectorstore.hnsw.compaction-ratio:1.0}") double compactionRatio,
+                                       @Value("${vectorstore.hnsw.min-dead-nodes:1000}") int minDeadNodes) {
+        return HnswVectorStore.builder(embeddingModel, Path.of(directory))
+                .objectMapper(objectMapper)
+                .dimensions(dimensions)
+                .quantization(quantization)
+                .m(m)
+                .efConstruction(efConstruction)
+                .efSearch(efSearch)
+                .exactSearchThreshold(exactSearchThreshold)
+                .commitInterval(commitInterval)
+                .compactionRatio(compactionRatio)
+                .minDeadNodes(minDeadNodes)
+                .build();
+    }
+}
@@ -1,9 +1,12 @@
 package com.openai.controller;
 
+import com.openai.metrics.StreamingMetrics;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import static org.springframework.ai.chat.memory.ChatMemory.CONVERSATION_ID;
 
@@ -12,9 +15,11 @@ import static org.springframework.ai.chat.memory.ChatMemory.CONVERSATION_ID;
 public class ChatMemoryController {
 
     private final ChatClient chatClient;
+    private final StreamingMetrics streamingMetrics;
 
-    public ChatMemoryController(@Qualifier("chatMemoryChatClient") ChatClient chatClient) {
+    public ChatMemoryController(@Qualifier("chatMemoryChatClient") ChatClient chatClient, StreamingMetrics streamingMetrics) {
         this.chatClient = chatClient;
+        this.streamingMetrics = streamingMetrics;
     }
 
     @GetMapping("/chat-memory")
@@ -28,5 +33,14 @@ public class ChatMemoryController {
         );
     }
 
+    @GetMapping(value = "/chat-memory/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> chatMemoryStream(@RequestHeader("username") String username,
+                                         @RequestParam("message") String message) {
+        return streamingMetrics.recordTimeToFirstToken("/api/chat-memory/stream", chatClient.prompt()
+                .advisors(advisorSpec -> advisorSpec.param(CONVERSATION_ID, username))
+                .user(message)
+                .stream()
+                .content());
+    }
 
 }
@@ -1,9 +1,8 @@
 package com.openai.controller;
 
+import com.openai.prompt.PromptTemplateRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -14,11 +13,10 @@ import org.springframework.web.bind.annotation.RestController;
 public class EvaluatorTestingController {
 
     private final ChatClient chatClient;
+    private final PromptTemplateRegistry promptTemplates;
 
-    @Value("classpath:/promptTemplates/hrPolicyTemplate.st")
-    Resource hrPolicyTemplate;
-
-    public EvaluatorTestingController(ChatClient.Builder chatClientBuilder) {
+    public EvaluatorTestingController(ChatClient.Builder chatClientBuilder, PromptTemplateRegistry promptTemplates) {
+        this.promptTemplates = promptTemplates;
         this.chatClient = chatClientBuilder
                 .defaultAdvisors(new SimpleLoggerAdvisor())
                 .build();
@@ -36,7 +34,7 @@ public class EvaluatorTestingController {
     public String promptStuffing(@RequestParam("message") String message) {
         return chatClient
                 .prompt()
-                .system(hrPolicyTemplate)
+                .system(promptTemplates.render("hrPolicyTemplate"))
                 .user(message)
                 .call()
                 .content();
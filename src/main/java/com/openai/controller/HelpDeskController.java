@@ -1,11 +1,18 @@
 package com.openai.controller;
 
+import com.openai.model.TicketImport;
+import com.openai.service.HelpDeskTicketService;
 import com.openai.tools.HelpDeskTools;
+import com.openai.metrics.StreamingMetrics;
+import com.openai.prompt.PromptTemplateRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
+import java.util.List;
 import java.util.Map;
 
 import static org.springframework.ai.chat.memory.ChatMemory.CONVERSATION_ID;
@@ -15,15 +22,24 @@ import static org.springframework.ai.chat.memory.ChatMemory.CONVERSATION_ID;
 public class HelpDeskController {
     private final ChatClient chatClient;
     private final HelpDeskTools helpDeskTools;
+    private final StreamingMetrics streamingMetrics;
+    private final PromptTemplateRegistry promptTemplates;
+    private final HelpDeskTicketService helpDeskTicketService;
 
-    public HelpDeskController(@Qualifier("helpDeskChatClient") ChatClient chatClient, HelpDeskTools helpDeskTools) {
+    public HelpDeskController(@Qualifier("helpDeskChatClient") ChatClient chatClient, HelpDeskTools helpDeskTools,
+                              StreamingMetrics streamingMetrics, PromptTemplateRegistry promptTemplates,
+                              HelpDeskTicketService helpDeskTicketService) {
         this.chatClient = chatClient;
         this.helpDeskTools = helpDeskTools;
+        this.streamingMetrics = streamingMetrics;
+        this.promptTemplates = promptTemplates;
+        this.helpDeskTicketService = helpDeskTicketService;
     }
 
     @GetMapping("/help-desk")
     public ResponseEntity<String> helpDesk(@RequestHeader("username") String username, @RequestParam("message") String message) {
         String answer = chatClient.prompt()
+                .system(promptTemplates.render("helpDeskSystemPromptTemplate"))
                 .advisors(advisorSpec -> advisorSpec.param(CONVERSATION_ID, username))
                 .user(message)
                 .tools(helpDeskTools)
@@ -32,4 +48,22 @@ public class HelpDeskController {
                 .content();
         return ResponseEntity.ok(answer);
     }
+
+    @GetMapping(value = "/help-desk/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> helpDeskStream(@RequestHeader("username") String username, @RequestParam("message") String message) {
+        return streamingMetrics.recordTimeToFirstToken("/api/tools/help-desk/stream", chatClient.prompt()
+                .system(promptTemplates.render("helpDeskSystemPromptTemplate"))
+                .advisors(advisorSpec -> advisorSpec.param(CONVERSATION_ID, username))
+                .user(message)
+                .tools(helpDeskTools)
+                .toolContext(Map.of("username", username))
+                .stream()
+                .content());
+    }
+
+    // bulk import without the model, stored in one transaction with batched inserts, returns the new ticket ids
+    @PostMapping("/tickets/bulk")
+    public ResponseEntity<List<Long>> importTickets(@RequestBody List<TicketImport> tickets) {
+        return ResponseEntity.ok(helpDeskTicketService.importTickets(tickets));
+    }
 }
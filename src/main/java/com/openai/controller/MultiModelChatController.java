@@ -13,11 +13,14 @@ public class MultiModelChatController {
 
     //private final ChatClient openAiChatClient;
     private final ChatClient ollamaChatClient;
+    private final ChatClient routingChatClient;
 
     public MultiModelChatController(//@Qualifier("openAiChatClient") ChatClient openAiChatClient,
-                                    @Qualifier("ollamaChatClient") ChatClient ollamaChatClient) {
+                                    @Qualifier("ollamaChatClient") ChatClient ollamaChatClient,
+                                    @Qualifier("routingChatClient") ChatClient routingChatClient) {
         //this.openAiChatClient = openAiChatClient;
         this.ollamaChatClient = ollamaChatClient;
+        this.routingChatClient = routingChatClient;
     }
 
     /*@GetMapping("/openai/chat")
@@ -29,4 +32,10 @@ public class MultiModelChatController {
     public String ollamaChat(@RequestParam("message") String message) {
         return ollamaChatClient.prompt(message).call().content();
     }
+
+    // answered by whichever configured model is expected to be fastest for this prompt right now
+    @GetMapping("/routed/chat")
+    public String routedChat(@RequestParam("message") String message) {
+        return routingChatClient.prompt(message).call().content();
+    }
 }
@@ -1,8 +1,7 @@
 package com.openai.controller;
 
+import com.openai.prompt.PromptTemplateRegistry;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -12,19 +11,19 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api")
 public class PromptStuffingController {
     private final ChatClient chatClient;
+    private final PromptTemplateRegistry promptTemplates;
 
-    public PromptStuffingController(ChatClient chatClient) {
+    public PromptStuffingController(ChatClient chatClient, PromptTemplateRegistry promptTemplates) {
         this.chatClient = chatClient;
+        this.promptTemplates = promptTemplates;
     }
 
-    @Value("classpath:/promptTemplates/systemPromptTemplate.st")
-    Resource systemPromptTemplate;
-
     @GetMapping("/prompt-stuffing")
     public String promptStuffing(@RequestParam("message") String message) {
         return chatClient
                 .prompt()
-                .system(systemPromptTemplate)
+                // sent as written, the {documents} placeholder is not filled in here
+                .system(promptTemplates.source("systemPromptTemplate"))
                 .user(message)
                 .call().content();
     }
@@ -1,25 +1,25 @@
 package com.openai.controller;
 
+import com.openai.prompt.PromptTemplateRegistry;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api")
 public class PromptTemplateController {
     private final ChatClient chatClient;
+    private final PromptTemplateRegistry promptTemplates;
 
-    public PromptTemplateController(ChatClient chatClient) {
+    public PromptTemplateController(ChatClient chatClient, PromptTemplateRegistry promptTemplates) {
         this.chatClient = chatClient;
+        this.promptTemplates = promptTemplates;
     }
 
-    @Value("classpath:/promptTemplates/userPromptTemplate.st")
-    Resource promptTemplate;
-
     @GetMapping("/email")
     public String mail(@RequestParam("customerName") String customerName,
                        @RequestParam("customerMessage") String customerMessage) {
@@ -29,10 +29,9 @@ public class PromptTemplateController {
                         You are a professional customer service assistant which helps drafting professional email responses\s
                         to improve the productivity of the customer support team.
                         """)
-                .user(promptTemplateSpec ->
-                        promptTemplateSpec.text(promptTemplate)
-                                .param("customerName", customerName)
-                                .param("customerMessage", customerMessage))
+                .user(promptTemplates.render("userPromptTemplate", Map.of(
+                        "customerName", customerName,
+                        "customerMessage", customerMessage)))
                 .call()
                 .content();
 
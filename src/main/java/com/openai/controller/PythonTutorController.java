@@ -1,9 +1,13 @@
 package com.openai.controller;
 
+import com.openai.metrics.StreamingMetrics;
+import com.openai.prompt.PromptTemplateRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import static org.springframework.ai.chat.memory.ChatMemory.CONVERSATION_ID;
 
@@ -11,18 +15,34 @@ import static org.springframework.ai.chat.memory.ChatMemory.CONVERSATION_ID;
 @RequestMapping("/api")
 public class PythonTutorController {
     private final ChatClient pythonChatClient;
+    private final StreamingMetrics streamingMetrics;
+    private final PromptTemplateRegistry promptTemplates;
 
-    public PythonTutorController(@Qualifier("pythonChatClient") ChatClient pythonChatClient) {
+    public PythonTutorController(@Qualifier("pythonChatClient") ChatClient pythonChatClient, StreamingMetrics streamingMetrics,
+                                 PromptTemplateRegistry promptTemplates) {
         this.pythonChatClient = pythonChatClient;
+        this.streamingMetrics = streamingMetrics;
+        this.promptTemplates = promptTemplates;
     }
 
     @GetMapping("/python/tutor")
     public ResponseEntity<String> pythonTutor(@RequestHeader("username") String username, @RequestParam("message") String message) {
         String answer = pythonChatClient.prompt()
+                .system(promptTemplates.render("pythonPromptTemplate"))
                 .advisors(a -> a.param(CONVERSATION_ID, username))
                 .user(message)
                 .call()
                 .content();
         return ResponseEntity.ok(answer);
     }
+
+    @GetMapping(value = "/python/tutor/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> pythonTutorStream(@RequestHeader("username") String username, @RequestParam("message") String message) {
+        return streamingMetrics.recordTimeToFirstToken("/api/python/tutor/stream", pythonChatClient.prompt()
+                .system(promptTemplates.render("pythonPromptTemplate"))
+                .advisors(a -> a.param(CONVERSATION_ID, username))
+                .user(message)
+                .stream()
+                .content());
+    }
 }
@@ -1,5 +1,6 @@
 package com.openai.controller;
 
+import com.openai.metrics.StreamingMetrics;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
@@ -7,8 +8,10 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -22,11 +25,17 @@ public class RAGController {
     private final VectorStore vectorStore;
     // invoke the web search chat client
     private final ChatClient webSearchRAGChatClient;
+    // internal policies and web search in one request
+    private final ChatClient multiSourceRAGChatClient;
+    private final StreamingMetrics streamingMetrics;
 
-    public RAGController(@Qualifier("chatMemoryChatClient") ChatClient chatClient, VectorStore vectorStore, @Qualifier("webSearchRAGChatClient") ChatClient webSearchRAGChatClient) {
+    public RAGController(@Qualifier("chatMemoryChatClient") ChatClient chatClient, VectorStore vectorStore, @Qualifier("webSearchRAGChatClient") ChatClient webSearchRAGChatClient,
+                         @Qualifier("multiSourceRAGChatClient") ChatClient multiSourceRAGChatClient, StreamingMetrics streamingMetrics) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
         this.webSearchRAGChatClient = webSearchRAGChatClient;
+        this.multiSourceRAGChatClient = multiSourceRAGChatClient;
+        this.streamingMetrics = streamingMetrics;
     }
 
     /*@Value("classpath:/promptTemplates/systemPromptRandomDataTemplate.st")
@@ -86,4 +95,52 @@ public class RAGController {
                 .content();
         return ResponseEntity.ok(answer);
     }
+
+    // api to answer from the vector store and tavily at once, a source that misses its deadline is skipped
+    @GetMapping("/multi-source/chat")
+    public ResponseEntity<String> multiSourceChat(@RequestHeader("username") String username, @RequestParam("message") String message) {
+        String answer = multiSourceRAGChatClient.prompt()
+                .advisors(a -> a.param(CONVERSATION_ID, username))
+                .user(message)
+                .call()
+                .content();
+        return ResponseEntity.ok(answer);
+    }
+
+    // streaming variants, retrieval, memory and pii masking run before the first token is emitted
+    @GetMapping(value = "/random/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> randomChatStream(@RequestHeader("username") String username, @RequestParam("message") String message) {
+        return streamingMetrics.recordTimeToFirstToken("/api/rag/random/chat/stream", chatClient.prompt()
+                .advisors(a -> a.param(CONVERSATION_ID, username))
+                .user(message)
+                .stream()
+                .content());
+    }
+
+    @GetMapping(value = "/document/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> documentChatStream(@RequestHeader("username") String username, @RequestParam("message") String message) {
+        return streamingMetrics.recordTimeToFirstToken("/api/rag/document/chat/stream", chatClient.prompt()
+                .advisors(a -> a.param(CONVERSATION_ID, username))
+                .user(message)
+                .stream()
+                .content());
+    }
+
+    @GetMapping(value = "/web-search/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> webSearchChatStream(@RequestHeader("username") String username, @RequestParam("message") String message) {
+        return streamingMetrics.recordTimeToFirstToken("/api/rag/web-search/chat/stream", webSearchRAGChatClient.prompt()
+                .advisors(a -> a.param(CONVERSATION_ID, username))
+                .user(message)
+                .stream()
+                .content());
+    }
+
+    @GetMapping(value = "/multi-source/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> multiSourceChatStream(@RequestHeader("username") String username, @RequestParam("message") String message) {
+        return streamingMetrics.recordTimeToFirstToken("/api/rag/multi-source/chat/stream", multiSourceRAGChatClient.prompt()
+                .advisors(a -> a.param(CONVERSATION_ID, username))
+                .user(message)
+                .stream()
+                .content());
+    }
 }
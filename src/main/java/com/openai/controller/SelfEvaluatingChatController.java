@@ -1,39 +1,56 @@
 package com.openai.controller;
 
+import com.openai.evaluation.AnswerValidator;
 import com.openai.exception.InvalidAnswerException;
+import com.openai.metrics.StreamingMetrics;
+import com.openai.prompt.PromptTemplateRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.evaluation.FactCheckingEvaluator;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.evaluation.EvaluationRequest;
-import org.springframework.ai.evaluation.EvaluationResponse;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.retry.annotation.Recover;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api/self-evaluate")
 public class SelfEvaluatingChatController {
 
-    private final ChatClient chatClient;
-    private final FactCheckingEvaluator factCheckingEvaluator;
+    private static final String HR_POLICY_TEMPLATE = "hrPolicyTemplate";
+
+    private static final String FALLBACK_ANSWER = "I'm sorry, I couldn't answer your question. Please try rephrasing it.";
 
-    @Value("classpath:/promptTemplates/hrPolicyTemplate.st")
-    Resource hrPolicyTemplate;
+    private final ChatClient chatClient;
+    // lexical grounding pre-check and verdict cache in front of the fact checking judge
+    private final AnswerValidator answerValidator;
+    private final StreamingMetrics streamingMetrics;
+    private final PromptTemplateRegistry promptTemplates;
+    private final int candidates;
 
-    public SelfEvaluatingChatController(ChatClient.Builder chatClientBuilder) {
+    public SelfEvaluatingChatController(ChatClient.Builder chatClientBuilder, MeterRegistry meterRegistry, StreamingMetrics streamingMetrics,
+                                        PromptTemplateRegistry promptTemplates,
+                                        @Value("${self-evaluation.candidates:3}") int candidates,
+                                        @Value("${self-evaluation.grounded-threshold:0.8}") double groundedThreshold,
+                                        @Value("${self-evaluation.ungrounded-threshold:0.2}") double ungroundedThreshold,
+                                        @Value("${self-evaluation.verdict-cache.max-entries:1000}") int maxCachedVerdicts,
+                                        @Value("${self-evaluation.verdict-cache.ttl:1h}") Duration verdictTtl) {
         this.chatClient = chatClientBuilder.defaultAdvisors(new SimpleLoggerAdvisor())
                 .build();
-        this.factCheckingEvaluator = FactCheckingEvaluator.builder(chatClientBuilder)
+        this.streamingMetrics = streamingMetrics;
+        this.promptTemplates = promptTemplates;
+        this.candidates = candidates;
+        FactCheckingEvaluator factCheckingEvaluator = FactCheckingEvaluator.builder(chatClientBuilder)
                 .evaluationPrompt("""
                         Evaluate whether the following claim is supported by the provided document.
                         Respond ONLY with the word 'yes' or 'no' in lowercase. 
@@ -43,6 +60,13 @@ public class SelfEvaluatingChatController {
                         Claim: {claim}
                         """)
                 .build();
+        this.answerValidator = AnswerValidator.builder(factCheckingEvaluator)
+                .groundedThreshold(groundedThreshold)
+                .ungroundedThreshold(ungroundedThreshold)
+                .maxCachedVerdicts(maxCachedVerdicts)
+                .verdictTtl(verdictTtl)
+                .meterRegistry(meterRegistry)
+                .build();
     }
 
     @Retryable(retryFor = InvalidAnswerException.class, maxAttempts = 3)
@@ -55,37 +79,74 @@ public class SelfEvaluatingChatController {
     }
 
     @GetMapping("/prompt-stuffing")
-    public String promptStuffing(@RequestParam("message") String message) throws IOException {
+    public String promptStuffing(@RequestParam("message") String message) {
+        // the hr policy is both the system prompt and the context the answer is checked against
+        String retrievedContext = promptTemplates.render(HR_POLICY_TEMPLATE);
         String aiResponse = chatClient
-                .prompt().system(hrPolicyTemplate)
+                .prompt().system(retrievedContext)
                 .user(message)
                 .call().content();
-        String retrievedContext = hrPolicyTemplate.getContentAsString(StandardCharsets.UTF_8);
         validateAnswer(message, aiResponse, retrievedContext);
         return aiResponse;
     }
 
+    // candidates are generated and checked concurrently instead of retried one after another
+    @GetMapping("/chat/parallel")
+    public String parallelChat(@RequestParam("message") String message) {
+        return answerValidator.firstValid(message, null,
+                        () -> chatClient.prompt().user(message).call().content(), candidates)
+                .orElse(FALLBACK_ANSWER);
+    }
+
+    @GetMapping("/prompt-stuffing/parallel")
+    public String parallelPromptStuffing(@RequestParam("message") String message) {
+        String retrievedContext = promptTemplates.render(HR_POLICY_TEMPLATE);
+        return answerValidator.firstValid(message, retrievedContext,
+                        () -> chatClient.prompt().system(retrievedContext).user(message).call().content(), candidates)
+                .orElse(FALLBACK_ANSWER);
+    }
+
+    // tokens are sent as they arrive and the verdict follows as a last "verdict" event, the check never delays the answer
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> chatStream(@RequestParam("message") String message) {
+        return streamWithVerdict("/api/self-evaluate/chat/stream", message, null,
+                chatClient.prompt().user(message).stream().content());
+    }
+
+    @GetMapping(value = "/prompt-stuffing/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> promptStuffingStream(@RequestParam("message") String message) {
+        String retrievedContext = promptTemplates.render(HR_POLICY_TEMPLATE);
+        return streamWithVerdict("/api/self-evaluate/prompt-stuffing/stream", message, retrievedContext,
+                chatClient.prompt().system(retrievedContext).user(message).stream().content());
+    }
+
+    private Flux<ServerSentEvent<String>> streamWithVerdict(String endpoint, String message, String context, Flux<String> content) {
+        return Flux.defer(() -> {
+            StringBuilder answer = new StringBuilder();
+            Flux<ServerSentEvent<String>> tokens = streamingMetrics.recordTimeToFirstToken(endpoint, content)
+                    .doOnNext(answer::append)
+                    .map(token -> ServerSentEvent.builder(token).event("token").build());
+            // the judge call blocks, so it runs off the event loop
+            Mono<ServerSentEvent<String>> verdict = Mono.fromCallable(() -> answerValidator.isValid(message, answer.toString(), context))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .map(pass -> ServerSentEvent.builder(pass ? "pass" : "fail").event("verdict").build());
+            return tokens.concatWith(verdict);
+        });
+    }
+
     private void validateAnswer(String message, String answer) {
-        EvaluationRequest evaluationRequest =
-                new EvaluationRequest(message, answer);
-        EvaluationResponse evaluationResponse = factCheckingEvaluator.evaluate(evaluationRequest);
-        if (!evaluationResponse.isPass()) {
-            throw new InvalidAnswerException(message, answer);
-        }
+        validateAnswer(message, answer, null);
     }
 
     private void validateAnswer(String message, String answer, String retrievedContext) {
-        EvaluationRequest evaluationRequest =
-                new EvaluationRequest(message, List.of(new Document(retrievedContext)), answer);
-        EvaluationResponse evaluationResponse = factCheckingEvaluator.evaluate(evaluationRequest);
-        if (!evaluationResponse.isPass()) {
+        if (!answerValidator.isValid(message, answer, retrievedContext)) {
             throw new InvalidAnswerException(message, answer);
         }
     }
 
     @Recover
     public String recover(InvalidAnswerException exception) {
-        return "I'm sorry, I couldn't answer your question. Please try rephrasing it.";
+        return FALLBACK_ANSWER;
     }
 
 }
@@ -1,5 +1,6 @@
 package com.openai.controller;
 
+import com.openai.resilience.RequestDeadline;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,7 +20,9 @@ public class StreamController {
 
     @GetMapping("/stream")
     public Flux<String> stream(@RequestParam("message") String message) {
+        // handed over explicitly, the stream may be subscribed to after the request thread moved on
         return chatClient.prompt()
+                .advisors(advisorSpec -> RequestDeadline.current().ifPresent(deadline -> advisorSpec.param(RequestDeadline.CONTEXT_KEY, deadline)))
                 .user(message)
                 .stream()
                 .content();
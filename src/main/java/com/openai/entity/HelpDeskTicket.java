@@ -11,13 +11,20 @@ import java.time.LocalDate;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "helpdesk_tickets")
+// status lookups filter a user's tickets by status or by age, newest first, both are served from an index
+@Table(name = "helpdesk_tickets", indexes = {
+        @Index(name = "idx_helpdesk_tickets_username_status_created_at", columnList = "username, status, created_at"),
+        @Index(name = "idx_helpdesk_tickets_username_created_at", columnList = "username, created_at")
+})
 public class HelpDeskTicket {
 
+    public static final int MAX_ISSUE_LENGTH = 255;
+
+    // assigned from the pooled TicketIdAllocator before the insert, an identity column would rule out batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String username;
+    @Column(length = MAX_ISSUE_LENGTH)
     private String issue;
     private String status;
     private LocalDate createdAt;
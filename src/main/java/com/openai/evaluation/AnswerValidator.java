@@ -0,0 +1,240 @@
+package com.openai.evaluation;
+
+import com.openai.cache.ExpiringLruCache;
+import com.openai.cache.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.evaluation.EvaluationRequest;
+import org.springframework.ai.evaluation.Evaluator;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Checks generated answers against their context with as few judge calls as possible. When there is a context, a
+ * local lexical grounding check decides clear cases on its own: an answer whose content words nearly all appear in
+ * the context passes, one that shares almost none with it fails, and only the ones in between go to the llm judge.
+ * Numbers decide facts (days, amounts, deadlines), so an answer stating a number the context does not contain never
+ * passes on overlap alone, the judge checks it however many of its words match.
+ * Judge verdicts are cached per (question, answer, context) hash, concurrent checks of the same triple share one call.
+ * <p>
+ * {@link #firstValid} generates several candidates at once and returns the first one that passes, so a bad first
+ * answer costs the time of one generation and one check instead of a serial retry loop.
+ */
+public class AnswerValidator {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnswerValidator.class);
+
+    private static final ExecutorService CANDIDATE_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    // words that carry no meaning for grounding, words shorter than three letters are ignored as well, numbers are not
+    private static final Set<String> STOP_WORDS = Set.of(
+            "the", "and", "for", "are", "but", "not", "you", "your", "all", "any", "can", "has", "have", "had", "was",
+            "were", "this", "that", "these", "those", "with", "from", "they", "them", "their", "there", "then", "than",
+            "which", "what", "when", "where", "who", "will", "would", "should", "could", "may", "might", "must", "been",
+            "being", "into", "about", "also", "more", "most", "some", "such", "only", "other", "its", "our", "per",
+            "each", "does", "did", "how", "why", "yes");
+
+    private final Evaluator judge;
+    private final double groundedThreshold;
+    private final double ungroundedThreshold;
+    private final ExpiringLruCache<String, Boolean> verdicts;
+    private final SingleFlight<String, Boolean> judging = new SingleFlight<>();
+    private final MeterRegistry meterRegistry;
+
+    private AnswerValidator(Builder builder) {
+        Assert.notNull(builder.judge, "judge cannot be null");
+        Assert.isTrue(builder.ungroundedThreshold < builder.groundedThreshold, "ungroundedThreshold must be below groundedThreshold");
+        this.judge = builder.judge;
+        this.groundedThreshold = builder.groundedThreshold;
+        this.ungroundedThreshold = builder.ungroundedThreshold;
+        this.verdicts = new ExpiringLruCache<>(builder.maxCachedVerdicts, builder.verdictTtl);
+        this.meterRegistry = builder.meterRegistry;
+    }
+
+    /**
+     * @param context the text the answer should be grounded in, {@code null} when there is none and only the judge can decide
+     */
+    public boolean isValid(String question, String answer, String context) {
+        if (!StringUtils.hasText(answer))
+            return record(false, "empty");
+        if (StringUtils.hasText(context)) {
+            double overlap = overlap(answer, context);
+            if (overlap >= groundedThreshold && numbersGrounded(answer, context))
+                return record(true, "grounding");
+            if (overlap <= ungroundedThreshold)
+                return record(false, "grounding");
+        }
+        String key = key(question, answer, context);
+        Boolean cached = verdicts.get(key);
+        if (cached != null)
+            return record(cached, "cache");
+        boolean pass = judging.execute(key, () -> verdicts.getOrCompute(key, k -> {
+            EvaluationRequest request = StringUtils.hasText(context)
+                    ? new EvaluationRequest(question, List.of(new Document(context)), answer)
+                    : new EvaluationRequest(question, answer);
+            return judge.evaluate(request).isPass();
+        }));
+        return record(pass, "judge");
+    }
+
+    /**
+     * Generates {@code candidates} answers concurrently and returns the first one that is valid, the remaining
+     * generations are cancelled. Empty when no candidate passes.
+     */
+    public Optional<String> firstValid(String question, String context, Supplier<String> generator, int candidates) {
+        Assert.isTrue(candidates > 0, "candidates must be greater than zero");
+        CompletionService<String> completionService = new ExecutorCompletionService<>(CANDIDATE_EXECUTOR);
+        List<Future<String>> futures = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++)
+            futures.add(completionService.submit(() -> {
+                String answer = generator.get();
+                return isValid(question, answer, context) ? answer : null;
+            }));
+        try {
+            for (int i = 0; i < candidates; i++) {
+                try {
+                    String answer = completionService.take().get();
+                    if (answer != null)
+                        return Optional.of(answer);
+                } catch (ExecutionException ex) {
+                    logger.warn("Candidate answer could not be generated or checked", ex.getCause());
+                }
+            }
+            return Optional.empty();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private boolean record(boolean pass, String method) {
+        Counter.builder("answer.validation")
+                .description("Answer validations by outcome and by what decided them")
+                .tag("outcome", pass ? "pass" : "fail").tag("method", method)
+                .register(meterRegistry).increment();
+        return pass;
+    }
+
+    /**
+     * Share of the distinct content words of the answer that also appear in the context, {@code NaN} for an answer
+     * without content words, which neither threshold matches so the judge decides.
+     */
+    static double overlap(String answer, String context) {
+        Set<String> answerWords = contentWords(answer);
+        if (answerWords.isEmpty())
+            return Double.NaN;
+        Set<String> contextWords = contentWords(context);
+        long grounded = answerWords.stream().filter(contextWords::contains).count();
+        return (double) grounded / answerWords.size();
+    }
+
+    /**
+     * Whether every number in the answer also appears in the context.
+     */
+    static boolean numbersGrounded(String answer, String context) {
+        Set<String> contextWords = contentWords(context);
+        return contentWords(answer).stream().filter(AnswerValidator::isNumber).allMatch(contextWords::contains);
+    }
+
+    private static Set<String> contentWords(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (isNumber(word) || (word.length() >= 3 && !STOP_WORDS.contains(word)))
+                words.add(word);
+        }
+        return words;
+    }
+
+    private static boolean isNumber(String word) {
+        return !word.isEmpty() && word.chars().anyMatch(Character::isDigit);
+    }
+
+    static String key(String question, String answer, String context) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{question, answer, context}) {
+                digest.update((part != null ? part : "").getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    public static Builder builder(Evaluator judge) {
+        return new Builder(judge);
+    }
+
+    public static class Builder {
+
+        private final Evaluator judge;
+        private double groundedThreshold = 0.8;
+        private double ungroundedThreshold = 0.2;
+        private int maxCachedVerdicts = 1000;
+        private Duration verdictTtl = Duration.ofHours(1);
+        private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private Builder(Evaluator judge) {
+            this.judge = judge;
+        }
+
+        // share of answer words found in the context from which the judge is skipped and the answer passes
+        public Builder groundedThreshold(double groundedThreshold) {
+            Assert.isTrue(groundedThreshold > 0 && groundedThreshold <= 1, "groundedThreshold must be between 0 and 1");
+            this.groundedThreshold = groundedThreshold;
+            return this;
+        }
+
+        // share up to which the judge is skipped and the answer fails
+        public Builder ungroundedThreshold(double ungroundedThreshold) {
+            Assert.isTrue(ungroundedThreshold >= 0 && ungroundedThreshold < 1, "ungroundedThreshold must be between 0 and 1");
+            this.ungroundedThreshold = ungroundedThreshold;
+            return this;
+        }
+
+        public Builder maxCachedVerdicts(int maxCachedVerdicts) {
+            this.maxCachedVerdicts = maxCachedVerdicts;
+            return this;
+        }
+
+        public Builder verdictTtl(Duration verdictTtl) {
+            this.verdictTtl = verdictTtl;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public AnswerValidator build() {
+            return new AnswerValidator(this);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.openai.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+// mapped to 504, the request ran out of the time the client (or the endpoint default) gave it
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String stage, Duration timeout) {
+        super("Request deadline of " + timeout + " exceeded during " + stage + ".");
+    }
+}
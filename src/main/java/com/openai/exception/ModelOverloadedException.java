@@ -0,0 +1,13 @@
+package com.openai.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// mapped to 429, so clients back off instead of piling up behind a saturated model
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class ModelOverloadedException extends RuntimeException {
+
+    public ModelOverloadedException(String model, String reason) {
+        super("Model " + model + " is overloaded: " + reason + ". Please retry later.");
+    }
+}
@@ -0,0 +1,15 @@
+package com.openai.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+// mapped to 504, the model was reachable but did not answer in time
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class ModelTimeoutException extends RuntimeException {
+
+    public ModelTimeoutException(String model, Duration timeout) {
+        super("Model " + model + " did not answer within " + timeout + ".");
+    }
+}
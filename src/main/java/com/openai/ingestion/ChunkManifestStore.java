@@ -0,0 +1,122 @@
+package com.openai.ingestion;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Persists, per source document, which chunks (deterministic chunk id -> content hash) are currently in the vector store,
+ * so that a re-ingestion only has to embed new chunks and delete the ones that disappeared. The manifest lives on local
+ * disk while the store may have been wiped or recreated since, {@link #retainStored} checks it against the store.
+ */
+@Component
+public class ChunkManifestStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkManifestStore.class);
+
+    private final ObjectMapper objectMapper;
+    private final VectorStore vectorStore;
+    private final Path manifestDirectory;
+
+    public ChunkManifestStore(ObjectMapper objectMapper, VectorStore vectorStore,
+                              @Value("${ingestion.manifest-dir:./data/ingestion}") String manifestDirectory) {
+        this.objectMapper = objectMapper;
+        this.vectorStore = vectorStore;
+        this.manifestDirectory = Path.of(manifestDirectory);
+    }
+
+    public Optional<Map<String, String>> load(String source) {
+        Path file = manifestFile(source);
+        if (!Files.exists(file))
+            return Optional.empty();
+        try {
+            return Optional.of(objectMapper.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, String>>() {
+            }));
+        } catch (IOException ex) {
+            // a broken manifest is treated as missing, the next ingestion does a full rebuild
+            logger.warn("Could not read chunk manifest {}, ignoring it", file, ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Keeps only the manifest entries whose chunk is still in the vector store, the others are ingested again. The store
+     * has no lookup by id, so it is probed with a search over the chunks of the source that returns up to as many
+     * chunks as the manifest lists.
+     */
+    public Map<String, String> retainStored(String source, Map<String, String> chunkHashes) {
+        if (chunkHashes.isEmpty())
+            return chunkHashes;
+        List<Document> stored = vectorStore.similaritySearch(SearchRequest.builder()
+                .query(source)
+                .topK(chunkHashes.size())
+                .similarityThresholdAll()
+                .filterExpression(new FilterExpressionBuilder().eq("source", source).build())
+                .build());
+        Set<String> storedIds = stored.stream().map(Document::getId).collect(Collectors.toSet());
+        Map<String, String> retained = new LinkedHashMap<>(chunkHashes);
+        retained.keySet().retainAll(storedIds);
+        if (retained.size() < chunkHashes.size())
+            logger.warn("{} of {} chunks in the manifest of {} are missing from the vector store, they are ingested again",
+                    chunkHashes.size() - retained.size(), chunkHashes.size(), source);
+        return retained;
+    }
+
+    public void save(String source, Map<String, String> chunkHashes) {
+        Path file = manifestFile(source);
+        try {
+            Files.createDirectories(manifestDirectory);
+            // writing to a temp file first, so a crash never leaves a half written manifest behind
+            Path tempFile = Files.createTempFile(manifestDirectory, file.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), chunkHashes);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write chunk manifest " + file, ex);
+        }
+    }
+
+    private Path manifestFile(String source) {
+        return manifestDirectory.resolve(source.replaceAll("[^A-Za-z0-9._-]", "_") + ".manifest.json");
+    }
+
+    public static String contentHash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Qdrant only accepts uuids or integers as point ids, so the id is a name based uuid of source, content hash and
+     * the occurrence of that content inside the source (the same text can legitimately appear twice).
+     */
+    public static String chunkId(String source, String contentHash, int occurrence) {
+        return UUID.nameUUIDFromBytes((source + ":" + contentHash + ":" + occurrence).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
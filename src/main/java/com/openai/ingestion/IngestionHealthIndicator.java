@@ -0,0 +1,31 @@
+package com.openai.ingestion;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Reports OUT_OF_SERVICE until every registered source has been ingested, it is part of the readiness group,
+ * so the application only reports ready once the vector store content is up to date. A failed source reports DOWN
+ * until the loader's retry of it succeeds.
+ */
+@Component("ingestion")
+public class IngestionHealthIndicator implements HealthIndicator {
+
+    private final IngestionStatus ingestionStatus;
+
+    public IngestionHealthIndicator(IngestionStatus ingestionStatus) {
+        this.ingestionStatus = ingestionStatus;
+    }
+
+    @Override
+    public Health health() {
+        Map<String, IngestionStatus.SourceStatus> sources = ingestionStatus.snapshot();
+        boolean failed = sources.values().stream().anyMatch(status -> status.state() == IngestionStatus.State.FAILED);
+        Health.Builder builder = failed ? Health.down() : ingestionStatus.isCompleted() ? Health.up() : Health.outOfService();
+        sources.forEach((source, status) -> builder.withDetail(source, status));
+        return builder.build();
+    }
+}
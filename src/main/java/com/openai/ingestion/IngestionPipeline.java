@@ -0,0 +1,250 @@
+package com.openai.ingestion;
+
+import com.openai.cache.CachingEmbeddingModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Three stage ingestion: split -> embed -> upsert. Stages are connected by bounded queues, so a slow stage blocks the
+ * one in front of it (backpressure) and only {@code queueCapacity} chunks per queue are ever held in memory no matter
+ * how large the corpus is. Embedding and upsert run in batches on their own worker threads, a failing batch is retried
+ * on its own and, if it keeps failing, reported in the {@link IngestionResult} without stopping the other batches.
+ * A stage that dies on an unexpected exception or error stops the whole run, which then fails with that cause.
+ */
+@Component
+public class IngestionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    // marks the end of a queue, one per consuming worker
+    private static final Document END_OF_STREAM = new Document("end-of-stream");
+
+    private final CachingEmbeddingModel embeddingModel;
+    private final VectorStore vectorStore;
+    private final int embedBatchSize;
+    private final int embedParallelism;
+    private final int upsertBatchSize;
+    private final int upsertParallelism;
+    private final int queueCapacity;
+    private final RetryTemplate retryTemplate;
+
+    public IngestionPipeline(CachingEmbeddingModel embeddingModel, VectorStore vectorStore,
+                             @Value("${ingestion.embed.batch-size:32}") int embedBatchSize,
+                             @Value("${ingestion.embed.parallelism:2}") int embedParallelism,
+                             @Value("${ingestion.upsert.batch-size:256}") int upsertBatchSize,
+                             @Value("${ingestion.upsert.parallelism:2}") int upsertParallelism,
+                             @Value("${ingestion.queue-capacity:1024}") int queueCapacity,
+                             @Value("${ingestion.retry.max-attempts:3}") int maxAttempts) {
+        if (embedBatchSize <= 0 || embedParallelism <= 0 || upsertBatchSize <= 0 || upsertParallelism <= 0 || queueCapacity <= 0)
+            throw new IllegalArgumentException("ingestion batch sizes, parallelism and queue capacity must be greater than zero");
+        this.embeddingModel = embeddingModel;
+        this.vectorStore = vectorStore;
+        this.embedBatchSize = embedBatchSize;
+        this.embedParallelism = embedParallelism;
+        this.upsertBatchSize = upsertBatchSize;
+        this.upsertParallelism = upsertParallelism;
+        this.queueCapacity = queueCapacity;
+        this.retryTemplate = RetryTemplate.builder()
+                .maxAttempts(maxAttempts)
+                .exponentialBackoff(500, 2, 10_000)
+                .build();
+    }
+
+    /**
+     * Splits every source document with the given chunker and writes the resulting chunks to the vector store.
+     * The chunker may return an empty list, e.g. for chunks that are already stored. Documents are pulled lazily
+     * from the stream, so callers can pass a reader backed stream for corpora that do not fit into memory.
+     */
+    public IngestionResult ingest(Stream<Document> documents, Function<Document, List<Document>> chunker) {
+        long start = System.nanoTime();
+        BlockingQueue<Document> chunkQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Document> embeddedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicLong chunksRead = new AtomicLong();
+        AtomicLong chunksUpserted = new AtomicLong();
+        List<String> failedChunkIds = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch embedWorkersDone = new CountDownLatch(embedParallelism);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(1 + embedParallelism + upsertParallelism,
+                Thread.ofPlatform().name("ingestion-", 0).factory());
+        try {
+            List<Future<?>> stages = new ArrayList<>();
+            stages.add(executor.submit(failFast(() -> split(documents, chunker, chunkQueue, chunksRead), failure, executor)));
+            for (int i = 0; i < embedParallelism; i++) {
+                stages.add(executor.submit(failFast(() -> {
+                    try {
+                        embed(chunkQueue, embeddedQueue, failedChunkIds);
+                    } finally {
+                        // on every exit, also an Error, otherwise the await below never returns
+                        embedWorkersDone.countDown();
+                    }
+                }, failure, executor)));
+            }
+            for (int i = 0; i < upsertParallelism; i++)
+                stages.add(executor.submit(failFast(() -> upsert(embeddedQueue, chunksUpserted, failedChunkIds), failure, executor)));
+
+            // upsert workers may only stop once every embed worker has handed over its last batch
+            embedWorkersDone.await();
+            for (int i = 0; i < upsertParallelism; i++)
+                putUnlessFailed(embeddedQueue, END_OF_STREAM, failure);
+            for (Future<?> stage : stages)
+                stage.get();
+            if (failure.get() != null)
+                throw new IllegalStateException("Ingestion failed", failure.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion was interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Ingestion failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        IngestionResult result = new IngestionResult(chunksRead.get(), chunksUpserted.get(), List.copyOf(failedChunkIds),
+                Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Ingestion finished: {} chunks read, {} upserted, {} failed in {}", result.chunksRead(),
+                result.chunksUpserted(), result.failedChunkIds().size(), result.elapsed());
+        return result;
+    }
+
+    private void split(Stream<Document> documents, Function<Document, List<Document>> chunker,
+                       BlockingQueue<Document> chunkQueue, AtomicLong chunksRead) {
+        try (documents) {
+            Iterator<Document> iterator = documents.iterator();
+            while (iterator.hasNext()) {
+                for (Document chunk : chunker.apply(iterator.next())) {
+                    // blocks while the embed stage is behind
+                    chunkQueue.put(chunk);
+                    chunksRead.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // an interrupt means the pipeline is being torn down, the embed workers are interrupted as well
+            try {
+                for (int i = 0; i < embedParallelism && !Thread.currentThread().isInterrupted(); i++)
+                    chunkQueue.put(END_OF_STREAM);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void embed(BlockingQueue<Document> chunkQueue, BlockingQueue<Document> embeddedQueue, List<String> failedChunkIds) {
+        try {
+            List<Document> batch;
+            while (!(batch = nextBatch(chunkQueue, embedBatchSize)).isEmpty()) {
+                List<String> texts = batch.stream().map(Document::getText).toList();
+                try {
+                    retryTemplate.execute(context -> {
+                        // fills the cache, add() in the upsert stage then finds every vector there
+                        embeddingModel.embed(texts);
+                        return null;
+                    });
+                } catch (RuntimeException ex) {
+                    logger.warn("Embedding of a batch of {} chunks failed after retries", batch.size(), ex);
+                    batch.forEach(chunk -> failedChunkIds.add(chunk.getId()));
+                    continue;
+                }
+                for (Document chunk : batch)
+                    embeddedQueue.put(chunk);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void upsert(BlockingQueue<Document> embeddedQueue, AtomicLong chunksUpserted, List<String> failedChunkIds) {
+        try {
+            List<Document> batch;
+            while (!(batch = nextBatch(embeddedQueue, upsertBatchSize)).isEmpty()) {
+                List<Document> documents = batch;
+                try {
+                    // vectors were cached by the embed stage, so add() only writes to the store
+                    retryTemplate.execute(context -> {
+                        vectorStore.add(documents);
+                        return null;
+                    });
+                    chunksUpserted.addAndGet(documents.size());
+                } catch (RuntimeException ex) {
+                    logger.warn("Upsert of a batch of {} chunks failed after retries", documents.size(), ex);
+                    documents.forEach(chunk -> failedChunkIds.add(chunk.getId()));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the first element and then drains whatever else is ready, up to the batch size. An empty list means
+     * the end of stream marker was reached (a partial batch in front of the marker is still returned first).
+     */
+    private static List<Document> nextBatch(BlockingQueue<Document> queue, int batchSize) throws InterruptedException {
+        List<Document> batch = new ArrayList<>(batchSize);
+        Document first = queue.take();
+        if (first == END_OF_STREAM)
+            return batch;
+        batch.add(first);
+        while (batch.size() < batchSize) {
+            Document next = queue.poll();
+            if (next == null)
+                break;
+            if (next == END_OF_STREAM) {
+                // handing the marker back for the next round of this worker
+                queue.put(END_OF_STREAM);
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    /**
+     * Wraps a stage so that its failure stops the whole pipeline: the other stages would otherwise block forever on
+     * queues that nobody drains or fills anymore.
+     */
+    private static Runnable failFast(Runnable stage, AtomicReference<Throwable> failure, ExecutorService executor) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (RuntimeException | Error ex) {
+                failure.compareAndSet(null, ex);
+                executor.shutdownNow();
+                throw ex;
+            }
+        };
+    }
+
+    private static void putUnlessFailed(BlockingQueue<Document> queue, Document document, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        while (!queue.offer(document, 100, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null)
+                return;
+        }
+    }
+}
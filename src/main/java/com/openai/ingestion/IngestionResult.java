@@ -0,0 +1,15 @@
+package com.openai.ingestion;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of one {@link IngestionPipeline} run, chunks of batches that still failed after all retries are listed by id
+ * so that callers can leave them out of their manifest and pick them up again on the next run.
+ */
+public record IngestionResult(long chunksRead, long chunksUpserted, List<String> failedChunkIds, Duration elapsed) {
+
+    public boolean hasFailures() {
+        return !failedChunkIds.isEmpty();
+    }
+}
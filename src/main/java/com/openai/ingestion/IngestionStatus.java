@@ -0,0 +1,45 @@
+package com.openai.ingestion;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the state of the background ingestion of every source, used by {@link IngestionHealthIndicator}.
+ */
+@Component
+public class IngestionStatus {
+
+    public enum State {PENDING, RUNNING, COMPLETED, FAILED}
+
+    public record SourceStatus(State state, Instant updatedAt, String detail) {
+    }
+
+    private final Map<String, SourceStatus> sources = new ConcurrentHashMap<>();
+
+    public void pending(String source) {
+        sources.put(source, new SourceStatus(State.PENDING, Instant.now(), null));
+    }
+
+    public void running(String source) {
+        sources.put(source, new SourceStatus(State.RUNNING, Instant.now(), null));
+    }
+
+    public void completed(String source, String detail) {
+        sources.put(source, new SourceStatus(State.COMPLETED, Instant.now(), detail));
+    }
+
+    public void failed(String source, Throwable cause) {
+        sources.put(source, new SourceStatus(State.FAILED, Instant.now(), cause.getMessage()));
+    }
+
+    public Map<String, SourceStatus> snapshot() {
+        return Map.copyOf(sources);
+    }
+
+    public boolean isCompleted() {
+        return sources.values().stream().allMatch(status -> status.state() == State.COMPLETED);
+    }
+}
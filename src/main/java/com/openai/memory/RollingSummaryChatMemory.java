@@ -0,0 +1,308 @@
+package com.openai.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ChatMemory} that keeps the last {@code keepTurns} turns verbatim and folds everything older into one rolling
+ * summary per conversation, so prompts stay the same size no matter how long a conversation gets. A turn is a user
+ * message together with everything that answered it.
+ * <p>
+ * Summaries are written by a small background executor once {@code minTurnsToFold} turns are ready to fold, never
+ * on the request thread. Until then {@link #get(String)} simply leaves the not yet folded turns out. The summary is
+ * stored as the first message of the conversation (a system message) in the same repository as the turns, so it is
+ * persisted with them and survives restarts.
+ */
+public class RollingSummaryChatMemory implements ChatMemory, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollingSummaryChatMemory.class);
+
+    static final String SUMMARY_PREFIX = "Summary of the earlier conversation: ";
+
+    private static final String SUMMARY_INSTRUCTIONS = """
+            You maintain a running summary of a helpdesk conversation between a user and an assistant.
+            Merge the existing summary and the new messages into one summary of at most %d words.
+            Keep names, ticket ids, dates, decisions and open questions, drop greetings and small talk.
+            Reply with the summary text only.
+            """;
+
+    private final ChatMemoryRepository repository;
+    private final ChatClient chatClient;
+    private final int keepTurns;
+    private final int minTurnsToFold;
+    private final int maxSummaryWords;
+
+    // conversations with a summary queued or running, at most one per conversation
+    private final Set<String> pendingSummaries = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock[] stripes;
+    private final ExecutorService summarizer;
+
+    private final Timer summaryDuration;
+    private final Counter summaryFailures;
+
+    private RollingSummaryChatMemory(Builder builder) {
+        this.repository = builder.repository;
+        this.chatClient = builder.chatClient;
+        this.keepTurns = builder.keepTurns;
+        this.minTurnsToFold = builder.minTurnsToFold;
+        this.maxSummaryWords = builder.maxSummaryWords;
+        this.stripes = new ReentrantLock[64];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new ReentrantLock();
+        // a fixed number of workers, so summaries never take more than a few model permits from user requests
+        this.summarizer = Executors.newFixedThreadPool(builder.summarizerThreads,
+                Thread.ofVirtual().name("chat-memory-summarizer-", 0).factory());
+        this.summaryDuration = Timer.builder("chat.memory.summary.duration")
+                .description("Time to fold old turns into the rolling summary").register(builder.meterRegistry);
+        this.summaryFailures = Counter.builder("chat.memory.summary.failures")
+                .description("Rolling summaries that could not be generated").register(builder.meterRegistry);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.notNull(messages, "messages cannot be null");
+        Assert.noNullElements(messages, "messages cannot contain null elements");
+        List<Message> stored;
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            stored = new ArrayList<>(repository.findByConversationId(conversationId));
+            stored.addAll(messages);
+            repository.saveAll(conversationId, stored);
+        } finally {
+            lock.unlock();
+        }
+        // the memory advisor adds the answer once the response is complete, summarizing only then keeps the model
+        // call for the summary from competing with the answer of the same conversation
+        if (!messages.isEmpty() && messages.get(messages.size() - 1).getMessageType() == MessageType.ASSISTANT)
+            scheduleSummaryIfNeeded(conversationId, stored);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        List<Message> stored = repository.findByConversationId(conversationId);
+        int summaryEnd = hasSummary(stored) ? 1 : 0;
+        int keepFrom = Math.max(summaryEnd, turnStart(stored, summaryEnd, keepTurns));
+        if (keepFrom == summaryEnd)
+            return stored;
+        List<Message> window = new ArrayList<>(1 + stored.size() - keepFrom);
+        if (summaryEnd == 1)
+            window.add(stored.get(0));
+        window.addAll(stored.subList(keepFrom, stored.size()));
+        return window;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            repository.deleteByConversationId(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleSummaryIfNeeded(String conversationId, List<Message> stored) {
+        int summaryEnd = hasSummary(stored) ? 1 : 0;
+        if (turnStart(stored, summaryEnd, keepTurns + minTurnsToFold) < 0)
+            return;
+        if (!pendingSummaries.add(conversationId))
+            return;
+        try {
+            summarizer.execute(() -> summarize(conversationId));
+        } catch (RejectedExecutionException ex) {
+            // shutting down, the turns stay verbatim and are folded after the next start
+            pendingSummaries.remove(conversationId);
+        }
+    }
+
+    private void summarize(String conversationId) {
+        List<Message> remaining = null;
+        try {
+            List<Message> stored = repository.findByConversationId(conversationId);
+            int summaryEnd = hasSummary(stored) ? 1 : 0;
+            int foldEnd = turnStart(stored, summaryEnd, keepTurns);
+            if (foldEnd <= summaryEnd)
+                return;
+            String previousSummary = summaryEnd == 1 ? stored.get(0).getText().substring(SUMMARY_PREFIX.length()) : "";
+            List<Message> folded = List.copyOf(stored.subList(0, foldEnd));
+
+            // the model call happens without holding the conversation lock, new turns can still be added meanwhile
+            long start = System.nanoTime();
+            String summary = chatClient.prompt()
+                    .system(SUMMARY_INSTRUCTIONS.formatted(maxSummaryWords))
+                    .user(summaryRequest(previousSummary, folded.subList(summaryEnd, folded.size())))
+                    .call()
+                    .content();
+            summaryDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!StringUtils.hasText(summary))
+                throw new IllegalStateException("Model returned an empty summary");
+
+            ReentrantLock lock = lockFor(conversationId);
+            lock.lock();
+            try {
+                List<Message> current = repository.findByConversationId(conversationId);
+                // cleared or rewritten in the meantime, the summary no longer describes this conversation
+                if (!startsWith(current, folded)) {
+                    logger.debug("Conversation {} changed while it was summarized, dropping the summary", conversationId);
+                    return;
+                }
+                List<Message> updated = new ArrayList<>(1 + current.size() - folded.size());
+                updated.add(new SystemMessage(SUMMARY_PREFIX + summary.strip()));
+                updated.addAll(current.subList(folded.size(), current.size()));
+                repository.saveAll(conversationId, updated);
+                remaining = updated;
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException ex) {
+            summaryFailures.increment();
+            logger.warn("Rolling summary of conversation {} failed, older turns stay verbatim for now", conversationId, ex);
+        } finally {
+            pendingSummaries.remove(conversationId);
+        }
+        // turns added while the summary was generated may be ready to fold by now
+        if (remaining != null)
+            scheduleSummaryIfNeeded(conversationId, remaining);
+    }
+
+    private static String summaryRequest(String previousSummary, List<Message> messages) {
+        StringBuilder request = new StringBuilder("Existing summary:\n")
+                .append(previousSummary.isEmpty() ? "(none)" : previousSummary)
+                .append("\n\nNew messages:\n");
+        for (Message message : messages) {
+            if (StringUtils.hasText(message.getText()))
+                request.append(message.getMessageType().getValue().toUpperCase(Locale.ROOT)).append(": ").append(message.getText()).append('\n');
+        }
+        return request.toString();
+    }
+
+    /**
+     * Index where the {@code turns}-th last turn starts, -1 if there are fewer turns after {@code from}.
+     */
+    static int turnStart(List<Message> messages, int from, int turns) {
+        int seen = 0;
+        for (int i = messages.size() - 1; i >= from; i--) {
+            if (messages.get(i).getMessageType() == MessageType.USER && ++seen == turns)
+                return i;
+        }
+        return -1;
+    }
+
+    static boolean hasSummary(List<Message> messages) {
+        return !messages.isEmpty() && messages.get(0).getMessageType() == MessageType.SYSTEM
+                && messages.get(0).getText() != null && messages.get(0).getText().startsWith(SUMMARY_PREFIX);
+    }
+
+    // messages read back from jdbc are new instances, so type and text are compared
+    private static boolean startsWith(List<Message> messages, List<Message> prefix) {
+        if (messages.size() < prefix.size())
+            return false;
+        for (int i = 0; i < prefix.size(); i++) {
+            if (messages.get(i).getMessageType() != prefix.get(i).getMessageType()
+                    || !Objects.equals(messages.get(i).getText(), prefix.get(i).getText()))
+                return false;
+        }
+        return true;
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+        return stripes[(conversationId.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    @Override
+    public void destroy() {
+        summarizer.shutdown();
+        try {
+            if (!summarizer.awaitTermination(30, TimeUnit.SECONDS))
+                logger.warn("Rolling summaries still running on shutdown were abandoned");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static Builder builder(ChatMemoryRepository repository, ChatClient chatClient) {
+        return new Builder(repository, chatClient);
+    }
+
+    public static class Builder {
+
+        private final ChatMemoryRepository repository;
+        private final ChatClient chatClient;
+        private int keepTurns = 4;
+        private int minTurnsToFold = 2;
+        private int maxSummaryWords = 150;
+        private int summarizerThreads = 1;
+        private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private Builder(ChatMemoryRepository repository, ChatClient chatClient) {
+            Assert.notNull(repository, "repository cannot be null");
+            Assert.notNull(chatClient, "chatClient cannot be null");
+            this.repository = repository;
+            this.chatClient = chatClient;
+        }
+
+        public Builder keepTurns(int keepTurns) {
+            Assert.isTrue(keepTurns > 0, "keepTurns must be greater than zero");
+            this.keepTurns = keepTurns;
+            return this;
+        }
+
+        // folding in batches, so the summary is not regenerated after every single turn
+        public Builder minTurnsToFold(int minTurnsToFold) {
+            Assert.isTrue(minTurnsToFold > 0, "minTurnsToFold must be greater than zero");
+            this.minTurnsToFold = minTurnsToFold;
+            return this;
+        }
+
+        public Builder maxSummaryWords(int maxSummaryWords) {
+            Assert.isTrue(maxSummaryWords > 0, "maxSummaryWords must be greater than zero");
+            this.maxSummaryWords = maxSummaryWords;
+            return this;
+        }
+
+        public Builder summarizerThreads(int summarizerThreads) {
+            Assert.isTrue(summarizerThreads > 0, "summarizerThreads must be greater than zero");
+            this.summarizerThreads = summarizerThreads;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public RollingSummaryChatMemory build() {
+            return new RollingSummaryChatMemory(this);
+        }
+    }
+}
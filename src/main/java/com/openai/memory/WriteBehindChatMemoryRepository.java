@@ -0,0 +1,356 @@
+package com.openai.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per conversation in-memory cache in front of another {@link ChatMemoryRepository} (the jdbc one). Reads are served
+ * from memory, writes only update memory and mark the conversation dirty, a background flusher writes dirty
+ * conversations to the delegate in batches (one transaction per batch). Conversations are guarded by striped locks,
+ * so concurrent turns of different users never wait on each other and a cold load of a conversation happens once.
+ * Clean conversations that were idle for longer than {@code idleTimeout} are evicted to keep memory bounded.
+ * <p>
+ * Deletes and batch writes are serialized, so a flush can never write back a conversation that was deleted after its
+ * snapshot was taken. Once {@code maxDirtyConversations} are waiting for the flusher (the database is down or slow),
+ * saves of further conversations write through, a database outage then surfaces to the callers instead of growing
+ * the cache without bound.
+ */
+public class WriteBehindChatMemoryRepository implements ChatMemoryRepository, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindChatMemoryRepository.class);
+
+    private final ChatMemoryRepository delegate;
+    private final TransactionTemplate transactionTemplate;
+    private final int flushBatchSize;
+    private final long idleTimeoutNanos;
+    private final int maxConversations;
+    private final boolean flushOnShutdown;
+    private final int maxDirtyConversations;
+
+    private final Map<String, CachedConversation> conversations = new ConcurrentHashMap<>();
+    private final Set<String> dirtyConversationIds = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock[] stripes;
+    // held from snapshot to commit of a batch and by deletes, taken before any stripe lock
+    private final ReentrantLock batchWriteLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    private WriteBehindChatMemoryRepository(Builder builder) {
+        this.delegate = builder.delegate;
+        this.transactionTemplate = builder.transactionTemplate;
+        this.flushBatchSize = builder.flushBatchSize;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+        this.maxConversations = builder.maxConversations;
+        this.flushOnShutdown = builder.flushOnShutdown;
+        this.maxDirtyConversations = builder.maxDirtyConversations;
+        this.stripes = new ReentrantLock[builder.lockStripes];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new ReentrantLock();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("chat-memory-flusher").daemon().factory());
+        long intervalMillis = builder.flushInterval.toMillis();
+        this.flusher.scheduleWithFixedDelay(this::flushAndEvict, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        Set<String> ids = new LinkedHashSet<>(delegate.findConversationIds());
+        // conversations that were never flushed yet only exist in memory
+        ids.addAll(conversations.keySet());
+        return List.copyOf(ids);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        CachedConversation cached = conversations.get(conversationId);
+        if (cached != null) {
+            cached.touch();
+            return cached.messages;
+        }
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            // another thread may have loaded it while we were waiting for the stripe
+            cached = conversations.get(conversationId);
+            if (cached == null) {
+                cached = new CachedConversation(List.copyOf(delegate.findByConversationId(conversationId)));
+                conversations.put(conversationId, cached);
+            }
+            cached.touch();
+            return cached.messages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.notNull(messages, "messages cannot be null");
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            List<Message> copy = List.copyOf(messages);
+            boolean writeThrough = !dirtyConversationIds.contains(conversationId) && dirtyConversationIds.size() >= maxDirtyConversations;
+            // the flusher is behind, the caller pays for the write and sees its failure
+            if (writeThrough)
+                delegate.saveAll(conversationId, copy);
+            CachedConversation cached = conversations.computeIfAbsent(conversationId, id -> new CachedConversation(List.of()));
+            cached.messages = copy;
+            cached.version++;
+            cached.touch();
+            if (writeThrough)
+                cached.flushedVersion = cached.version;
+            else
+                dirtyConversationIds.add(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        // deletes are rare, doing them synchronously and never in the middle of a batch keeps the flusher free of tombstones
+        batchWriteLock.lock();
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            conversations.remove(conversationId);
+            dirtyConversationIds.remove(conversationId);
+            delegate.deleteByConversationId(conversationId);
+        } finally {
+            lock.unlock();
+            batchWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Writes every dirty conversation to the delegate, used by the flusher and on shutdown.
+     */
+    public void flush() {
+        List<String> batch = new ArrayList<>(flushBatchSize);
+        for (String conversationId : dirtyConversationIds) {
+            batch.add(conversationId);
+            if (batch.size() == flushBatchSize) {
+                flushBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            flushBatch(batch);
+    }
+
+    private void flushBatch(List<String> conversationIds) {
+        batchWriteLock.lock();
+        try {
+            writeBatch(conversationIds);
+        } finally {
+            batchWriteLock.unlock();
+        }
+    }
+
+    private void writeBatch(List<String> conversationIds) {
+        Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+        for (String conversationId : conversationIds) {
+            ReentrantLock lock = lockFor(conversationId);
+            lock.lock();
+            try {
+                CachedConversation cached = conversations.get(conversationId);
+                dirtyConversationIds.remove(conversationId);
+                if (cached != null)
+                    snapshots.put(conversationId, new Snapshot(cached.messages, cached.version));
+            } finally {
+                lock.unlock();
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    snapshots.forEach((conversationId, snapshot) -> delegate.saveAll(conversationId, snapshot.messages())));
+            snapshots.forEach((conversationId, snapshot) -> {
+                CachedConversation cached = conversations.get(conversationId);
+                if (cached != null && cached.flushedVersion < snapshot.version())
+                    cached.flushedVersion = snapshot.version();
+            });
+        } catch (RuntimeException ex) {
+            // putting them back, the next run will try again with whatever is the latest state by then
+            logger.warn("Flushing {} conversations to the chat memory repository failed", snapshots.size(), ex);
+            dirtyConversationIds.addAll(snapshots.keySet());
+        }
+    }
+
+    private void flushAndEvict() {
+        try {
+            flush();
+            evictIdleConversations();
+        } catch (RuntimeException ex) {
+            logger.warn("Chat memory write behind cycle failed", ex);
+        }
+    }
+
+    private void evictIdleConversations() {
+        long now = System.nanoTime();
+        conversations.forEach((conversationId, cached) -> {
+            if (cached.isClean() && now - cached.lastAccess > idleTimeoutNanos)
+                evict(conversationId);
+        });
+        int overflow = conversations.size() - maxConversations;
+        if (overflow > 0) {
+            // still over the limit, evicting the least recently used clean conversations
+            conversations.entrySet().stream()
+                    .filter(entry -> entry.getValue().isClean())
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .limit(overflow)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(this::evict);
+        }
+    }
+
+    private void evict(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            CachedConversation cached = conversations.get(conversationId);
+            if (cached != null && cached.isClean())
+                conversations.remove(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (flushOnShutdown) {
+            flush();
+        } else if (!dirtyConversationIds.isEmpty()) {
+            logger.warn("Discarding {} unflushed conversations on shutdown", dirtyConversationIds.size());
+        }
+    }
+
+    public int cachedConversationCount() {
+        return conversations.size();
+    }
+
+    public int dirtyConversationCount() {
+        return dirtyConversationIds.size();
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+        return stripes[(conversationId.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    private static final class CachedConversation {
+        // immutable list, replaced as a whole, so readers never need the lock
+        private volatile List<Message> messages;
+        private volatile long lastAccess;
+        private volatile long version;
+        private volatile long flushedVersion;
+
+        private CachedConversation(List<Message> messages) {
+            this.messages = messages;
+        }
+
+        private void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        private boolean isClean() {
+            return flushedVersion >= version;
+        }
+    }
+
+    private record Snapshot(List<Message> messages, long version) {
+    }
+
+    public static Builder builder(ChatMemoryRepository delegate, TransactionTemplate transactionTemplate) {
+        return new Builder(delegate, transactionTemplate);
+    }
+
+    public static class Builder {
+
+        private final ChatMemoryRepository delegate;
+        private final TransactionTemplate transactionTemplate;
+        private Duration flushInterval = Duration.ofMillis(500);
+        private int flushBatchSize = 100;
+        private Duration idleTimeout = Duration.ofMinutes(30);
+        private int maxConversations = 10_000;
+        private int lockStripes = 64;
+        private boolean flushOnShutdown = true;
+        private int maxDirtyConversations = 10_000;
+
+        private Builder(ChatMemoryRepository delegate, TransactionTemplate transactionTemplate) {
+            Assert.notNull(delegate, "delegate cannot be null");
+            Assert.notNull(transactionTemplate, "transactionTemplate cannot be null");
+            this.delegate = delegate;
+            this.transactionTemplate = transactionTemplate;
+        }
+
+        public Builder flushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        public Builder flushBatchSize(int flushBatchSize) {
+            this.flushBatchSize = flushBatchSize;
+            return this;
+        }
+
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Builder maxConversations(int maxConversations) {
+            this.maxConversations = maxConversations;
+            return this;
+        }
+
+        public Builder lockStripes(int lockStripes) {
+            this.lockStripes = lockStripes;
+            return this;
+        }
+
+        public Builder flushOnShutdown(boolean flushOnShutdown) {
+            this.flushOnShutdown = flushOnShutdown;
+            return this;
+        }
+
+        public Builder maxDirtyConversations(int maxDirtyConversations) {
+            this.maxDirtyConversations = maxDirtyConversations;
+            return this;
+        }
+
+        public WriteBehindChatMemoryRepository build() {
+            if (flushBatchSize <= 0 || maxConversations <= 0 || lockStripes <= 0 || maxDirtyConversations <= 0)
+                throw new IllegalArgumentException("flushBatchSize, maxConversations, lockStripes and maxDirtyConversations must be greater than zero");
+            if (flushInterval.isNegative() || flushInterval.isZero())
+                throw new IllegalArgumentException("flushInterval must be positive");
+            return new WriteBehindChatMemoryRepository(this);
+        }
+    }
+}
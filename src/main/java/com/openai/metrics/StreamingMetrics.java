@@ -0,0 +1,40 @@
+package com.openai.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records time-to-first-token of streamed responses per endpoint, which is the latency users actually perceive on
+ * the streaming endpoints.
+ */
+@Component
+public class StreamingMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public StreamingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Flux<String> recordTimeToFirstToken(String endpoint, Flux<String> content) {
+        Timer timer = Timer.builder("llm.stream.time.to.first.token")
+                .description("Time from subscription until the first streamed token")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        // deferring, so the clock starts when the client subscribes and not when the flux is assembled
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            return content.doOnNext(token -> {
+                if (firstToken.compareAndSet(true, false))
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            });
+        });
+    }
+}
@@ -0,0 +1,7 @@
+package com.openai.model;
+
+import java.time.LocalDate;
+
+// one row of a bulk ticket import, status and dates default like a ticket created through the assistant
+public record TicketImport(String username, String issue, String status, LocalDate createdAt, LocalDate eta) {
+}
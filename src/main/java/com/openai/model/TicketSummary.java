@@ -0,0 +1,17 @@
+package com.openai.model;
+
+import java.time.LocalDate;
+
+// slim view of a ticket for the status tool, only what the model needs to answer about it
+public record TicketSummary(Long id, String issue, String status, LocalDate createdAt, LocalDate eta) {
+
+    private static final int MAX_ISSUE_LENGTH = 80;
+
+    // one line per ticket instead of a json object, a fraction of the tokens in the prompt
+    public String toLine() {
+        String shortIssue = issue == null ? "" : issue.strip().replaceAll("\\s+", " ");
+        if (shortIssue.length() > MAX_ISSUE_LENGTH)
+            shortIssue = shortIssue.substring(0, MAX_ISSUE_LENGTH - 3) + "...";
+        return "#" + id + " " + status + " opened " + createdAt + " eta " + eta + ": " + shortIssue;
+    }
+}
@@ -0,0 +1,244 @@
+package com.openai.prompt;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.misc.STMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads every {@code .st} template under the configured location once and keeps it compiled, so requests never read
+ * or parse a template again. Templates without variables are rendered once at load time and served from that cache.
+ * When the location is a directory on disk (running from the ide or with a {@code file:} location) it is watched and
+ * changed templates are reloaded without a restart, a template that no longer compiles keeps its previous version.
+ * <p>
+ * Templates are addressed by file name without the {@code .st} extension, e.g. {@code hrPolicyTemplate}.
+ */
+@Component
+public class PromptTemplateRegistry implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromptTemplateRegistry.class);
+
+    private static final String EXTENSION = ".st";
+
+    // every template is compiled into its own group under this name, so a reload only has to swap one map entry
+    private static final String TEMPLATE_NAME = "template";
+
+    private static final Pattern VARIABLE = Pattern.compile("(?<!\\\\)\\{\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*}");
+
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final MeterRegistry meterRegistry;
+    private final WatchService watchService;
+
+    public PromptTemplateRegistry(MeterRegistry meterRegistry,
+                                  @Value("${prompt.templates.location:classpath:/promptTemplates/}") String location,
+                                  @Value("${prompt.templates.watch:true}") boolean watch) throws IOException {
+        this.meterRegistry = meterRegistry;
+        String directory = location.endsWith("/") ? location : location + "/";
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (Resource resource : resolver.getResources(directory + "*" + EXTENSION))
+            register(name(resource.getFilename()), resource.getContentAsString(StandardCharsets.UTF_8));
+        logger.info("Loaded {} prompt templates from {}", templates.size(), location);
+
+        // packaged templates inside a jar cannot change, only a directory on disk is watched
+        Resource root = resolver.getResource(directory);
+        this.watchService = watch && root.isFile() ? watch(root.getFile().toPath()) : null;
+    }
+
+    /**
+     * Renders a template without variables, the output is computed once per template version.
+     */
+    public String render(String name) {
+        return render(name, Map.of());
+    }
+
+    /**
+     * Renders a template with the given variables, every variable the template uses must be provided.
+     *
+     * @throws IllegalArgumentException for an unknown template or missing variables
+     */
+    public String render(String name, Map<String, ?> variables) {
+        CompiledTemplate template = template(name);
+        Set<String> missing = new TreeSet<>(template.variables());
+        missing.removeAll(variables.keySet());
+        if (!missing.isEmpty())
+            throw new IllegalArgumentException("Prompt template " + name + " is missing values for " + missing);
+
+        long start = System.nanoTime();
+        String rendered;
+        if (template.rendered() != null) {
+            rendered = template.rendered();
+        } else {
+            ST st = template.group().getInstanceOf(TEMPLATE_NAME);
+            template.variables().forEach(variable -> st.add(variable, variables.get(variable)));
+            rendered = st.render();
+        }
+        Timer.builder("prompt.template.render")
+                .description("Time to render a prompt template")
+                .tag("template", name)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return rendered;
+    }
+
+    /**
+     * Raw template text as it is on disk, variables not substituted.
+     */
+    public String source(String name) {
+        return template(name).source();
+    }
+
+    public Set<String> variables(String name) {
+        return template(name).variables();
+    }
+
+    public Set<String> names() {
+        return Set.copyOf(templates.keySet());
+    }
+
+    private CompiledTemplate template(String name) {
+        CompiledTemplate template = templates.get(name);
+        if (template == null)
+            throw new IllegalArgumentException("Unknown prompt template " + name + ", known templates are " + new TreeSet<>(templates.keySet()));
+        return template;
+    }
+
+    void register(String name, String source) {
+        boolean known = templates.containsKey(name);
+        templates.put(name, compile(name, source));
+        if (!known)
+            Gauge.builder("prompt.template.tokens", templates, registered -> {
+                        CompiledTemplate template = registered.get(name);
+                        return template != null ? template.tokens() : 0;
+                    })
+                    .description("Size of the prompt template in tokens, before variables are substituted")
+                    .baseUnit("tokens").tag("template", name).register(meterRegistry);
+    }
+
+    private CompiledTemplate compile(String name, String source) {
+        Set<String> variables = new LinkedHashSet<>();
+        Matcher matcher = VARIABLE.matcher(source);
+        while (matcher.find())
+            variables.add(matcher.group(1));
+
+        List<String> errors = new ArrayList<>();
+        STGroup group = new STGroup('{', '}');
+        group.setListener(new CollectingErrorListener(errors));
+        if (variables.isEmpty())
+            group.defineTemplate(TEMPLATE_NAME, source);
+        else
+            group.defineTemplate(TEMPLATE_NAME, String.join(",", variables), source);
+        if (!errors.isEmpty())
+            throw new IllegalStateException("Prompt template " + name + " does not compile: " + errors);
+
+        String rendered = variables.isEmpty() ? group.getInstanceOf(TEMPLATE_NAME).render() : null;
+        return new CompiledTemplate(source, group, Set.copyOf(variables), rendered, tokenCountEstimator.estimate(source));
+    }
+
+    private WatchService watch(Path directory) throws IOException {
+        WatchService service = directory.getFileSystem().newWatchService();
+        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        Thread.ofVirtual().name("prompt-template-watcher").start(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path file && file.toString().endsWith(EXTENSION))
+                            reload(directory.resolve(file), event.kind());
+                    }
+                    if (!key.reset())
+                        break;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                // registry is shutting down
+            }
+        });
+        logger.info("Watching {} for prompt template changes", directory);
+        return service;
+    }
+
+    private void reload(Path file, WatchEvent.Kind<?> kind) {
+        String name = name(file.getFileName().toString());
+        try {
+            if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                // keeping the last version, callers of a deleted template keep working until the next restart
+                logger.warn("Prompt template {} was deleted, keeping the loaded version", name);
+                return;
+            }
+            register(name, Files.readString(file, StandardCharsets.UTF_8));
+            logger.info("Reloaded prompt template {}", name);
+        } catch (IOException | IllegalStateException ex) {
+            logger.warn("Could not reload prompt template {}, keeping the previous version", name, ex);
+        }
+    }
+
+    private static String name(String filename) {
+        Assert.notNull(filename, "template resource has no file name");
+        return filename.substring(0, filename.length() - EXTENSION.length());
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (watchService != null)
+            watchService.close();
+    }
+
+    private record CompiledTemplate(String source, STGroup group, Set<String> variables, String rendered, int tokens) {
+    }
+
+    private record CollectingErrorListener(List<String> errors) implements STErrorListener {
+
+        @Override
+        public void compileTimeError(STMessage msg) {
+            errors.add(msg.toString());
+        }
+
+        @Override
+        public void runTimeError(STMessage msg) {
+            logger.warn("Prompt template error: {}", msg);
+        }
+
+        @Override
+        public void IOError(STMessage msg) {
+            errors.add(msg.toString());
+        }
+
+        @Override
+        public void internalError(STMessage msg) {
+            errors.add(msg.toString());
+        }
+    }
+}
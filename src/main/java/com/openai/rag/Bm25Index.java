@@ -0,0 +1,279 @@
+package com.openai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process BM25 index over the same chunks that are written to the vector store, catches exact policy terms,
+ * section numbers and acronyms that embeddings tend to blur. Postings are parallel primitive arrays (doc ordinal,
+ * term frequency) per term, so memory stays close to two ints per term occurrence. Chunks are added and deleted
+ * incrementally by id; deleted ordinals are tombstoned and dropped from the postings once they make up a quarter of
+ * the index.
+ */
+@Component
+public class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // words, numbers and dotted section numbers like 4.2.1
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("[\\p{L}\\p{N}]+(?:\\.\\p{N}+)*");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private Postings[] postings = new Postings[1024];
+    private int[] docFreqs = new int[1024];
+
+    private final Map<String, Integer> ordinalsById = new HashMap<>();
+    private Document[] documents = new Document[256];
+    private int[] docLengths = new int[256];
+    private int[][] docTermIds = new int[256][];
+    private final BitSet deleted = new BitSet();
+    private int nextOrdinal;
+    private int liveDocs;
+    private long totalLength;
+
+    /**
+     * Adds the chunks, a chunk with an id that is already indexed replaces the indexed one.
+     */
+    public void add(Collection<Document> chunks) {
+        lock.writeLock().lock();
+        try {
+            for (Document chunk : chunks) {
+                Assert.notNull(chunk.getId(), "chunk id cannot be null");
+                Integer existing = ordinalsById.get(chunk.getId());
+                if (existing != null)
+                    remove(existing);
+                index(chunk);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(Collection<String> chunkIds) {
+        lock.writeLock().lock();
+        try {
+            for (String chunkId : chunkIds) {
+                Integer ordinal = ordinalsById.get(chunkId);
+                if (ordinal != null)
+                    remove(ordinal);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Best matching chunks first, with the bm25 score set as document score.
+     */
+    public List<Document> search(String query, int topK) {
+        Map<Integer, Integer> queryTerms = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String token : tokenize(query)) {
+                Integer termId = termIds.get(token);
+                if (termId != null)
+                    queryTerms.merge(termId, 1, Integer::sum);
+            }
+            if (queryTerms.isEmpty() || liveDocs == 0)
+                return List.of();
+
+            float avgDocLength = (float) totalLength / liveDocs;
+            float[] scores = new float[nextOrdinal];
+            for (Map.Entry<Integer, Integer> queryTerm : queryTerms.entrySet()) {
+                int termId = queryTerm.getKey();
+                int df = docFreqs[termId];
+                if (df == 0)
+                    continue;
+                float idf = (float) Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+                Postings termPostings = postings[termId];
+                for (int i = 0; i < termPostings.size; i++) {
+                    int ordinal = termPostings.ordinals[i];
+                    if (deleted.get(ordinal))
+                        continue;
+                    int tf = termPostings.freqs[i];
+                    float norm = K1 * (1 - B + B * docLengths[ordinal] / avgDocLength);
+                    scores[ordinal] += queryTerm.getValue() * idf * (tf * (K1 + 1)) / (tf + norm);
+                }
+            }
+
+            PriorityQueue<Integer> top = new PriorityQueue<>(topK + 1, (a, b) -> Float.compare(scores[a], scores[b]));
+            for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+                if (scores[ordinal] <= 0)
+                    continue;
+                top.offer(ordinal);
+                if (top.size() > topK)
+                    top.poll();
+            }
+            List<Document> results = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int ordinal = top.poll();
+                results.add(documents[ordinal].mutate().score((double) scores[ordinal]).build());
+            }
+            Collections.reverse(results);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(Document chunk) {
+        Map<Integer, Integer> termFreqs = new HashMap<>();
+        int length = 0;
+        for (String token : tokenize(chunk.getText())) {
+            int termId = termIds.computeIfAbsent(token, t -> termIds.size());
+            termFreqs.merge(termId, 1, Integer::sum);
+            length++;
+        }
+        int ordinal = nextOrdinal++;
+        ensureDocCapacity(ordinal);
+        ensureTermCapacity(termIds.size());
+        int[] distinctTerms = new int[termFreqs.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> termFreq : termFreqs.entrySet()) {
+            int termId = termFreq.getKey();
+            if (postings[termId] == null)
+                postings[termId] = new Postings();
+            postings[termId].add(ordinal, termFreq.getValue());
+            docFreqs[termId]++;
+            distinctTerms[i++] = termId;
+        }
+        documents[ordinal] = chunk;
+        docLengths[ordinal] = length;
+        docTermIds[ordinal] = distinctTerms;
+        ordinalsById.put(chunk.getId(), ordinal);
+        liveDocs++;
+        totalLength += length;
+    }
+
+    private void remove(int ordinal) {
+        for (int termId : docTermIds[ordinal])
+            docFreqs[termId]--;
+        ordinalsById.remove(documents[ordinal].getId());
+        totalLength -= docLengths[ordinal];
+        liveDocs--;
+        documents[ordinal] = null;
+        docTermIds[ordinal] = null;
+        deleted.set(ordinal);
+    }
+
+    private void compactIfNeeded() {
+        if (deleted.cardinality() > nextOrdinal / 4)
+            compact();
+    }
+
+    // renumbering live chunks, postings stay sorted by ordinal since the relative order is kept
+    private void compact() {
+        int[] newOrdinals = new int[nextOrdinal];
+        int live = 0;
+        for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+            if (deleted.get(ordinal)) {
+                newOrdinals[ordinal] = -1;
+                continue;
+            }
+            newOrdinals[ordinal] = live;
+            documents[live] = documents[ordinal];
+            docLengths[live] = docLengths[ordinal];
+            docTermIds[live] = docTermIds[ordinal];
+            ordinalsById.put(documents[live].getId(), live);
+            live++;
+        }
+        Arrays.fill(documents, live, nextOrdinal, null);
+        Arrays.fill(docTermIds, live, nextOrdinal, null);
+        for (Postings termPostings : postings) {
+            if (termPostings != null)
+                termPostings.remap(newOrdinals);
+        }
+        deleted.clear();
+        nextOrdinal = live;
+    }
+
+    private void ensureDocCapacity(int ordinal) {
+        if (ordinal < documents.length)
+            return;
+        int capacity = documents.length * 2;
+        documents = Arrays.copyOf(documents, capacity);
+        docLengths = Arrays.copyOf(docLengths, capacity);
+        docTermIds = Arrays.copyOf(docTermIds, capacity);
+    }
+
+    private void ensureTermCapacity(int terms) {
+        if (terms <= postings.length)
+            return;
+        int capacity = Math.max(terms, postings.length * 2);
+        postings = Arrays.copyOf(postings, capacity);
+        docFreqs = Arrays.copyOf(docFreqs, capacity);
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null)
+            return List.of();
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN_PATTERN.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find())
+            tokens.add(matcher.group());
+        return tokens;
+    }
+
+    private static final class Postings {
+
+        private int[] ordinals = new int[4];
+        private int[] freqs = new int[4];
+        private int size;
+
+        void add(int ordinal, int freq) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            ordinals[size] = ordinal;
+            freqs[size] = freq;
+            size++;
+        }
+
+        void remap(int[] newOrdinals) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int ordinal = newOrdinals[ordinals[i]];
+                if (ordinal < 0)
+                    continue;
+                ordinals[kept] = ordinal;
+                freqs[kept] = freqs[i];
+                kept++;
+            }
+            size = kept;
+            // giving memory back when a term lost most of its postings
+            if (kept < ordinals.length / 4) {
+                ordinals = Arrays.copyOf(ordinals, Math.max(4, kept));
+                freqs = Arrays.copyOf(freqs, Math.max(4, kept));
+            }
+        }
+    }
+}
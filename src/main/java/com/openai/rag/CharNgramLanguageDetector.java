@@ -0,0 +1,138 @@
+package com.openai.rag;
+
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Local language identification without any model call. Every language is a character trigram frequency profile
+ * (built from the sample texts under {@code languageProfiles/}), a text is scored with a naive bayes log likelihood
+ * against each profile. Texts written mostly in a non latin script are reported by their script name.
+ */
+public class CharNgramLanguageDetector {
+
+    public static final List<String> DEFAULT_LANGUAGES = List.of("english", "spanish", "french", "german", "italian", "portuguese", "dutch");
+
+    private static final int N = 3;
+
+    public record Detection(String language, double confidence) {
+    }
+
+    private final Map<String, Profile> profiles = new LinkedHashMap<>();
+
+    public CharNgramLanguageDetector(Map<String, String> samplesByLanguage) {
+        if (samplesByLanguage.isEmpty())
+            throw new IllegalArgumentException("at least one language sample is required");
+        samplesByLanguage.forEach((language, sample) -> profiles.put(language, Profile.of(sample)));
+    }
+
+    public static CharNgramLanguageDetector withDefaultProfiles() {
+        Map<String, String> samples = new LinkedHashMap<>();
+        for (String language : DEFAULT_LANGUAGES) {
+            try {
+                samples.put(language, new ClassPathResource("languageProfiles/" + language + ".txt").getContentAsString(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not load language profile " + language, ex);
+            }
+        }
+        return new CharNgramLanguageDetector(samples);
+    }
+
+    /**
+     * @return whether the language is told apart by a trigram profile, as opposed to by its script
+     */
+    public boolean hasProfile(String language) {
+        return profiles.containsKey(language);
+    }
+
+    /**
+     * @return the most likely language and a confidence between 0 and 1, derived from the margin to the runner up
+     */
+    public Detection detect(String text) {
+        String nonLatinScript = dominantNonLatinScript(text);
+        if (nonLatinScript != null)
+            return new Detection(nonLatinScript, 1.0);
+
+        Map<String, Integer> grams = ngrams(text);
+        int total = grams.values().stream().mapToInt(Integer::intValue).sum();
+        if (total == 0)
+            return new Detection("unknown", 0.0);
+
+        String best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double secondScore = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<String, Profile> profile : profiles.entrySet()) {
+            double score = profile.getValue().logLikelihood(grams) / total;
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = profile.getKey();
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+        if (secondScore == Double.NEGATIVE_INFINITY)
+            return new Detection(best, 1.0);
+        // average per trigram log likelihood margin, a margin of 1 nat or more is treated as certain
+        return new Detection(best, Math.min(1.0, bestScore - secondScore));
+    }
+
+    private static String dominantNonLatinScript(String text) {
+        Map<Character.UnicodeScript, Integer> scripts = new HashMap<>();
+        int letters = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (!Character.isLetter(codePoint))
+                continue;
+            letters++;
+            Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+            if (script != Character.UnicodeScript.LATIN)
+                scripts.merge(script, 1, Integer::sum);
+        }
+        if (letters == 0)
+            return null;
+        for (Map.Entry<Character.UnicodeScript, Integer> script : scripts.entrySet()) {
+            if (script.getValue() * 2 > letters)
+                return script.getKey().name().toLowerCase(Locale.ROOT);
+        }
+        return null;
+    }
+
+    static Map<String, Integer> ngrams(String text) {
+        Map<String, Integer> grams = new HashMap<>();
+        // words are padded with spaces so that word starts and endings become features of their own
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}']+")) {
+            if (word.isEmpty())
+                continue;
+            String padded = " " + word + " ";
+            for (int i = 0; i + N <= padded.length(); i++)
+                grams.merge(padded.substring(i, i + N), 1, Integer::sum);
+        }
+        return grams;
+    }
+
+    private record Profile(Map<String, Integer> counts, int total) {
+
+        static Profile of(String sample) {
+            Map<String, Integer> counts = ngrams(sample);
+            return new Profile(counts, counts.values().stream().mapToInt(Integer::intValue).sum());
+        }
+
+        double logLikelihood(Map<String, Integer> grams) {
+            // add one smoothing, unseen trigrams are unlikely but not impossible
+            double denominator = Math.log(total + counts.size() + 1.0);
+            double score = 0;
+            for (Map.Entry<String, Integer> gram : grams.entrySet())
+                score += gram.getValue() * (Math.log(counts.getOrDefault(gram.getKey(), 0) + 1.0) - denominator);
+            return score;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.openai.rag;
+
+/**
+ * Published by the document loaders once a new version of a source document has been written to the vector store,
+ * anything that holds answers or context derived from the old version should listen to it and invalidate.
+ */
+public record DocumentIngestedEvent(String source, int chunkCount) {
+}
@@ -1,36 +1,183 @@
 package com.openai.rag;
 
+import com.openai.ingestion.ChunkManifestStore;
+import com.openai.ingestion.IngestionPipeline;
+import com.openai.ingestion.IngestionResult;
+import com.openai.ingestion.IngestionStatus;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.transformer.splitter.TextSplitter;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class HRPolicyLoader {
 
+    private static final Logger logger = LoggerFactory.getLogger(HRPolicyLoader.class);
+
     private final VectorStore vectorStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChunkManifestStore chunkManifestStore;
+    private final IngestionStatus ingestionStatus;
+    private final IngestionPipeline ingestionPipeline;
+    private final PIIMasker piiMasker;
+    private final boolean maskAtIngestion;
+    private final Bm25Index bm25Index;
+    private final Duration retryInitialDelay;
+    private final Duration retryMaxDelay;
+    private final AtomicInteger failedAttempts = new AtomicInteger();
+    private final ScheduledExecutorService retryScheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("ingestion-retry").daemon().factory());
 
-    public HRPolicyLoader(VectorStore vectorStore) {
+    public HRPolicyLoader(VectorStore vectorStore, ApplicationEventPublisher eventPublisher,
+                          ChunkManifestStore chunkManifestStore, IngestionStatus ingestionStatus,
+                          IngestionPipeline ingestionPipeline, PIIMasker piiMasker,
+                          @Value("${pii.masking.at-ingestion:true}") boolean maskAtIngestion, Bm25Index bm25Index,
+                          @Value("${ingestion.reingest.initial-delay:30s}") Duration retryInitialDelay,
+                          @Value("${ingestion.reingest.max-delay:10m}") Duration retryMaxDelay) {
         this.vectorStore = vectorStore;
+        this.ingestionPipeline = ingestionPipeline;
+        this.piiMasker = piiMasker;
+        this.maskAtIngestion = maskAtIngestion;
+        this.bm25Index = bm25Index;
+        this.eventPublisher = eventPublisher;
+        this.chunkManifestStore = chunkManifestStore;
+        this.ingestionStatus = ingestionStatus;
+        this.retryInitialDelay = retryInitialDelay;
+        this.retryMaxDelay = retryMaxDelay;
     }
 
     @Value("classpath:CoDev_HR_Policy.pdf")
     Resource hrPolicyFile;
 
+    // registering the source early, so readiness reports out of service until the first ingestion has finished
     @PostConstruct
+    void registerSource() {
+        ingestionStatus.pending(hrPolicyFile.getFilename());
+    }
+
+    // runs on the task executor once the application is up, so embedding calls never block startup
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
     public void loadPDF() {
-        TikaDocumentReader tikaDocumentReader = new TikaDocumentReader(hrPolicyFile);
-        List<Document> documents = tikaDocumentReader.get();
-        // vectorStore.add(documents); -- storing full document directly into store
-        // splitting document into chunks
-        TextSplitter textSplitter = TokenTextSplitter.builder().withChunkSize(100).withMaxNumChunks(400).build();
-        vectorStore.add(textSplitter.split(documents));
+        String source = hrPolicyFile.getFilename();
+        ingestionStatus.running(source);
+        try {
+            TikaDocumentReader tikaDocumentReader = new TikaDocumentReader(hrPolicyFile);
+            List<Document> documents = tikaDocumentReader.get();
+            // vectorStore.add(documents); -- storing full document directly into store
+            // splitting document into chunks
+            TextSplitter textSplitter = TokenTextSplitter.builder().withChunkSize(100).withMaxNumChunks(400).build();
+
+            Optional<Map<String, String>> previousManifest = chunkManifestStore.load(source);
+            // chunks that are in the manifest but no longer in the store count as new
+            Map<String, String> previousChunks = chunkManifestStore.retainStored(source, previousManifest.orElse(Map.of()));
+            Map<String, String> currentChunks = new LinkedHashMap<>();
+            Map<String, Integer> occurrences = new HashMap<>();
+            // every chunk of the current version, the bm25 index lives in memory and is rebuilt from these on each start
+            Map<String, Document> currentDocuments = new LinkedHashMap<>();
+            if (previousManifest.isEmpty())
+                deleteUntrackedChunks(source);
+
+            // the chunker runs on the pipeline's split stage, only chunks that are not in the manifest yet are passed on
+            IngestionResult result = ingestionPipeline.ingest(documents.stream(), document -> {
+                List<Document> newChunks = new ArrayList<>();
+                for (Document chunk : textSplitter.split(document)) {
+                    String text = chunk.getText() != null ? chunk.getText() : "";
+                    // masking before hashing, so a change in the masking rules re-ingests the affected chunks
+                    if (maskAtIngestion)
+                        text = piiMasker.mask(text);
+                    String contentHash = ChunkManifestStore.contentHash(text);
+                    int occurrence = occurrences.merge(contentHash, 1, Integer::sum);
+                    String chunkId = ChunkManifestStore.chunkId(source, contentHash, occurrence);
+                    currentChunks.put(chunkId, contentHash);
+                    Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+                    metadata.put("source", source);
+                    metadata.put("content_hash", contentHash);
+                    // lets the rag post-processor skip masking for this chunk on every retrieval
+                    if (maskAtIngestion)
+                        metadata.put(PIIMaskingDocumentPostProcessor.PII_MASKED, true);
+                    Document chunkDocument = Document.builder()
+                            .id(chunkId)
+                            .text(text)
+                            .metadata(metadata)
+                            .build();
+                    currentDocuments.put(chunkId, chunkDocument);
+                    // chunk id is derived from the content, an id that is already in the manifest is already in the store
+                    if (!previousChunks.containsKey(chunkId))
+                        newChunks.add(chunkDocument);
+                }
+                return newChunks;
+            });
+            Set<String> staleChunkIds = new HashSet<>(previousChunks.keySet());
+            staleChunkIds.removeAll(currentChunks.keySet());
+            if (!staleChunkIds.isEmpty())
+                vectorStore.delete(List.copyOf(staleChunkIds));
+            // failed chunks stay out of the manifest, so the next run picks them up again
+            result.failedChunkIds().forEach(currentChunks::remove);
+            chunkManifestStore.save(source, currentChunks);
+            // lexical index mirrors the vector store, failed chunks are left out of both
+            result.failedChunkIds().forEach(currentDocuments::remove);
+            bm25Index.delete(staleChunkIds);
+            bm25Index.add(currentDocuments.values());
+
+            logger.info("Ingested {}: {} chunks, {} added, {} deleted, {} failed", source, currentChunks.size(),
+                    result.chunksUpserted(), staleChunkIds.size(), result.failedChunkIds().size());
+            if (result.chunksUpserted() > 0 || !staleChunkIds.isEmpty()) {
+                // letting caches know that answers based on the previous policy version are stale
+                eventPublisher.publishEvent(new DocumentIngestedEvent(source, currentChunks.size()));
+            }
+            if (result.hasFailures())
+                throw new IllegalStateException(result.failedChunkIds().size() + " chunks could not be ingested");
+            ingestionStatus.completed(source, result.chunksUpserted() + " added, " + staleChunkIds.size() + " deleted");
+            failedAttempts.set(0);
+        } catch (RuntimeException ex) {
+            // readiness stays down until a retry succeeds, the delay doubles with every failed attempt
+            int attempt = failedAttempts.incrementAndGet();
+            long delayMillis = Math.min(retryMaxDelay.toMillis(), retryInitialDelay.toMillis() << Math.min(attempt - 1, 20));
+            logger.error("Ingestion of {} failed, retrying in {} ms", source, delayMillis, ex);
+            ingestionStatus.failed(source, ex);
+            retryScheduler.schedule(this::loadPDF, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdownRetries() {
+        retryScheduler.shutdownNow();
+    }
+
+    // without a manifest we cannot tell which points belong to earlier runs (random ids), so clearing them by source
+    private void deleteUntrackedChunks(String source) {
+        try {
+            vectorStore.delete(new FilterExpressionBuilder().eq("source", source).build());
+        } catch (RuntimeException ex) {
+            logger.warn("Could not delete untracked chunks of {}, duplicates may remain in the vector store", source, ex);
+        }
     }
 }
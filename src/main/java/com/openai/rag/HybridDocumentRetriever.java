@@ -0,0 +1,146 @@
+package com.openai.rag;
+
+import com.openai.resilience.RequestDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the vector search and the {@link Bm25Index} search concurrently and merges both rankings with reciprocal rank
+ * fusion: every chunk scores {@code 1 / (rrfK + rank)} per list it appears in. Raw scores of the two sides are not
+ * comparable, ranks are. If one side fails the other one is still returned.
+ */
+public class HybridDocumentRetriever implements DocumentRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridDocumentRetriever.class);
+
+    // vector searches are blocking grpc calls, a virtual thread per search is enough
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final DocumentRetriever vectorRetriever;
+    private final Bm25Index bm25Index;
+    private final int lexicalTopK;
+    private final int topK;
+    private final int rrfK;
+
+    private HybridDocumentRetriever(Builder builder) {
+        Assert.notNull(builder.vectorRetriever, "vectorRetriever cannot be null");
+        Assert.notNull(builder.bm25Index, "bm25Index cannot be null");
+        this.vectorRetriever = builder.vectorRetriever;
+        this.bm25Index = builder.bm25Index;
+        this.lexicalTopK = builder.lexicalTopK;
+        this.topK = builder.topK;
+        this.rrfK = builder.rrfK;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        Assert.notNull(query, "query cannot be null");
+        CompletableFuture<List<Document>> vectorSearch = CompletableFuture.supplyAsync(() -> vectorRetriever.retrieve(query), SEARCH_EXECUTOR);
+        // the lexical side is in memory, it runs on the calling thread while qdrant answers
+        List<Document> lexicalResults;
+        try {
+            lexicalResults = bm25Index.search(query.text(), lexicalTopK);
+        } catch (RuntimeException ex) {
+            logger.warn("Lexical search failed, using vector results only", ex);
+            lexicalResults = List.of();
+        }
+        List<Document> vectorResults;
+        try {
+            // a vector search still running at the request deadline is given up on, like a failed one
+            RequestDeadline deadline = RequestDeadline.from(query.context()).orElse(null);
+            vectorResults = deadline != null
+                    ? vectorSearch.orTimeout(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS).join()
+                    : vectorSearch.join();
+        } catch (CompletionException ex) {
+            vectorSearch.cancel(true);
+            if (lexicalResults.isEmpty())
+                throw ex;
+            logger.warn("Vector search failed, using lexical results only", ex.getCause());
+            vectorResults = List.of();
+        }
+        return fuse(vectorResults, lexicalResults);
+    }
+
+    private List<Document> fuse(List<Document> vectorResults, List<Document> lexicalResults) {
+        Map<String, Document> documentsById = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<Document> ranking : List.of(vectorResults, lexicalResults)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                // keeping the vector store copy of a chunk when both sides returned it
+                documentsById.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        List<Document> fused = new ArrayList<>(documentsById.size());
+        for (Map.Entry<String, Document> entry : documentsById.entrySet())
+            fused.add(entry.getValue().mutate().score(scores.get(entry.getKey())).build());
+        fused.sort(Comparator.comparing(Document::getScore).reversed());
+        return fused.size() > topK ? List.copyOf(fused.subList(0, topK)) : fused;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private DocumentRetriever vectorRetriever;
+        private Bm25Index bm25Index;
+        private int lexicalTopK = 10;
+        private int topK = 5;
+        private int rrfK = 60;
+
+        private Builder() {
+        }
+
+        // candidates of the vector side are whatever topK this retriever was built with
+        public Builder vectorRetriever(DocumentRetriever vectorRetriever) {
+            this.vectorRetriever = vectorRetriever;
+            return this;
+        }
+
+        public Builder bm25Index(Bm25Index bm25Index) {
+            this.bm25Index = bm25Index;
+            return this;
+        }
+
+        public Builder lexicalTopK(int lexicalTopK) {
+            Assert.isTrue(lexicalTopK > 0, "lexicalTopK must be greater than zero");
+            this.lexicalTopK = lexicalTopK;
+            return this;
+        }
+
+        public Builder topK(int topK) {
+            Assert.isTrue(topK > 0, "topK must be greater than zero");
+            this.topK = topK;
+            return this;
+        }
+
+        // 60 is the constant from the original rrf paper, lower values favour the top ranks more
+        public Builder rrfK(int rrfK) {
+            Assert.isTrue(rrfK > 0, "rrfK must be greater than zero");
+            this.rrfK = rrfK;
+            return this;
+        }
+
+        public HybridDocumentRetriever build() {
+            return new HybridDocumentRetriever(this);
+        }
+    }
+}
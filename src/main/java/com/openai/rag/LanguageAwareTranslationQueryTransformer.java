@@ -0,0 +1,156 @@
+package com.openai.rag;
+
+import com.openai.cache.ExpiringLruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.ai.rag.preretrieval.query.transformation.TranslationQueryTransformer;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Front stage for {@link TranslationQueryTransformer}, the language of the query is detected locally and the llm
+ * translation round trip only happens for queries that are not already in the target language. Translations of
+ * repeated non target language queries are served from a cache.
+ */
+public class LanguageAwareTranslationQueryTransformer implements QueryTransformer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LanguageAwareTranslationQueryTransformer.class);
+
+    private final QueryTransformer translationQueryTransformer;
+    private final CharNgramLanguageDetector languageDetector;
+    private final String targetLanguage;
+    private final double minConfidence;
+    private final int minQueryWords;
+    private final ExpiringLruCache<String, String> translations;
+
+    private final Counter bypassed;
+    private final Counter cached;
+    private final Counter translated;
+
+    private LanguageAwareTranslationQueryTransformer(Builder builder) {
+        this.translationQueryTransformer = TranslationQueryTransformer.builder()
+                .chatClientBuilder(builder.chatClientBuilder)
+                .targetLanguage(builder.targetLanguage)
+                .build();
+        this.languageDetector = builder.languageDetector;
+        this.targetLanguage = builder.targetLanguage.toLowerCase(Locale.ROOT);
+        this.minConfidence = builder.minConfidence;
+        this.minQueryWords = builder.minQueryWords;
+        this.translations = new ExpiringLruCache<>(builder.cacheSize, builder.cacheTtl);
+        this.bypassed = translationCounter(builder.meterRegistry, "bypassed");
+        this.cached = translationCounter(builder.meterRegistry, "cached");
+        this.translated = translationCounter(builder.meterRegistry, "translated");
+    }
+
+    @Override
+    public Query transform(Query query) {
+        Assert.notNull(query, "query cannot be null");
+        CharNgramLanguageDetector.Detection detection = languageDetector.detect(query.text());
+        // a few latin script words share too many trigrams between languages to tell them apart, short queries and
+        // low confidence detections are taken to be in the target language rather than paying for a translation
+        boolean tooShort = languageDetector.hasProfile(detection.language()) && words(query.text()) < minQueryWords;
+        if (targetLanguage.equals(detection.language()) || tooShort || detection.confidence() < minConfidence) {
+            bypassed.increment();
+            return query;
+        }
+        String key = query.text().trim().toLowerCase(Locale.ROOT);
+        String cachedTranslation = translations.get(key);
+        if (cachedTranslation != null) {
+            cached.increment();
+            return query.mutate().text(cachedTranslation).build();
+        }
+        logger.debug("Translating query detected as {} ({}) to {}", detection.language(), detection.confidence(), targetLanguage);
+        Query translatedQuery = translationQueryTransformer.transform(query);
+        translations.put(key, translatedQuery.text());
+        translated.increment();
+        return translatedQuery;
+    }
+
+    private static int words(String text) {
+        String stripped = text.strip();
+        return stripped.isEmpty() ? 0 : stripped.split("\\s+").length;
+    }
+
+    private static Counter translationCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("rag.query.translation")
+                .description("Query translations by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private ChatClient.Builder chatClientBuilder;
+        private String targetLanguage = "english";
+        private CharNgramLanguageDetector languageDetector;
+        private double minConfidence = 0.2;
+        private int minQueryWords = 3;
+        private int cacheSize = 1000;
+        private Duration cacheTtl = Duration.ofHours(24);
+        private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private Builder() {
+        }
+
+        public Builder chatClientBuilder(ChatClient.Builder chatClientBuilder) {
+            this.chatClientBuilder = chatClientBuilder;
+            return this;
+        }
+
+        public Builder targetLanguage(String targetLanguage) {
+            this.targetLanguage = targetLanguage;
+            return this;
+        }
+
+        public Builder languageDetector(CharNgramLanguageDetector languageDetector) {
+            this.languageDetector = languageDetector;
+            return this;
+        }
+
+        public Builder minConfidence(double minConfidence) {
+            this.minConfidence = minConfidence;
+            return this;
+        }
+
+        // queries with fewer words are not translated, unless written in a non latin script
+        public Builder minQueryWords(int minQueryWords) {
+            this.minQueryWords = minQueryWords;
+            return this;
+        }
+
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder cacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public LanguageAwareTranslationQueryTransformer build() {
+            Assert.notNull(chatClientBuilder, "chatClientBuilder cannot be null");
+            Assert.hasText(targetLanguage, "targetLanguage cannot be empty");
+            if (languageDetector == null)
+                languageDetector = CharNgramLanguageDetector.withDefaultProfiles();
+            return new LanguageAwareTranslationQueryTransformer(this);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.openai.rag;
+
+import com.openai.cache.CachingEmbeddingModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.postretrieval.document.DocumentPostProcessor;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diversifies an over-fetched candidate list with maximal marginal relevance: chunks are picked one at a time by
+ * {@code lambda * relevance - (1 - lambda) * max similarity to the chunks already picked}, so a neighbouring chunk
+ * that repeats one already in the prompt loses its place to a chunk that adds something new.
+ * <p>
+ * Relevance is the retrieval score (scaled to the best candidate), similarity is the cosine of the chunk embeddings
+ * that are already in the {@link CachingEmbeddingModel} from ingestion, so reranking never calls the model. A chunk
+ * without a cached vector only competes on relevance.
+ */
+public class MmrDocumentPostProcessor implements DocumentPostProcessor {
+
+    private final CachingEmbeddingModel embeddingModel;
+    private final int topN;
+    private final double lambda;
+    private final double redundancyThreshold;
+    private final TokenCountEstimator tokenCountEstimator;
+
+    private final Timer duration;
+    private final DistributionSummary redundantTokensAvoided;
+
+    private MmrDocumentPostProcessor(Builder builder) {
+        Assert.notNull(builder.embeddingModel, "embeddingModel cannot be null");
+        this.embeddingModel = builder.embeddingModel;
+        this.topN = builder.topN;
+        this.lambda = builder.lambda;
+        this.redundancyThreshold = builder.redundancyThreshold;
+        this.tokenCountEstimator = builder.tokenCountEstimator;
+        this.duration = Timer.builder("rag.mmr.duration")
+                .description("Time spent reranking retrieved chunks").register(builder.meterRegistry);
+        this.redundantTokensAvoided = DistributionSummary.builder("rag.mmr.redundant.tokens.avoided")
+                .description("Estimated prompt tokens of near duplicate chunks a plain top n would have sent")
+                .baseUnit("tokens").register(builder.meterRegistry);
+    }
+
+    @Override
+    public List<Document> process(Query query, List<Document> documents) {
+        Assert.notNull(query, "Query cannot not be null");
+        Assert.notNull(documents, "Documents list cannot not be null");
+        Assert.noNullElements(documents, "Documents list cannot contain null elements");
+        if (documents.size() <= topN)
+            return documents;
+
+        long start = System.nanoTime();
+        int n = documents.size();
+        double[] relevance = relevance(documents);
+        float[][] vectors = normalizedVectors(documents);
+
+        boolean[] selected = new boolean[n];
+        // highest similarity of every candidate to any chunk picked so far
+        double[] maxSimilarity = new double[n];
+        List<Document> diversified = new ArrayList<>(topN);
+        while (diversified.size() < topN) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (selected[i])
+                    continue;
+                double score = lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            selected[best] = true;
+            diversified.add(documents.get(best));
+            for (int i = 0; i < n; i++) {
+                if (!selected[i])
+                    maxSimilarity[i] = Math.max(maxSimilarity[i], cosine(vectors[best], vectors[i]));
+            }
+        }
+        duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        // candidates are ranked, so the first topN are what would have been sent without reranking
+        long avoided = 0;
+        for (int i = 0; i < topN; i++) {
+            if (!selected[i] && maxSimilarity[i] >= redundancyThreshold)
+                avoided += tokenCountEstimator.estimate(documents.get(i).getText());
+        }
+        redundantTokensAvoided.record(avoided);
+        return diversified;
+    }
+
+    // scaled to [0, 1] by the best candidate, sources without scores are ranked by position
+    private static double[] relevance(List<Document> documents) {
+        double[] relevance = new double[documents.size()];
+        double best = 0;
+        for (int i = 0; i < relevance.length; i++) {
+            Double score = documents.get(i).getScore();
+            relevance[i] = score != null ? score : 1.0 / (i + 1);
+            best = Math.max(best, relevance[i]);
+        }
+        for (int i = 0; best > 0 && i < relevance.length; i++)
+            relevance[i] /= best;
+        return relevance;
+    }
+
+    private float[][] normalizedVectors(List<Document> documents) {
+        List<float[]> cached = embeddingModel.cached(documents.stream()
+                .map(document -> document.getText() != null ? document.getText() : "")
+                .toList());
+        float[][] vectors = new float[cached.size()][];
+        for (int i = 0; i < vectors.length; i++) {
+            float[] vector = cached.get(i);
+            if (vector == null)
+                continue;
+            double norm = 0;
+            for (float value : vector)
+                norm += value * value;
+            if (norm == 0)
+                continue;
+            // copied, cached vectors are shared
+            float inverse = (float) (1 / Math.sqrt(norm));
+            vectors[i] = new float[vector.length];
+            for (int j = 0; j < vector.length; j++)
+                vectors[i][j] = vector[j] * inverse;
+        }
+        return vectors;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        if (a == null || b == null || a.length != b.length)
+            return 0;
+        double dot = 0;
+        for (int i = 0; i < a.length; i++)
+            dot += a[i] * b[i];
+        return dot;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private CachingEmbeddingModel embeddingModel;
+        private int topN = 5;
+        private double lambda = 0.7;
+        private double redundancyThreshold = 0.9;
+        private TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+        private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private Builder() {
+        }
+
+        public Builder embeddingModel(CachingEmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder topN(int topN) {
+            Assert.isTrue(topN > 0, "topN must be greater than zero");
+            this.topN = topN;
+            return this;
+        }
+
+        // 1 ranks by relevance only, lower values trade relevance for diversity
+        public Builder lambda(double lambda) {
+            Assert.isTrue(lambda >= 0 && lambda <= 1, "lambda must be between 0 and 1");
+            this.lambda = lambda;
+            return this;
+        }
+
+        // similarity from which a dropped chunk counts as a near duplicate in the token savings metric
+        public Builder redundancyThreshold(double redundancyThreshold) {
+            Assert.isTrue(redundancyThreshold > 0 && redundancyThreshold <= 1, "redundancyThreshold must be between 0 and 1");
+            this.redundancyThreshold = redundancyThreshold;
+            return this;
+        }
+
+        public Builder tokenCountEstimator(TokenCountEstimator tokenCountEstimator) {
+            this.tokenCountEstimator = tokenCountEstimator;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public MmrDocumentPostProcessor build() {
+            return new MmrDocumentPostProcessor(this);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.openai.rag;
+
+import com.openai.resilience.RequestDeadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fans a query out to several retrievers at once (internal policies, the web, ...), each with its own deadline.
+ * Sources that answer in time are used, a source that misses its deadline or fails is cancelled and left out, so the
+ * retrieval takes as long as the slowest deadline at most instead of the sum of all sources.
+ * <p>
+ * Scores of different sources are not comparable, so every source's scores are divided by its best score before
+ * merging. The same chunk returned by two sources (same id or same text) is kept once, with its higher score, and every
+ * result is tagged with the {@code retrieval_source} it came from.
+ */
+public class MultiSourceDocumentRetriever implements DocumentRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiSourceDocumentRetriever.class);
+
+    // "source" is already taken by the file name chunks were loaded from
+    public static final String RETRIEVAL_SOURCE = "retrieval_source";
+
+    // sources block on http or grpc calls, a virtual thread per source and query is enough
+    private static final ExecutorService RETRIEVAL_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final List<Source> sources;
+    private final int topK;
+    private final MeterRegistry meterRegistry;
+
+    private record Source(String name, DocumentRetriever retriever, Duration deadline) {
+    }
+
+    private MultiSourceDocumentRetriever(Builder builder) {
+        Assert.notEmpty(builder.sources, "at least one source is required");
+        this.sources = List.copyOf(builder.sources);
+        this.topK = builder.topK;
+        this.meterRegistry = builder.meterRegistry;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        Assert.notNull(query, "query cannot be null");
+        long start = System.nanoTime();
+        List<Future<List<Document>>> searches = new ArrayList<>(sources.size());
+        for (Source source : sources)
+            searches.add(RETRIEVAL_EXECUTOR.submit(() -> source.retriever().retrieve(query)));
+
+        // deadlines count from the fan out, waiting on one source eats into nobody else's budget,
+        // and no source is waited for past the deadline of the request itself
+        RequestDeadline requestDeadline = RequestDeadline.from(query.context()).orElse(null);
+        Map<String, List<Document>> resultsBySource = new LinkedHashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            Future<List<Document>> search = searches.get(i);
+            String outcome = "success";
+            try {
+                long remaining = source.deadline().toNanos() - (System.nanoTime() - start);
+                if (requestDeadline != null)
+                    remaining = Math.min(remaining, requestDeadline.remaining().toNanos());
+                resultsBySource.put(source.name(), search.get(Math.max(0, remaining), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException ex) {
+                outcome = "timeout";
+                search.cancel(true);
+                logger.warn("Source {} missed its deadline of {}, continuing without it", source.name(), source.deadline());
+            } catch (ExecutionException ex) {
+                outcome = "error";
+                logger.warn("Source {} failed, continuing without it", source.name(), ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                searches.forEach(pending -> pending.cancel(true));
+                break;
+            }
+            Timer.builder("rag.multi-source.retrieval").tag("source", source.name()).tag("outcome", outcome)
+                    .description("Time until a source answered or was given up on")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return merge(resultsBySource);
+    }
+
+    private List<Document> merge(Map<String, List<Document>> resultsBySource) {
+        Map<String, Document> merged = new LinkedHashMap<>();
+        // second index, web results get random ids but may carry a chunk another source also found
+        Map<String, String> idsByText = new HashMap<>();
+        resultsBySource.forEach((source, documents) -> {
+            double best = 0;
+            for (int rank = 0; rank < documents.size(); rank++)
+                best = Math.max(best, rawScore(documents.get(rank), rank));
+            for (int rank = 0; rank < documents.size(); rank++) {
+                Document document = documents.get(rank);
+                double score = best > 0 ? rawScore(document, rank) / best : 0;
+                String id = idsByText.getOrDefault(textKey(document), document.getId());
+                Document existing = merged.get(id);
+                if (existing != null && existing.getScore() >= score)
+                    continue;
+                // copied, the source may hand out cached documents
+                Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                metadata.put(RETRIEVAL_SOURCE, source);
+                merged.put(id, document.mutate().id(id).score(score).metadata(metadata).build());
+                idsByText.putIfAbsent(textKey(document), id);
+            }
+        });
+        List<Document> results = new ArrayList<>(merged.values());
+        results.sort(Comparator.comparing(Document::getScore).reversed());
+        return results.size() > topK ? List.copyOf(results.subList(0, topK)) : results;
+    }
+
+    // sources without scores are ranked by position
+    private static double rawScore(Document document, int rank) {
+        return document.getScore() != null ? document.getScore() : 1.0 / (rank + 1);
+    }
+
+    private static String textKey(Document document) {
+        String text = document.getText() != null ? document.getText() : "";
+        return text.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final List<Source> sources = new ArrayList<>();
+        private int topK = 8;
+        private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a source, results it has not returned within {@code deadline} of the query are not waited for.
+         */
+        public Builder source(String name, DocumentRetriever retriever, Duration deadline) {
+            Assert.hasText(name, "name cannot be null or empty");
+            Assert.notNull(retriever, "retriever cannot be null");
+            Assert.isTrue(deadline != null && deadline.isPositive(), "deadline must be positive");
+            Assert.isTrue(sources.stream().noneMatch(source -> source.name().equals(name)), "source " + name + " is already registered");
+            this.sources.add(new Source(name, retriever, deadline));
+            return this;
+        }
+
+        public Builder topK(int topK) {
+            Assert.isTrue(topK > 0, "topK must be greater than zero");
+            this.topK = topK;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public MultiSourceDocumentRetriever build() {
+            return new MultiSourceDocumentRetriever(this);
+        }
+    }
+}
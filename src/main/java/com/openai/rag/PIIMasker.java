@@ -0,0 +1,212 @@
+package com.openai.rag;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single pass PII scanner. All detectors are compiled into one alternation with a named group per detector, so a text
+ * is scanned once no matter how many detectors there are, and a text without PII is returned as is without copying.
+ * Detectors are tried in registration order at each position, more specific ones (emails, cards, ids, ips) go before
+ * phone numbers. A match that fails the detector's validator (ex - a 16 digit number that is not Luhn valid) is left
+ * untouched and scanning continues right after its first character.
+ */
+public class PIIMasker {
+
+    public static final Detector EMAIL = new Detector("email",
+            "\\b[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}\\b", "[REDACTED_EMAIL]", match -> true);
+    // 13 to 19 digits, optionally grouped with spaces or dashes
+    public static final Detector CREDIT_CARD = new Detector("creditCard",
+            "\\b(?:\\d[ -]?){12,18}\\d\\b", "[REDACTED_CARD]", PIIMasker::isLuhnValid);
+    // us social security number, indian aadhaar (verhoeff check digit) and indian pan
+    public static final Detector NATIONAL_ID = new Detector("nationalId",
+            "\\b(?:\\d{3}-\\d{2}-\\d{4}|[2-9]\\d{3}[ -]?\\d{4}[ -]?\\d{4}|[A-Z]{5}\\d{4}[A-Z])\\b", "[REDACTED_NATIONAL_ID]",
+            PIIMasker::isPlausibleNationalId);
+    public static final Detector IP_ADDRESS = new Detector("ipAddress",
+            "\\b(?:(?:\\d{1,3}\\.){3}\\d{1,3}|(?:[0-9A-Fa-f]{1,4}:){7}[0-9A-Fa-f]{1,4})\\b", "[REDACTED_IP]",
+            PIIMasker::isValidIpAddress);
+    // lookbehind instead of a word boundary, so a leading + is masked as part of the number
+    public static final Detector PHONE = new Detector("phone",
+            "(?<![\\w+])(?:\\+?\\d{1,3}[-.\\s]?)?\\(?\\d{3}\\)?[-.\\s]?\\d{3}[-.\\s]?\\d{4}\\b", "[REDACTED_PHONE]", match -> true);
+
+    // verhoeff dihedral group multiplication and position permutation tables
+    private static final int[][] VERHOEFF_MULTIPLICATION = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, {1, 2, 3, 4, 0, 6, 7, 8, 9, 5}, {2, 3, 4, 0, 1, 7, 8, 9, 5, 6},
+            {3, 4, 0, 1, 2, 8, 9, 5, 6, 7}, {4, 0, 1, 2, 3, 9, 5, 6, 7, 8}, {5, 9, 8, 7, 6, 0, 4, 3, 2, 1},
+            {6, 5, 9, 8, 7, 1, 0, 4, 3, 2}, {7, 6, 5, 9, 8, 2, 1, 0, 4, 3}, {8, 7, 6, 5, 9, 3, 2, 1, 0, 4},
+            {9, 8, 7, 6, 5, 4, 3, 2, 1, 0}};
+    private static final int[][] VERHOEFF_PERMUTATION = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, {1, 5, 7, 6, 2, 8, 3, 0, 9, 4}, {5, 8, 0, 3, 7, 9, 6, 1, 4, 2},
+            {8, 9, 1, 6, 0, 4, 3, 5, 2, 7}, {9, 4, 5, 3, 1, 2, 6, 8, 7, 0}, {4, 2, 8, 6, 5, 7, 3, 9, 0, 1},
+            {2, 7, 9, 3, 8, 0, 6, 4, 1, 5}, {7, 0, 4, 6, 9, 1, 3, 2, 5, 8}};
+
+    private final List<Detector> detectors;
+    private final String[] groupNames;
+    private final Pattern pattern;
+
+    private PIIMasker(List<Detector> detectors) {
+        Assert.notEmpty(detectors, "at least one detector is required");
+        this.detectors = List.copyOf(detectors);
+        this.groupNames = new String[this.detectors.size()];
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < this.detectors.size(); i++) {
+            // detector names are free text, group names have to be plain letters and digits
+            groupNames[i] = "d" + i;
+            if (i > 0)
+                regex.append('|');
+            regex.append("(?<").append(groupNames[i]).append('>').append(this.detectors.get(i).regex()).append(')');
+        }
+        this.pattern = Pattern.compile(regex.toString());
+    }
+
+    public static PIIMasker defaults() {
+        return builder().build();
+    }
+
+    public String mask(String text) {
+        if (text == null || text.isEmpty())
+            return text;
+        Matcher matcher = pattern.matcher(text);
+        StringBuilder masked = null;
+        int copied = 0;
+        int from = 0;
+        while (from < text.length() && matcher.find(from)) {
+            Detector detector = matchedDetector(matcher);
+            if (!detector.validator().test(matcher.group())) {
+                from = matcher.start() + 1;
+                continue;
+            }
+            // only allocating once we know there is something to mask
+            if (masked == null)
+                masked = new StringBuilder(text.length());
+            masked.append(text, copied, matcher.start()).append(detector.replacement());
+            copied = matcher.end();
+            from = matcher.end();
+        }
+        if (masked == null)
+            return text;
+        return masked.append(text, copied, text.length()).toString();
+    }
+
+    public List<Detector> detectors() {
+        return detectors;
+    }
+
+    private Detector matchedDetector(Matcher matcher) {
+        for (int i = 0; i < groupNames.length; i++) {
+            if (matcher.start(groupNames[i]) != -1)
+                return detectors.get(i);
+        }
+        throw new IllegalStateException("match without detector group: " + matcher.group());
+    }
+
+    static boolean isLuhnValid(String candidate) {
+        int sum = 0;
+        int digits = 0;
+        boolean doubled = false;
+        for (int i = candidate.length() - 1; i >= 0; i--) {
+            char c = candidate.charAt(i);
+            if (c < '0' || c > '9')
+                continue;
+            int digit = c - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9)
+                    digit -= 9;
+            }
+            sum += digit;
+            doubled = !doubled;
+            digits++;
+        }
+        return digits >= 13 && digits <= 19 && sum % 10 == 0;
+    }
+
+    static boolean isPlausibleNationalId(String candidate) {
+        // ssn areas 000, 666 and 900-999, group 00 and serial 0000 are never issued
+        if (candidate.length() == 11 && candidate.charAt(3) == '-' && candidate.charAt(6) == '-') {
+            String area = candidate.substring(0, 3);
+            return !area.equals("000") && !area.equals("666") && area.charAt(0) != '9'
+                    && !candidate.startsWith("00", 4) && !candidate.endsWith("0000");
+        }
+        // aadhaar numbers end with a verhoeff check digit, any other 12 digit number (amounts, references) is kept
+        if (Character.isDigit(candidate.charAt(0)))
+            return isVerhoeffValid(candidate);
+        return true;
+    }
+
+    static boolean isVerhoeffValid(String candidate) {
+        int check = 0;
+        int position = 0;
+        for (int i = candidate.length() - 1; i >= 0; i--) {
+            char c = candidate.charAt(i);
+            if (c < '0' || c > '9')
+                continue;
+            check = VERHOEFF_MULTIPLICATION[check][VERHOEFF_PERMUTATION[position % 8][c - '0']];
+            position++;
+        }
+        return check == 0;
+    }
+
+    static boolean isValidIpAddress(String candidate) {
+        if (candidate.indexOf(':') >= 0)
+            return true;
+        boolean multiDigitOctet = false;
+        for (String octet : candidate.split("\\.")) {
+            // leading zeros are not how addresses are written, version and section numbers use them ("1.02.3.4")
+            if (Integer.parseInt(octet) > 255 || (octet.length() > 1 && octet.charAt(0) == '0'))
+                return false;
+            multiDigitOctet |= octet.length() > 1;
+        }
+        // "1.2.3.4" is section numbering in a policy document far more often than an address worth masking
+        return multiDigitOctet;
+    }
+
+    /**
+     * @param name        identifies the detector, ex - in tests and metrics
+     * @param regex       pattern of a candidate, should not rely on group numbers since it is embedded in a larger pattern
+     * @param replacement text the candidate is replaced with
+     * @param validator   second check on the matched text, for what a regex cannot express (checksums, ranges)
+     */
+    public record Detector(String name, String regex, String replacement, Predicate<String> validator) {
+
+        public Detector {
+            Assert.hasText(name, "name cannot be empty");
+            Assert.hasText(regex, "regex cannot be empty");
+            Assert.notNull(replacement, "replacement cannot be null");
+            Assert.notNull(validator, "validator cannot be null");
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final List<Detector> detectors = new ArrayList<>(List.of(EMAIL, CREDIT_CARD, NATIONAL_ID, IP_ADDRESS, PHONE));
+
+        private Builder() {
+        }
+
+        // custom detectors run before phone numbers, which would otherwise swallow most digit runs
+        public Builder detector(Detector detector) {
+            Assert.notNull(detector, "detector cannot be null");
+            int phone = detectors.indexOf(PHONE);
+            detectors.add(phone >= 0 ? phone : detectors.size(), detector);
+            return this;
+        }
+
+        public Builder withoutDetector(Detector detector) {
+            detectors.remove(detector);
+            return this;
+        }
+
+        public PIIMasker build() {
+            return new PIIMasker(detectors);
+        }
+    }
+}
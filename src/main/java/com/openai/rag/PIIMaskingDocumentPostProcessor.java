@@ -9,28 +9,26 @@ import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
- * Masks sensitive information ex - email or phone numbers in document content
- * to ensure privacy and compliance, uses regex patterns to identify and redact PII (Personally Identifiable Information)
+ * Masks sensitive information ex - email, phone numbers, national ids, credit cards or ip addresses in document content
+ * to ensure privacy and compliance, uses {@link PIIMasker} to identify and redact PII (Personally Identifiable Information)
+ * in a single pass. Documents that were already masked at ingestion time carry the {@code pii_masked} flag and are
+ * passed through untouched, large lists are masked in parallel.
  */
 public class PIIMaskingDocumentPostProcessor implements DocumentPostProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(PIIMaskingDocumentPostProcessor.class);
 
-    // Regex Patterns for common PII
-    private static final Pattern EMAIL_PATTERN = Pattern.compile(
-            "\\b[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}\\b",
-            Pattern.CASE_INSENSITIVE);
-    private static final Pattern PHONE_PATTERN = Pattern.compile(
-            "\\b(\\+?\\d{1,3}[-.\\s]?)?\\(?\\d{3}\\)?[-.\\s]?\\d{3}[-.\\s]?\\d{4}\\b",
-            Pattern.CASE_INSENSITIVE);
+    public static final String PII_MASKED = "pii_masked";
 
-    private static final String EMAIL_REPLACEMENT = "[REDACTED_EMAIL]";
-    private static final String PHONE_REPLACEMENT = "[REDACTED_PHONE]";
+    private final PIIMasker piiMasker;
+    private final int parallelThreshold;
 
-    private PIIMaskingDocumentPostProcessor() {
+    private PIIMaskingDocumentPostProcessor(Builder builder) {
+        this.piiMasker = builder.piiMasker;
+        this.parallelThreshold = builder.parallelThreshold;
     }
 
     @Override
@@ -46,30 +44,53 @@ public class PIIMaskingDocumentPostProcessor implements DocumentPostProcessor {
 
         logger.debug("Masking sensitive information in documents for query: {}", query.text());
 
-        return documents.stream()
-                .map(document -> {
-                    String text = document.getText() != null ? document.getText() : "";
-                    // applying PII Masking using regex patterns
-                    String maskedText = maskSensitiveInformation(text);
-                    return document.mutate()
-                            .text(maskedText)
-                            .metadata("pii_masked", true)
-                            .build();
-
-                }).toList();
+        // masking is cpu only, splitting it across cores only pays off for long lists
+        Stream<Document> stream = documents.size() >= parallelThreshold ? documents.parallelStream() : documents.stream();
+        return stream.map(this::mask).toList();
     }
 
-    private String maskSensitiveInformation(String text) {
-        String masked = text;
-        // masking emails
-        masked = EMAIL_PATTERN.matcher(masked).replaceAll(EMAIL_REPLACEMENT);
-        // masking phone numbers
-        masked = PHONE_PATTERN.matcher(masked).replaceAll(PHONE_REPLACEMENT);
-        return masked;
+    private Document mask(Document document) {
+        if (isMasked(document))
+            return document;
+        String text = document.getText() != null ? document.getText() : "";
+        return document.mutate()
+                .text(piiMasker.mask(text))
+                .metadata(PII_MASKED, true)
+                .build();
     }
 
-    public static PIIMaskingDocumentPostProcessor builder() {
-        return new PIIMaskingDocumentPostProcessor();
+    // vector stores may hand metadata back as a string
+    public static boolean isMasked(Document document) {
+        Object flag = document.getMetadata().get(PII_MASKED);
+        return Boolean.TRUE.equals(flag) || "true".equals(flag);
     }
-}
 
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private PIIMasker piiMasker = PIIMasker.defaults();
+        private int parallelThreshold = 64;
+
+        private Builder() {
+        }
+
+        public Builder piiMasker(PIIMasker piiMasker) {
+            Assert.notNull(piiMasker, "piiMasker cannot be null");
+            this.piiMasker = piiMasker;
+            return this;
+        }
+
+        public Builder parallelThreshold(int parallelThreshold) {
+            Assert.isTrue(parallelThreshold > 0, "parallelThreshold must be greater than zero");
+            this.parallelThreshold = parallelThreshold;
+            return this;
+        }
+
+        public PIIMaskingDocumentPostProcessor build() {
+            return new PIIMaskingDocumentPostProcessor(this);
+        }
+    }
+}
@@ -2,18 +2,27 @@ package com.openai.rag;
 
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.openai.cache.ExpiringLruCache;
+import com.openai.cache.SingleFlight;
+import com.openai.resilience.CircuitBreaker;
+import com.openai.resilience.RequestDeadline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.rag.Query;
 import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class WebSearchDocumentRetriever implements DocumentRetriever {
 
@@ -25,18 +34,37 @@ public class WebSearchDocumentRetriever implements DocumentRetriever {
     private final int resultLimit;
 
     private final RestClient restClient;
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+
+    // results of identical searches are reused for a while, concurrent identical searches share one upstream call
+    private final ExpiringLruCache<String, List<Document>> cache;
+    private final SingleFlight<String, List<Document>> inFlightSearches = new SingleFlight<>();
+    private final CircuitBreaker circuitBreaker;
 
     public WebSearchDocumentRetriever(RestClient.Builder restClient, int resultLimit) {
-        Assert.notNull(restClient, "restClient cannot be null");
-        String apiKey = System.getenv(TAVILY_API_KEY);
+        this(builder().restClientBuilder(restClient).maxResults(resultLimit));
+    }
+
+    private WebSearchDocumentRetriever(Builder builder) {
+        Assert.notNull(builder.clientBuilder, "restClient cannot be null");
+        String apiKey = builder.apiKey != null ? builder.apiKey : System.getenv(TAVILY_API_KEY);
         Assert.hasText(apiKey, "Environment Variable " + TAVILY_API_KEY + " must be set");
-        this.restClient = restClient
-                .baseUrl(TAVILY_BASE_URL)
+        // connect and read deadlines, so a slow tavily never holds the request thread for long
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(builder.connectTimeout)
+                .build();
+        this.readTimeout = builder.readTimeout;
+        this.restClient = builder.clientBuilder
+                .baseUrl(builder.baseUrl)
+                .requestFactory(requestFactory(readTimeout))
                 .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
                 .build();
-        if (resultLimit < 0)
+        if (builder.resultLimit < 0)
             throw new IllegalArgumentException("resultLimit must be greater than zero");
-        this.resultLimit = resultLimit;
+        this.resultLimit = builder.resultLimit;
+        this.cache = new ExpiringLruCache<>(builder.cacheSize, builder.cacheTtl);
+        this.circuitBreaker = new CircuitBreaker("tavily", builder.failureThreshold, builder.openDuration);
     }
 
     @Override
@@ -47,7 +75,61 @@ public class WebSearchDocumentRetriever implements DocumentRetriever {
         String q = query.text();
         Assert.hasText(q, "query.text() cannot be empty");
 
-        TavilyResponsePayload response = restClient.post()
+        String cacheKey = q.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT) + "|" + resultLimit;
+        List<Document> cached = cache.get(cacheKey);
+        if (cached != null)
+            return cached;
+
+        // no point in starting a search the request can no longer wait for
+        RequestDeadline deadline = RequestDeadline.from(query.context()).orElse(null);
+        if (deadline != null && deadline.isExpired()) {
+            logger.warn("Request deadline passed, continuing without web context");
+            return List.of();
+        }
+
+        return inFlightSearches.execute(cacheKey, () -> {
+            // while the circuit is open we degrade to answering without web context
+            if (!circuitBreaker.tryAcquire()) {
+                logger.warn("Web search circuit is open, continuing without web context");
+                return List.of();
+            }
+            boolean reported = false;
+            try {
+                // retrievers run behind a join the deadline watchdog cannot interrupt, so the http call has to
+                // give up on its own once the request deadline passes
+                Duration timeout = deadline != null ? deadline.cap(readTimeout) : readTimeout;
+                if (!timeout.isPositive()) {
+                    logger.warn("Request deadline passed, continuing without web context");
+                    return List.of();
+                }
+                List<Document> documents = search(q, timeout);
+                circuitBreaker.onSuccess();
+                reported = true;
+                cache.put(cacheKey, documents);
+                return documents;
+            } catch (RestClientException ex) {
+                // aborted because the request was given up on, that says nothing about tavily
+                if (Thread.currentThread().isInterrupted() || (deadline != null && deadline.isExpired())) {
+                    logger.warn("Web search abandoned, the request deadline passed");
+                    return List.of();
+                }
+                circuitBreaker.onFailure();
+                reported = true;
+                logger.warn("Web search failed, continuing without web context: {}", ex.getMessage());
+                return List.of();
+            } finally {
+                // abandoned or failed with something unexpected, a half open trial must not stay taken
+                if (!reported)
+                    circuitBreaker.onAbandoned();
+            }
+        });
+    }
+
+    private List<Document> search(String q, Duration timeout) {
+        RestClient client = timeout.compareTo(readTimeout) < 0
+                ? restClient.mutate().requestFactory(requestFactory(timeout)).build()
+                : restClient;
+        TavilyResponsePayload response = client.post()
                 .body(new TavilyRequestPayload(q, "advanced", resultLimit))
                 .retrieve()
                 .body(TavilyResponsePayload.class);
@@ -67,7 +149,17 @@ public class WebSearchDocumentRetriever implements DocumentRetriever {
             documents.add(document);
         }
         // return all documents
-        return documents;
+        return List.copyOf(documents);
+    }
+
+    private JdkClientHttpRequestFactory requestFactory(Duration timeout) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(timeout);
+        return requestFactory;
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.state();
     }
 
     // creating request payload and response payload records for tavily
@@ -90,6 +182,14 @@ public class WebSearchDocumentRetriever implements DocumentRetriever {
 
         private RestClient.Builder clientBuilder;
         private int resultLimit = DEFAULT_RESULT_LIMIT;
+        private String baseUrl = TAVILY_BASE_URL;
+        private String apiKey;
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration readTimeout = Duration.ofSeconds(10);
+        private Duration cacheTtl = Duration.ofMinutes(10);
+        private int cacheSize = 500;
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(30);
 
         private Builder() {
         }
@@ -106,8 +206,50 @@ public class WebSearchDocumentRetriever implements DocumentRetriever {
             return this;
         }
 
+        // used to point the retriever at a local stub of the tavily api
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        // defaults to the TAVILY_SEARCH_API_KEY environment variable
+        public Builder apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder cacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
         public WebSearchDocumentRetriever build() {
-            return new WebSearchDocumentRetriever(clientBuilder, resultLimit);
+            return new WebSearchDocumentRetriever(this);
         }
 
     }
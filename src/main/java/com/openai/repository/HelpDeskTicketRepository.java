@@ -1,12 +1,29 @@
 package com.openai.repository;
 
 import com.openai.entity.HelpDeskTicket;
+import com.openai.model.TicketSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface HelpDeskTicketRepository extends JpaRepository<HelpDeskTicket, Long> {
     List<HelpDeskTicket> findByUsername(String username);
+
+    // open tickets of any age plus whatever changed recently, newest first, a slice needs no count query
+    @Query("""
+            select new com.openai.model.TicketSummary(t.id, t.issue, t.status, t.createdAt, t.eta)
+            from HelpDeskTicket t
+            where t.username = :username and (t.status in :statuses or t.createdAt >= :since)
+            order by t.createdAt desc, t.id desc
+            """)
+    Slice<TicketSummary> findSummaries(@Param("username") String username, @Param("statuses") Collection<String> statuses,
+                                       @Param("since") LocalDate since, Pageable pageable);
 }
@@ -0,0 +1,181 @@
+package com.openai.resilience;
+
+import com.openai.exception.ModelOverloadedException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limiter with a bounded wait queue whose limit adapts to observed latency (gradient style): the limit
+ * is scaled by the ratio of the long term latency to the recent latency, so it shrinks as soon as the model slows down
+ * under load and grows back (by roughly sqrt(limit) per sample) while latency stays at its baseline.
+ * Callers that find the queue full, or wait longer than {@code maxWait}, are rejected right away with
+ * {@link ModelOverloadedException} instead of piling up.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition permitReleased = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    // exponentially weighted latencies, the long one is the no load baseline
+    private double shortRttNanos;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue, Duration maxWait) {
+        if (minLimit <= 0 || initialLimit < minLimit || maxLimit < initialLimit)
+            throw new IllegalArgumentException("limits must satisfy 0 < minLimit <= initialLimit <= maxLimit");
+        if (maxQueue < 0)
+            throw new IllegalArgumentException("maxQueue cannot be negative");
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * Blocks until a permit is available, the returned permit must be released exactly once.
+     */
+    public Permit acquire() {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (waiting >= maxQueue)
+                    throw new ModelOverloadedException(name, "wait queue is full");
+                waiting++;
+                try {
+                    long remaining = maxWaitNanos;
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0)
+                            throw new ModelOverloadedException(name, "no capacity within " + Duration.ofNanos(maxWaitNanos));
+                        remaining = permitReleased.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ModelOverloadedException(name, "interrupted while waiting");
+                } finally {
+                    waiting--;
+                }
+            }
+            inFlight++;
+            return new Permit(System.nanoTime(), System.nanoTime() - start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Permit permit, Outcome outcome) {
+        long rtt = System.nanoTime() - permit.startedAt;
+        lock.lock();
+        try {
+            inFlight--;
+            if (outcome == Outcome.SUCCESS)
+                onSample(rtt);
+            else if (outcome == Outcome.FAILURE)
+                // failures (timeouts, 5xx) are a strong overload signal
+                limit = Math.max(minLimit, limit * 0.9);
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSample(long rttNanos) {
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos = shortRttNanos * 0.8 + rttNanos * 0.2;
+        longRttNanos = longRttNanos * 0.98 + rttNanos * 0.02;
+        double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / shortRttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        // smoothing, so a single slow generation does not halve the limit
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * 0.8 + newLimit * 0.2));
+        if (shortRttNanos < longRttNanos * 0.5) {
+            // latency dropped well below the baseline (e.g. the model got warm), letting the baseline follow
+            longRttNanos = shortRttNanos;
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private enum Outcome {SUCCESS, FAILURE, DROPPED}
+
+    public final class Permit {
+
+        private final long startedAt;
+        private final long waitNanos;
+        private boolean released;
+
+        private Permit(long startedAt, long waitNanos) {
+            this.startedAt = startedAt;
+            this.waitNanos = waitNanos;
+        }
+
+        public long waitNanos() {
+            return waitNanos;
+        }
+
+        public void release(boolean success) {
+            release(success ? Outcome.SUCCESS : Outcome.FAILURE);
+        }
+
+        /**
+         * Gives the permit back without a latency sample, for calls that were cancelled by the caller and so say
+         * nothing about the model.
+         */
+        public void abandon() {
+            release(Outcome.DROPPED);
+        }
+
+        private synchronized void release(Outcome outcome) {
+            if (released)
+                return;
+            released = true;
+            AdaptiveConcurrencyLimiter.this.release(this, outcome);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.openai.resilience;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.util.Assert;
+
+/**
+ * Runs every embedding call through the bulkhead of the embedding model, so ingestion bursts and query embeddings
+ * share one bounded, adaptive amount of capacity on the ollama host.
+ */
+public class BulkheadEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final ModelBulkheads modelBulkheads;
+    private final String model;
+
+    public BulkheadEmbeddingModel(EmbeddingModel delegate, ModelBulkheads modelBulkheads, String model) {
+        Assert.notNull(delegate, "delegate cannot be null");
+        Assert.notNull(modelBulkheads, "modelBulkheads cannot be null");
+        Assert.hasText(model, "model cannot be empty");
+        this.delegate = delegate;
+        this.modelBulkheads = modelBulkheads;
+        this.model = model;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return modelBulkheads.execute(model, () -> delegate.call(request));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return modelBulkheads.execute(model, () -> delegate.embed(document));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
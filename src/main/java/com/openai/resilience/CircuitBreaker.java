@@ -0,0 +1,87 @@
+package com.openai.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive failure circuit breaker. After {@code failureThreshold} failures in a row the circuit opens and every
+ * call is rejected for {@code openDuration}, afterwards a single trial call is let through (half open) and its
+ * outcome decides whether the circuit closes again or stays open for another period.
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // 0 while closed, otherwise the time the circuit opened
+    private final AtomicLong openedAt = new AtomicLong();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this(name, failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int failureThreshold, Duration openDuration, LongSupplier nanoClock) {
+        if (failureThreshold <= 0)
+            throw new IllegalArgumentException("failureThreshold must be greater than zero");
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return true if the call may proceed, callers must report the outcome with {@link #onSuccess()}, {@link #onFailure()}
+     * or {@link #onAbandoned()}
+     */
+    public boolean tryAcquire() {
+        long opened = openedAt.get();
+        if (opened == 0)
+            return true;
+        if (nanoClock.getAsLong() - opened < openDurationNanos)
+            return false;
+        // open period is over, only one caller gets to probe the upstream
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        openedAt.set(0);
+        trialInFlight.set(false);
+    }
+
+    public void onFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold || trialInFlight.get()) {
+            // keeping the value non zero even if the clock happens to be at zero
+            openedAt.set(Math.max(1, nanoClock.getAsLong()));
+        }
+        trialInFlight.set(false);
+    }
+
+    /**
+     * The call was given up on by the caller (deadline, interrupt), which says nothing about the upstream. A half open
+     * trial is released, so the next caller gets to probe instead of the circuit staying half open for good.
+     */
+    public void onAbandoned() {
+        trialInFlight.set(false);
+    }
+
+    public State state() {
+        long opened = openedAt.get();
+        if (opened == 0)
+            return State.CLOSED;
+        return nanoClock.getAsLong() - opened < openDurationNanos ? State.OPEN : State.HALF_OPEN;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,97 @@
+package com.openai.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * One {@link AdaptiveConcurrencyLimiter} per model (llama3.2, mistral:7b-instruct-q4_0, nomic-embed-text, ...),
+ * so a burst against one model can never take capacity away from the others. Queue depth, in flight count, current
+ * limit, wait time and rejections are exported per model.
+ */
+@Component
+public class ModelBulkheads {
+
+    private final MeterRegistry meterRegistry;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final Duration maxWait;
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public ModelBulkheads(MeterRegistry meterRegistry,
+                          @Value("${model.bulkhead.initial-limit:4}") int initialLimit,
+                          @Value("${model.bulkhead.min-limit:1}") int minLimit,
+                          @Value("${model.bulkhead.max-limit:16}") int maxLimit,
+                          @Value("${model.bulkhead.max-queue:32}") int maxQueue,
+                          @Value("${model.bulkhead.max-wait:30s}") Duration maxWait) {
+        this.meterRegistry = meterRegistry;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWait = maxWait;
+    }
+
+    public <T> T execute(String model, Supplier<T> call) {
+        AdaptiveConcurrencyLimiter.Permit permit = acquire(model);
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } finally {
+            // interrupted by the deadline watchdog or as a losing hedge, that says nothing about the model
+            if (!success && Thread.currentThread().isInterrupted())
+                permit.abandon();
+            else
+                permit.release(success);
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter.Permit acquire(String model) {
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(model, this::create);
+        try {
+            AdaptiveConcurrencyLimiter.Permit permit = bulkhead.limiter().acquire();
+            bulkhead.waitTimer().record(permit.waitNanos(), TimeUnit.NANOSECONDS);
+            return permit;
+        } catch (RuntimeException ex) {
+            bulkhead.rejected().increment();
+            throw ex;
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter limiter(String model) {
+        return bulkheads.computeIfAbsent(model, this::create).limiter();
+    }
+
+    private Bulkhead create(String model) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(model, initialLimit, minLimit, maxLimit, maxQueue, maxWait);
+        Gauge.builder("model.bulkhead.queue.depth", limiter, AdaptiveConcurrencyLimiter::getQueueDepth)
+                .description("Requests waiting for a model permit").tag("model", model).register(meterRegistry);
+        Gauge.builder("model.bulkhead.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Requests currently running against the model").tag("model", model).register(meterRegistry);
+        Gauge.builder("model.bulkhead.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit").tag("model", model).register(meterRegistry);
+        Timer waitTimer = Timer.builder("model.bulkhead.wait")
+                .description("Time spent waiting for a model permit").tag("model", model)
+                .publishPercentileHistogram().register(meterRegistry);
+        Counter rejected = Counter.builder("model.bulkhead.rejected")
+                .description("Requests shed with 429").tag("model", model).register(meterRegistry);
+        return new Bulkhead(limiter, waitTimer, rejected);
+    }
+
+    private record Bulkhead(AdaptiveConcurrencyLimiter limiter, Timer waitTimer, Counter rejected) {
+    }
+}
@@ -0,0 +1,489 @@
+package com.openai.resilience;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the configured Ollama models (llama3.2, mistral:7b-instruct-q4_0, nomic-embed-text, ...) loaded within a
+ * memory budget. Every model that fits is warmed once the application is up, so no user request pays the cold load.
+ * <p>
+ * When a request needs a model that is not loaded and does not fit next to the loaded ones, it waits until models
+ * can be unloaded without hurting anybody: they are idle and have been loaded for at least {@code minResidency}.
+ * Requests for the loaded models keep flowing meanwhile, so alternating traffic is served in batches instead of
+ * swapping models on every request. After {@code maxWait} the request goes ahead and Ollama evicts on its own.
+ * Pinned models are never unloaded. Loads are exported as {@code ollama.model.load}, evictions as
+ * {@code ollama.model.evictions}.
+ * <p>
+ * Models that Ollama does not report (not pulled, or Ollama not reachable at startup) are not managed and requests
+ * for them pass straight through.
+ */
+@Component
+public class OllamaModelResidencyManager implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaModelResidencyManager.class);
+
+    // waiting requests re-check at least this often, so a model passing its minimum residency is noticed
+    private static final long POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final OllamaApi ollamaApi;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long memoryBudget;
+    private final Duration keepAlive;
+    private final Duration minResidency;
+    private final Duration maxWait;
+
+    // keyed by the name ollama reports, e.g. llama3.2:latest
+    private final Map<String, Model> models = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ScheduledExecutorService refresher;
+
+    @Autowired
+    public OllamaModelResidencyManager(RestClient.Builder restClientBuilder, MeterRegistry meterRegistry,
+                                       @Value("${spring.ai.ollama.base-url:http://localhost:11434}") String baseUrl,
+                                       @Value("${ollama.residency.enabled:true}") boolean enabled,
+                                       @Value("${ollama.residency.chat-models:llama3.2}") List<String> chatModels,
+                                       @Value("${ollama.residency.embedding-models:nomic-embed-text}") List<String> embeddingModels,
+                                       @Value("${ollama.residency.pinned-models:}") Set<String> pinnedModels,
+                                       @Value("${ollama.residency.memory-budget:8GB}") DataSize memoryBudget,
+                                       @Value("${ollama.residency.keep-alive:30m}") Duration keepAlive,
+                                       @Value("${ollama.residency.min-residency:60s}") Duration minResidency,
+                                       @Value("${ollama.residency.max-wait:20s}") Duration maxWait,
+                                       @Value("${ollama.residency.refresh-interval:30s}") Duration refreshInterval) {
+        this(new RestOllamaApi(restClientBuilder.clone(), baseUrl), meterRegistry, enabled, chatModels, embeddingModels, pinnedModels,
+                memoryBudget, keepAlive, minResidency, maxWait, refreshInterval);
+    }
+
+    OllamaModelResidencyManager(OllamaApi ollamaApi, MeterRegistry meterRegistry, boolean enabled, List<String> chatModels,
+                                List<String> embeddingModels, Set<String> pinnedModels, DataSize memoryBudget, Duration keepAlive,
+                                Duration minResidency, Duration maxWait, Duration refreshInterval) {
+        this.ollamaApi = ollamaApi;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.memoryBudget = memoryBudget.toBytes();
+        this.keepAlive = keepAlive;
+        this.minResidency = minResidency;
+        this.maxWait = maxWait;
+        Set<String> pinned = pinnedModels.stream().map(OllamaModelResidencyManager::normalize).collect(Collectors.toSet());
+        // pinned first, so they are warmed before anything that could take their memory
+        List<Model> configured = new ArrayList<>();
+        embeddingModels.forEach(name -> configured.add(new Model(name, true, pinned.contains(normalize(name)))));
+        chatModels.forEach(name -> configured.add(new Model(name, false, pinned.contains(normalize(name)))));
+        configured.sort(Comparator.comparing((Model model) -> !model.pinned));
+        for (Model model : configured) {
+            models.putIfAbsent(normalize(model.name), model);
+            Gauge.builder("ollama.model.resident", model, m -> m.resident ? 1 : 0)
+                    .description("Whether the model is currently loaded in ollama").tag("model", model.name).register(meterRegistry);
+        }
+        Gauge.builder("ollama.model.resident.bytes", this, OllamaModelResidencyManager::residentBytes)
+                .description("Memory taken by the loaded models").baseUnit("bytes").register(meterRegistry);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("ollama-residency-refresher").daemon().factory());
+        if (enabled)
+            refresher.scheduleWithFixedDelay(this::refresh, refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads every configured model that fits into the memory budget, pinned models first.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled)
+            return;
+        try {
+            Map<String, Long> available = ollamaApi.available();
+            lock.lock();
+            try {
+                for (Map.Entry<String, Model> entry : models.entrySet()) {
+                    Long size = available.get(entry.getKey());
+                    if (size != null)
+                        entry.getValue().size = size;
+                    else
+                        logger.warn("Model {} is not available in ollama, it is not managed", entry.getValue().name);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Could not list the ollama models, model residency is not managed", ex);
+            return;
+        }
+        // models that are already loaded, e.g. after a restart of the application only
+        syncResidency();
+        for (Model model : List.copyOf(models.values()))
+            loadIfFits(model, "warmup");
+    }
+
+    /**
+     * Waits until the model is loaded, or can be loaded without evicting a model that is busy or was only just
+     * loaded, and holds it loaded until the returned lease is released.
+     */
+    public Lease acquire(String name) {
+        if (!enabled)
+            return Lease.NONE;
+        long start = System.nanoTime();
+        long deadline = start + maxWait.toNanos();
+        Model model;
+        List<Model> victims;
+        lock.lock();
+        try {
+            model = models.get(normalize(name));
+            if (model == null || model.size == 0)
+                return Lease.NONE;
+            while (true) {
+                if (model.resident && !model.loading) {
+                    model.inFlight++;
+                    recordWait(model, start);
+                    return new Lease(this, model);
+                }
+                if (!model.loading) {
+                    victims = victimsFor(model);
+                    if (victims == null && System.nanoTime() >= deadline) {
+                        // waited long enough, ollama evicts whatever it needs on its own
+                        logger.debug("No room for {} after {}, loading it anyway", model.name, maxWait);
+                        victims = List.of();
+                    }
+                    if (victims != null) {
+                        model.loading = true;
+                        model.inFlight++;
+                        victims.forEach(victim -> victim.resident = false);
+                        break;
+                    }
+                }
+                changed.awaitNanos(Math.min(POLL_NANOS, Math.max(deadline - System.nanoTime(), 1)));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Lease.NONE;
+        } finally {
+            lock.unlock();
+        }
+
+        // http calls happen without the lock, requests for other models are not held up by a load
+        for (Model victim : victims)
+            unload(victim);
+        load(model, "swap");
+        recordWait(model, start);
+        return new Lease(this, model);
+    }
+
+    // least recently used idle models that make room for the given one, null if there is no room yet
+    private List<Model> victimsFor(Model model) {
+        long free = memoryBudget - residentBytes() - loadingBytes();
+        if (model.size <= free)
+            return List.of();
+        long now = System.nanoTime();
+        List<Model> candidates = models.values().stream()
+                .filter(other -> other != model && other.resident && !other.loading && !other.pinned)
+                .filter(other -> other.inFlight == 0 && now - other.residentSince >= minResidency.toNanos())
+                .sorted(Comparator.comparingLong(other -> other.lastUsed))
+                .toList();
+        List<Model> victims = new ArrayList<>();
+        for (Model candidate : candidates) {
+            if (free >= model.size)
+                break;
+            victims.add(candidate);
+            free += candidate.size;
+        }
+        return free >= model.size ? victims : null;
+    }
+
+    private void loadIfFits(Model model, String reason) {
+        lock.lock();
+        try {
+            if (model.size == 0 || model.resident || model.loading)
+                return;
+            if (model.size > memoryBudget - residentBytes() - loadingBytes()) {
+                logger.info("Not warming {}, it does not fit into the memory budget next to the loaded models", model.name);
+                return;
+            }
+            model.loading = true;
+        } finally {
+            lock.unlock();
+        }
+        load(model, reason);
+    }
+
+    // expects model.loading to be set, clears it and wakes up the requests waiting for the model
+    private void load(Model model, String reason) {
+        long start = System.nanoTime();
+        boolean loaded = false;
+        try {
+            ollamaApi.load(model.name, model.embedding, model.pinned ? -1 : keepAlive.toSeconds());
+            loaded = true;
+            logger.info("Loaded model {} in {} ms ({})", model.name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), reason);
+        } catch (RuntimeException ex) {
+            // the request itself still goes to ollama, which then loads the model or reports the error
+            logger.warn("Could not load model {} ({})", model.name, reason, ex);
+        } finally {
+            Timer.builder("ollama.model.load")
+                    .description("Time to load a model into ollama")
+                    .tags("model", model.name, "reason", reason, "outcome", loaded ? "success" : "failure")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            lock.lock();
+            try {
+                model.loading = false;
+                model.resident = loaded;
+                model.residentSince = System.nanoTime();
+                model.lastUsed = model.residentSince;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void unload(Model model) {
+        try {
+            ollamaApi.unload(model.name, model.embedding);
+            Counter.builder("ollama.model.evictions")
+                    .description("Models unloaded to make room for another model").tag("model", model.name)
+                    .register(meterRegistry).increment();
+            logger.info("Unloaded model {} to make room", model.name);
+        } catch (RuntimeException ex) {
+            logger.warn("Could not unload model {}", model.name, ex);
+        }
+    }
+
+    // ollama also unloads models on its own once their keep alive expires, pinned models are loaded again
+    void refresh() {
+        syncResidency().forEach(model -> loadIfFits(model, "refresh"));
+    }
+
+    // syncs the loaded set from /api/ps, returns the pinned models that are no longer loaded
+    private List<Model> syncResidency() {
+        Map<String, Long> running;
+        try {
+            running = ollamaApi.running();
+        } catch (RuntimeException ex) {
+            logger.debug("Could not read the loaded ollama models", ex);
+            return List.of();
+        }
+        List<Model> pinnedToReload = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Map.Entry<String, Model> entry : models.entrySet()) {
+                Model model = entry.getValue();
+                if (model.loading)
+                    continue;
+                Long size = running.get(entry.getKey());
+                if (size != null && !model.resident)
+                    model.residentSince = System.nanoTime();
+                model.resident = size != null;
+                // the loaded size includes the context cache, a better estimate than the size on disk
+                if (size != null && size > 0)
+                    model.size = size;
+                if (!model.resident && model.pinned)
+                    pinnedToReload.add(model);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return pinnedToReload;
+    }
+
+    private void release(Model model) {
+        lock.lock();
+        try {
+            model.inFlight--;
+            model.lastUsed = System.nanoTime();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordWait(Model model, long start) {
+        Timer.builder("ollama.model.residency.wait")
+                .description("Time a request waited for its model to be loaded").tag("model", model.name)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private long residentBytes() {
+        return models.values().stream().filter(model -> model.resident).mapToLong(model -> model.size).sum();
+    }
+
+    private long loadingBytes() {
+        return models.values().stream().filter(model -> model.loading).mapToLong(model -> model.size).sum();
+    }
+
+    /**
+     * True when a request for the model would not load it: the model is loaded, or not managed at all.
+     */
+    boolean servesWithoutLoad(String name) {
+        if (!enabled)
+            return true;
+        lock.lock();
+        try {
+            Model model = models.get(normalize(name));
+            return model == null || model.size == 0 || (model.resident && !model.loading);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isResident(String name) {
+        lock.lock();
+        try {
+            Model model = models.get(normalize(name));
+            return model != null && model.resident;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ollama reports untagged models with the implicit latest tag
+    static String normalize(String name) {
+        return name.contains(":") ? name : name + ":latest";
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Keeps the model loaded until released, releasing more than once has no effect.
+     */
+    public static final class Lease {
+
+        static final Lease NONE = new Lease(null, null);
+
+        private final OllamaModelResidencyManager manager;
+        private final Model model;
+        private boolean released;
+
+        private Lease(OllamaModelResidencyManager manager, Model model) {
+            this.manager = manager;
+            this.model = model;
+        }
+
+        public synchronized void release() {
+            if (released || model == null)
+                return;
+            released = true;
+            manager.release(model);
+        }
+    }
+
+    // guarded by the manager lock
+    private static final class Model {
+
+        private final String name;
+        private final boolean embedding;
+        private final boolean pinned;
+        private long size;
+        private boolean resident;
+        private boolean loading;
+        private int inFlight;
+        private long residentSince;
+        private long lastUsed;
+
+        private Model(String name, boolean embedding, boolean pinned) {
+            this.name = name;
+            this.embedding = embedding;
+            this.pinned = pinned;
+        }
+    }
+
+    /**
+     * The few ollama endpoints residency needs, model names as ollama reports them mapped to their size in bytes.
+     */
+    interface OllamaApi {
+
+        Map<String, Long> available();
+
+        Map<String, Long> running();
+
+        void load(String model, boolean embedding, long keepAliveSeconds);
+
+        void unload(String model, boolean embedding);
+    }
+
+    static final class RestOllamaApi implements OllamaApi {
+
+        private final RestClient restClient;
+
+        RestOllamaApi(RestClient.Builder restClientBuilder, String baseUrl) {
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build());
+            // loading a 7b model from a cold disk can take a while
+            requestFactory.setReadTimeout(Duration.ofMinutes(5));
+            this.restClient = restClientBuilder.baseUrl(baseUrl).requestFactory(requestFactory).build();
+        }
+
+        @Override
+        public Map<String, Long> available() {
+            return sizes(restClient.get().uri("/api/tags").retrieve().body(ModelList.class));
+        }
+
+        @Override
+        public Map<String, Long> running() {
+            return sizes(restClient.get().uri("/api/ps").retrieve().body(ModelList.class));
+        }
+
+        // a request without prompt or input only loads the model, keep_alive 0 unloads it
+        @Override
+        public void load(String model, boolean embedding, long keepAliveSeconds) {
+            Map<String, Object> body = new HashMap<>(Map.of("model", model, "keep_alive", keepAliveSeconds));
+            if (embedding)
+                body.put("input", List.of());
+            restClient.post().uri(embedding ? "/api/embed" : "/api/generate").body(body).retrieve().toBodilessEntity();
+        }
+
+        @Override
+        public void unload(String model, boolean embedding) {
+            load(model, embedding, 0);
+        }
+
+        private static Map<String, Long> sizes(ModelList list) {
+            Map<String, Long> sizes = new HashMap<>();
+            if (list != null && list.models() != null)
+                list.models().forEach(entry -> sizes.put(normalize(entry.name()), entry.size()));
+            return sizes;
+        }
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        record ModelList(List<Entry> models) {
+            @JsonIgnoreProperties(ignoreUnknown = true)
+            record Entry(String name, long size) {
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.openai.resilience;
+
+import com.openai.exception.DeadlineExceededException;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Point in time by which a request has to be answered. It is bound to the request thread by the
+ * {@link RequestDeadlineFilter} and travels through the advisor chain in the request context under
+ * {@link #CONTEXT_KEY}, which is also where retrievers find it (spring ai copies the advisor context into the
+ * {@link org.springframework.ai.rag.Query} context).
+ */
+public final class RequestDeadline {
+
+    public static final String CONTEXT_KEY = "request_deadline";
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final Duration timeout;
+    private final long expiresAt;
+
+    private RequestDeadline(Duration timeout) {
+        this.timeout = timeout;
+        this.expiresAt = System.nanoTime() + timeout.toNanos();
+    }
+
+    public static RequestDeadline after(Duration timeout) {
+        Assert.isTrue(timeout != null && timeout.isPositive(), "timeout must be positive");
+        return new RequestDeadline(timeout);
+    }
+
+    /**
+     * Deadline of the request the calling thread is serving, empty outside of a request (schedulers, ingestion, ...).
+     */
+    public static Optional<RequestDeadline> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    // advisor or query context first, the thread bound deadline for callers that did not get a context
+    public static Optional<RequestDeadline> from(Map<String, Object> context) {
+        if (context != null && context.get(CONTEXT_KEY) instanceof RequestDeadline deadline)
+            return Optional.of(deadline);
+        return current();
+    }
+
+    static void bind(RequestDeadline deadline) {
+        CURRENT.set(deadline);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    // zero once expired, never negative
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - expiresAt >= 0;
+    }
+
+    /**
+     * @throws DeadlineExceededException if the deadline has passed, so no new work is started for the request
+     */
+    public void checkNotExpired(String stage) {
+        if (isExpired())
+            throw new DeadlineExceededException(stage, timeout);
+    }
+
+    // a stage with its own limit never runs past the request
+    public Duration cap(Duration limit) {
+        Duration remaining = remaining();
+        return remaining.compareTo(limit) < 0 ? remaining : limit;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestDeadline[timeout=" + timeout + ", remaining=" + remaining() + "]";
+    }
+}
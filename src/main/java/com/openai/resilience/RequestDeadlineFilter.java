@@ -0,0 +1,87 @@
+package com.openai.resilience;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every request a {@link RequestDeadline}. Clients set it with the timeout header ({@code X-Request-Timeout: 20s},
+ * plain numbers are milliseconds), otherwise the first matching endpoint default applies, otherwise the global
+ * default. Client values above the configured maximum are capped, so a client cannot hold a model for longer than
+ * the endpoint allows.
+ */
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestDeadlineFilter.class);
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final String header;
+    private final Duration defaultTimeout;
+    private final Duration maxTimeout;
+    private final Map<String, Duration> endpointTimeouts = new LinkedHashMap<>();
+
+    public RequestDeadlineFilter(@Value("${request.deadline.header:X-Request-Timeout}") String header,
+                                 @Value("${request.deadline.default:60s}") Duration defaultTimeout,
+                                 @Value("${request.deadline.max:10m}") Duration maxTimeout,
+                                 @Value("${request.deadline.endpoints:}") List<String> endpointTimeouts) {
+        this.header = header;
+        this.defaultTimeout = defaultTimeout;
+        this.maxTimeout = maxTimeout;
+        // pattern=timeout pairs, e.g. /api/stream=5m
+        for (String endpoint : endpointTimeouts) {
+            if (!StringUtils.hasText(endpoint))
+                continue;
+            String[] parts = endpoint.split("=", 2);
+            if (parts.length != 2)
+                throw new IllegalArgumentException("request.deadline.endpoints entries must look like /path/**=30s, got " + endpoint);
+            this.endpointTimeouts.put(parts[0].strip(), DurationStyle.detectAndParse(parts[1].strip()));
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestDeadline deadline = RequestDeadline.after(timeout(request));
+        RequestDeadline.bind(deadline);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    Duration timeout(HttpServletRequest request) {
+        String requested = request.getHeader(header);
+        if (StringUtils.hasText(requested)) {
+            try {
+                Duration timeout = DurationStyle.detectAndParse(requested.strip());
+                if (timeout.isPositive())
+                    return timeout.compareTo(maxTimeout) > 0 ? maxTimeout : timeout;
+            } catch (IllegalArgumentException ex) {
+                logger.debug("Ignoring invalid {} header: {}", header, requested);
+            }
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return endpointTimeouts.entrySet().stream()
+                .filter(entry -> pathMatcher.match(entry.getKey(), path))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(defaultTimeout);
+    }
+}
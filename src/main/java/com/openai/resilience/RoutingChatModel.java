@@ -0,0 +1,474 @@
+package com.openai.resilience;
+
+import com.openai.exception.ModelTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ChatModel} that sends every prompt to the backend expected to answer first. Backends whose context is too
+ * small for the prompt are skipped, the others are ranked by their latency ewma scaled by the requests already
+ * running or queued on them.
+ * <p>
+ * A call that is still running after the p95 latency of its backend is hedged once on the next best backend and
+ * whichever answers first wins, the other call is cancelled. A backend that fails or misses its timeout is given up
+ * and the prompt fails over to the next backend. Timeouts count into the ewma, so a slow backend is routed around
+ * until it recovers. Streams are routed the same way but neither hedged nor cut off, they fail over only as long as
+ * no token was emitted. Calls and streams both hold a permit of their backend's bulkhead while they run.
+ * <p>
+ * With a {@link OllamaModelResidencyManager} every call holds a residency lease on its backend's model, so routing
+ * cooperates with the model swaps of the other clients, and a hedge only goes to a backend whose model is loaded
+ * already, hedging on a model that first has to be swapped in would only cost the swap.
+ * <p>
+ * Only the portable chat options (temperature, max tokens, ...) are passed on, every backend gets its own model name.
+ */
+public class RoutingChatModel implements ChatModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutingChatModel.class);
+
+    private static final ExecutorService ROUTING_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    // latencies kept per backend for the p95, and how many are needed before it is trusted
+    private static final int LATENCY_WINDOW = 100;
+    private static final int MIN_SAMPLES = 20;
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final List<Backend> backends;
+    private final ModelBulkheads modelBulkheads;
+    private final OllamaModelResidencyManager residencyManager;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final Duration timeout;
+    private final Duration minHedgeDelay;
+    private final MeterRegistry meterRegistry;
+
+    private RoutingChatModel(Builder builder) {
+        Assert.notEmpty(builder.backends, "at least one backend is required");
+        this.backends = List.copyOf(builder.backends);
+        this.modelBulkheads = builder.modelBulkheads;
+        this.residencyManager = builder.residencyManager;
+        this.tokenCountEstimator = builder.tokenCountEstimator;
+        this.timeout = builder.timeout;
+        this.minHedgeDelay = builder.minHedgeDelay;
+        this.meterRegistry = builder.meterRegistry;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<Backend> ranked = new ArrayList<>(rank(prompt));
+        CompletionService<ChatResponse> completionService = new ExecutorCompletionService<>(ROUTING_EXECUTOR);
+        List<Attempt> running = new ArrayList<>();
+        int next = 0;
+        boolean hedged = false;
+        RuntimeException lastFailure = null;
+
+        running.add(start(completionService, ranked.get(next++), prompt, false));
+        long hedgeAt = running.get(0).startedAt + hedgeDelay(ranked.get(0)).toNanos();
+        try {
+            while (!running.isEmpty()) {
+                long wakeAt = running.stream().mapToLong(attempt -> attempt.deadline).min().orElseThrow();
+                if (!hedged && next < ranked.size())
+                    wakeAt = Math.min(wakeAt, hedgeAt);
+                Future<ChatResponse> done = completionService.poll(Math.max(0, wakeAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+                if (done != null) {
+                    Attempt attempt = running.stream().filter(candidate -> candidate.future == done).findFirst().orElse(null);
+                    // an attempt given up after its timeout, cancelling it still put its future into the queue
+                    if (attempt == null)
+                        continue;
+                    running.remove(attempt);
+                    try {
+                        ChatResponse response = done.get();
+                        attempt.succeeded();
+                        return response;
+                    } catch (ExecutionException ex) {
+                        lastFailure = ex.getCause() instanceof RuntimeException runtimeException
+                                ? runtimeException : new IllegalStateException(ex.getCause());
+                        attempt.failed("failure");
+                        logger.warn("Backend {} failed, {}", attempt.backend.name, next < ranked.size() ? "failing over" : "no backend left", ex.getCause());
+                    }
+                } else {
+                    long now = System.nanoTime();
+                    for (Attempt attempt : List.copyOf(running)) {
+                        if (now >= attempt.deadline) {
+                            running.remove(attempt);
+                            attempt.future.cancel(true);
+                            attempt.failed("timeout");
+                            lastFailure = new ModelTimeoutException(attempt.backend.name, timeout);
+                            logger.warn("Backend {} did not answer within {}", attempt.backend.name, timeout);
+                        }
+                    }
+                    if (!hedged && next < ranked.size() && now >= hedgeAt && !running.isEmpty()) {
+                        hedged = true;
+                        if (moveLoadedBackendTo(ranked, next)) {
+                            Counter.builder("llm.routing.hedges").description("Calls hedged on a second backend")
+                                    .tag("backend", running.get(0).backend.name).register(meterRegistry).increment();
+                            running.add(start(completionService, ranked.get(next++), prompt, true));
+                        } else {
+                            logger.debug("Not hedging, no other backend has its model loaded");
+                        }
+                    }
+                }
+                // nothing left in flight, fail over to the next backend
+                if (running.isEmpty() && next < ranked.size()) {
+                    Counter.builder("llm.routing.failovers").description("Calls moved to the next backend after a failure or timeout")
+                            .tag("backend", ranked.get(next - 1).name).register(meterRegistry).increment();
+                    running.add(start(completionService, ranked.get(next++), prompt, hedged));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            lastFailure = new IllegalStateException("Interrupted while waiting for the model", ex);
+        } finally {
+            // the losers, their answers are no longer needed
+            running.forEach(attempt -> {
+                attempt.future.cancel(true);
+                attempt.cancelled();
+            });
+        }
+        throw lastFailure;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> stream(prompt, rank(prompt), 0));
+    }
+
+    private Flux<ChatResponse> stream(Prompt prompt, List<Backend> ranked, int index) {
+        Backend backend = ranked.get(index);
+        AtomicBoolean emitted = new AtomicBoolean();
+        Flux<ChatResponse> routed = Flux.defer(() -> {
+            long start = System.nanoTime();
+            backend.inFlight.incrementAndGet();
+            return backend.chatModel.stream(backend.prompt(prompt))
+                    .doOnNext(response -> {
+                        if (emitted.compareAndSet(false, true))
+                            backend.record(System.nanoTime() - start);
+                    })
+                    .doFinally(signal -> backend.inFlight.decrementAndGet());
+        });
+        return withPermit(backend, routed)
+                .onErrorResume(ex -> {
+                    if (emitted.get() || index + 1 >= ranked.size())
+                        return Flux.error(ex);
+                    logger.warn("Backend {} failed before streaming, failing over", backend.name, ex);
+                    backend.record(timeout.toNanos());
+                    return stream(prompt, ranked, index + 1);
+                });
+    }
+
+    // holds the residency lease and a permit of the backend's bulkhead for as long as the stream runs, a rejection
+    // fails over like an error
+    private Flux<ChatResponse> withPermit(Backend backend, Flux<ChatResponse> stream) {
+        if (modelBulkheads == null && residencyManager == null)
+            return stream;
+        // waiting for the model and for a permit blocks, keeping it off the reactive threads
+        Mono<Admission> admission = Mono.fromCallable(() -> admit(backend))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnDiscard(Admission.class, Admission::abandon);
+        return Flux.usingWhen(admission,
+                granted -> stream,
+                granted -> Mono.fromRunnable(() -> granted.release(true)),
+                (granted, error) -> Mono.fromRunnable(() -> granted.release(false)),
+                granted -> Mono.fromRunnable(granted::abandon));
+    }
+
+    private Admission admit(Backend backend) {
+        OllamaModelResidencyManager.Lease lease = lease(backend);
+        try {
+            return new Admission(lease, modelBulkheads != null ? modelBulkheads.acquire(backend.name) : null);
+        } catch (RuntimeException ex) {
+            lease.release();
+            throw ex;
+        }
+    }
+
+    // backends are named after their model, names the residency manager does not manage get a no-op lease
+    private OllamaModelResidencyManager.Lease lease(Backend backend) {
+        return residencyManager != null ? residencyManager.acquire(backend.name) : OllamaModelResidencyManager.Lease.NONE;
+    }
+
+    private record Admission(OllamaModelResidencyManager.Lease lease, AdaptiveConcurrencyLimiter.Permit permit) {
+
+        void release(boolean success) {
+            if (permit != null)
+                permit.release(success);
+            lease.release();
+        }
+
+        // a cancelled stream says nothing about the backend, so no latency sample
+        void abandon() {
+            if (permit != null)
+                permit.abandon();
+            lease.release();
+        }
+    }
+
+    // brings the best backend from index on whose model is loaded to index, false if there is none
+    private boolean moveLoadedBackendTo(List<Backend> ranked, int index) {
+        if (residencyManager == null)
+            return true;
+        for (int i = index; i < ranked.size(); i++) {
+            if (residencyManager.servesWithoutLoad(ranked.get(i).name)) {
+                ranked.add(index, ranked.remove(i));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // expected time to answer, best first, backends too small for the prompt only as a last resort
+    List<Backend> rank(Prompt prompt) {
+        int promptTokens = prompt.getInstructions().stream()
+                .map(Message::getText)
+                .mapToInt(text -> text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text))
+                .sum();
+        return backends.stream()
+                .sorted(Comparator.comparing((Backend backend) -> promptTokens > backend.maxPromptTokens)
+                        .thenComparingDouble(this::expectedNanos))
+                .toList();
+    }
+
+    private double expectedNanos(Backend backend) {
+        int waiting = backend.inFlight.get();
+        int capacity = 1;
+        if (modelBulkheads != null) {
+            AdaptiveConcurrencyLimiter limiter = modelBulkheads.limiter(backend.name);
+            waiting += limiter.getQueueDepth();
+            capacity = limiter.getLimit();
+        }
+        return backend.ewmaNanos() * (1 + (double) waiting / capacity);
+    }
+
+    private Duration hedgeDelay(Backend backend) {
+        long p95 = backend.p95Nanos();
+        return p95 < 0 ? timeout.dividedBy(2) : Duration.ofNanos(Math.max(p95, minHedgeDelay.toNanos()));
+    }
+
+    private Attempt start(CompletionService<ChatResponse> completionService, Backend backend, Prompt prompt, boolean hedge) {
+        backend.inFlight.incrementAndGet();
+        Prompt routed = backend.prompt(prompt);
+        Future<ChatResponse> future = completionService.submit(() -> {
+            OllamaModelResidencyManager.Lease lease = lease(backend);
+            try {
+                return modelBulkheads != null
+                        ? modelBulkheads.execute(backend.name, () -> backend.chatModel.call(routed))
+                        : backend.chatModel.call(routed);
+            } finally {
+                lease.release();
+            }
+        });
+        return new Attempt(backend, future, hedge, System.nanoTime());
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ChatOptions.builder().model(backends.get(0).model).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final class Attempt {
+
+        private final Backend backend;
+        private final Future<ChatResponse> future;
+        private final boolean hedge;
+        private final long startedAt;
+        private final long deadline;
+
+        private Attempt(Backend backend, Future<ChatResponse> future, boolean hedge, long startedAt) {
+            this.backend = backend;
+            this.future = future;
+            this.hedge = hedge;
+            this.startedAt = startedAt;
+            this.deadline = startedAt + timeout.toNanos();
+        }
+
+        void succeeded() {
+            long latency = System.nanoTime() - startedAt;
+            backend.record(latency);
+            finish("success", latency);
+        }
+
+        // failures and timeouts count as a full timeout, so routing moves away from the backend
+        void failed(String outcome) {
+            backend.record(timeout.toNanos());
+            finish(outcome, System.nanoTime() - startedAt);
+        }
+
+        void cancelled() {
+            finish("cancelled", System.nanoTime() - startedAt);
+        }
+
+        private void finish(String outcome, long latency) {
+            backend.inFlight.decrementAndGet();
+            Timer.builder("llm.routing.latency")
+                    .description("Latency of routed model calls per backend")
+                    .tags("backend", backend.name, "outcome", outcome, "hedge", String.valueOf(hedge))
+                    .register(meterRegistry)
+                    .record(latency, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static final class Backend {
+
+        private final String name;
+        private final ChatModel chatModel;
+        private final String model;
+        private final int maxPromptTokens;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        // guarded by this
+        private double ewmaNanos;
+        private final long[] window = new long[LATENCY_WINDOW];
+        private int samples;
+
+        private Backend(String name, ChatModel chatModel, String model, int maxPromptTokens, Duration expectedLatency) {
+            this.name = name;
+            this.chatModel = chatModel;
+            this.model = model;
+            this.maxPromptTokens = maxPromptTokens;
+            this.ewmaNanos = expectedLatency.toNanos();
+        }
+
+        String name() {
+            return name;
+        }
+
+        synchronized void record(long latencyNanos) {
+            ewmaNanos += EWMA_WEIGHT * (latencyNanos - ewmaNanos);
+            window[samples++ % LATENCY_WINDOW] = latencyNanos;
+        }
+
+        synchronized double ewmaNanos() {
+            return ewmaNanos;
+        }
+
+        // -1 until enough calls were seen
+        synchronized long p95Nanos() {
+            if (samples < MIN_SAMPLES)
+                return -1;
+            long[] sorted = Arrays.copyOf(window, Math.min(samples, LATENCY_WINDOW));
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+        }
+
+        private Prompt prompt(Prompt prompt) {
+            ChatOptions options = prompt.getOptions();
+            ChatOptions.Builder routed = ChatOptions.builder().model(model);
+            if (options != null)
+                routed.temperature(options.getTemperature())
+                        .maxTokens(options.getMaxTokens())
+                        .topP(options.getTopP())
+                        .topK(options.getTopK())
+                        .stopSequences(options.getStopSequences())
+                        .frequencyPenalty(options.getFrequencyPenalty())
+                        .presencePenalty(options.getPresencePenalty());
+            return prompt.mutate().chatOptions(routed.build()).build();
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Backend> backends = new ArrayList<>();
+        private ModelBulkheads modelBulkheads;
+        private OllamaModelResidencyManager residencyManager;
+        private TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+        private Duration timeout = Duration.ofSeconds(30);
+        private Duration minHedgeDelay = Duration.ofMillis(500);
+        private Duration expectedLatency = Duration.ofSeconds(2);
+        private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private Builder() {
+        }
+
+        /**
+         * @param name            used for metrics and as the bulkhead key
+         * @param model           model name sent to the backend
+         * @param maxPromptTokens prompts above this go to the backend only when no other backend can take them
+         */
+        public Builder backend(String name, ChatModel chatModel, String model, int maxPromptTokens) {
+            Assert.hasText(name, "name cannot be empty");
+            Assert.notNull(chatModel, "chatModel cannot be null");
+            Assert.hasText(model, "model cannot be empty");
+            Assert.isTrue(maxPromptTokens > 0, "maxPromptTokens must be greater than zero");
+            this.backends.add(new Backend(name, chatModel, model, maxPromptTokens, expectedLatency));
+            return this;
+        }
+
+        // calls go through the bulkhead of their backend, whose queue depth then counts into the ranking
+        public Builder modelBulkheads(ModelBulkheads modelBulkheads) {
+            this.modelBulkheads = modelBulkheads;
+            return this;
+        }
+
+        // calls hold a residency lease on their backend's model, hedges only go to backends whose model is loaded
+        public Builder residencyManager(OllamaModelResidencyManager residencyManager) {
+            this.residencyManager = residencyManager;
+            return this;
+        }
+
+        public Builder tokenCountEstimator(TokenCountEstimator tokenCountEstimator) {
+            this.tokenCountEstimator = tokenCountEstimator;
+            return this;
+        }
+
+        // per backend, after it the call fails over to the next backend
+        public Builder timeout(Duration timeout) {
+            Assert.isTrue(timeout.isPositive(), "timeout must be positive");
+            this.timeout = timeout;
+            return this;
+        }
+
+        // lower bound for the p95 based hedge delay, so a fast backend is not hedged on every jitter
+        public Builder minHedgeDelay(Duration minHedgeDelay) {
+            this.minHedgeDelay = minHedgeDelay;
+            return this;
+        }
+
+        // latency assumed for backends that have not answered yet, applies to backends added after it
+        public Builder expectedLatency(Duration expectedLatency) {
+            this.expectedLatency = expectedLatency;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public RoutingChatModel build() {
+            return new RoutingChatModel(this);
+        }
+    }
+}
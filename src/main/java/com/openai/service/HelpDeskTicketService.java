@@ -1,31 +1,122 @@
 package com.openai.service;
 
 import com.openai.entity.HelpDeskTicket;
+import com.openai.model.TicketImport;
 import com.openai.model.TicketRequest;
+import com.openai.model.TicketSummary;
 import com.openai.repository.HelpDeskTicketRepository;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Service
-@RequiredArgsConstructor
 public class HelpDeskTicketService {
     private final HelpDeskTicketRepository helpDeskTicketRepository;
+    private final TicketIdAllocator ticketIdAllocator;
+    private final HelpDeskTicketWriter helpDeskTicketWriter;
+    private final Set<String> openStatuses;
+    private final int recentDays;
+    private final int pageSize;
+
+    public HelpDeskTicketService(HelpDeskTicketRepository helpDeskTicketRepository, TicketIdAllocator ticketIdAllocator,
+                                 HelpDeskTicketWriter helpDeskTicketWriter,
+                                 @Value("${helpdesk.tickets.status.open-statuses:OPEN,IN_PROGRESS}") Set<String> openStatuses,
+                                 @Value("${helpdesk.tickets.status.recent-days:30}") int recentDays,
+                                 @Value("${helpdesk.tickets.status.page-size:10}") int pageSize) {
+        this.helpDeskTicketRepository = helpDeskTicketRepository;
+        this.ticketIdAllocator = ticketIdAllocator;
+        this.helpDeskTicketWriter = helpDeskTicketWriter;
+        this.openStatuses = Set.copyOf(openStatuses);
+        this.recentDays = recentDays;
+        this.pageSize = pageSize;
+    }
 
     public HelpDeskTicket createTicket(TicketRequest ticketInput, String username) {
-        HelpDeskTicket ticket = HelpDeskTicket.builder()
+        HelpDeskTicket ticket = newTicket(ticketInput, username);
+        helpDeskTicketWriter.persistAll(List.of(ticket));
+        return ticket;
+    }
+
+    // the id is returned right away, the insert happens with the next write behind flush
+    public HelpDeskTicket submitTicket(TicketRequest ticketInput, String username) {
+        HelpDeskTicket ticket = newTicket(ticketInput, username);
+        try {
+            helpDeskTicketWriter.submit(ticket);
+        } catch (IllegalStateException ex) {
+            // queue is full, the database is behind, this request waits for its own insert instead
+            helpDeskTicketWriter.persistAll(List.of(ticket));
+        }
+        return ticket;
+    }
+
+    // all tickets in one transaction with batched inserts, ids in the order of the input
+    public List<Long> importTickets(List<TicketImport> imports) {
+        imports.forEach(ticketImport -> checkIssue(ticketImport.issue()));
+        long[] ids = ticketIdAllocator.next(imports.size());
+        List<HelpDeskTicket> tickets = new ArrayList<>(imports.size());
+        for (int i = 0; i < imports.size(); i++) {
+            TicketImport ticketImport = imports.get(i);
+            LocalDate createdAt = ticketImport.createdAt() != null ? ticketImport.createdAt() : LocalDate.now();
+            tickets.add(HelpDeskTicket.builder()
+                    .id(ids[i])
+                    .issue(ticketImport.issue())
+                    .username(ticketImport.username())
+                    .status(ticketImport.status() != null ? ticketImport.status() : "OPEN")
+                    .createdAt(createdAt)
+                    .eta(ticketImport.eta() != null ? ticketImport.eta() : createdAt.plusDays(7))
+                    .build());
+        }
+        helpDeskTicketWriter.persistAll(tickets);
+        return tickets.stream().map(HelpDeskTicket::getId).toList();
+    }
+
+    /**
+     * Open tickets and tickets created within the recent days, newest first, one page at a time (page 0 is the first).
+     * Tickets still waiting for the write behind flush are the newest ones and lead the first page.
+     */
+    public Slice<TicketSummary> getTicketSummaries(String username, int page) {
+        // queued tickets are read first, one flushed before the query then shows up twice and is deduplicated below,
+        // read after the query it could have been in neither
+        List<HelpDeskTicket> queued = page == 0 ? helpDeskTicketWriter.pending(username) : List.of();
+        Slice<TicketSummary> stored = helpDeskTicketRepository.findSummaries(username, openStatuses,
+                LocalDate.now().minusDays(recentDays), PageRequest.of(page, pageSize));
+        if (queued.isEmpty())
+            return stored;
+        List<TicketSummary> pending = queued.stream()
+                .map(ticket -> new TicketSummary(ticket.getId(), ticket.getIssue(), ticket.getStatus(), ticket.getCreatedAt(), ticket.getEta()))
+                .filter(summary -> stored.getContent().stream().noneMatch(storedSummary -> storedSummary.id().equals(summary.id())))
+                .toList();
+        if (pending.isEmpty())
+            return stored;
+        List<TicketSummary> merged = new ArrayList<>(pending.reversed());
+        merged.addAll(stored.getContent());
+        return new SliceImpl<>(merged, stored.getPageable(), stored.hasNext());
+    }
+
+    // checked before an id goes out, the write behind insert happens after the caller was answered and could not
+    // report a ticket the database rejects anymore
+    private static void checkIssue(String issue) {
+        Assert.isTrue(issue == null || issue.length() <= HelpDeskTicket.MAX_ISSUE_LENGTH,
+                "ticket issue is longer than " + HelpDeskTicket.MAX_ISSUE_LENGTH + " characters");
+    }
+
+    private HelpDeskTicket newTicket(TicketRequest ticketInput, String username) {
+        checkIssue(ticketInput.issue());
+        return HelpDeskTicket.builder()
+                .id(ticketIdAllocator.next())
                 .issue(ticketInput.issue())
                 .username(username)
                 .status("OPEN")
                 .createdAt(LocalDate.now())
                 .eta(LocalDate.now().plusDays(7))
                 .build();
-        return helpDeskTicketRepository.save(ticket);
-    }
-
-    public List<HelpDeskTicket> getTicketsByUsername(String username) {
-        return helpDeskTicketRepository.findByUsername(username);
     }
 }
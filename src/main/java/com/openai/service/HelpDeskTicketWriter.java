@@ -0,0 +1,242 @@
+package com.openai.service;
+
+import com.openai.entity.HelpDeskTicket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes help desk tickets with hibernate jdbc batching: ids are assigned up front, tickets are persisted in chunks of
+ * the jdbc batch size and the persistence context is cleared after every chunk, so a large import neither issues one
+ * statement per ticket nor keeps every entity managed until the commit.
+ * <p>
+ * {@link #submit} is the write behind path: the ticket is queued and a background flusher persists everything queued
+ * in one transaction every {@code flushInterval}. Queued tickets are visible through {@link #pending(String)} until
+ * they are stored, a failed flush keeps them queued for the next one, and the queue is flushed on shutdown.
+ * <p>
+ * A batch the database rejects for its data (value too long, constraint violated) is written again ticket by ticket,
+ * so one bad ticket cannot hold up the queue. Tickets rejected on their own are dead lettered: logged, counted and
+ * kept in memory (the last {@code maxDeadLetters}) instead of being retried forever.
+ */
+@Component
+public class HelpDeskTicketWriter implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(HelpDeskTicketWriter.class);
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxPending;
+    private final int maxDeadLetters;
+
+    private final ConcurrentLinkedQueue<HelpDeskTicket> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    // one flush at a time, shutdown and the flusher may meet
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+    // guarded by itself, oldest first
+    private final Deque<HelpDeskTicket> deadLetters = new ArrayDeque<>();
+
+    private final Timer batchTimer;
+    private final Counter written;
+    private final Counter failures;
+    private final Counter deadLettered;
+
+    public HelpDeskTicketWriter(EntityManager entityManager, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}") int batchSize,
+                                @Value("${helpdesk.tickets.write-behind.flush-interval:200ms}") Duration flushInterval,
+                                @Value("${helpdesk.tickets.write-behind.max-pending:10000}") int maxPending,
+                                @Value("${helpdesk.tickets.write-behind.max-dead-letters:1000}") int maxDeadLetters) {
+        Assert.notNull(entityManager, "entityManager cannot be null");
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than zero");
+        Assert.isTrue(maxPending > 0, "maxPending must be greater than zero");
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.maxDeadLetters = maxDeadLetters;
+        this.batchTimer = Timer.builder("helpdesk.tickets.write")
+                .description("Time to persist one batch of tickets")
+                .register(meterRegistry);
+        this.written = Counter.builder("helpdesk.tickets.written")
+                .description("Tickets persisted").register(meterRegistry);
+        this.failures = Counter.builder("helpdesk.tickets.write.failures")
+                .description("Write behind flushes that failed and were retried").register(meterRegistry);
+        this.deadLettered = Counter.builder("helpdesk.tickets.dead.lettered")
+                .description("Queued tickets the database rejected, dropped from the queue").register(meterRegistry);
+        Gauge.builder("helpdesk.tickets.pending", queued, AtomicInteger::get)
+                .description("Tickets accepted but not stored yet").register(meterRegistry);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("helpdesk-ticket-flusher").daemon().factory());
+        long intervalMillis = flushInterval.toMillis();
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Persists the tickets in one transaction with batched inserts, every ticket needs its id already.
+     */
+    public void persistAll(List<HelpDeskTicket> tickets) {
+        if (tickets.isEmpty())
+            return;
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < tickets.size(); i++) {
+                HelpDeskTicket ticket = tickets.get(i);
+                Assert.notNull(ticket.getId(), "ticket id has to be assigned before it is persisted");
+                // persist, not merge, the id is new so there is nothing to select first
+                entityManager.persist(ticket);
+                if ((i + 1) % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+        });
+        batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        written.increment(tickets.size());
+    }
+
+    /**
+     * Queues the ticket for the next background flush and returns without touching the database.
+     *
+     * @throws IllegalStateException when {@code maxPending} tickets are already waiting, the caller should write
+     *                               synchronously instead
+     */
+    public void submit(HelpDeskTicket ticket) {
+        Assert.notNull(ticket.getId(), "ticket id has to be assigned before it is submitted");
+        if (queued.incrementAndGet() > maxPending) {
+            queued.decrementAndGet();
+            throw new IllegalStateException("Ticket write queue is full (" + maxPending + " pending)");
+        }
+        queue.add(ticket);
+    }
+
+    /**
+     * Tickets of the user that were submitted but are not stored yet.
+     */
+    public List<HelpDeskTicket> pending(String username) {
+        return queue.stream().filter(ticket -> ticket.getUsername().equals(username)).toList();
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            // taking a snapshot, tickets submitted meanwhile go with the next flush
+            List<HelpDeskTicket> batch = new ArrayList<>();
+            for (HelpDeskTicket ticket : queue) {
+                batch.add(ticket);
+                if (batch.size() == maxPending)
+                    break;
+            }
+            if (batch.isEmpty())
+                return;
+            try {
+                persistAll(batch);
+            } catch (RuntimeException ex) {
+                // the database is not reachable, everything stays queued for the next flush
+                if (!isRejectedData(ex))
+                    throw ex;
+                logger.warn("Batch of {} tickets was rejected, writing them one by one", batch.size());
+                persistOneByOne(batch);
+                return;
+            }
+            // only the flusher removes, so the head of the queue is exactly this batch
+            for (int i = 0; i < batch.size(); i++)
+                queue.poll();
+            queued.addAndGet(-batch.size());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Queued tickets the database rejected, oldest first.
+     */
+    public List<HelpDeskTicket> deadLetters() {
+        synchronized (deadLetters) {
+            return List.copyOf(deadLetters);
+        }
+    }
+
+    // every ticket leaves the queue once it is stored or dead lettered, so a database outage halfway through
+    // leaves exactly the tickets not written yet queued
+    private void persistOneByOne(List<HelpDeskTicket> batch) {
+        for (HelpDeskTicket ticket : batch) {
+            try {
+                persistAll(List.of(ticket));
+            } catch (RuntimeException ex) {
+                if (!isRejectedData(ex))
+                    throw ex;
+                deadLetter(ticket, ex);
+            }
+            queue.poll();
+            queued.decrementAndGet();
+        }
+    }
+
+    private void deadLetter(HelpDeskTicket ticket, RuntimeException ex) {
+        deadLettered.increment();
+        // no issue text in the log, it is user input
+        logger.error("Dropping ticket {} of user {}, the database rejected it: {}", ticket.getId(), ticket.getUsername(), ex.getMessage());
+        synchronized (deadLetters) {
+            deadLetters.addLast(ticket);
+            if (deadLetters.size() > maxDeadLetters)
+                deadLetters.removeFirst();
+        }
+    }
+
+    // rejected for what was written (sql state class 22 data exception, 23 integrity constraint violation), as opposed
+    // to the database being unavailable
+    private static boolean isRejectedData(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataIntegrityViolationException)
+                return true;
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                    && (sqlException.getSQLState().startsWith("22") || sqlException.getSQLState().startsWith("23")))
+                return true;
+        }
+        return false;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            failures.increment();
+            logger.warn("Could not write {} queued tickets, retrying with the next flush", queued.get(), ex);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
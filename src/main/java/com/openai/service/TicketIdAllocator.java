@@ -0,0 +1,101 @@
+package com.openai.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out help desk ticket ids from the database sequence {@code helpdesk_tickets_seq} in blocks: the sequence
+ * steps by {@code blockSize} and every value it returns reserves that many ids, so one database round trip pays for a
+ * whole block (the pooled hi/lo scheme). Ids are known before the insert, which is what lets hibernate batch the
+ * inserts and the async write path answer with the ticket id right away. Several application instances can share the
+ * sequence, ids stay unique, only unused ids of a block are lost on restart.
+ * <p>
+ * The sequence keeps the increment it was created with, the block size always follows the increment of the existing
+ * sequence, so a changed {@code helpdesk.tickets.id-block-size} can never hand out ids of another block.
+ */
+@Component
+public class TicketIdAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TicketIdAllocator.class);
+
+    static final String SEQUENCE = "helpdesk_tickets_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int blockSize;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // guarded by lock
+    private boolean initialized;
+    private long increment;
+    private long next;
+    private long blockEnd;
+
+    public TicketIdAllocator(JdbcTemplate jdbcTemplate, @Value("${helpdesk.tickets.id-block-size:50}") int blockSize) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate cannot be null");
+        Assert.isTrue(blockSize > 0, "blockSize must be greater than zero");
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = blockSize;
+    }
+
+    public long next() {
+        lock.lock();
+        try {
+            if (next == blockEnd)
+                nextBlock();
+            return next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves {@code count} ids at once, for bulk imports. They are unique but not necessarily consecutive.
+     */
+    public long[] next(int count) {
+        Assert.isTrue(count >= 0, "count cannot be negative");
+        long[] ids = new long[count];
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (next == blockEnd)
+                    nextBlock();
+                ids[i] = next++;
+            }
+            return ids;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void nextBlock() {
+        if (!initialized) {
+            // tickets created before the sequence existed got identity ids, the sequence has to start past them
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM helpdesk_tickets", Long.class);
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE
+                    + " START WITH " + (maxId + 1) + " INCREMENT BY " + blockSize);
+            increment = sequenceIncrement();
+            initialized = true;
+        }
+        Long blockStart = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + SEQUENCE, Long.class);
+        Assert.state(blockStart != null, "sequence " + SEQUENCE + " returned no value");
+        next = blockStart;
+        blockEnd = blockStart + increment;
+    }
+
+    // an existing sequence is not recreated, a block size changed since then must not outgrow its increment
+    private long sequenceIncrement() {
+        Long increment = jdbcTemplate.queryForObject("SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES"
+                + " WHERE SEQUENCE_SCHEMA = CURRENT_SCHEMA AND UPPER(SEQUENCE_NAME) = UPPER(?)", Long.class, SEQUENCE);
+        Assert.state(increment != null && increment > 0, "sequence " + SEQUENCE + " must have a positive increment");
+        if (increment != blockSize)
+            logger.warn("Sequence {} steps by {}, not by the configured block size {}, using blocks of {}",
+                    SEQUENCE, increment, blockSize, increment);
+        return increment;
+    }
+}
@@ -2,6 +2,8 @@ package com.openai.tools;
 
 import com.openai.entity.HelpDeskTicket;
 import com.openai.model.TicketRequest;
+import com.openai.model.TicketSummary;
+import com.openai.resilience.RequestDeadline;
 import com.openai.service.HelpDeskTicketService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -9,10 +11,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 @Component
 @RequiredArgsConstructor
 public class HelpDeskTools {
@@ -22,18 +23,29 @@ public class HelpDeskTools {
     @Tool(name = "createTicket", description = "Create the support ticket", returnDirect = true)
     String createTicket(@ToolParam(description = "Details to create a support ticket") TicketRequest ticketRequest, ToolContext toolContext) {
         String username = (String) toolContext.getContext().get("username");
+        // a request nobody waits for anymore must not leave a ticket behind
+        RequestDeadline.current().ifPresent(deadline -> deadline.checkNotExpired("createTicket"));
         logger.info("Create support ticket for user: {} with details {}", username, ticketRequest);
-        HelpDeskTicket savedTicket = helpDeskTicketService.createTicket(ticketRequest, username);
-        logger.info("Ticket created successfully. Ticket ID: {}, Username: {}", savedTicket.getId(), savedTicket.getUsername());
+        // answered with the id right away, the insert is batched with other tickets in the background
+        HelpDeskTicket savedTicket = helpDeskTicketService.submitTicket(ticketRequest, username);
+        logger.info("Ticket accepted. Ticket ID: {}, Username: {}", savedTicket.getId(), savedTicket.getUsername());
         return "Ticket #" + savedTicket.getId() + " create successfully for user " + savedTicket.getUsername();
     }
 
-    @Tool(description = "Fetch the status of the open tickets based on given username")
-    List<HelpDeskTicket> getTicketStatus(ToolContext toolContext) {
+    // compact lines of open and recent tickets only, a long ticket history no longer ends up in the prompt as json
+    @Tool(description = "Fetch the status of the open and recently created tickets of the user, newest first, one page at a time")
+    String getTicketStatus(@ToolParam(description = "Page to show, starting at 1", required = false) Integer page, ToolContext toolContext) {
         String username = (String) toolContext.getContext().get("username");
-        logger.info("Fetch the status of the open tickets based on username: {}", username);
-        List<HelpDeskTicket> tickets = helpDeskTicketService.getTicketsByUsername(username);
-        logger.info("Found {} tickets for user {}", tickets.size(), username);
-        return tickets;
+        int pageNumber = page != null && page > 0 ? page : 1;
+        logger.info("Fetch the status of the open tickets based on username: {}, page {}", username, pageNumber);
+        Slice<TicketSummary> tickets = helpDeskTicketService.getTicketSummaries(username, pageNumber - 1);
+        logger.info("Found {} tickets for user {}", tickets.getNumberOfElements(), username);
+        if (!tickets.hasContent())
+            return pageNumber == 1 ? "No open or recent tickets." : "No more tickets.";
+        StringBuilder result = new StringBuilder();
+        tickets.forEach(ticket -> result.append(ticket.toLine()).append('\n'));
+        if (tickets.hasNext())
+            result.append("More tickets on page ").append(pageNumber + 1).append('.');
+        return result.toString().strip();
     }
 }
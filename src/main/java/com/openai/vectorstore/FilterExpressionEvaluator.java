@@ -0,0 +1,86 @@
+package com.openai.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * Evaluates spring ai filter expressions ({@code source == 'x' && year >= 2024}, {@code dept in ['hr', 'it']}, ...)
+ * against the metadata of a single document. Numbers compare by value regardless of their type, since metadata read
+ * back from the document log may come back as a different number type than it was written with.
+ */
+final class FilterExpressionEvaluator {
+
+    private FilterExpressionEvaluator() {
+    }
+
+    static boolean matches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group)
+            return matches(group.content(), metadata);
+        if (!(operand instanceof Filter.Expression expression))
+            throw new IllegalArgumentException("Expected an expression or group but got " + operand);
+        return switch (expression.type()) {
+            case AND -> matches(expression.left(), metadata) && matches(expression.right(), metadata);
+            case OR -> matches(expression.left(), metadata) || matches(expression.right(), metadata);
+            case NOT -> !matches(expression.left(), metadata);
+            case EQ -> valueEquals(value(expression.left(), metadata), constant(expression.right()));
+            case NE -> !valueEquals(value(expression.left(), metadata), constant(expression.right()));
+            case GT -> compare(value(expression.left(), metadata), constant(expression.right()), order -> order > 0);
+            case GTE -> compare(value(expression.left(), metadata), constant(expression.right()), order -> order >= 0);
+            case LT -> compare(value(expression.left(), metadata), constant(expression.right()), order -> order < 0);
+            case LTE -> compare(value(expression.left(), metadata), constant(expression.right()), order -> order <= 0);
+            case IN -> in(value(expression.left(), metadata), constant(expression.right()));
+            case NIN -> !in(value(expression.left(), metadata), constant(expression.right()));
+            default -> throw new IllegalArgumentException("Unsupported filter expression type " + expression.type());
+        };
+    }
+
+    private static Object value(Filter.Operand operand, Map<String, Object> metadata) {
+        if (!(operand instanceof Filter.Key key))
+            throw new IllegalArgumentException("Expected a metadata key but got " + operand);
+        String name = key.key();
+        // the text parser keeps quotes around keys that are not plain identifiers
+        if (name.length() > 1 && (name.startsWith("'") && name.endsWith("'") || name.startsWith("\"") && name.endsWith("\"")))
+            name = name.substring(1, name.length() - 1);
+        return metadata.get(name);
+    }
+
+    private static Object constant(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Value value))
+            throw new IllegalArgumentException("Expected a value but got " + operand);
+        return value.value();
+    }
+
+    private static boolean valueEquals(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number e)
+            return Double.compare(a.doubleValue(), e.doubleValue()) == 0;
+        if (actual instanceof Boolean && expected instanceof String || actual instanceof String && expected instanceof Boolean)
+            return String.valueOf(actual).equalsIgnoreCase(String.valueOf(expected));
+        return Objects.equals(actual, expected);
+    }
+
+    // a missing value never satisfies a range comparison
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static boolean compare(Object actual, Object expected, IntPredicate order) {
+        if (actual == null)
+            return false;
+        if (actual instanceof Number a && expected instanceof Number e)
+            return order.test(Double.compare(a.doubleValue(), e.doubleValue()));
+        if (actual instanceof Comparable comparable && actual.getClass().isInstance(expected))
+            return order.test(comparable.compareTo(expected));
+        return order.test(String.valueOf(actual).compareTo(String.valueOf(expected)));
+    }
+
+    private static boolean in(Object actual, Object expected) {
+        if (!(expected instanceof Collection<?> values))
+            return valueEquals(actual, expected);
+        for (Object value : values) {
+            if (valueEquals(actual, value))
+                return true;
+        }
+        return false;
+    }
+}
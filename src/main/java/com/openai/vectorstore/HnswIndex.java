@@ -0,0 +1,529 @@
+package com.openai.vectorstore;
+
+import org.springframework.util.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW graph over normalized vectors (similarity is the dot product, i.e. cosine). Vectors and layer 0 neighbour
+ * lists live in memory mapped slot files, so they stay off heap and reopening the index is just mapping the files
+ * again. The few nodes on upper layers are kept on heap and written to a small file on {@link #commit}.
+ * <p>
+ * Inserts may run concurrently, a node's neighbour list is only changed under its stripe lock. Searches take no
+ * lock: a layer 0 list is written before its count is published with a release store, and read after an acquire
+ * load of the count. Upper layer lists are replaced copy-on-write. {@link #commit} must not run concurrently with
+ * inserts, the caller makes sure of that.
+ */
+public class HnswIndex implements Closeable {
+
+    public enum Quantization {NONE, INT8}
+
+    public record SearchResult(int node, float similarity) {
+    }
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int MAX_LEVEL = 16;
+    private static final int[] NO_NEIGHBORS = new int[0];
+    private static final Comparator<SearchResult> BY_SIMILARITY = Comparator.comparingDouble(SearchResult::similarity);
+
+    private static final String HEADER_FILE = "header.properties";
+    private static final String VECTORS_FILE = "vectors.bin";
+    private static final String LINKS_FILE = "links.bin";
+    private static final String UPPER_LINKS_FILE = "upper-links.bin";
+
+    private final Path directory;
+    private final int dimensions;
+    private final Quantization quantization;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+
+    private final MappedSlotFile vectors;
+    private final MappedSlotFile links;
+    private final Map<Integer, int[][]> upperLinks = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[256];
+    private final ReentrantLock entryPointLock = new ReentrantLock();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile EntryPoint entryPoint;
+    private volatile Map<String, String> properties = Map.of();
+
+    private record EntryPoint(int node, int level) {
+    }
+
+    // a query vector together with the sum of its components, which int8 similarities need
+    private record QueryVector(float[] values, float sum) {
+
+        static QueryVector of(float[] values) {
+            float sum = 0;
+            for (float value : values)
+                sum += value;
+            return new QueryVector(values, sum);
+        }
+    }
+
+    private HnswIndex(Path directory, int dimensions, Quantization quantization, int m, int efConstruction) {
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.quantization = quantization;
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new ReentrantLock();
+        // int8 slots hold min and scale of the vector followed by one byte per dimension, padded to whole ints
+        int vectorSlotSize = quantization == Quantization.INT8 ? 8 + ((dimensions + 3) & ~3) : dimensions * Float.BYTES;
+        this.vectors = new MappedSlotFile(directory.resolve(VECTORS_FILE), vectorSlotSize);
+        this.links = new MappedSlotFile(directory.resolve(LINKS_FILE), (1 + m0) * Integer.BYTES);
+    }
+
+    /**
+     * Opens the index in {@code directory}, or creates an empty one. An existing index has to match the dimensions
+     * and quantization, m and efConstruction are taken from the existing index.
+     */
+    public static HnswIndex open(Path directory, int dimensions, Quantization quantization, int m, int efConstruction) {
+        Assert.isTrue(dimensions > 0, "dimensions must be greater than zero");
+        Assert.isTrue(m > 1, "m must be greater than one");
+        try {
+            Files.createDirectories(directory);
+            Path headerFile = directory.resolve(HEADER_FILE);
+            if (!Files.exists(headerFile))
+                return new HnswIndex(directory, dimensions, quantization, m, efConstruction);
+
+            Properties header = new Properties();
+            try (InputStream in = Files.newInputStream(headerFile)) {
+                header.load(in);
+            }
+            int storedDimensions = Integer.parseInt(header.getProperty("dimensions"));
+            Quantization storedQuantization = Quantization.valueOf(header.getProperty("quantization"));
+            if (storedDimensions != dimensions || storedQuantization != quantization)
+                throw new IllegalStateException("Index in " + directory + " was built with " + storedDimensions + " dimensions and "
+                        + storedQuantization + " quantization, delete it to rebuild with " + dimensions + "/" + quantization);
+            HnswIndex index = new HnswIndex(directory, dimensions, quantization,
+                    Integer.parseInt(header.getProperty("m")), Integer.parseInt(header.getProperty("efConstruction")));
+            index.size.set(Integer.parseInt(header.getProperty("size")));
+            int entryNode = Integer.parseInt(header.getProperty("entryNode"));
+            if (entryNode >= 0)
+                index.entryPoint = new EntryPoint(entryNode, Integer.parseInt(header.getProperty("entryLevel")));
+            Map<String, String> properties = new HashMap<>();
+            for (String name : header.stringPropertyNames()) {
+                if (name.startsWith("property."))
+                    properties.put(name.substring("property.".length()), header.getProperty(name));
+            }
+            index.properties = Map.copyOf(properties);
+            index.loadUpperLinks();
+            return index;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open hnsw index in " + directory, ex);
+        }
+    }
+
+    /**
+     * Inserts a normalized vector and returns its node, nodes are numbered from zero in insertion order.
+     */
+    public int add(float[] vector) {
+        Assert.isTrue(vector.length == dimensions, "expected " + dimensions + " dimensions but got " + vector.length);
+        int node = size.getAndIncrement();
+        writeVector(node, vector);
+        // the slot may hold leftovers of an insert that was never committed
+        INT.setRelease(links.chunk(node), links.offset(node), 0);
+        int level = randomLevel();
+        if (level > 0) {
+            int[][] levels = new int[level][];
+            Arrays.fill(levels, NO_NEIGHBORS);
+            upperLinks.put(node, levels);
+        }
+
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            entryPointLock.lock();
+            try {
+                if (entryPoint == null) {
+                    entryPoint = new EntryPoint(node, level);
+                    return node;
+                }
+                entry = entryPoint;
+            } finally {
+                entryPointLock.unlock();
+            }
+        }
+
+        QueryVector query = QueryVector.of(vector);
+        SearchResult current = new SearchResult(entry.node(), similarity(query, entry.node()));
+        for (int l = entry.level(); l > level; l--)
+            current = greedySearch(query, current, l);
+        for (int l = Math.min(level, entry.level()); l >= 0; l--) {
+            List<SearchResult> candidates = searchLayer(query, current, efConstruction, l, n -> true);
+            int[] selected = selectNeighbors(candidates, m);
+            lock(node);
+            try {
+                setNeighbors(node, l, selected);
+            } finally {
+                unlock(node);
+            }
+            for (int neighbor : selected)
+                link(neighbor, node, l, l == 0 ? m0 : m);
+            current = candidates.get(0);
+        }
+
+        if (level > entry.level()) {
+            entryPointLock.lock();
+            try {
+                if (level > entryPoint.level())
+                    entryPoint = new EntryPoint(node, level);
+            } finally {
+                entryPointLock.unlock();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Approximate nearest neighbours, most similar first. Nodes rejected by {@code accept} are still used to walk
+     * the graph but never returned.
+     */
+    public List<SearchResult> search(float[] vector, int k, int ef, IntPredicate accept) {
+        EntryPoint entry = entryPoint;
+        if (entry == null)
+            return List.of();
+        QueryVector query = QueryVector.of(vector);
+        SearchResult current = new SearchResult(entry.node(), similarity(query, entry.node()));
+        for (int l = entry.level(); l > 0; l--)
+            current = greedySearch(query, current, l);
+        List<SearchResult> results = searchLayer(query, current, Math.max(ef, k), 0, accept);
+        return results.size() > k ? results.subList(0, k) : results;
+    }
+
+    /**
+     * Exact scan over all accepted nodes, the baseline for recall and the fallback for very selective filters.
+     */
+    public List<SearchResult> exactSearch(float[] vector, int k, IntPredicate accept) {
+        QueryVector query = QueryVector.of(vector);
+        PriorityQueue<SearchResult> top = new PriorityQueue<>(k + 1, BY_SIMILARITY);
+        int count = size.get();
+        for (int node = 0; node < count; node++) {
+            if (!accept.test(node))
+                continue;
+            top.offer(new SearchResult(node, similarity(query, node)));
+            if (top.size() > k)
+                top.poll();
+        }
+        List<SearchResult> results = new ArrayList<>(top);
+        results.sort(BY_SIMILARITY.reversed());
+        return results;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * The stored vector of a node, dequantized for int8 indexes, ex - to copy live nodes into a compacted index.
+     */
+    public float[] vector(int node) {
+        Assert.isTrue(node >= 0 && node < size.get(), "no node " + node);
+        return decode(node);
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Free form values stored with the last commit, ex - how far a companion log was written.
+     */
+    public Map<String, String> properties() {
+        return properties;
+    }
+
+    /**
+     * Flushes the mapped files and writes upper layers and header, only nodes inserted before the commit survive
+     * a crash. Header and upper layers are written to temp files and moved in place.
+     */
+    public void commit(Map<String, String> properties) {
+        try {
+            vectors.force();
+            links.force();
+            Path upperLinksFile = directory.resolve(UPPER_LINKS_FILE);
+            Path tempUpperLinks = Files.createTempFile(directory, UPPER_LINKS_FILE, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempUpperLinks)))) {
+                out.writeInt(upperLinks.size());
+                for (Map.Entry<Integer, int[][]> entry : upperLinks.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (int[] neighbors : entry.getValue()) {
+                        out.writeInt(neighbors.length);
+                        for (int neighbor : neighbors)
+                            out.writeInt(neighbor);
+                    }
+                }
+            }
+            Files.move(tempUpperLinks, upperLinksFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            EntryPoint entry = entryPoint;
+            Properties header = new Properties();
+            header.setProperty("dimensions", String.valueOf(dimensions));
+            header.setProperty("quantization", quantization.name());
+            header.setProperty("m", String.valueOf(m));
+            header.setProperty("efConstruction", String.valueOf(efConstruction));
+            header.setProperty("size", String.valueOf(size.get()));
+            header.setProperty("entryNode", String.valueOf(entry != null ? entry.node() : -1));
+            header.setProperty("entryLevel", String.valueOf(entry != null ? entry.level() : -1));
+            properties.forEach((name, value) -> header.setProperty("property." + name, value));
+            Path tempHeader = Files.createTempFile(directory, HEADER_FILE, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempHeader)) {
+                header.store(out, "hnsw index header");
+            }
+            Files.move(tempHeader, directory.resolve(HEADER_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.properties = Map.copyOf(properties);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not commit hnsw index in " + directory, ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        vectors.close();
+        links.close();
+    }
+
+    private void loadUpperLinks() throws IOException {
+        Path file = directory.resolve(UPPER_LINKS_FILE);
+        if (!Files.exists(file))
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int nodes = in.readInt();
+            for (int i = 0; i < nodes; i++) {
+                int node = in.readInt();
+                int[][] levels = new int[in.readInt()][];
+                for (int l = 0; l < levels.length; l++) {
+                    levels[l] = new int[in.readInt()];
+                    for (int n = 0; n < levels[l].length; n++)
+                        levels[l][n] = in.readInt();
+                }
+                upperLinks.put(node, levels);
+            }
+        }
+    }
+
+    private SearchResult greedySearch(QueryVector query, SearchResult start, int level) {
+        SearchResult current = start;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : neighbors(current.node(), level)) {
+                float similarity = similarity(query, neighbor);
+                if (similarity > current.similarity()) {
+                    current = new SearchResult(neighbor, similarity);
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // best first search on one layer, returns up to ef accepted nodes, most similar first
+    private List<SearchResult> searchLayer(QueryVector query, SearchResult entry, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet();
+        visited.set(entry.node());
+        PriorityQueue<SearchResult> candidates = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<SearchResult> results = new PriorityQueue<>(BY_SIMILARITY);
+        candidates.add(entry);
+        if (accept.test(entry.node()))
+            results.add(entry);
+        int count = size.get();
+        while (!candidates.isEmpty()) {
+            SearchResult candidate = candidates.poll();
+            if (results.size() >= ef && candidate.similarity() < results.peek().similarity())
+                break;
+            for (int neighbor : neighbors(candidate.node(), level)) {
+                // links into nodes past the last commit can survive a crash, those slots may be reused since
+                if (neighbor >= count || visited.get(neighbor))
+                    continue;
+                visited.set(neighbor);
+                float similarity = similarity(query, neighbor);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    SearchResult result = new SearchResult(neighbor, similarity);
+                    candidates.add(result);
+                    if (accept.test(neighbor)) {
+                        results.add(result);
+                        if (results.size() > ef)
+                            results.poll();
+                    }
+                }
+            }
+        }
+        List<SearchResult> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIMILARITY.reversed());
+        return sorted;
+    }
+
+    // hnsw heuristic: a candidate is only kept if it is closer to the base node than to any neighbour kept so far,
+    // which keeps links spread over different directions instead of one dense cluster
+    private int[] selectNeighbors(List<SearchResult> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+        for (SearchResult candidate : candidates) {
+            if (count == selected.length)
+                break;
+            QueryVector candidateVector = QueryVector.of(decode(candidate.node()));
+            boolean diverse = true;
+            for (int i = 0; i < count && diverse; i++)
+                diverse = similarity(candidateVector, selected[i]) <= candidate.similarity();
+            if (diverse)
+                selected[count++] = candidate.node();
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void link(int node, int newNeighbor, int level, int maxConnections) {
+        lock(node);
+        try {
+            int[] current = neighbors(node, level);
+            if (current.length < maxConnections) {
+                int[] grown = Arrays.copyOf(current, current.length + 1);
+                grown[current.length] = newNeighbor;
+                setNeighbors(node, level, grown);
+                return;
+            }
+            // list is full, choosing the best set among the current neighbours and the new one
+            QueryVector base = QueryVector.of(decode(node));
+            List<SearchResult> candidates = new ArrayList<>(current.length + 1);
+            for (int neighbor : current)
+                candidates.add(new SearchResult(neighbor, similarity(base, neighbor)));
+            candidates.add(new SearchResult(newNeighbor, similarity(base, newNeighbor)));
+            candidates.sort(BY_SIMILARITY.reversed());
+            setNeighbors(node, level, selectNeighbors(candidates, maxConnections));
+        } finally {
+            unlock(node);
+        }
+    }
+
+    private int[] neighbors(int node, int level) {
+        if (level > 0) {
+            int[][] levels = upperLinks.get(node);
+            return levels == null || levels.length < level ? NO_NEIGHBORS : levels[level - 1];
+        }
+        ByteBuffer chunk = links.chunk(node);
+        int offset = links.offset(node);
+        int count = (int) INT.getAcquire(chunk, offset);
+        int[] neighbors = new int[Math.min(count, m0)];
+        for (int i = 0; i < neighbors.length; i++)
+            neighbors[i] = (int) INT.get(chunk, offset + (i + 1) * Integer.BYTES);
+        return neighbors;
+    }
+
+    // callers hold the stripe lock of the node
+    private void setNeighbors(int node, int level, int[] neighbors) {
+        if (level > 0) {
+            int[][] levels = upperLinks.get(node).clone();
+            levels[level - 1] = neighbors;
+            upperLinks.put(node, levels);
+            return;
+        }
+        ByteBuffer chunk = links.chunk(node);
+        int offset = links.offset(node);
+        for (int i = 0; i < neighbors.length; i++)
+            INT.set(chunk, offset + (i + 1) * Integer.BYTES, neighbors[i]);
+        INT.setRelease(chunk, offset, neighbors.length);
+    }
+
+    private void writeVector(int node, float[] vector) {
+        ByteBuffer chunk = vectors.chunk(node);
+        int offset = vectors.offset(node);
+        if (quantization == Quantization.NONE) {
+            for (int i = 0; i < dimensions; i++)
+                chunk.putFloat(offset + i * Float.BYTES, vector[i]);
+            return;
+        }
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (float value : vector) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        float scale = max > min ? (max - min) / 255 : 1;
+        chunk.putFloat(offset, min);
+        chunk.putFloat(offset + 4, scale);
+        for (int i = 0; i < dimensions; i++)
+            chunk.put(offset + 8 + i, (byte) (Math.round((vector[i] - min) / scale) - 128));
+    }
+
+    private float[] decode(int node) {
+        ByteBuffer chunk = vectors.chunk(node);
+        int offset = vectors.offset(node);
+        float[] vector = new float[dimensions];
+        if (quantization == Quantization.NONE) {
+            for (int i = 0; i < dimensions; i++)
+                vector[i] = chunk.getFloat(offset + i * Float.BYTES);
+            return vector;
+        }
+        float min = chunk.getFloat(offset);
+        float scale = chunk.getFloat(offset + 4);
+        for (int i = 0; i < dimensions; i++)
+            vector[i] = min + scale * (chunk.get(offset + 8 + i) + 128);
+        return vector;
+    }
+
+    private float similarity(QueryVector query, int node) {
+        ByteBuffer chunk = vectors.chunk(node);
+        int offset = vectors.offset(node);
+        float[] values = query.values();
+        if (quantization == Quantization.NONE) {
+            float dot = 0;
+            for (int i = 0; i < dimensions; i++)
+                dot += values[i] * chunk.getFloat(offset + i * Float.BYTES);
+            return dot;
+        }
+        // x = min + scale * (b + 128), so q.x = (min + 128 * scale) * sum(q) + scale * q.b
+        float min = chunk.getFloat(offset);
+        float scale = chunk.getFloat(offset + 4);
+        float dot = 0;
+        for (int i = 0; i < dimensions; i++)
+            dot += values[i] * chunk.get(offset + 8 + i);
+        return (min + 128 * scale) * query.sum() + scale * dot;
+    }
+
+    private int randomLevel() {
+        double uniform = 1 - ThreadLocalRandom.current().nextDouble();
+        return Math.min((int) (-Math.log(uniform) * levelMultiplier), MAX_LEVEL);
+    }
+
+    private void lock(int node) {
+        stripes[node % stripes.length].lock();
+    }
+
+    private void unlock(int node) {
+        stripes[node % stripes.length].unlock();
+    }
+}
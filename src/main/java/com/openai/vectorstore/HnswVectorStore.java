@@ -0,0 +1,551 @@
+package com.openai.vectorstore;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Embedded {@link VectorStore} for single node deployments, replaces qdrant when {@code spring.ai.vectorstore.type=hnsw}.
+ * Vectors go into an {@link HnswIndex}, document text and metadata into an append only log next to it, replayed into
+ * memory on startup (the graph itself is only mapped, not rebuilt). A commit records how far the log was written, a
+ * log tail past that point is cut off on the next start. Commits are batched, a background committer commits every
+ * {@code commitInterval}, so a crash loses at most the changes of that interval.
+ * <p>
+ * Deleting or replacing a document only drops its log entry, its node stays in the graph to route searches. Once the
+ * dead nodes outnumber the live ones by the configured ratio, the committer compacts the store: the live documents are
+ * copied into a fresh generation (index and log in a new directory), which replaces the current one atomically by
+ * rewriting the {@code CURRENT} file. Searches keep running on the old generation while the new one is built.
+ */
+public class HnswVectorStore implements VectorStore, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswVectorStore.class);
+
+    private static final String DOCUMENT_LOG_FILE = "documents.log";
+    private static final String DOCUMENT_LOG_LENGTH = "documentLogLength";
+    private static final String CURRENT_FILE = "CURRENT";
+    private static final String GENERATION_PREFIX = "gen-";
+    // files of an index opened before generations existed, they live directly in the store directory
+    private static final List<String> LEGACY_FILES = List.of("header.properties", "vectors.bin", "links.bin", "upper-links.bin", DOCUMENT_LOG_FILE);
+    // documents looked at to estimate how selective a filter is
+    private static final int FILTER_SAMPLE_SIZE = 1024;
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int dimensions;
+    private final HnswIndex.Quantization quantization;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int exactSearchThreshold;
+    private final double compactionRatio;
+    private final int minDeadNodes;
+
+    // replaced as a whole by a compaction, readers take one reference and use it throughout
+    private volatile Segment segment;
+    // adds and deletes run concurrently, a commit or compaction waits until none is in progress
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final ReentrantLock logLock = new ReentrantLock();
+    private final AtomicInteger uncommittedChanges = new AtomicInteger();
+    private final ScheduledExecutorService committer;
+
+    record StoredDocument(String id, String text, Map<String, Object> metadata) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record LogEntry(String op, int node, String id, String text, Map<String, Object> metadata) {
+    }
+
+    // one generation of the store, the index and its document log always live in the same directory
+    private record Segment(Path directory, HnswIndex index, FileChannel documentLog,
+                           Map<Integer, StoredDocument> documents, Map<String, Integer> nodesById) {
+    }
+
+    private HnswVectorStore(Builder builder) {
+        Assert.notNull(builder.embeddingModel, "embeddingModel cannot be null");
+        Assert.notNull(builder.directory, "directory cannot be null");
+        Assert.isTrue(!builder.commitInterval.isNegative(), "commitInterval cannot be negative");
+        Assert.isTrue(builder.compactionRatio > 0, "compactionRatio must be positive");
+        this.embeddingModel = builder.embeddingModel;
+        this.objectMapper = builder.objectMapper;
+        this.directory = builder.directory;
+        this.dimensions = builder.dimensions;
+        this.quantization = builder.quantization;
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.exactSearchThreshold = builder.exactSearchThreshold;
+        this.compactionRatio = builder.compactionRatio;
+        this.minDeadNodes = builder.minDeadNodes;
+        this.segment = openSegment(currentGeneration());
+        removeStaleGenerations();
+        if (builder.commitInterval.isZero()) {
+            this.committer = null;
+        } else {
+            this.committer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("hnsw-committer").daemon().factory());
+            long intervalMillis = builder.commitInterval.toMillis();
+            this.committer.scheduleWithFixedDelay(this::commitQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        logger.info("Opened hnsw vector store in {} with {} documents ({} nodes)", segment.directory(), segment.documents().size(),
+                segment.index().size());
+    }
+
+    private Segment openSegment(Path segmentDirectory) {
+        HnswIndex index = HnswIndex.open(segmentDirectory, dimensions, quantization, m, efConstruction);
+        Path logFile = segmentDirectory.resolve(DOCUMENT_LOG_FILE);
+        try {
+            FileChannel documentLog = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long committedLength = Long.parseLong(index.properties().getOrDefault(DOCUMENT_LOG_LENGTH, "0"));
+            // entries after the last commit may belong to nodes the index never committed
+            documentLog.truncate(committedLength);
+            documentLog.position(committedLength);
+            Segment opened = new Segment(segmentDirectory, index, documentLog, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+            replay(logFile, opened);
+            return opened;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open document log " + logFile, ex);
+        }
+    }
+
+    private void replay(Path logFile, Segment target) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LogEntry entry = objectMapper.readValue(line, LogEntry.class);
+                if ("add".equals(entry.op())) {
+                    target.documents().put(entry.node(), new StoredDocument(entry.id(), entry.text(), entry.metadata()));
+                    target.nodesById().put(entry.id(), entry.node());
+                } else {
+                    StoredDocument removed = target.documents().remove(entry.node());
+                    if (removed != null)
+                        target.nodesById().remove(removed.id(), entry.node());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void add(List<Document> documentsToAdd) {
+        if (documentsToAdd.isEmpty())
+            return;
+        List<float[]> embeddings = embeddingModel.embed(documentsToAdd.stream()
+                .map(document -> document.getText() != null ? document.getText() : "")
+                .toList());
+        commitLock.readLock().lock();
+        try {
+            Segment current = segment;
+            for (int i = 0; i < documentsToAdd.size(); i++) {
+                Document document = documentsToAdd.get(i);
+                int node = current.index().add(normalize(embeddings.get(i)));
+                StoredDocument stored = new StoredDocument(document.getId(), document.getText(), new HashMap<>(document.getMetadata()));
+                // an id that is already stored is replaced, its old node is dropped from results
+                Integer previous = current.nodesById().put(document.getId(), node);
+                if (previous != null)
+                    remove(current, previous);
+                current.documents().put(node, stored);
+                append(current, new LogEntry("add", node, stored.id(), stored.text(), stored.metadata()));
+            }
+            uncommittedChanges.incrementAndGet();
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        if (committer == null)
+            commit();
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        commitLock.readLock().lock();
+        try {
+            Segment current = segment;
+            for (String id : idList) {
+                Integer node = current.nodesById().remove(id);
+                if (node != null)
+                    remove(current, node);
+            }
+            uncommittedChanges.incrementAndGet();
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        if (committer == null)
+            commit();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Assert.notNull(filterExpression, "filterExpression cannot be null");
+        List<String> ids = new ArrayList<>();
+        for (StoredDocument document : segment.documents().values()) {
+            if (FilterExpressionEvaluator.matches(filterExpression, document.metadata()))
+                ids.add(document.id());
+        }
+        delete(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        Segment current = segment;
+        Map<Integer, StoredDocument> documents = current.documents();
+        int topK = request.getTopK();
+        Filter.Expression filter = request.getFilterExpression();
+        IntPredicate accept = filter == null
+                ? documents::containsKey
+                : node -> {
+            StoredDocument document = documents.get(node);
+            return document != null && FilterExpressionEvaluator.matches(filter, document.metadata());
+        };
+
+        List<HnswIndex.SearchResult> results;
+        if (filter == null) {
+            results = current.index().search(query, topK, efSearch, accept);
+        } else {
+            // graph search degrades when most nodes are filtered out, small selections are scanned exactly instead
+            long matching = estimateMatching(documents, filter);
+            if (matching <= exactSearchThreshold) {
+                results = current.index().exactSearch(query, topK, accept);
+            } else {
+                int ef = (int) Math.min((long) efSearch * Math.max(1, documents.size() / matching), 10L * efSearch);
+                results = current.index().search(query, topK, ef, accept);
+            }
+        }
+
+        List<Document> found = new ArrayList<>(results.size());
+        for (HnswIndex.SearchResult result : results) {
+            if (result.similarity() < request.getSimilarityThreshold())
+                continue;
+            StoredDocument document = documents.get(result.node());
+            if (document == null)
+                continue;
+            Map<String, Object> metadata = new HashMap<>(document.metadata());
+            metadata.put("distance", 1 - result.similarity());
+            found.add(Document.builder()
+                    .id(document.id())
+                    .text(document.text())
+                    .metadata(metadata)
+                    .score((double) result.similarity())
+                    .build());
+        }
+        return found;
+    }
+
+    // evaluates the filter on a sample instead of on every document, exact for stores up to the sample size
+    private static long estimateMatching(Map<Integer, StoredDocument> documents, Filter.Expression filter) {
+        int total = documents.size();
+        int sampled = 0;
+        int matched = 0;
+        for (StoredDocument document : documents.values()) {
+            if (sampled == FILTER_SAMPLE_SIZE)
+                break;
+            sampled++;
+            if (FilterExpressionEvaluator.matches(filter, document.metadata()))
+                matched++;
+        }
+        if (sampled == 0)
+            return 0;
+        // at least one, so the ef scaling below never divides by zero
+        return Math.max(1, Math.round((double) matched / sampled * total));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> getNativeClient() {
+        return Optional.of((T) segment.index());
+    }
+
+    public int documentCount() {
+        return segment.documents().size();
+    }
+
+    /**
+     * Nodes in the graph, live documents plus the dead nodes of deleted and replaced documents not compacted yet.
+     */
+    public int nodeCount() {
+        return segment.index().size();
+    }
+
+    /**
+     * Makes every change so far durable, the committer does this every {@code commitInterval} anyway.
+     */
+    public void commit() {
+        commitLock.writeLock().lock();
+        try {
+            commit(segment);
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the live documents into a fresh generation and switches over to it, which drops the dead nodes from
+     * the graph and the dead entries from the log. Adds and deletes wait until it is done, searches do not.
+     */
+    public void compact() {
+        commitLock.writeLock().lock();
+        try {
+            Segment old = segment;
+            Path next = directory.resolve(GENERATION_PREFIX + (generationNumber(old.directory()) + 1));
+            deleteRecursively(next);
+            Segment compacted = copyLiveDocuments(old, next);
+            // the switch itself is the atomic rename of CURRENT, a crash before it leaves the old generation in place
+            Path tempCurrent = Files.createTempFile(directory, CURRENT_FILE, ".tmp");
+            Files.writeString(tempCurrent, next.getFileName().toString(), StandardCharsets.UTF_8);
+            Files.move(tempCurrent, directory.resolve(CURRENT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            segment = compacted;
+            uncommittedChanges.set(0);
+            logger.info("Compacted hnsw vector store from {} to {} nodes", old.index().size(), compacted.index().size());
+            // searches that still hold the old segment keep working, mapped buffers stay valid after close
+            old.index().close();
+            old.documentLog().close();
+            removeStaleGenerations();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not compact hnsw vector store in " + directory, ex);
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    private Segment copyLiveDocuments(Segment old, Path target) throws IOException {
+        Segment compacted = openSegment(target);
+        // node order, so documents that were close in the old graph are inserted next to each other again
+        for (Map.Entry<Integer, StoredDocument> entry : new TreeMap<>(old.documents()).entrySet()) {
+            StoredDocument document = entry.getValue();
+            int node = compacted.index().add(old.index().vector(entry.getKey()));
+            compacted.documents().put(node, document);
+            compacted.nodesById().put(document.id(), node);
+            append(compacted, new LogEntry("add", node, document.id(), document.text(), document.metadata()));
+        }
+        commit(compacted);
+        return compacted;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (committer != null) {
+            committer.shutdown();
+            committer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        commit();
+        segment.index().close();
+        segment.documentLog().close();
+    }
+
+    private void remove(Segment target, int node) {
+        if (target.documents().remove(node) != null)
+            append(target, new LogEntry("delete", node, null, null, null));
+    }
+
+    private void append(Segment target, LogEntry entry) {
+        try {
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            logLock.lock();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining())
+                    target.documentLog().write(buffer);
+            } finally {
+                logLock.unlock();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not append to document log", ex);
+        }
+    }
+
+    // callers hold the commit write lock or own the segment exclusively
+    private void commit(Segment target) {
+        try {
+            target.documentLog().force(false);
+            target.index().commit(Map.of(DOCUMENT_LOG_LENGTH, String.valueOf(target.documentLog().position())));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not commit hnsw vector store", ex);
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            if (uncommittedChanges.getAndSet(0) > 0)
+                commit();
+            Segment current = segment;
+            int deadNodes = current.index().size() - current.documents().size();
+            if (deadNodes >= minDeadNodes && deadNodes > current.documents().size() * compactionRatio)
+                compact();
+        } catch (RuntimeException ex) {
+            logger.warn("Background commit of the hnsw vector store failed, retrying with the next one", ex);
+            uncommittedChanges.incrementAndGet();
+        }
+    }
+
+    private Path currentGeneration() {
+        Path currentFile = directory.resolve(CURRENT_FILE);
+        try {
+            if (!Files.exists(currentFile))
+                return directory;
+            return directory.resolve(Files.readString(currentFile, StandardCharsets.UTF_8).strip());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read " + currentFile, ex);
+        }
+    }
+
+    private static int generationNumber(Path segmentDirectory) {
+        String name = segmentDirectory.getFileName().toString();
+        return name.startsWith(GENERATION_PREFIX) ? Integer.parseInt(name.substring(GENERATION_PREFIX.length())) : 0;
+    }
+
+    // leftovers of replaced generations or of a compaction that crashed, files still mapped (windows) go next time
+    private void removeStaleGenerations() {
+        Path current = segment.directory();
+        try (Stream<Path> children = Files.list(directory)) {
+            for (Path child : children.toList()) {
+                if (child.getFileName().toString().startsWith(GENERATION_PREFIX) && !child.equals(current))
+                    deleteRecursively(child);
+            }
+            if (!current.equals(directory)) {
+                for (String legacyFile : LEGACY_FILES)
+                    Files.deleteIfExists(directory.resolve(legacyFile));
+            }
+        } catch (IOException ex) {
+            logger.debug("Could not remove stale generations in {}", directory, ex);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.deleteIfExists(file);
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector)
+            norm += value * value;
+        if (norm == 0)
+            return vector;
+        float inverse = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++)
+            normalized[i] = vector[i] * inverse;
+        return normalized;
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel, Path directory) {
+        return new Builder(embeddingModel, directory);
+    }
+
+    public static class Builder {
+
+        private final EmbeddingModel embeddingModel;
+        private final Path directory;
+        private ObjectMapper objectMapper = new ObjectMapper();
+        private int dimensions = 768;
+        private HnswIndex.Quantization quantization = HnswIndex.Quantization.INT8;
+        private int m = 16;
+        private int efConstruction = 100;
+        private int efSearch = 64;
+        private int exactSearchThreshold = 1000;
+        private Duration commitInterval = Duration.ofSeconds(1);
+        private double compactionRatio = 1.0;
+        private int minDeadNodes = 1000;
+
+        private Builder(EmbeddingModel embeddingModel, Path directory) {
+            this.embeddingModel = embeddingModel;
+            this.directory = directory;
+        }
+
+        public Builder objectMapper(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            return this;
+        }
+
+        // passed in instead of asking the embedding model, which would mean a model call at startup
+        public Builder dimensions(int dimensions) {
+            this.dimensions = dimensions;
+            return this;
+        }
+
+        public Builder quantization(HnswIndex.Quantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        // filtered searches matching at most this many documents are answered by an exact scan
+        public Builder exactSearchThreshold(int exactSearchThreshold) {
+            this.exactSearchThreshold = exactSearchThreshold;
+            return this;
+        }
+
+        // zero commits synchronously after every add and delete
+        public Builder commitInterval(Duration commitInterval) {
+            this.commitInterval = commitInterval;
+            return this;
+        }
+
+        // compacts once the dead nodes outnumber the live ones by this ratio, and there are at least minDeadNodes
+        public Builder compactionRatio(double compactionRatio) {
+            this.compactionRatio = compactionRatio;
+            return this;
+        }
+
+        public Builder minDeadNodes(int minDeadNodes) {
+            this.minDeadNodes = minDeadNodes;
+            return this;
+        }
+
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+    }
+}
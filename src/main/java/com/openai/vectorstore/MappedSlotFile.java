@@ -0,0 +1,75 @@
+package com.openai.vectorstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * File of fixed size slots, mapped into memory in chunks of whole slots. The file grows by mapping the next chunk
+ * (mapping past the end extends the file), already mapped chunks never move, so readers can use them without locks.
+ */
+final class MappedSlotFile implements Closeable {
+
+    // keeps every mapping well below the 2gb limit of a byte buffer
+    private static final int TARGET_CHUNK_BYTES = 64 << 20;
+
+    private final FileChannel channel;
+    private final int slotSize;
+    private final int slotsPerChunk;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    MappedSlotFile(Path file, int slotSize) {
+        this.slotSize = slotSize;
+        this.slotsPerChunk = Math.max(1, TARGET_CHUNK_BYTES / slotSize);
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open " + file, ex);
+        }
+    }
+
+    ByteBuffer chunk(int slot) {
+        int chunk = slot / slotsPerChunk;
+        ByteBuffer[] current = chunks;
+        return chunk < current.length ? current[chunk] : map(chunk);
+    }
+
+    int offset(int slot) {
+        return (slot % slotsPerChunk) * slotSize;
+    }
+
+    private synchronized ByteBuffer map(int chunk) {
+        ByteBuffer[] current = chunks;
+        if (chunk < current.length)
+            return current[chunk];
+        ByteBuffer[] grown = Arrays.copyOf(current, chunk + 1);
+        try {
+            for (int i = current.length; i <= chunk; i++) {
+                long position = (long) i * slotsPerChunk * slotSize;
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) slotsPerChunk * slotSize)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not map chunk " + chunk, ex);
+        }
+        chunks = grown;
+        return grown[chunk];
+    }
+
+    void force() {
+        for (ByteBuffer chunk : chunks)
+            ((MappedByteBuffer) chunk).force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,107 @@
+package com.openai.advisors;
+
+import com.openai.exception.DeadlineExceededException;
+import com.openai.resilience.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeadlineAdvisorTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicBoolean generationAborted = new AtomicBoolean();
+
+    // blocks like a long generation until its thread is interrupted, streams a token every 50ms until cancelled
+    private final ChatModel slowModel = new ChatModel() {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            try {
+                Thread.sleep(Duration.ofSeconds(10));
+            } catch (InterruptedException ex) {
+                generationAborted.set(true);
+                throw new IllegalStateException("generation aborted", ex);
+            }
+            return response("done");
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.interval(Duration.ofMillis(50))
+                    .map(tick -> response("token "))
+                    .doOnCancel(() -> generationAborted.set(true));
+        }
+    };
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private ChatClient chatClient() {
+        return ChatClient.builder(slowModel)
+                .defaultAdvisors(new DeadlineAdvisor(meterRegistry, "testClient", Duration.ofMinutes(1)))
+                .build();
+    }
+
+    @Test
+    @DisplayName("Should abort a blocking call at the deadline and leave the thread uninterrupted")
+    void abortsBlockingCalls() {
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> chatClient().prompt("hello")
+                .advisors(advisorSpec -> advisorSpec.param(RequestDeadline.CONTEXT_KEY, RequestDeadline.after(Duration.ofMillis(200))))
+                .call()
+                .content())
+                .isInstanceOf(DeadlineExceededException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        assertThat(generationAborted).isTrue();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+        assertThat(meterRegistry.get("llm.requests.abandoned").tag("reason", "expired").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("llm.tokens.wasted").tag("reason", "expired").counter().count()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should cancel the upstream stream at the deadline and count the streamed tokens as wasted")
+    void cancelsExpiredStreams() {
+        Flux<String> content = chatClient().prompt("hello")
+                .advisors(advisorSpec -> advisorSpec.param(RequestDeadline.CONTEXT_KEY, RequestDeadline.after(Duration.ofMillis(300))))
+                .stream()
+                .content();
+
+        assertThatThrownBy(content::blockLast).isInstanceOf(DeadlineExceededException.class);
+        assertThat(generationAborted).isTrue();
+        // prompt plus a few streamed tokens
+        assertThat(meterRegistry.get("llm.tokens.wasted").tag("reason", "expired").counter().count()).isGreaterThan(2);
+    }
+
+    @Test
+    @DisplayName("Should count a stream the client walked away from as cancelled")
+    void countsCancelledStreams() {
+        List<String> tokens = chatClient().prompt("hello")
+                .advisors(advisorSpec -> advisorSpec.param(RequestDeadline.CONTEXT_KEY, RequestDeadline.after(Duration.ofSeconds(30))))
+                .stream()
+                .content()
+                .take(3)
+                .collectList()
+                .block();
+
+        assertThat(tokens).hasSize(3);
+        assertThat(generationAborted).isTrue();
+        assertThat(meterRegistry.get("llm.requests.abandoned").tag("reason", "cancelled").counter().count()).isEqualTo(1);
+    }
+}
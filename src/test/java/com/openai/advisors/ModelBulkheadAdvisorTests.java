@@ -0,0 +1,104 @@
+package com.openai.advisors;
+
+import com.openai.exception.DeadlineExceededException;
+import com.openai.exception.ModelOverloadedException;
+import com.openai.resilience.AdaptiveConcurrencyLimiter;
+import com.openai.resilience.ModelBulkheads;
+import com.openai.resilience.OllamaModelResidencyManager;
+import com.openai.resilience.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ModelBulkheadAdvisorTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ModelBulkheads modelBulkheads = new ModelBulkheads(meterRegistry, 4, 1, 16, 4, Duration.ofSeconds(10));
+    // disabled, every model counts as loaded and no ollama is called
+    private final OllamaModelResidencyManager residencyManager = new OllamaModelResidencyManager(RestClient.builder(), meterRegistry,
+            "http://localhost:11434", false, List.of("llama3.2"), List.of(), Set.of(), DataSize.ofGigabytes(8),
+            Duration.ofMinutes(30), Duration.ZERO, Duration.ofSeconds(5), Duration.ofHours(1));
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void clearInterrupt() {
+        watchdog.shutdownNow();
+        Thread.interrupted();
+    }
+
+    private String call(ChatModel chatModel, RequestDeadline deadline) {
+        return ChatClient.builder(chatModel)
+                .defaultAdvisors(new ModelBulkheadAdvisor(modelBulkheads, residencyManager, "llama3.2"))
+                .build()
+                .prompt("hello")
+                .advisors(advisor -> advisor.param(RequestDeadline.CONTEXT_KEY, deadline))
+                .call()
+                .content();
+    }
+
+    // interrupts the calling thread at the deadline, as the deadline advisor's watchdog does
+    private RequestDeadline deadlineInterruptingCaller(Duration timeout) {
+        Thread caller = Thread.currentThread();
+        watchdog.schedule(caller::interrupt, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        return RequestDeadline.after(timeout);
+    }
+
+    @Test
+    @DisplayName("Should report a permit wait interrupted at the deadline as the deadline, not as an overload")
+    void mapsInterruptedWaitToDeadline() {
+        AdaptiveConcurrencyLimiter limiter = modelBulkheads.limiter("llama3.2");
+        List<AdaptiveConcurrencyLimiter.Permit> taken = List.of(limiter.acquire(), limiter.acquire(), limiter.acquire(), limiter.acquire());
+        RequestDeadline deadline = deadlineInterruptingCaller(Duration.ofMillis(200));
+
+        assertThatThrownBy(() -> call(prompt -> {
+            throw new AssertionError("no permit was free");
+        }, deadline))
+                .isInstanceOf(DeadlineExceededException.class)
+                .isNotInstanceOf(ModelOverloadedException.class);
+
+        taken.forEach(permit -> permit.release(true));
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should not lower the limit for calls aborted at the deadline, only for real failures")
+    void keepsLimitForAbortedCalls() {
+        AdaptiveConcurrencyLimiter limiter = modelBulkheads.limiter("llama3.2");
+        RequestDeadline deadline = deadlineInterruptingCaller(Duration.ofMillis(100));
+        ChatModel slowModel = prompt -> {
+            try {
+                Thread.sleep(Duration.ofSeconds(10));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("generation aborted", ex);
+            }
+            throw new AssertionError("the deadline should have interrupted the call");
+        };
+
+        assertThatThrownBy(() -> call(slowModel, deadline)).hasMessageContaining("generation aborted");
+        assertThat(limiter.getLimit()).isEqualTo(4);
+        assertThat(limiter.getInFlight()).isZero();
+
+        Thread.interrupted();
+        assertThatThrownBy(() -> call(prompt -> {
+            throw new IllegalStateException("model returned 500");
+        }, RequestDeadline.after(Duration.ofMinutes(1)))).hasMessageContaining("model returned 500");
+        assertThat(limiter.getLimit()).isEqualTo(3);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+}
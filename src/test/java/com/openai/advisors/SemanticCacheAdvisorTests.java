@@ -0,0 +1,153 @@
+package com.openai.advisors;
+
+import com.openai.cache.SemanticAnswerCache;
+import com.openai.rag.DocumentIngestedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticCacheAdvisorTests {
+
+    private final AtomicInteger embeddings = new AtomicInteger();
+    private final AtomicInteger generations = new AtomicInteger();
+
+    // every text gets the same vector, so every question is a cache hit once an answer is stored
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            embeddings.incrementAndGet();
+            return new EmbeddingResponse(List.of(new Embedding(new float[]{1f, 0f, 0f}, 0)));
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    // holds the generation until the second question has been embedded, so it finds the first one in flight
+    private final ChatModel slowModel = new ChatModel() {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            generations.incrementAndGet();
+            long giveUpAt = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (embeddings.get() < 2 && System.nanoTime() < giveUpAt)
+                Thread.onSpinWait();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("You get 24 days of paid leave."))));
+        }
+    };
+
+    @Test
+    @DisplayName("Should share one generation between conversations and record it in each conversation's memory")
+    void sharesGenerationAcrossConversations() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(embeddingModel, new SimpleMeterRegistry(), 0.95, Duration.ofHours(1), 100);
+        ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+        ChatClient chatClient = ChatClient.builder(slowModel)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(), new SemanticCacheAdvisor(cache))
+                .build();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<String>> answers = List.of("alice", "bob").stream()
+                    .map(conversationId -> CompletableFuture.supplyAsync(() -> chatClient.prompt("How many leave days do I get?")
+                            .advisors(advisorSpec -> advisorSpec.param(ChatMemory.CONVERSATION_ID, conversationId))
+                            .call()
+                            .content(), executor))
+                    .toList();
+
+            assertThat(answers).extracting(CompletableFuture::join).containsOnly("You get 24 days of paid leave.");
+        }
+
+        assertThat(generations).hasValue(1);
+        assertThat(chatMemory.get("alice")).extracting(Message::getText)
+                .containsExactly("How many leave days do I get?", "You get 24 days of paid leave.");
+        assertThat(chatMemory.get("bob")).extracting(Message::getText)
+                .containsExactly("How many leave days do I get?", "You get 24 days of paid leave.");
+    }
+
+    @Test
+    @DisplayName("Should serve a similar question from the cache without calling the model")
+    void servesCachedAnswers() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(embeddingModel, new SimpleMeterRegistry(), 0.95, Duration.ofHours(1), 100);
+        embeddings.set(1);
+        ChatClient chatClient = ChatClient.builder(slowModel).defaultAdvisors(new SemanticCacheAdvisor(cache)).build();
+
+        chatClient.prompt("How many leave days do I get?").call().content();
+        String answer = chatClient.prompt("how many  leave days do I get").call().content();
+
+        assertThat(answer).isEqualTo("You get 24 days of paid leave.");
+        assertThat(generations).hasValue(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should not answer a follow up question from the cache")
+    void bypassesCacheForFollowUps() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(embeddingModel, new SimpleMeterRegistry(), 0.95, Duration.ofHours(1), 100);
+        embeddings.set(1);
+        ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+        ChatClient chatClient = ChatClient.builder(slowModel)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(), new SemanticCacheAdvisor(cache))
+                .build();
+
+        chatClient.prompt("How many leave days do I get?")
+                .advisors(advisorSpec -> advisorSpec.param(ChatMemory.CONVERSATION_ID, "alice"))
+                .call().content();
+        // every text embeds to the same vector, only the history keeps this from being a hit
+        chatClient.prompt("And for contractors?")
+                .advisors(advisorSpec -> advisorSpec.param(ChatMemory.CONVERSATION_ID, "alice"))
+                .call().content();
+
+        assertThat(generations).hasValue(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should not cache an answer whose generation overlapped an invalidation")
+    void dropsAnswersGeneratedAcrossInvalidation() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(embeddingModel, new SimpleMeterRegistry(), 0.95, Duration.ofHours(1), 100);
+        // documents get re-ingested while the answer is being generated from the old ones
+        ChatModel ingestingModel = prompt -> {
+            generations.incrementAndGet();
+            cache.onDocumentIngested(new DocumentIngestedEvent("leave-policy.pdf", 12));
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("You get 24 days of paid leave."))));
+        };
+        ChatClient chatClient = ChatClient.builder(ingestingModel).defaultAdvisors(new SemanticCacheAdvisor(cache)).build();
+
+        chatClient.prompt("How many leave days do I get?").call().content();
+
+        assertThat(cache.size()).isZero();
+        chatClient.prompt("How many leave days do I get?").call().content();
+        assertThat(generations).hasValue(2);
+    }
+}
@@ -0,0 +1,78 @@
+package com.openai.advisors;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBudgetAdvisorTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // roughly one token per word
+    private static String words(String word, int count) {
+        return (word + " ").repeat(count).strip();
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest turns first and keep system prompt and query")
+    void dropsOldestHistoryFirst() {
+        TokenBudgetAdvisor advisor = new TokenBudgetAdvisor(meterRegistry, "testClient", 300);
+        ChatClientRequest request = ChatClientRequest.builder().prompt(new Prompt(List.of(
+                new SystemMessage("You are an HR assistant."),
+                new UserMessage(words("first", 100)),
+                new AssistantMessage(words("answer", 100)),
+                new UserMessage(words("second", 100)),
+                new AssistantMessage(words("reply", 100)),
+                new UserMessage("How many leave days do I get?")))).build();
+
+        List<Message> messages = advisor.applyBudget(request).prompt().getInstructions();
+
+        assertThat(messages).extracting(Message::getText).containsExactly(
+                "You are an HR assistant.", words("second", 100), words("reply", 100), "How many leave days do I get?");
+        assertThat(meterRegistry.get("llm.prompt.tokens.dropped").tag("section", "history").summary().totalAmount()).isGreaterThan(190);
+    }
+
+    @Test
+    @DisplayName("Should drop the lowest scoring documents from the augmented query once history is gone")
+    void dropsWeakestDocuments() {
+        TokenBudgetAdvisor advisor = new TokenBudgetAdvisor(meterRegistry, "testClient", 300);
+        Document strong = Document.builder().id("strong").text(words("leave", 200)).score(0.9).build();
+        Document weak = Document.builder().id("weak").text(words("parking", 200)).score(0.2).build();
+        String augmented = "Context information is below." + System.lineSeparator()
+                + weak.getText() + System.lineSeparator() + strong.getText() + System.lineSeparator()
+                + "Query: How many leave days do I get?";
+        ChatClientRequest request = ChatClientRequest.builder()
+                .prompt(new Prompt(List.of(new UserMessage(augmented))))
+                .context(Map.of(RetrievalAugmentationAdvisor.DOCUMENT_CONTEXT, List.of(weak, strong)))
+                .build();
+
+        ChatClientRequest trimmed = advisor.applyBudget(request);
+
+        assertThat(trimmed.prompt().getUserMessage().getText()).contains(strong.getText()).doesNotContain("parking")
+                .endsWith("Query: How many leave days do I get?");
+        assertThat(trimmed.context().get(RetrievalAugmentationAdvisor.DOCUMENT_CONTEXT)).isEqualTo(List.of(strong));
+    }
+
+    @Test
+    @DisplayName("Should pass prompts within budget through untouched")
+    void keepsPromptsWithinBudget() {
+        TokenBudgetAdvisor advisor = new TokenBudgetAdvisor(meterRegistry, "testClient", 300);
+        ChatClientRequest request = ChatClientRequest.builder().prompt(new Prompt(List.of(
+                new UserMessage("hi"), new AssistantMessage("hello"), new UserMessage("How many leave days do I get?")))).build();
+
+        assertThat(advisor.applyBudget(request)).isSameAs(request);
+    }
+}
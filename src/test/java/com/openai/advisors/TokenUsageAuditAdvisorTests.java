@@ -0,0 +1,137 @@
+package com.openai.advisors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Calls and streams through the advisor against a local stub of an openai compatible chat endpoint, which reports
+ * token usage like ollama does, in the response of a call and in the final chunk of a stream.
+ */
+class TokenUsageAuditAdvisorTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private volatile int responseStatus = 200;
+    private HttpServer modelStub;
+    private ChatClient chatClient;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        modelStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        modelStub.setExecutor(Executors.newCachedThreadPool());
+        modelStub.createContext("/v1/chat/completions", this::handleCompletion);
+        modelStub.start();
+        OpenAiChatModel chatModel = OpenAiChatModel.builder()
+                .openAiApi(OpenAiApi.builder().baseUrl("http://127.0.0.1:" + modelStub.getAddress().getPort()).apiKey("dummy").build())
+                .defaultOptions(OpenAiChatOptions.builder().model("llama3.2").build())
+                .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                .build();
+        chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(new TokenUsageAuditAdvisor(meterRegistry, "helpDeskChatClient"))
+                .build();
+    }
+
+    @AfterEach
+    void stopStub() {
+        modelStub.stop(0);
+    }
+
+    private void handleCompletion(HttpExchange exchange) throws IOException {
+        String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        String response;
+        String contentType;
+        if (responseStatus != 200) {
+            response = "{\"error\": {\"message\": \"upstream failure\"}}";
+            contentType = "application/json";
+        } else if (request.contains("\"stream\":true")) {
+            response = "data: " + chunk("{\"role\": \"assistant\", \"content\": \"Your ticket \"}", "null", "") + "\n\n"
+                    + "data: " + chunk("{\"content\": \"is open.\"}", "null", "") + "\n\n"
+                    + "data: " + chunk("{}", "\"stop\"", ", \"usage\": {\"prompt_tokens\": 30, \"completion_tokens\": 4, \"total_tokens\": 34}") + "\n\n"
+                    + "data: [DONE]\n\n";
+            contentType = "text/event-stream";
+        } else {
+            response = """
+                    {"id": "chatcmpl-1", "object": "chat.completion", "created": 0, "model": "llama3.2:latest",
+                     "choices": [{"index": 0, "message": {"role": "assistant", "content": "Your ticket is open."}, "finish_reason": "stop"}],
+                     "usage": {"prompt_tokens": 20, "completion_tokens": 5, "total_tokens": 25}}
+                    """;
+            contentType = "application/json";
+        }
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(responseStatus, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static String chunk(String delta, String finishReason, String usage) {
+        return """
+                {"id": "chatcmpl-1", "object": "chat.completion.chunk", "created": 0, "model": "llama3.2:latest", \
+                "choices": [{"index": 0, "delta": %s, "finish_reason": %s}]%s}""".formatted(delta, finishReason, usage);
+    }
+
+    private double tokens(String type) {
+        return meterRegistry.get("llm.tokens").tag("client", "helpDeskChatClient").tag("model", "llama3.2:latest")
+                .tag("outcome", "success").tag("type", type).counter().count();
+    }
+
+    @Test
+    @DisplayName("Should count prompt, completion and total tokens of a call and time it, tagged by client and model")
+    void recordsCallUsage() {
+        assertThat(chatClient.prompt("status of my ticket?").call().content()).isEqualTo("Your ticket is open.");
+
+        assertThat(tokens("prompt")).isEqualTo(20);
+        assertThat(tokens("completion")).isEqualTo(5);
+        assertThat(tokens("total")).isEqualTo(25);
+        assertThat(meterRegistry.get("llm.tokens.per.request").tag("type", "total").summary().totalAmount()).isEqualTo(25);
+        assertThat(meterRegistry.get("llm.call.duration").tag("client", "helpDeskChatClient").tag("mode", "call")
+                .tag("outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should take the usage of a stream from its final chunk and time the whole stream")
+    void recordsStreamUsage() {
+        List<String> content = chatClient.prompt("status of my ticket?").stream().content()
+                .collectList().block(Duration.ofSeconds(10));
+
+        assertThat(String.join("", content)).isEqualTo("Your ticket is open.");
+        assertThat(tokens("prompt")).isEqualTo(30);
+        assertThat(tokens("completion")).isEqualTo(4);
+        assertThat(tokens("total")).isEqualTo(34);
+        assertThat(meterRegistry.get("llm.call.duration").tag("mode", "stream").tag("outcome", "success")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should time failed calls under the error outcome without counting tokens")
+    void recordsFailedCall() {
+        responseStatus = 500;
+
+        assertThatThrownBy(() -> chatClient.prompt("status of my ticket?").call().content()).isInstanceOf(RuntimeException.class);
+
+        assertThat(meterRegistry.get("llm.call.duration").tag("model", "llama3.2").tag("mode", "call")
+                .tag("outcome", "error").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("llm.tokens").counters()).isEmpty();
+    }
+}
@@ -0,0 +1,74 @@
+package com.openai.cache;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingEmbeddingModelTests {
+
+    // records every batch that reaches the model, vectors are derived from the text length
+    private static class RecordingEmbeddingModel implements EmbeddingModel {
+
+        private final List<List<String>> calls = new ArrayList<>();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.add(request.getInstructions());
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions())
+                embeddings.add(new Embedding(new float[]{text.length(), 1f, -0.5f}, embeddings.size()));
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+
+    @Test
+    @DisplayName("Should send only the distinct misses of a batch to the model")
+    void sendsOnlyMissesToTheModel() {
+        RecordingEmbeddingModel model = new RecordingEmbeddingModel();
+        CachingEmbeddingModel cachingModel = CachingEmbeddingModel.builder(model, "nomic-embed-text").build();
+
+        cachingModel.embed(List.of("paid leave", "travel"));
+        List<float[]> vectors = cachingModel.embed(List.of("travel", "laptop", "laptop", "paid leave"));
+
+        assertThat(model.calls).containsExactly(List.of("paid leave", "travel"), List.of("laptop"));
+        assertThat(vectors).extracting(vector -> vector[0]).containsExactly(6f, 6f, 6f, 10f);
+        assertThat(cachingModel.embed("travel")).containsExactly(6f, 1f, -0.5f);
+        assertThat(model.calls).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Should serve vectors from the persistent tier after a restart and keep models apart")
+    void servesPersistedVectorsAfterRestart() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:h2:mem:embedding-cache;DB_CLOSE_DELAY=-1", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        RecordingEmbeddingModel model = new RecordingEmbeddingModel();
+
+        CachingEmbeddingModel.builder(model, "nomic-embed-text").jdbcTemplate(jdbcTemplate).build()
+                .embed(List.of("paid leave", "travel"));
+        CachingEmbeddingModel restarted = CachingEmbeddingModel.builder(model, "nomic-embed-text").jdbcTemplate(jdbcTemplate).build();
+        List<float[]> vectors = restarted.embed(List.of("travel", "paid leave"));
+
+        assertThat(model.calls).hasSize(1);
+        assertThat(vectors.get(1)).containsExactly(10f, 1f, -0.5f);
+
+        CachingEmbeddingModel.builder(model, "mxbai-embed-large").jdbcTemplate(jdbcTemplate).build().embed("travel");
+        assertThat(model.calls).hasSize(2);
+        dataSource.destroy();
+    }
+}
@@ -0,0 +1,161 @@
+package com.openai.controller;
+
+import com.openai.advisors.TokenUsageAuditAdvisor;
+import com.openai.metrics.StreamingMetrics;
+import com.openai.rag.PIIMasker;
+import com.openai.rag.PIIMaskingDocumentPostProcessor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+import org.springframework.http.MediaType;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Streams through the rag and memory endpoints against a local stub of an openai compatible chat endpoint, which
+ * answers streaming requests with server sent chunks, so memory, retrieval and pii masking can be checked offline
+ * in stream mode.
+ */
+class StreamingEndpointsTests {
+
+    private static final List<String> TOKENS = List.of("Leave ", "is ", "20 days.");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private final ChatMemory chatMemory = MessageWindowChatMemory.builder()
+            .chatMemoryRepository(new InMemoryChatMemoryRepository())
+            .build();
+    private HttpServer modelStub;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        modelStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        modelStub.setExecutor(Executors.newCachedThreadPool());
+        modelStub.createContext("/v1/chat/completions", this::handleCompletion);
+        modelStub.start();
+
+        OpenAiChatModel chatModel = OpenAiChatModel.builder()
+                .openAiApi(OpenAiApi.builder().baseUrl("http://127.0.0.1:" + modelStub.getAddress().getPort()).apiKey("dummy").build())
+                .defaultOptions(OpenAiChatOptions.builder().model("stub-model").build())
+                .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                .build();
+        // the retrieved chunk carries an email address, the pii post-processor has to mask it before the prompt is built
+        RetrievalAugmentationAdvisor retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder()
+                .documentRetriever(query -> List.of(new Document("Employees get 20 days of paid leave, questions go to hr.desk@codev.example.com")))
+                .documentPostProcessors(PIIMaskingDocumentPostProcessor.builder().piiMasker(PIIMasker.defaults()).build())
+                .build();
+        ChatClient chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                        new TokenUsageAuditAdvisor(meterRegistry, "chatMemoryChatClient"),
+                        retrievalAugmentationAdvisor)
+                .build();
+        StreamingMetrics streamingMetrics = new StreamingMetrics(meterRegistry);
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                        new RAGController(chatClient, null, chatClient, chatClient, streamingMetrics),
+                        new ChatMemoryController(chatClient, streamingMetrics))
+                .build();
+    }
+
+    @AfterEach
+    void stopStub() {
+        modelStub.stop(0);
+    }
+
+    private void handleCompletion(HttpExchange exchange) throws IOException {
+        requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        StringBuilder events = new StringBuilder();
+        for (String token : TOKENS)
+            events.append("data: ").append(chunk("{\"role\": \"assistant\", \"content\": \"" + token + "\"}", null, "")).append("\n\n");
+        // usage comes with the final chunk only
+        events.append("data: ").append(chunk("{}", "\"stop\"",
+                ", \"usage\": {\"prompt_tokens\": 40, \"completion_tokens\": 3, \"total_tokens\": 43}")).append("\n\n");
+        events.append("data: [DONE]\n\n");
+        byte[] body = events.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static String chunk(String delta, String finishReason, String usage) {
+        return """
+                {"id": "chatcmpl-1", "object": "chat.completion.chunk", "created": 0, "model": "stub-model", \
+                "choices": [{"index": 0, "delta": %s, "finish_reason": %s}]%s}""".formatted(delta, finishReason, usage);
+    }
+
+    private String stream(String path, String message) throws Exception {
+        MvcResult result = mockMvc.perform(get(path).header("username", "alice").param("message", message))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM));
+        return result.getResponse().getContentAsString();
+    }
+
+    @Test
+    @DisplayName("Should stream the answer as server sent events with masked context and remember it")
+    void streamsRagAnswer() throws Exception {
+        String events = stream("/api/rag/document/chat/stream", "How many leave days do I get?");
+
+        assertThat(events).contains("data:Leave ", "data:is ", "data:20 days.");
+        // retrieval and pii masking ran before the model was called
+        assertThat(requestBodies).hasSize(1);
+        assertThat(requestBodies.getFirst()).contains("Employees get 20 days of paid leave", "[REDACTED_EMAIL]")
+                .doesNotContain("hr.desk@codev.example.com");
+        // the memory advisor stored the aggregated stream, not the single chunks
+        assertThat(chatMemory.get("alice")).extracting(Message::getText)
+                .containsExactly("How many leave days do I get?", "Leave is 20 days.");
+        assertThat(meterRegistry.get("llm.stream.time.to.first.token").tag("endpoint", "/api/rag/document/chat/stream")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("llm.tokens").tag("client", "chatMemoryChatClient").tag("type", "total")
+                .counter().count()).isEqualTo(43);
+    }
+
+    @Test
+    @DisplayName("Should send the streamed answer back as history with the next question")
+    void streamsWithMemory() throws Exception {
+        stream("/api/chat-memory/stream", "How many leave days do I get?");
+        String events = stream("/api/chat-memory/stream", "And sick days?");
+
+        assertThat(events).contains("data:20 days.");
+        assertThat(requestBodies).hasSize(2);
+        assertThat(requestBodies.get(1)).contains("How many leave days do I get?", "Leave is 20 days.", "And sick days?");
+        assertThat(meterRegistry.get("llm.stream.time.to.first.token").tag("endpoint", "/api/chat-memory/stream")
+                .timer().count()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,79 @@
+package com.openai.evaluation;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.evaluation.EvaluationResponse;
+import org.springframework.ai.evaluation.Evaluator;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnswerValidatorTests {
+
+    private static final String CONTEXT = "Employees get 24 days of paid annual leave. Unused leave days carry over to the next year.";
+
+    private final AtomicInteger judgeCalls = new AtomicInteger();
+
+    private final Evaluator judge = request -> {
+        judgeCalls.incrementAndGet();
+        return new EvaluationResponse(request.getResponseContent().contains("24"), "", Map.of());
+    };
+
+    @Test
+    @DisplayName("Should decide clearly grounded and clearly ungrounded answers without the judge")
+    void skipsJudgeForClearCases() {
+        AnswerValidator validator = AnswerValidator.builder(judge).build();
+
+        assertThat(validator.isValid("How many leave days?", "Employees get 24 paid annual leave days.", CONTEXT)).isTrue();
+        assertThat(validator.isValid("How many leave days?", "Bananas contain potassium and grow in tropical climates.", CONTEXT)).isFalse();
+        assertThat(judgeCalls).hasValue(0);
+    }
+
+    @Test
+    @DisplayName("Should send an answer with a number missing from the context to the judge however well its words match")
+    void checksWrongNumbersWithJudge() {
+        AnswerValidator validator = AnswerValidator.builder(judge).build();
+        String answer = "Employees get 30 paid annual leave days.";
+
+        // six of its seven content words are in the context, enough to pass on overlap alone
+        assertThat(AnswerValidator.overlap(answer, CONTEXT)).isGreaterThanOrEqualTo(0.8);
+        assertThat(validator.isValid("How many leave days?", answer, CONTEXT)).isFalse();
+        assertThat(judgeCalls).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should ask the judge for borderline answers and cache its verdict")
+    void cachesJudgeVerdicts() {
+        AnswerValidator validator = AnswerValidator.builder(judge).build();
+        String answer = "You get 24 leave days, managers approve them within a week.";
+
+        assertThat(validator.isValid("How many leave days?", answer, CONTEXT)).isTrue();
+        assertThat(validator.isValid("How many leave days?", answer, CONTEXT)).isTrue();
+        assertThat(judgeCalls).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should return the first candidate that passes")
+    void returnsFirstValidCandidate() {
+        AnswerValidator validator = AnswerValidator.builder(judge).build();
+        AtomicInteger generated = new AtomicInteger();
+
+        Optional<String> answer = validator.firstValid("How many leave days?", null,
+                () -> generated.getAndIncrement() == 0 ? "You get 30 days." : "You get 24 days.", 3);
+
+        assertThat(answer).contains("You get 24 days.");
+    }
+
+    @Test
+    @DisplayName("Should return nothing when no candidate passes")
+    void returnsEmptyWhenAllCandidatesFail() {
+        AnswerValidator validator = AnswerValidator.builder(judge).build();
+
+        assertThat(validator.firstValid("How many leave days?", null, () -> "You get 30 days.", 3)).isEmpty();
+        // identical candidates share one judge call through the verdict cache
+        assertThat(judgeCalls).hasValue(1);
+    }
+}
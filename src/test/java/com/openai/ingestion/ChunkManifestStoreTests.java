@@ -0,0 +1,71 @@
+package com.openai.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.vectorstore.HnswVectorStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkManifestStoreTests {
+
+    @TempDir
+    Path directory;
+
+    // the probe only relies on the source filter, the vectors just have to be distinct
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions())
+                embeddings.add(new Embedding(new float[]{1f, text.length() % 7, 0.5f, 0f}, embeddings.size()));
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    private static Document chunk(String source, String text) {
+        String contentHash = ChunkManifestStore.contentHash(text);
+        return Document.builder().id(ChunkManifestStore.chunkId(source, contentHash, 1)).text(text)
+                .metadata("source", source).metadata("content_hash", contentHash).build();
+    }
+
+    @Test
+    @DisplayName("Should drop manifest entries whose chunks are gone from the vector store")
+    void retainsOnlyStoredChunks() throws Exception {
+        HnswVectorStore vectorStore = HnswVectorStore.builder(embeddingModel, directory.resolve("store")).dimensions(4).build();
+        ChunkManifestStore manifestStore = new ChunkManifestStore(new ObjectMapper(), vectorStore, directory.resolve("manifests").toString());
+        List<Document> chunks = List.of(chunk("policy.pdf", "paid leave days"), chunk("policy.pdf", "travel expenses"),
+                chunk("policy.pdf", "laptop replacement"));
+        Map<String, String> manifest = new LinkedHashMap<>();
+        chunks.forEach(chunk -> manifest.put(chunk.getId(), (String) chunk.getMetadata().get("content_hash")));
+        manifestStore.save("policy.pdf", manifest);
+        // the store lost a chunk after the manifest was written, a chunk of another source must not count
+        vectorStore.add(List.of(chunks.get(0), chunks.get(2), chunk("handbook.pdf", "travel expenses")));
+
+        Map<String, String> retained = manifestStore.retainStored("policy.pdf", manifestStore.load("policy.pdf").orElseThrow());
+
+        assertThat(retained).containsOnlyKeys(chunks.get(0).getId(), chunks.get(2).getId());
+        // the store was recreated, every chunk is ingested again
+        vectorStore.delete(List.of(chunks.get(0).getId(), chunks.get(2).getId()));
+        assertThat(manifestStore.retainStored("policy.pdf", manifest)).isEmpty();
+        vectorStore.destroy();
+    }
+}
@@ -0,0 +1,135 @@
+package com.openai.ingestion;
+
+import com.openai.cache.CachingEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class IngestionPipelineTests {
+
+    private static class BrokenStageError extends Error {
+
+        BrokenStageError(String message) {
+            super(message);
+        }
+    }
+
+    // fails with an Error once the given number of batches went through
+    private static class FlakyEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicInteger batches = new AtomicInteger();
+        private final int failAfter;
+
+        FlakyEmbeddingModel(int failAfter) {
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            if (batches.incrementAndGet() > failAfter)
+                throw new BrokenStageError("embedding worker died");
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions())
+                embeddings.add(new Embedding(new float[]{text.length(), 1f}, embeddings.size()));
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+
+    private static class RecordingVectorStore implements VectorStore {
+
+        private final AtomicInteger added = new AtomicInteger();
+        private final boolean broken;
+
+        RecordingVectorStore(boolean broken) {
+            this.broken = broken;
+        }
+
+        @Override
+        public void add(List<Document> documents) {
+            if (broken)
+                throw new BrokenStageError("upsert worker died");
+            added.addAndGet(documents.size());
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+        }
+
+        @Override
+        public void delete(Filter.Expression filterExpression) {
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return List.of();
+        }
+    }
+
+    private static IngestionPipeline pipeline(EmbeddingModel embeddingModel, VectorStore vectorStore) {
+        // tiny batches and queues, so the stages really block on each other
+        return new IngestionPipeline(CachingEmbeddingModel.builder(embeddingModel, "test").build(), vectorStore, 2, 2, 2, 2, 2, 1);
+    }
+
+    private static Stream<Document> documents() {
+        return IntStream.range(0, 100).mapToObj(i -> new Document("chunk-" + i, "policy paragraph number " + i, Map.of()));
+    }
+
+    @Test
+    @DisplayName("Should ingest every chunk through all three stages")
+    void ingestsAllChunks() {
+        RecordingVectorStore vectorStore = new RecordingVectorStore(false);
+
+        IngestionResult result = pipeline(new FlakyEmbeddingModel(Integer.MAX_VALUE), vectorStore).ingest(documents(), List::of);
+
+        assertThat(result.chunksRead()).isEqualTo(100);
+        assertThat(result.chunksUpserted()).isEqualTo(100);
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(vectorStore.added).hasValue(100);
+    }
+
+    @Test
+    @DisplayName("Should fail instead of hanging when an embed worker dies with an Error")
+    void failsWhenEmbedWorkerDies() {
+        IngestionPipeline pipeline = pipeline(new FlakyEmbeddingModel(3), new RecordingVectorStore(false));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+                assertThatThrownBy(() -> pipeline.ingest(documents(), List::of))
+                        .isInstanceOf(IllegalStateException.class)
+                        .hasCauseInstanceOf(BrokenStageError.class));
+    }
+
+    @Test
+    @DisplayName("Should fail instead of hanging when an upsert worker dies with an Error")
+    void failsWhenUpsertWorkerDies() {
+        IngestionPipeline pipeline = pipeline(new FlakyEmbeddingModel(Integer.MAX_VALUE), new RecordingVectorStore(true));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+                assertThatThrownBy(() -> pipeline.ingest(documents(), List::of))
+                        .isInstanceOf(IllegalStateException.class)
+                        .hasCauseInstanceOf(BrokenStageError.class));
+    }
+}
@@ -0,0 +1,86 @@
+package com.openai.memory;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class RollingSummaryChatMemoryTests {
+
+    private final AtomicInteger summaryCalls = new AtomicInteger();
+
+    private final ChatModel summaryModel = prompt -> {
+        summaryCalls.incrementAndGet();
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("user asked about leave"))));
+    };
+
+    private void addTurns(RollingSummaryChatMemory memory, int from, int to) {
+        for (int i = from; i < to; i++) {
+            memory.add("conversation", List.of(new UserMessage("question " + i)));
+            memory.add("conversation", List.of(new AssistantMessage("answer " + i)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should fold older turns into a summary in the background and keep the last turns verbatim")
+    void foldsOlderTurns() {
+        InMemoryChatMemoryRepository repository = new InMemoryChatMemoryRepository();
+        RollingSummaryChatMemory memory = RollingSummaryChatMemory.builder(repository, ChatClient.builder(summaryModel).build())
+                .keepTurns(2)
+                .minTurnsToFold(2)
+                .build();
+
+        addTurns(memory, 0, 3);
+        assertThat(summaryCalls).hasValue(0);
+        // not enough turns to fold yet, the oldest one is only left out
+        assertThat(memory.get("conversation")).extracting(Message::getText)
+                .containsExactly("question 1", "answer 1", "question 2", "answer 2");
+
+        addTurns(memory, 3, 4);
+        await().atMost(Duration.ofSeconds(5)).until(() -> RollingSummaryChatMemory.hasSummary(repository.findByConversationId("conversation")));
+
+        List<Message> messages = memory.get("conversation");
+        assertThat(messages.get(0).getMessageType()).isEqualTo(MessageType.SYSTEM);
+        assertThat(messages.get(0).getText()).isEqualTo(RollingSummaryChatMemory.SUMMARY_PREFIX + "user asked about leave");
+        assertThat(messages.subList(1, messages.size())).extracting(Message::getText)
+                .containsExactly("question 2", "answer 2", "question 3", "answer 3");
+        assertThat(summaryCalls).hasValue(1);
+        memory.destroy();
+    }
+
+    @Test
+    @DisplayName("Should keep the turns verbatim when the summary cannot be generated")
+    void keepsTurnsWhenSummaryFails() {
+        InMemoryChatMemoryRepository repository = new InMemoryChatMemoryRepository();
+        ChatModel failing = prompt -> {
+            summaryCalls.incrementAndGet();
+            throw new IllegalStateException("model unavailable");
+        };
+        RollingSummaryChatMemory memory = RollingSummaryChatMemory.builder(repository, ChatClient.builder(failing).build())
+                .keepTurns(2)
+                .minTurnsToFold(1)
+                .build();
+
+        addTurns(memory, 0, 3);
+        memory.destroy();
+
+        assertThat(summaryCalls).hasPositiveValue();
+        assertThat(repository.findByConversationId("conversation")).hasSize(6);
+        assertThat(memory.get("conversation")).extracting(Message::getText)
+                .containsExactly("question 1", "answer 1", "question 2", "answer 2");
+    }
+}
@@ -0,0 +1,117 @@
+package com.openai.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WriteBehindChatMemoryRepositoryTests {
+
+    private final SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:h2:mem:write-behind;DB_CLOSE_DELAY=-1", true);
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+    // parks the first write of the flusher until the test lets it go
+    private static class GatedRepository implements ChatMemoryRepository {
+
+        private final InMemoryChatMemoryRepository delegate = new InMemoryChatMemoryRepository();
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean down;
+
+        @Override
+        public List<String> findConversationIds() {
+            return delegate.findConversationIds();
+        }
+
+        @Override
+        public List<Message> findByConversationId(String conversationId) {
+            return delegate.findByConversationId(conversationId);
+        }
+
+        @Override
+        public void saveAll(String conversationId, List<Message> messages) {
+            if (down)
+                throw new IllegalStateException("database is down");
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            delegate.saveAll(conversationId, messages);
+        }
+
+        @Override
+        public void deleteByConversationId(String conversationId) {
+            delegate.deleteByConversationId(conversationId);
+        }
+    }
+
+    @AfterEach
+    void closeDataSource() {
+        dataSource.destroy();
+    }
+
+    @Test
+    @DisplayName("Should not write back a conversation that was deleted while its batch was being flushed")
+    void deleteWinsOverRunningFlush() throws Exception {
+        GatedRepository delegate = new GatedRepository();
+        WriteBehindChatMemoryRepository repository = WriteBehindChatMemoryRepository.builder(delegate, transactionTemplate)
+                .flushInterval(Duration.ofHours(1))
+                .build();
+        repository.saveAll("alice", List.of(new UserMessage("How many leave days do I get?")));
+
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(repository::flush);
+        assertThat(delegate.writing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Void> delete = CompletableFuture.runAsync(() -> repository.deleteByConversationId("alice"));
+        Thread.sleep(200);
+        // the delete waits for the batch instead of running in between snapshot and write
+        assertThat(delete).isNotDone();
+
+        delegate.release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+        delete.get(5, TimeUnit.SECONDS);
+
+        assertThat(delegate.findByConversationId("alice")).isEmpty();
+        assertThat(repository.findByConversationId("alice")).isEmpty();
+        repository.destroy();
+    }
+
+    @Test
+    @DisplayName("Should write through once too many conversations wait for the flusher")
+    void writesThroughWhenFlusherIsBehind() {
+        GatedRepository delegate = new GatedRepository();
+        delegate.down = true;
+        WriteBehindChatMemoryRepository repository = WriteBehindChatMemoryRepository.builder(delegate, transactionTemplate)
+                .flushInterval(Duration.ofHours(1))
+                .maxDirtyConversations(2)
+                .flushOnShutdown(false)
+                .build();
+
+        repository.saveAll("alice", List.of(new UserMessage("first")));
+        repository.saveAll("bob", List.of(new UserMessage("first")));
+        repository.flush();
+        // already waiting conversations keep being absorbed, a new one has to reach the database
+        repository.saveAll("alice", List.of(new UserMessage("second")));
+        assertThatThrownBy(() -> repository.saveAll("carol", List.of(new UserMessage("first"))))
+                .hasMessageContaining("database is down");
+        assertThat(repository.dirtyConversationCount()).isEqualTo(2);
+        assertThat(repository.findConversationIds()).doesNotContain("carol");
+        repository.destroy();
+    }
+}
@@ -0,0 +1,31 @@
+package com.openai.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TicketSummaryTests {
+
+    private static final LocalDate CREATED = LocalDate.of(2025, 3, 1);
+    private static final LocalDate ETA = LocalDate.of(2025, 3, 8);
+
+    @Test
+    @DisplayName("Should render a ticket as a single line")
+    void rendersOneLine() {
+        TicketSummary summary = new TicketSummary(42L, "  vpn drops\n every   hour ", "OPEN", CREATED, ETA);
+
+        assertThat(summary.toLine()).isEqualTo("#42 OPEN opened 2025-03-01 eta 2025-03-08: vpn drops every hour");
+    }
+
+    @Test
+    @DisplayName("Should cut long issues to 80 characters")
+    void truncatesLongIssue() {
+        TicketSummary summary = new TicketSummary(42L, "x".repeat(200), "OPEN", CREATED, ETA);
+
+        String issue = summary.toLine().substring("#42 OPEN opened 2025-03-01 eta 2025-03-08: ".length());
+        assertThat(issue).hasSize(80).endsWith("...").startsWith("x".repeat(77));
+    }
+}
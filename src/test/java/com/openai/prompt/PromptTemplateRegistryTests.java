@@ -0,0 +1,69 @@
+package com.openai.prompt;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class PromptTemplateRegistryTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path directory;
+
+    private PromptTemplateRegistry registry(boolean watch) throws IOException {
+        return new PromptTemplateRegistry(meterRegistry, directory.toUri().toString(), watch);
+    }
+
+    @Test
+    @DisplayName("Should render templates with and without variables and report their size")
+    void rendersTemplates() throws IOException {
+        Files.writeString(directory.resolve("policy.st"), "Employees get 18 days of paid leave.");
+        Files.writeString(directory.resolve("email.st"), "Dear {customerName}, about \"{customerMessage}\"");
+        PromptTemplateRegistry registry = registry(false);
+
+        assertThat(registry.names()).containsExactlyInAnyOrder("policy", "email");
+        assertThat(registry.render("policy")).isEqualTo("Employees get 18 days of paid leave.");
+        assertThat(registry.variables("email")).containsExactlyInAnyOrder("customerName", "customerMessage");
+        assertThat(registry.render("email", Map.of("customerName", "Ana", "customerMessage", "my laptop broke")))
+                .isEqualTo("Dear Ana, about \"my laptop broke\"");
+        assertThat(meterRegistry.get("prompt.template.tokens").tag("template", "policy").gauge().value()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should reject unknown templates and missing variables")
+    void rejectsInvalidRenders() throws IOException {
+        Files.writeString(directory.resolve("email.st"), "Dear {customerName}");
+        PromptTemplateRegistry registry = registry(false);
+
+        assertThatThrownBy(() -> registry.render("missing")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.render("email")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("customerName");
+    }
+
+    @Test
+    @DisplayName("Should reload a changed template without a restart")
+    void reloadsChangedTemplates() throws IOException {
+        Files.writeString(directory.resolve("policy.st"), "Employees get 18 days of paid leave.");
+        PromptTemplateRegistry registry = registry(true);
+        try {
+            Files.writeString(directory.resolve("policy.st"), "Employees get 20 days of paid leave.");
+
+            await().atMost(Duration.ofSeconds(10))
+                    .until(() -> registry.render("policy").equals("Employees get 20 days of paid leave."));
+        } finally {
+            registry.destroy();
+        }
+    }
+}
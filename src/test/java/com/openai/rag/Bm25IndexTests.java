@@ -0,0 +1,52 @@
+package com.openai.rag;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Bm25IndexTests {
+
+    private static Document chunk(String id, String text) {
+        return Document.builder().id(id).text(text).build();
+    }
+
+    @Test
+    @DisplayName("Should rank chunks with exact section numbers and acronyms first")
+    void ranksExactTermsFirst() {
+        Bm25Index index = new Bm25Index();
+        index.add(List.of(
+                chunk("leave", "Employees are entitled to paid leave every calendar year."),
+                chunk("pto", "Section 4.2 PTO accrual is 1.5 days per month of service."),
+                chunk("travel", "Travel expenses are reimbursed within the next payroll cycle.")));
+
+        List<Document> results = index.search("how does PTO accrue under 4.2", 3);
+
+        assertThat(results).extracting(Document::getId).first().isEqualTo("pto");
+        assertThat(results.get(0).getScore()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should replace chunks by id and forget deleted ones across compactions")
+    void replacesAndDeletesIncrementally() {
+        Bm25Index index = new Bm25Index();
+        List<Document> chunks = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            chunks.add(chunk("c" + i, "generic policy chunk number " + i));
+            ids.add("c" + i);
+        }
+        index.add(chunks);
+        index.add(List.of(chunk("c99", "relocation allowance")));
+        index.delete(ids.subList(0, 90));
+
+        assertThat(index.size()).isEqualTo(10);
+        assertThat(index.search("number 5", 5)).extracting(Document::getId).doesNotContain("c5");
+        assertThat(index.search("relocation", 5)).extracting(Document::getId).containsExactly("c99");
+        assertThat(index.search("number 95", 1)).extracting(Document::getId).containsExactly("c95");
+    }
+}
@@ -0,0 +1,52 @@
+package com.openai.rag;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CharNgramLanguageDetectorTests {
+
+    private final CharNgramLanguageDetector detector = CharNgramLanguageDetector.withDefaultProfiles();
+
+    @Test
+    @DisplayName("Should detect short english queries as english")
+    void detectsShortEnglishQueries() {
+        for (String query : List.of("reset my password", "laptop reimbursement", "gratuity eligibility",
+                "sick leave policy", "unlock my account", "what is the notice period"))
+            assertThat(detector.detect(query).language()).as(query).isEqualTo("english");
+    }
+
+    @Test
+    @DisplayName("Should detect non english queries with enough confidence to translate them")
+    void detectsNonEnglishQueries() {
+        Map<String, String> queries = Map.of(
+                "¿Cuántos días de vacaciones tengo al año?", "spanish",
+                "Combien de jours de congés payés ai-je par an ?", "french",
+                "Wie viele Urlaubstage habe ich pro Jahr?", "german",
+                "Quanti giorni di ferie ho all'anno?", "italian",
+                "Quantos dias de férias eu tenho por ano?", "portuguese",
+                "Hoeveel vakantiedagen heb ik per jaar?", "dutch",
+                "Ich habe mein Passwort vergessen", "german",
+                "Mijn laptop start niet op", "dutch");
+
+        queries.forEach((query, language) -> {
+            CharNgramLanguageDetector.Detection detection = detector.detect(query);
+            assertThat(detection.language()).as(query).isEqualTo(language);
+            assertThat(detection.confidence()).as(query).isGreaterThanOrEqualTo(0.2);
+        });
+    }
+
+    @Test
+    @DisplayName("Should report texts in a non latin script by their script")
+    void detectsNonLatinScripts() {
+        CharNgramLanguageDetector.Detection detection = detector.detect("Как сбросить пароль?");
+
+        assertThat(detection.language()).isEqualTo("cyrillic");
+        assertThat(detection.confidence()).isEqualTo(1.0);
+        assertThat(detector.hasProfile(detection.language())).isFalse();
+    }
+}
@@ -0,0 +1,54 @@
+package com.openai.rag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.rag.Query;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LanguageAwareTranslationQueryTransformerTests {
+
+    private final AtomicInteger translations = new AtomicInteger();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ChatModel translationModel = prompt -> {
+        translations.incrementAndGet();
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("How many vacation days do I get per year?"))));
+    };
+
+    private final LanguageAwareTranslationQueryTransformer transformer = LanguageAwareTranslationQueryTransformer.builder()
+            .chatClientBuilder(ChatClient.builder(translationModel))
+            .meterRegistry(meterRegistry)
+            .build();
+
+    @Test
+    @DisplayName("Should pass short and low confidence queries through untranslated")
+    void bypassesShortAndLowConfidenceQueries() {
+        for (String text : List.of("reset my password", "laptop reimbursement", "gratuity eligibility", "dress code"))
+            assertThat(transformer.transform(new Query(text)).text()).isEqualTo(text);
+
+        assertThat(translations).hasValue(0);
+        assertThat(meterRegistry.get("rag.query.translation").tag("outcome", "bypassed").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Should translate non english queries once and serve repeats from the cache")
+    void translatesNonEnglishQueries() {
+        Query query = new Query("¿Cuántos días de vacaciones tengo al año?");
+
+        assertThat(transformer.transform(query).text()).isEqualTo("How many vacation days do I get per year?");
+        assertThat(transformer.transform(query).text()).isEqualTo("How many vacation days do I get per year?");
+
+        assertThat(translations).hasValue(1);
+        assertThat(meterRegistry.get("rag.query.translation").tag("outcome", "cached").counter().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,82 @@
+package com.openai.rag;
+
+import com.openai.cache.CachingEmbeddingModel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.rag.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MmrDocumentPostProcessorTests {
+
+    private final AtomicInteger modelCalls = new AtomicInteger();
+
+    // bag of words embedding, texts sharing words end up close to each other
+    private final EmbeddingModel bagOfWords = new EmbeddingModel() {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            modelCalls.incrementAndGet();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                float[] vector = new float[64];
+                for (String word : text.toLowerCase(Locale.ROOT).split("\\W+"))
+                    vector[Math.floorMod(word.hashCode(), 64)] += 1;
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    private static Document chunk(String id, String text, double score) {
+        return Document.builder().id(id).text(text).score(score).build();
+    }
+
+    @Test
+    @DisplayName("Should replace near duplicate neighbours with diverse chunks using cached embeddings only")
+    void diversifiesWithoutModelCalls() {
+        CachingEmbeddingModel embeddingModel = CachingEmbeddingModel.builder(bagOfWords, "nomic-embed-text").build();
+        List<Document> candidates = List.of(
+                chunk("leave-1", "paid leave is twenty days per calendar year", 0.92),
+                chunk("leave-2", "paid leave is twenty days per calendar year for all staff", 0.91),
+                chunk("leave-3", "staff get paid leave of twenty days per calendar year", 0.90),
+                chunk("carry", "unused days can be carried over until march", 0.70),
+                chunk("sick", "sick leave needs a medical certificate after two days", 0.65));
+        embeddingModel.embed(candidates.stream().map(Document::getText).toList());
+        modelCalls.set(0);
+
+        MmrDocumentPostProcessor postProcessor = MmrDocumentPostProcessor.builder().embeddingModel(embeddingModel).topN(2).lambda(0.5).build();
+        List<Document> selected = postProcessor.process(new Query("how many leave days do I get"), candidates);
+
+        assertThat(selected).extracting(Document::getId).containsExactly("leave-1", "carry");
+        assertThat(modelCalls).hasValue(0);
+    }
+
+    @Test
+    @DisplayName("Should keep the retrieval order when there is nothing to choose from")
+    void passesThroughShortLists() {
+        CachingEmbeddingModel embeddingModel = CachingEmbeddingModel.builder(bagOfWords, "nomic-embed-text").build();
+        List<Document> candidates = List.of(chunk("a", "paid leave", 0.9), chunk("b", "sick leave", 0.8));
+
+        List<Document> selected = MmrDocumentPostProcessor.builder().embeddingModel(embeddingModel).topN(3).build()
+                .process(new Query("leave"), candidates);
+
+        assertThat(selected).isSameAs(candidates);
+        assertThat(modelCalls).hasValue(0);
+    }
+}
@@ -0,0 +1,65 @@
+package com.openai.rag;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultiSourceDocumentRetrieverTests {
+
+    private static Document chunk(String id, String text, double score) {
+        return Document.builder().id(id).text(text).score(score).build();
+    }
+
+    private static DocumentRetriever slow(Duration delay, List<Document> documents) {
+        return query -> {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return documents;
+        };
+    }
+
+    @Test
+    @DisplayName("Should merge sources by normalized score and keep chunks found twice once")
+    void mergesByNormalizedScore() {
+        MultiSourceDocumentRetriever retriever = MultiSourceDocumentRetriever.builder()
+                .source("vector-store", query -> List.of(chunk("pto", "PTO accrues 1.5 days per month", 0.8), chunk("travel", "Travel is reimbursed", 0.4)), Duration.ofSeconds(1))
+                .source("web-search", query -> List.of(chunk("w1", "Public holidays 2025", 0.02), chunk("w2", "PTO  accrues 1.5 days per month", 0.01)), Duration.ofSeconds(1))
+                .build();
+
+        List<Document> results = retriever.retrieve(new Query("how much pto do I get"));
+
+        assertThat(results).extracting(Document::getId).containsExactly("pto", "w1", "travel");
+        assertThat(results).extracting(Document::getScore).containsExactly(1.0, 1.0, 0.5);
+        assertThat(results.get(1).getMetadata()).containsEntry(MultiSourceDocumentRetriever.RETRIEVAL_SOURCE, "web-search");
+    }
+
+    @Test
+    @Timeout(2)
+    @DisplayName("Should answer with the sources that met their deadline and skip failing ones")
+    void skipsLateAndFailingSources() {
+        MultiSourceDocumentRetriever retriever = MultiSourceDocumentRetriever.builder()
+                .source("vector-store", slow(Duration.ofMillis(50), List.of(chunk("pto", "PTO accrual", 0.8))), Duration.ofMillis(500))
+                .source("web-search", slow(Duration.ofSeconds(10), List.of(chunk("w1", "Public holidays", 0.9))), Duration.ofMillis(200))
+                .source("broken", query -> {
+                    throw new IllegalStateException("index unavailable");
+                }, Duration.ofMillis(500))
+                .build();
+
+        long start = System.nanoTime();
+        List<Document> results = retriever.retrieve(new Query("how much pto do I get"));
+
+        assertThat(results).extracting(Document::getId).containsExactly("pto");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    }
+}
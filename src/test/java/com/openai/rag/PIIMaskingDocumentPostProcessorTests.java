@@ -0,0 +1,91 @@
+package com.openai.rag;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PIIMaskingDocumentPostProcessorTests {
+
+    private final PIIMasker piiMasker = PIIMasker.defaults();
+
+    @Test
+    @DisplayName("Should mask every kind of PII in one pass")
+    void masksAllDetectors() {
+        String masked = piiMasker.mask("Mail hr.desk@codev.example.com, call +1 (555) 908-1122, card 4111 1111 1111 1111, "
+                + "ssn 123-45-6789, pan ABCDE1234F, host 192.168.1.20");
+
+        assertThat(masked).isEqualTo("Mail [REDACTED_EMAIL], call [REDACTED_PHONE], card [REDACTED_CARD], "
+                + "ssn [REDACTED_NATIONAL_ID], pan [REDACTED_NATIONAL_ID], host [REDACTED_IP]");
+    }
+
+    @Test
+    @DisplayName("Should leave numbers that fail validation untouched")
+    void keepsInvalidCandidates() {
+        assertThat(piiMasker.mask("card 4111 1111 1111 1112")).isEqualTo("card 4111 1111 1111 1112");
+        assertThat(piiMasker.mask("version 999.1.1.1")).isEqualTo("version 999.1.1.1");
+        assertThat(piiMasker.mask("ssn 666-12-3456")).isEqualTo("ssn 666-12-3456");
+    }
+
+    @Test
+    @DisplayName("Should mask only aadhaar numbers with a valid check digit and keep section numbers")
+    void validatesAadhaarAndIpCandidates() {
+        assertThat(piiMasker.mask("aadhaar 2341 2341 2346")).isEqualTo("aadhaar [REDACTED_NATIONAL_ID]");
+        assertThat(piiMasker.mask("invoice 234123412345")).isEqualTo("invoice 234123412345");
+        assertThat(piiMasker.mask("see section 1.2.3.4")).isEqualTo("see section 1.2.3.4");
+        assertThat(piiMasker.mask("release 1.02.03.4")).isEqualTo("release 1.02.03.4");
+        assertThat(piiMasker.mask("gateway 10.0.0.1")).isEqualTo("gateway [REDACTED_IP]");
+    }
+
+    @Test
+    @DisplayName("Should return the same string when there is nothing to mask")
+    void returnsSameInstanceWithoutPII() {
+        String text = "Employees are entitled to twenty days of paid leave per calendar year.";
+
+        assertThat(piiMasker.mask(text)).isSameAs(text);
+    }
+
+    @Test
+    @DisplayName("Should run custom detectors before phone numbers")
+    void supportsCustomDetectors() {
+        PIIMasker masker = PIIMasker.builder()
+                .detector(new PIIMasker.Detector("employeeId", "\\bEMP-\\d{6}\\b", "[REDACTED_EMPLOYEE_ID]", match -> true))
+                .build();
+
+        assertThat(masker.mask("raised by EMP-204981")).isEqualTo("raised by [REDACTED_EMPLOYEE_ID]");
+    }
+
+    @Test
+    @DisplayName("Should skip documents masked at ingestion time and flag the others")
+    void skipsDocumentsMaskedAtIngestion() {
+        PIIMaskingDocumentPostProcessor postProcessor = PIIMaskingDocumentPostProcessor.builder().build();
+        Document preMasked = Document.builder().text("reach me at jane.doe@codev.example.com")
+                .metadata(PIIMaskingDocumentPostProcessor.PII_MASKED, true).build();
+        Document raw = Document.builder().text("reach me at jane.doe@codev.example.com").build();
+
+        List<Document> processed = postProcessor.process(new Query("contact"), List.of(preMasked, raw));
+
+        assertThat(processed.get(0)).isSameAs(preMasked);
+        assertThat(processed.get(1).getText()).isEqualTo("reach me at [REDACTED_EMAIL]");
+        assertThat(processed.get(1).getMetadata()).containsEntry(PIIMaskingDocumentPostProcessor.PII_MASKED, true);
+    }
+
+    @Test
+    @DisplayName("Should keep document order when masking in parallel")
+    void keepsOrderInParallel() {
+        PIIMaskingDocumentPostProcessor postProcessor = PIIMaskingDocumentPostProcessor.builder().parallelThreshold(8).build();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            documents.add(Document.builder().text("chunk " + i + " owner user" + i + "@codev.example.com").build());
+
+        List<Document> processed = postProcessor.process(new Query("owners"), documents);
+
+        for (int i = 0; i < 200; i++)
+            assertThat(processed.get(i).getText()).isEqualTo("chunk " + i + " owner [REDACTED_EMAIL]");
+    }
+}
@@ -0,0 +1,220 @@
+package com.openai.rag;
+
+import com.openai.resilience.CircuitBreaker;
+import com.openai.resilience.RequestDeadline;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the retriever against a local stub that imitates the tavily search api, so caching, coalescing, deadlines
+ * and the circuit breaker can be checked offline.
+ */
+class WebSearchDocumentRetrieverTests {
+
+    private static final String TAVILY_RESPONSE = """
+            {"results": [
+              {"title": "Spring AI", "url": "https://spring.io/projects/spring-ai", "content": "Spring AI 1.1 is available", "score": 0.91},
+              {"title": "Ollama", "url": "https://ollama.com", "content": "Run models locally", "score": 0.72}
+            ]}
+            """;
+
+    private HttpServer tavilyStub;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private final List<String> authorizationHeaders = new CopyOnWriteArrayList<>();
+    private volatile Duration responseDelay = Duration.ZERO;
+    private volatile int responseStatus = 200;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        tavilyStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        tavilyStub.setExecutor(Executors.newCachedThreadPool());
+        tavilyStub.createContext("/search", this::handleSearch);
+        tavilyStub.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        tavilyStub.stop(0);
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        authorizationHeaders.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        try {
+            Thread.sleep(responseDelay.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = (responseStatus == 200 ? TAVILY_RESPONSE : "{\"error\": \"upstream failure\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders(responseStatus, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        } catch (IOException ex) {
+            // client gave up on the request (read timeout), nothing left to answer
+        }
+    }
+
+    private WebSearchDocumentRetriever.Builder retrieverBuilder() {
+        return WebSearchDocumentRetriever.builder()
+                .restClientBuilder(RestClient.builder())
+                .baseUrl("http://127.0.0.1:" + tavilyStub.getAddress().getPort() + "/search")
+                .apiKey("test-key")
+                .maxResults(5);
+    }
+
+    @Test
+    @DisplayName("Should map tavily hits to documents with title, url and score")
+    void mapsTavilyHitsToDocuments() {
+        WebSearchDocumentRetriever retriever = retrieverBuilder().build();
+
+        List<Document> documents = retriever.retrieve(new Query("What is new in Spring AI?"));
+
+        assertThat(documents).hasSize(2);
+        assertThat(documents.get(0).getText()).isEqualTo("Spring AI 1.1 is available");
+        assertThat(documents.get(0).getMetadata()).containsEntry("url", "https://spring.io/projects/spring-ai");
+        assertThat(documents.get(0).getScore()).isEqualTo(0.91);
+        assertThat(authorizationHeaders).containsExactly("Bearer test-key");
+        assertThat(requestBodies.get(0)).contains("\"search_depth\":\"advanced\"").contains("\"max_results\":5");
+    }
+
+    @Test
+    @DisplayName("Should serve repeated searches with the same normalized query from cache")
+    void servesRepeatedSearchesFromCache() {
+        WebSearchDocumentRetriever retriever = retrieverBuilder().build();
+
+        retriever.retrieve(new Query("What is new in Spring AI?"));
+        List<Document> cached = retriever.retrieve(new Query("  what is NEW in   spring ai?  "));
+
+        assertThat(cached).hasSize(2);
+        assertThat(requestCount).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should make one upstream call for concurrent identical searches")
+    @Timeout(10)
+    void coalescesConcurrentIdenticalSearches() throws Exception {
+        responseDelay = Duration.ofMillis(500);
+        WebSearchDocumentRetriever retriever = retrieverBuilder().build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Document>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                results.add(executor.submit(() -> retriever.retrieve(new Query("latest java release"))));
+            for (Future<List<Document>> result : results)
+                assertThat(result.get()).hasSize(2);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(requestCount).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should give up after the read deadline and continue without web context")
+    @Timeout(10)
+    void degradesWhenUpstreamIsSlowerThanReadTimeout() {
+        responseDelay = Duration.ofSeconds(3);
+        WebSearchDocumentRetriever retriever = retrieverBuilder().readTimeout(Duration.ofMillis(300)).build();
+
+        long start = System.nanoTime();
+        List<Document> documents = retriever.retrieve(new Query("slow query"));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(documents).isEmpty();
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    @DisplayName("Should cut the read timeout short at the request deadline")
+    @Timeout(10)
+    void capsReadTimeoutByRequestDeadline() {
+        responseDelay = Duration.ofSeconds(3);
+        WebSearchDocumentRetriever retriever = retrieverBuilder().build();
+        Query query = Query.builder().text("slow query")
+                .context(Map.of(RequestDeadline.CONTEXT_KEY, RequestDeadline.after(Duration.ofMillis(300))))
+                .build();
+
+        long start = System.nanoTime();
+        List<Document> documents = retriever.retrieve(query);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(documents).isEmpty();
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(2));
+        // given up on by the request, not a failure of tavily
+        assertThat(retriever.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("Should open the circuit after consecutive failures and stop calling the upstream")
+    void opensCircuitAfterConsecutiveFailures() {
+        responseStatus = 500;
+        WebSearchDocumentRetriever retriever = retrieverBuilder()
+                .failureThreshold(3)
+                .openDuration(Duration.ofMinutes(1))
+                .build();
+
+        for (int i = 0; i < 3; i++)
+            assertThat(retriever.retrieve(new Query("failing query " + i))).isEmpty();
+        assertThat(retriever.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThat(retriever.retrieve(new Query("another query"))).isEmpty();
+        assertThat(requestCount).hasValue(3);
+    }
+
+    @Test
+    @DisplayName("Should let the next caller probe when a half open trial is abandoned at its deadline")
+    @Timeout(10)
+    void releasesAbandonedHalfOpenTrial() throws Exception {
+        responseStatus = 500;
+        WebSearchDocumentRetriever retriever = retrieverBuilder()
+                .failureThreshold(1)
+                .openDuration(Duration.ofMillis(200))
+                .build();
+        assertThat(retriever.retrieve(new Query("failing query"))).isEmpty();
+        Thread.sleep(300);
+        assertThat(retriever.circuitState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        // the trial fails only after the request deadline passed, which is not held against tavily
+        responseDelay = Duration.ofMillis(500);
+        Query trial = Query.builder().text("abandoned query")
+                .context(Map.of(RequestDeadline.CONTEXT_KEY, RequestDeadline.after(Duration.ofMillis(200))))
+                .build();
+        assertThat(retriever.retrieve(trial)).isEmpty();
+
+        responseStatus = 200;
+        responseDelay = Duration.ZERO;
+        assertThat(retriever.retrieve(new Query("recovered query"))).hasSize(2);
+        assertThat(retriever.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(requestCount).hasValue(3);
+    }
+}
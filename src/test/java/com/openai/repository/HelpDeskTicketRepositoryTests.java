@@ -0,0 +1,102 @@
+package com.openai.repository;
+
+import com.openai.model.TicketSummary;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HelpDeskTicketRepositoryTests {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private EntityManagerFactory entityManagerFactory;
+    private HelpDeskTicketRepository repository;
+
+    // hibernate on an in memory h2, with the naming spring boot uses, so the entity maps to helpdesk_tickets as in production
+    private static EntityManagerFactory entityManagerFactory(DriverManagerDataSource dataSource) {
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setPackagesToScan("com.openai.entity");
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "create-drop",
+                "hibernate.jdbc.batch_size", "10",
+                "hibernate.physical_naming_strategy", "org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy"));
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    private void insert(long id, String username, String issue, String status, LocalDate createdAt) {
+        jdbcTemplate.update("INSERT INTO helpdesk_tickets (id, username, issue, status, created_at, eta) VALUES (?, ?, ?, ?, ?, ?)",
+                id, username, issue, status, createdAt, createdAt.plusDays(7));
+    }
+
+    @BeforeEach
+    void createSchema() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:helpdesk-repository;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        entityManagerFactory = entityManagerFactory(dataSource);
+        // the spring data proxy the application gets, without the application context
+        repository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory))
+                .getRepository(HelpDeskTicketRepository.class);
+    }
+
+    @AfterEach
+    void dropSchema() {
+        entityManagerFactory.close();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private Slice<TicketSummary> summaries(int page, int size) {
+        return repository.findSummaries("alice", Set.of("OPEN"), TODAY.minusDays(30), PageRequest.of(page, size));
+    }
+
+    @Test
+    @DisplayName("Should list open tickets of any age and recent tickets, but not old closed ones")
+    void includesOpenAndRecentTickets() {
+        insert(1, "alice", "old open", "OPEN", TODAY.minusDays(100));
+        insert(2, "alice", "old closed", "CLOSED", TODAY.minusDays(100));
+        insert(3, "alice", "recent closed", "CLOSED", TODAY.minusDays(2));
+        insert(4, "bob", "someone else", "OPEN", TODAY);
+
+        Slice<TicketSummary> summaries = summaries(0, 10);
+
+        assertThat(summaries.getContent()).extracting(TicketSummary::id).containsExactly(3L, 1L);
+        assertThat(summaries.getContent().getFirst().issue()).isEqualTo("recent closed");
+        assertThat(summaries.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should order by creation date then id, newest first, and tell whether another page follows")
+    void ordersNewestFirstAndPages() {
+        insert(5, "alice", "first", "OPEN", TODAY.minusDays(1));
+        insert(6, "alice", "second", "OPEN", TODAY.minusDays(1));
+        insert(7, "alice", "third", "OPEN", TODAY);
+
+        Slice<TicketSummary> first = summaries(0, 2);
+        Slice<TicketSummary> second = summaries(1, 2);
+
+        assertThat(first.getContent()).extracting(TicketSummary::id).containsExactly(7L, 6L);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.getContent()).extracting(TicketSummary::id).containsExactly(5L);
+        assertThat(second.hasNext()).isFalse();
+    }
+}
@@ -0,0 +1,60 @@
+package com.openai.resilience;
+
+import com.openai.exception.ModelOverloadedException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTests {
+
+    @Test
+    @DisplayName("Should hand a released permit to the waiting caller")
+    void handsReleasedPermitToWaiter() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("llama3.2", 1, 1, 4, 1, Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire();
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = CompletableFuture.supplyAsync(limiter::acquire);
+        Thread.sleep(200);
+        assertThat(second).isNotDone();
+        assertThat(limiter.getQueueDepth()).isEqualTo(1);
+
+        first.release(true);
+        second.get(5, TimeUnit.SECONDS).release(true);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should reject right away when the wait queue is full and after max wait otherwise")
+    void rejectsWhenOverloaded() {
+        AdaptiveConcurrencyLimiter noQueue = new AdaptiveConcurrencyLimiter("llama3.2", 1, 1, 4, 0, Duration.ofSeconds(5));
+        noQueue.acquire();
+        assertThatThrownBy(noQueue::acquire).isInstanceOf(ModelOverloadedException.class).hasMessageContaining("queue is full");
+
+        AdaptiveConcurrencyLimiter shortWait = new AdaptiveConcurrencyLimiter("llama3.2", 1, 1, 4, 1, Duration.ofMillis(100));
+        shortWait.acquire();
+        assertThatThrownBy(shortWait::acquire).isInstanceOf(ModelOverloadedException.class).hasMessageContaining("no capacity");
+        assertThat(shortWait.getQueueDepth()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should shrink the limit on failures and leave it alone for abandoned permits")
+    void abandonedPermitsAreNoSample() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("llama3.2", 10, 1, 16, 0, Duration.ofSeconds(1));
+
+        limiter.acquire().release(false);
+        assertThat(limiter.getLimit()).isEqualTo(9);
+
+        AdaptiveConcurrencyLimiter.Permit cancelled = limiter.acquire();
+        cancelled.abandon();
+        // releasing twice is a no-op
+        cancelled.release(false);
+        assertThat(limiter.getLimit()).isEqualTo(9);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+}
@@ -0,0 +1,112 @@
+package com.openai.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OllamaModelResidencyManagerTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FakeOllamaApi ollamaApi = new FakeOllamaApi(Map.of("llama3.2:latest", 3L, "mistral:7b", 3L, "nomic-embed-text:latest", 1L));
+
+    private OllamaModelResidencyManager manager(long budget, Duration maxWait) {
+        return new OllamaModelResidencyManager(ollamaApi, meterRegistry, true, List.of("llama3.2", "mistral:7b"),
+                List.of("nomic-embed-text"), Set.of("nomic-embed-text"), DataSize.ofBytes(budget), Duration.ofMinutes(30),
+                Duration.ZERO, maxWait, Duration.ofHours(1));
+    }
+
+    @Test
+    @DisplayName("Should warm pinned models first and every model that fits into the budget")
+    void warmsModelsThatFit() {
+        OllamaModelResidencyManager manager = manager(5, Duration.ofSeconds(5));
+
+        manager.warmUp();
+
+        assertThat(ollamaApi.calls).containsExactly("load nomic-embed-text", "load llama3.2");
+        assertThat(manager.isResident("llama3.2")).isTrue();
+        assertThat(manager.isResident("mistral:7b")).isFalse();
+        assertThat(meterRegistry.get("ollama.model.load").tag("reason", "warmup").timers()).hasSize(2);
+        manager.destroy();
+    }
+
+    @Test
+    @DisplayName("Should swap a model out only once its requests are done")
+    void swapsIdleModels() throws Exception {
+        OllamaModelResidencyManager manager = manager(5, Duration.ofSeconds(30));
+        manager.warmUp();
+        ollamaApi.calls.clear();
+
+        OllamaModelResidencyManager.Lease llama = manager.acquire("llama3.2");
+        CompletableFuture<OllamaModelResidencyManager.Lease> mistral = CompletableFuture.supplyAsync(() -> manager.acquire("mistral:7b"));
+        Thread.sleep(300);
+        assertThat(mistral).isNotDone();
+
+        // llama3.2 still serves its own requests while mistral waits
+        manager.acquire("llama3.2").release();
+        llama.release();
+
+        mistral.get(5, TimeUnit.SECONDS).release();
+        assertThat(ollamaApi.calls).containsExactly("unload llama3.2", "load mistral:7b");
+        assertThat(manager.isResident("mistral:7b")).isTrue();
+        assertThat(manager.isResident("nomic-embed-text")).isTrue();
+        manager.destroy();
+    }
+
+    @Test
+    @DisplayName("Should let requests for unknown models pass without waiting")
+    void ignoresUnknownModels() {
+        OllamaModelResidencyManager manager = manager(5, Duration.ofSeconds(30));
+        manager.warmUp();
+        ollamaApi.calls.clear();
+
+        manager.acquire("gemma").release();
+
+        assertThat(ollamaApi.calls).isEmpty();
+        manager.destroy();
+    }
+
+    private static final class FakeOllamaApi implements OllamaModelResidencyManager.OllamaApi {
+
+        private final Map<String, Long> available;
+        private final Map<String, Long> running = new ConcurrentHashMap<>();
+        private final List<String> calls = new CopyOnWriteArrayList<>();
+
+        private FakeOllamaApi(Map<String, Long> available) {
+            this.available = available;
+        }
+
+        @Override
+        public Map<String, Long> available() {
+            return available;
+        }
+
+        @Override
+        public Map<String, Long> running() {
+            return Map.copyOf(running);
+        }
+
+        @Override
+        public void load(String model, boolean embedding, long keepAliveSeconds) {
+            calls.add("load " + model);
+            running.put(OllamaModelResidencyManager.normalize(model), available.get(OllamaModelResidencyManager.normalize(model)));
+        }
+
+        @Override
+        public void unload(String model, boolean embedding) {
+            calls.add("unload " + model);
+            running.remove(OllamaModelResidencyManager.normalize(model));
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.openai.resilience;
+
+import com.openai.advisors.ModelBulkheadAdvisor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the router against local stubs of an openai compatible chat endpoint, each answering with its own name
+ * after a configurable delay, so hedging, failover and prompt size routing can be checked offline.
+ */
+class RoutingChatModelTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<StubModelServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void stopStubs() {
+        servers.forEach(server -> server.httpServer.stop(0));
+    }
+
+    private StubModelServer stub(String name, Duration delay, int status) throws IOException {
+        StubModelServer server = new StubModelServer(name, delay, status);
+        servers.add(server);
+        return server;
+    }
+
+    private RoutingChatModel.Builder router() {
+        return RoutingChatModel.builder()
+                .timeout(Duration.ofSeconds(2))
+                .minHedgeDelay(Duration.ofMillis(100))
+                .meterRegistry(meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should hedge a slow call on the next backend and take the first answer")
+    void hedgesSlowCalls() throws IOException {
+        StubModelServer slow = stub("slow", Duration.ofSeconds(5), 200);
+        StubModelServer fast = stub("fast", Duration.ofMillis(50), 200);
+        RoutingChatModel model = router()
+                .backend("slow", slow.chatModel(), "slow-model", 1000)
+                .backend("fast", fast.chatModel(), "fast-model", 1000)
+                .build();
+
+        long start = System.nanoTime();
+        String answer = model.call("hello");
+
+        // no p95 yet, so the hedge fires after half the timeout
+        assertThat(answer).isEqualTo("fast");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(slow.requests.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("llm.routing.hedges").tag("backend", "slow").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("llm.routing.latency").tag("backend", "slow").tag("outcome", "cancelled").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should fail over to the next backend when a backend errors and route around it afterwards")
+    void failsOverOnError() throws IOException {
+        StubModelServer broken = stub("broken", Duration.ZERO, 500);
+        StubModelServer healthy = stub("healthy", Duration.ofMillis(50), 200);
+        RoutingChatModel model = router()
+                .backend("broken", broken.chatModel(), "broken-model", 1000)
+                .backend("healthy", healthy.chatModel(), "healthy-model", 1000)
+                .build();
+
+        assertThat(model.call("hello")).isEqualTo("healthy");
+        assertThat(meterRegistry.get("llm.routing.failovers").tag("backend", "broken").counter().count()).isEqualTo(1);
+
+        // the failure counted as a full timeout, healthy is ranked first now
+        assertThat(model.call("hello again")).isEqualTo("healthy");
+        assertThat(broken.requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should fail over after timeouts of the first and the hedged backend")
+    void failsOverOnTimeout() throws IOException {
+        StubModelServer a = stub("a", Duration.ofSeconds(5), 200);
+        StubModelServer b = stub("b", Duration.ofSeconds(5), 200);
+        StubModelServer c = stub("c", Duration.ofMillis(50), 200);
+        RoutingChatModel model = router()
+                .timeout(Duration.ofMillis(600))
+                .backend("a", a.chatModel(), "a-model", 1000)
+                .backend("b", b.chatModel(), "b-model", 1000)
+                .backend("c", c.chatModel(), "c-model", 1000)
+                .build();
+
+        long start = System.nanoTime();
+        // a is hedged on b after 300ms, both time out and their cancelled calls complete while c is still running
+        assertThat(model.call("hello")).isEqualTo("c");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(meterRegistry.get("llm.routing.latency").tag("backend", "a").tag("outcome", "timeout").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("llm.routing.latency").tag("backend", "b").tag("outcome", "timeout").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("llm.routing.failovers").tag("backend", "b").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should run routed calls at the bulkhead limit without waiting on their own model permit")
+    void routedCallsDoNotNestModelPermits() throws Exception {
+        StubModelServer llama = stub("llama3.2", Duration.ofMillis(300), 200);
+        // two permits per key and no queue, a second permit of the same model per call would be shed right away
+        ModelBulkheads modelBulkheads = new ModelBulkheads(meterRegistry, 2, 1, 2, 0, Duration.ofSeconds(5));
+        RoutingChatModel model = router()
+                .backend("llama3.2", llama.chatModel(), "llama3.2", 1000)
+                .modelBulkheads(modelBulkheads)
+                .build();
+        ChatClient chatClient = ChatClient.builder(model)
+                .defaultAdvisors(ModelBulkheadAdvisor.forClient(modelBulkheads, residencyManager(false, 5), "routingChatClient"))
+                .build();
+
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+            answers.add(CompletableFuture.supplyAsync(() -> chatClient.prompt("hello").call().content()));
+
+        for (CompletableFuture<String> answer : answers)
+            assertThat(answer.get(5, TimeUnit.SECONDS)).isEqualTo("llama3.2");
+        assertThat(llama.requests.get()).isEqualTo(2);
+        assertThat(modelBulkheads.limiter("routingChatClient").getInFlight()).isZero();
+        assertThat(modelBulkheads.limiter("llama3.2").getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should hedge only on a backend whose model is loaded already")
+    void hedgesOnlyOnLoadedModels() throws IOException {
+        StubModelServer llama = stub("llama3.2", Duration.ofSeconds(5), 200);
+        StubModelServer mistral = stub("mistral:7b", Duration.ofMillis(50), 200);
+        StubModelServer small = stub("llama3.2:1b", Duration.ofMillis(50), 200);
+        // llama3.2 and llama3.2:1b fit into the budget, mistral would have to be swapped in
+        OllamaModelResidencyManager residencyManager = residencyManager(true, 5);
+        residencyManager.warmUp();
+        RoutingChatModel model = router()
+                .backend("llama3.2", llama.chatModel(), "llama3.2", 1000)
+                .backend("mistral:7b", mistral.chatModel(), "mistral:7b", 1000)
+                .backend("llama3.2:1b", small.chatModel(), "llama3.2:1b", 1000)
+                .residencyManager(residencyManager)
+                .build();
+
+        assertThat(model.call("hello")).isEqualTo("llama3.2:1b");
+        assertThat(mistral.requests.get()).isZero();
+        assertThat(residencyManager.isResident("mistral:7b")).isFalse();
+        residencyManager.destroy();
+    }
+
+    private OllamaModelResidencyManager residencyManager(boolean enabled, long budget) {
+        Map<String, Long> sizes = Map.of("llama3.2:latest", 3L, "mistral:7b", 3L, "llama3.2:1b", 1L);
+        Map<String, Long> running = new ConcurrentHashMap<>();
+        OllamaModelResidencyManager.OllamaApi ollamaApi = new OllamaModelResidencyManager.OllamaApi() {
+
+            @Override
+            public Map<String, Long> available() {
+                return sizes;
+            }
+
+            @Override
+            public Map<String, Long> running() {
+                return Map.copyOf(running);
+            }
+
+            @Override
+            public void load(String model, boolean embedding, long keepAliveSeconds) {
+                running.put(OllamaModelResidencyManager.normalize(model), sizes.get(OllamaModelResidencyManager.normalize(model)));
+            }
+
+            @Override
+            public void unload(String model, boolean embedding) {
+                running.remove(OllamaModelResidencyManager.normalize(model));
+            }
+        };
+        return new OllamaModelResidencyManager(ollamaApi, meterRegistry, enabled, List.of("llama3.2", "mistral:7b", "llama3.2:1b"),
+                List.of(), Set.of(), DataSize.ofBytes(budget), Duration.ofMinutes(30), Duration.ZERO, Duration.ofSeconds(5), Duration.ofHours(1));
+    }
+
+    @Test
+    @DisplayName("Should skip backends whose context is too small for the prompt")
+    void routesByPromptSize() throws IOException {
+        StubModelServer small = stub("small", Duration.ZERO, 200);
+        StubModelServer large = stub("large", Duration.ofMillis(50), 200);
+        RoutingChatModel model = router()
+                .backend("small", small.chatModel(), "small-model", 20)
+                .backend("large", large.chatModel(), "large-model", 10_000)
+                .build();
+
+        assertThat(model.call("short question")).isEqualTo("small");
+        assertThat(model.call("a much longer question ".repeat(50))).isEqualTo("large");
+    }
+
+    private static final class StubModelServer {
+
+        private final String name;
+        private final Duration delay;
+        private final int status;
+        private final HttpServer httpServer;
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private StubModelServer(String name, Duration delay, int status) throws IOException {
+            this.name = name;
+            this.delay = delay;
+            this.status = status;
+            this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.httpServer.setExecutor(Executors.newCachedThreadPool());
+            this.httpServer.createContext("/v1/chat/completions", this::handle);
+            this.httpServer.start();
+        }
+
+        ChatModel chatModel() {
+            return OpenAiChatModel.builder()
+                    .openAiApi(OpenAiApi.builder().baseUrl("http://127.0.0.1:" + httpServer.getAddress().getPort()).apiKey("dummy").build())
+                    .defaultOptions(OpenAiChatOptions.builder().model(name).build())
+                    .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                    .build();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(delay.toMillis());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            String response = status == 200 ? """
+                    {"id": "chatcmpl-1", "object": "chat.completion", "created": 0, "model": "%s",
+                     "choices": [{"index": 0, "message": {"role": "assistant", "content": "%s"}, "finish_reason": "stop"}],
+                     "usage": {"prompt_tokens": 5, "completion_tokens": 1, "total_tokens": 6}}
+                    """.formatted(name, name) : "{\"error\": {\"message\": \"upstream failure\"}}";
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            try {
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            } catch (IOException ex) {
+                // the router cancelled the call, nothing left to answer
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.openai.service;
+
+import com.openai.entity.HelpDeskTicket;
+import com.openai.model.TicketRequest;
+import com.openai.model.TicketSummary;
+import com.openai.repository.HelpDeskTicketRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HelpDeskTicketServiceTests {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private EntityManagerFactory entityManagerFactory;
+    private HelpDeskTicketWriter writer;
+    private HelpDeskTicketService service;
+
+    @BeforeEach
+    void createSchema() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:helpdesk-service;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        entityManagerFactory = HelpDeskTicketWriterTests.entityManagerFactory(dataSource);
+        // room for a single queued ticket
+        writer = HelpDeskTicketWriterTests.writer(entityManagerFactory, new SimpleMeterRegistry(), 1);
+        HelpDeskTicketRepository repository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory))
+                .getRepository(HelpDeskTicketRepository.class);
+        service = new HelpDeskTicketService(repository, new TicketIdAllocator(jdbcTemplate, 10), writer, Set.of("OPEN"), 30, 2);
+    }
+
+    @AfterEach
+    void dropSchema() {
+        writer.destroy();
+        entityManagerFactory.close();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private int storedTickets() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM helpdesk_tickets", Integer.class);
+    }
+
+    // straight into the table, past the write behind queue
+    private void store(HelpDeskTicket ticket) {
+        jdbcTemplate.update("INSERT INTO helpdesk_tickets (id, username, issue, status, created_at, eta) VALUES (?, ?, ?, ?, ?, ?)",
+                ticket.getId(), ticket.getUsername(), ticket.getIssue(), ticket.getStatus(), ticket.getCreatedAt(), ticket.getEta());
+    }
+
+    @Test
+    @DisplayName("Should insert right away when the write behind queue is full")
+    void writesThroughWhenQueueIsFull() {
+        HelpDeskTicket queued = service.submitTicket(new TicketRequest("laptop does not boot"), "alice");
+        HelpDeskTicket written = service.submitTicket(new TicketRequest("vpn drops every hour"), "alice");
+
+        assertThat(written.getId()).isNotEqualTo(queued.getId());
+        assertThat(writer.pending("alice")).extracting(HelpDeskTicket::getId).containsExactly(queued.getId());
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM helpdesk_tickets", Long.class)).containsExactly(written.getId());
+
+        writer.flush();
+        assertThat(storedTickets()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should reject an issue the database could not store before handing out an id")
+    void rejectsTooLongIssue() {
+        assertThatThrownBy(() -> service.submitTicket(new TicketRequest("x".repeat(HelpDeskTicket.MAX_ISSUE_LENGTH + 1)), "alice"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("longer than " + HelpDeskTicket.MAX_ISSUE_LENGTH);
+        assertThat(writer.pending("alice")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should lead the first page with queued tickets and list a ticket flushed meanwhile only once")
+    void mergesQueuedTicketsIntoFirstPage() {
+        LocalDate today = LocalDate.now();
+        store(HelpDeskTicket.builder().id(1000L).username("alice").issue("printer jams").status("OPEN")
+                .createdAt(today.minusDays(1)).eta(today.plusDays(6)).build());
+        store(HelpDeskTicket.builder().id(999L).username("alice").issue("monitor flickers").status("OPEN")
+                .createdAt(today.minusDays(2)).eta(today.plusDays(5)).build());
+        store(HelpDeskTicket.builder().id(998L).username("alice").issue("mouse is broken").status("OPEN")
+                .createdAt(today.minusDays(3)).eta(today.plusDays(4)).build());
+        HelpDeskTicket queued = service.submitTicket(new TicketRequest("laptop does not boot"), "alice");
+
+        Slice<TicketSummary> first = service.getTicketSummaries("alice", 0);
+
+        assertThat(first.getContent()).extracting(TicketSummary::id).containsExactly(queued.getId(), 1000L, 999L);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(service.getTicketSummaries("alice", 1).getContent()).extracting(TicketSummary::id).containsExactly(998L);
+
+        // flushed while still listed as queued, as when the flush lands between reading the queue and the query
+        store(queued);
+
+        assertThat(service.getTicketSummaries("alice", 0).getContent()).extracting(TicketSummary::id)
+                .containsExactly(queued.getId(), 1000L);
+    }
+}
@@ -0,0 +1,114 @@
+package com.openai.service;
+
+import com.openai.entity.HelpDeskTicket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HelpDeskTicketWriterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private EntityManagerFactory entityManagerFactory;
+    private HelpDeskTicketWriter writer;
+
+    // hibernate on an in memory h2, with the naming spring boot uses, so the entity maps to helpdesk_tickets as in production
+    static EntityManagerFactory entityManagerFactory(DriverManagerDataSource dataSource) {
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setPackagesToScan("com.openai.entity");
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "create-drop",
+                "hibernate.jdbc.batch_size", "10",
+                "hibernate.physical_naming_strategy", "org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy"));
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    static HelpDeskTicketWriter writer(EntityManagerFactory entityManagerFactory, SimpleMeterRegistry meterRegistry, int maxPending) {
+        return new HelpDeskTicketWriter(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory),
+                new JpaTransactionManager(entityManagerFactory), meterRegistry, 10, Duration.ofHours(1), maxPending, 10);
+    }
+
+    @BeforeEach
+    void createSchema() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:helpdesk-writer;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        entityManagerFactory = entityManagerFactory(dataSource);
+        writer = writer(entityManagerFactory, meterRegistry, 100);
+    }
+
+    @AfterEach
+    void dropSchema() {
+        writer.destroy();
+        entityManagerFactory.close();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private static HelpDeskTicket ticket(long id, String issue) {
+        return HelpDeskTicket.builder()
+                .id(id)
+                .username("alice")
+                .issue(issue)
+                .status("OPEN")
+                .createdAt(LocalDate.now())
+                .eta(LocalDate.now().plusDays(7))
+                .build();
+    }
+
+    private int storedTickets() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM helpdesk_tickets", Integer.class);
+    }
+
+    @Test
+    @DisplayName("Should write the rest of the queue and dead letter a ticket the database rejects")
+    void deadLettersRejectedTicket() {
+        writer.submit(ticket(1, "laptop does not boot"));
+        writer.submit(ticket(2, "x".repeat(HelpDeskTicket.MAX_ISSUE_LENGTH + 1)));
+        writer.submit(ticket(3, "vpn drops every hour"));
+
+        writer.flush();
+
+        assertThat(storedTickets()).isEqualTo(2);
+        assertThat(writer.pending("alice")).isEmpty();
+        assertThat(writer.deadLetters()).extracting(HelpDeskTicket::getId).containsExactly(2L);
+        assertThat(meterRegistry.get("helpdesk.tickets.dead.lettered").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should keep every ticket queued while the database is unavailable")
+    void keepsQueueWhenDatabaseFails() {
+        writer.submit(ticket(1, "laptop does not boot"));
+        writer.submit(ticket(2, "vpn drops every hour"));
+        jdbcTemplate.execute("ALTER TABLE helpdesk_tickets RENAME TO helpdesk_tickets_offline");
+
+        assertThatThrownBy(writer::flush).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> writer.persistAll(List.of(ticket(3, "printer jammed")))).isInstanceOf(RuntimeException.class);
+        assertThat(writer.pending("alice")).hasSize(2);
+        assertThat(writer.deadLetters()).isEmpty();
+
+        jdbcTemplate.execute("ALTER TABLE helpdesk_tickets_offline RENAME TO helpdesk_tickets");
+        writer.flush();
+        assertThat(storedTickets()).isEqualTo(2);
+        assertThat(writer.pending("alice")).isEmpty();
+    }
+}
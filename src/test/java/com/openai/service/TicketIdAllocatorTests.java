@@ -0,0 +1,95 @@
+package com.openai.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TicketIdAllocatorTests {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createTable() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:tickets;DB_CLOSE_DELAY=-1", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE helpdesk_tickets (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, username VARCHAR(255))");
+    }
+
+    @AfterEach
+    void dropAll() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Test
+    @DisplayName("Should continue after tickets that were stored with identity ids")
+    void startsPastExistingIds() {
+        jdbcTemplate.update("INSERT INTO helpdesk_tickets (username) VALUES ('ana'), ('ben'), ('cleo')");
+
+        TicketIdAllocator allocator = new TicketIdAllocator(jdbcTemplate, 10);
+
+        assertThat(allocator.next()).isEqualTo(4);
+        assertThat(allocator.next(3)).containsExactly(5, 6, 7);
+    }
+
+    @Test
+    @DisplayName("Should size blocks by the increment of an existing sequence after the block size changed")
+    void followsIncrementOfExistingSequence() {
+        TicketIdAllocator before = new TicketIdAllocator(jdbcTemplate, 10);
+        assertThat(before.next()).isEqualTo(1);
+
+        // restarted with a larger block size, the sequence still steps by 10
+        TicketIdAllocator after = new TicketIdAllocator(jdbcTemplate, 50);
+        long[] ids = after.next(15);
+        long[] more = before.next(15);
+
+        Set<Long> unique = new HashSet<>();
+        for (long id : ids)
+            assertThat(unique.add(id)).isTrue();
+        for (long id : more)
+            assertThat(unique.add(id)).as("id %d handed out twice", id).isTrue();
+        assertThat(ids).startsWith(11, 12, 13);
+    }
+
+    @Test
+    @DisplayName("Should hit the sequence once per block and never hand out an id twice")
+    void allocatesUniqueIdsPerBlock() throws Exception {
+        TicketIdAllocator allocator = new TicketIdAllocator(jdbcTemplate, 50);
+        // a second instance on the same sequence, like a second application node
+        TicketIdAllocator otherNode = new TicketIdAllocator(jdbcTemplate, 50);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                TicketIdAllocator node = i % 2 == 0 ? allocator : otherNode;
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < 500; n++)
+                        assertThat(ids.add(node.next())).isTrue();
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+
+        assertThat(ids).hasSize(4000);
+        // 4000 ids in blocks of 50 are 80 blocks, at most one more per node is left partly used
+        Long sequenceValue = jdbcTemplate.queryForObject("SELECT CURRENT VALUE FOR " + TicketIdAllocator.SEQUENCE, Long.class);
+        assertThat(sequenceValue).isLessThanOrEqualTo(1 + 81 * 50);
+    }
+}
@@ -0,0 +1,156 @@
+package com.openai.vectorstore;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class HnswVectorStoreTests {
+
+    private static final int DIMENSIONS = 64;
+
+    @TempDir
+    Path directory;
+
+    // bag of words embedding, texts sharing words end up close to each other
+    private final EmbeddingModel embeddingModel = new EmbeddingModel() {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions())
+                embeddings.add(new Embedding(embed(text), embeddings.size()));
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = new float[DIMENSIONS];
+            for (String word : text.toLowerCase(Locale.ROOT).split("\\W+"))
+                vector[Math.floorMod(word.hashCode(), DIMENSIONS)] += 1;
+            return vector;
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    };
+
+    private HnswVectorStore open() {
+        return HnswVectorStore.builder(embeddingModel, directory).dimensions(DIMENSIONS).build();
+    }
+
+    private static List<Document> policyChunks() {
+        return List.of(
+                Document.builder().id("leave").text("paid leave days per calendar year").metadata("source", "hr").metadata("year", 2024).build(),
+                Document.builder().id("travel").text("travel expenses reimbursed per trip").metadata("source", "finance").metadata("year", 2023).build(),
+                Document.builder().id("laptop").text("laptop replacement every three years").metadata("source", "it").metadata("year", 2024).build());
+    }
+
+    @Test
+    @DisplayName("Should find the most similar document with its score")
+    void findsMostSimilarDocument() throws Exception {
+        HnswVectorStore vectorStore = open();
+        vectorStore.add(policyChunks());
+
+        List<Document> results = vectorStore.similaritySearch(SearchRequest.builder().query("how many leave days per year").topK(1).build());
+
+        assertThat(results).extracting(Document::getId).containsExactly("leave");
+        assertThat(results.get(0).getScore()).isGreaterThan(0.5);
+        vectorStore.destroy();
+    }
+
+    @Test
+    @DisplayName("Should apply metadata filters to searches and deletes")
+    void appliesFilters() throws Exception {
+        HnswVectorStore vectorStore = open();
+        vectorStore.add(policyChunks());
+        FilterExpressionBuilder filter = new FilterExpressionBuilder();
+
+        List<Document> results = vectorStore.similaritySearch(SearchRequest.builder().query("paid leave or a new laptop").topK(3)
+                .filterExpression(filter.and(filter.eq("year", 2024), filter.ne("source", "hr")).build()).build());
+        assertThat(results).extracting(Document::getId).containsExactly("laptop");
+
+        vectorStore.delete(filter.in("source", "hr", "it").build());
+        assertThat(vectorStore.documentCount()).isEqualTo(1);
+        vectorStore.destroy();
+    }
+
+    @Test
+    @DisplayName("Should reopen committed documents, replacements and deletes from disk")
+    void reopensFromDisk() throws Exception {
+        HnswVectorStore vectorStore = open();
+        vectorStore.add(policyChunks());
+        vectorStore.add(List.of(Document.builder().id("travel").text("travel booked through the portal").metadata("source", "finance").build()));
+        vectorStore.delete(List.of("laptop"));
+        vectorStore.destroy();
+
+        HnswVectorStore reopened = open();
+        List<Document> results = reopened.similaritySearch(SearchRequest.builder().query("travel portal").topK(3).build());
+
+        assertThat(reopened.documentCount()).isEqualTo(2);
+        assertThat(results).extracting(Document::getId).contains("travel").doesNotContain("laptop");
+        assertThat(results).filteredOn(document -> document.getId().equals("travel"))
+                .extracting(Document::getText).containsExactly("travel booked through the portal");
+        reopened.destroy();
+    }
+
+    @Test
+    @DisplayName("Should drop replaced and deleted documents from the graph on compaction and reopen the compacted store")
+    void compactsDeadNodes() throws Exception {
+        HnswVectorStore vectorStore = open();
+        vectorStore.add(policyChunks());
+        for (int i = 0; i < 5; i++)
+            vectorStore.add(List.of(Document.builder().id("travel").text("travel booked through the portal, revision " + i).metadata("source", "finance").build()));
+        vectorStore.delete(List.of("laptop"));
+        assertThat(vectorStore.nodeCount()).isEqualTo(8);
+
+        vectorStore.compact();
+        assertThat(vectorStore.nodeCount()).isEqualTo(2);
+        assertThat(vectorStore.similaritySearch(SearchRequest.builder().query("travel portal").topK(1).build()))
+                .extracting(Document::getText).containsExactly("travel booked through the portal, revision 4");
+        vectorStore.add(List.of(Document.builder().id("laptop").text("laptop replacement every four years").metadata("source", "it").build()));
+        vectorStore.destroy();
+
+        HnswVectorStore reopened = open();
+        assertThat(reopened.documentCount()).isEqualTo(3);
+        assertThat(reopened.nodeCount()).isEqualTo(3);
+        assertThat(reopened.similaritySearch(SearchRequest.builder().query("laptop replacement").topK(1).build()))
+                .extracting(Document::getText).containsExactly("laptop replacement every four years");
+        // only the current generation is left behind
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.map(file -> file.getFileName().toString())).containsExactlyInAnyOrder("CURRENT", "gen-1");
+        }
+        reopened.destroy();
+    }
+
+    @Test
+    @DisplayName("Should commit batched changes in the background")
+    void commitsInBackground() throws Exception {
+        HnswVectorStore vectorStore = HnswVectorStore.builder(embeddingModel, directory).dimensions(DIMENSIONS)
+                .commitInterval(Duration.ofMillis(50))
+                .build();
+        vectorStore.add(policyChunks());
+
+        await().atMost(Duration.ofSeconds(5)).ignoreExceptions().until(() -> Files.readString(directory.resolve("header.properties")).contains("size=3"));
+        vectorStore.destroy();
+    }
+}